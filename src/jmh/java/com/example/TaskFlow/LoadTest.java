@@ -0,0 +1,253 @@
+package com.example.TaskFlow;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Closed-loop HTTP load test against a running TaskFlow instance, used to compare the platform thread,
+// virtual thread and reactive modes. Each of "clients" concurrent clients sends a request, waits for the answer and
+// sends the next one for "duration" seconds; the run reports throughput, error count and latency percentiles
+// for every client count. Requests are sent with an access token obtained through register/identify/login,
+// so by default they exercise JwtAuthFilter plus a blocking JPA lookup in /user/me.
+//
+// Start the application twice, once plain and once with the virtual-threads profile (Java 21+), then run e.g.
+//   ./mvnw -Pjmh test-compile exec:exec -Djmh.main=com.example.TaskFlow.LoadTest \
+//       -Djmh.args="url=http://localhost:8080 clients=1000,2500,5000,10000 duration=30"
+// 10k clients need as many sockets on both sides, raise the open files limit (ulimit -n) first.
+//
+// idle=N additionally opens N keep-alive connections that send one request and then stay silent for the whole run,
+// the way browsers and mobile clients hold connections between user actions. The report shows how the active
+// clients fare next to them and how many the server still keeps open at the end. For the servlet against the
+// reactive stack run the same command against the default and the reactive profile, e.g.
+//   -Djmh.args="url=http://localhost:8080 clients=100,1000 idle=20000 duration=60"
+public class LoadTest {
+
+    private static final Pattern ACCESS_TOKEN = Pattern.compile("\"access-token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern FLOW_ID = Pattern.compile("\"flowId\"\\s*:\\s*\"([^\"]+)\"");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "url", "http://localhost:8080",
+                "path", "/user/me",
+                "clients", "1000,2500,5000,10000",
+                "duration", "30",
+                "warmup", "10",
+                "user", "loadtest",
+                "password", "LoadTest@123!",
+                "idle", "0"));
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        String baseUrl = options.get("url");
+        String token = login(http, baseUrl, options.get("user"), options.get("password"));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + options.get("path")))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+
+        int idle = Integer.parseInt(options.get("idle"));
+        List<SocketChannel> idleConnections = new ArrayList<>(idle);
+        if (idle > 0) {
+            System.out.printf("Opening %d idle connections%n", idle);
+            idleConnections = openIdleConnections(URI.create(baseUrl), options.get("path"), token, idle);
+        }
+
+        System.out.printf("Warming up for %s s%n", options.get("warmup"));
+        run(http, request, 100, Duration.ofSeconds(Long.parseLong(options.get("warmup"))));
+
+        System.out.printf("%8s %12s %8s %10s %10s %10s %10s%n", "clients", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (String clients : options.get("clients").split(",")) {
+            Result result = run(http, request, Integer.parseInt(clients.trim()), Duration.ofSeconds(Long.parseLong(options.get("duration"))));
+            System.out.printf("%8s %12.1f %8d %10.1f %10.1f %10.1f %10.1f%n", clients.trim(), result.throughput(), result.errors(),
+                    result.percentileMillis(50), result.percentileMillis(90), result.percentileMillis(99), result.percentileMillis(100));
+        }
+        if (idle > 0) {
+            System.out.printf("Idle connections still open: %d of %d%n", stillOpen(idleConnections), idle);
+            for (SocketChannel connection : idleConnections) {
+                connection.close();
+            }
+        }
+    }
+
+    // Opens the connections one by one, sends one authenticated request on each and leaves them idle.
+    // The response is only read up to its headers, any body left behind is drained by stillOpen().
+    private static List<SocketChannel> openIdleConnections(URI baseUrl, String path, String token, int count) throws IOException {
+        int port = baseUrl.getPort() > 0 ? baseUrl.getPort() : 80;
+        InetSocketAddress address = new InetSocketAddress(baseUrl.getHost(), port);
+        byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: " + baseUrl.getHost() + ":" + port
+                + "\r\nAuthorization: Bearer " + token + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        List<SocketChannel> connections = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SocketChannel connection = SocketChannel.open(address);
+            connection.write(ByteBuffer.wrap(request));
+            buffer.clear();
+            while (!new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).contains("\r\n\r\n")) {
+                if (connection.read(buffer) < 0) {
+                    throw new IOException("Connection closed before the response arrived");
+                }
+            }
+            connection.configureBlocking(false);
+            connections.add(connection);
+        }
+        return connections;
+    }
+
+    // A closed connection reads end-of-stream (or fails with a reset) once whatever is left of its response has been drained
+    private static int stillOpen(List<SocketChannel> connections) {
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        int open = 0;
+        for (SocketChannel connection : connections) {
+            try {
+                int read;
+                do {
+                    buffer.clear();
+                    read = connection.read(buffer);
+                } while (read > 0);
+                if (read == 0) {
+                    open++;
+                }
+            } catch (IOException e) {
+                // reset by the server, counts as closed
+            }
+        }
+        return open;
+    }
+
+    // Registers the load test user (a 409 means it exists already) and logs it in
+    private static String login(HttpClient http, String baseUrl, String user, String password) throws Exception {
+        post(http, baseUrl + "/auth/register", "{\"username\":\"" + user + "\",\"email\":\"" + user + "@example.com\",\"password\":\""
+                + password + "\",\"firstname\":\"Load\",\"lastname\":\"Test\"}");
+        String identify = post(http, baseUrl + "/auth/identify", "{\"identifier\":\"" + user + "\"}");
+        String flowId = extract(FLOW_ID, identify);
+        String login = post(http, baseUrl + "/auth/login", "{\"flowId\":\"" + flowId + "\",\"password\":\"" + password + "\"}");
+        return extract(ACCESS_TOKEN, login);
+    }
+
+    private static String post(HttpClient http, String url, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private static String extract(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected response: " + body);
+        }
+        return matcher.group(1);
+    }
+
+    private static Result run(HttpClient http, HttpRequest request, int clients, Duration duration) {
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<Client> all = new ArrayList<>(clients);
+        List<CompletableFuture<Void>> done = new ArrayList<>(clients);
+        for (int i = 0; i < clients; i++) {
+            Client client = new Client(http, request, deadline, errors);
+            all.add(client);
+            done.add(client.start());
+        }
+        CompletableFuture.allOf(done.toArray(CompletableFuture[]::new)).join();
+        long elapsed = System.nanoTime() - start;
+
+        int total = all.stream().mapToInt(client -> client.count).sum();
+        long[] latencies = new long[total];
+        int offset = 0;
+        for (Client client : all) {
+            System.arraycopy(client.latencies, 0, latencies, offset, client.count);
+            offset += client.count;
+        }
+        Arrays.sort(latencies);
+        return new Result(latencies, errors.get(), elapsed);
+    }
+
+    // One simulated client: sends the next request as soon as the previous answer arrived
+    private static final class Client {
+        private final HttpClient http;
+        private final HttpRequest request;
+        private final long deadline;
+        private final AtomicLong errors;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        long[] latencies = new long[256];
+        int count;
+
+        Client(HttpClient http, HttpRequest request, long deadline, AtomicLong errors) {
+            this.http = http;
+            this.request = request;
+            this.deadline = deadline;
+            this.errors = errors;
+        }
+
+        CompletableFuture<Void> start() {
+            next();
+            return done;
+        }
+
+        private void next() {
+            if (System.nanoTime() >= deadline) {
+                done.complete(null);
+                return;
+            }
+            long sent = System.nanoTime();
+            http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+                if (failure != null || response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                } else {
+                    record(System.nanoTime() - sent);
+                }
+                next();
+            });
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private record Result(long[] sortedLatencies, long errors, long elapsedNanos) {
+
+        double throughput() {
+            return sortedLatencies.length / (elapsedNanos / 1e9);
+        }
+
+        double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))] / 1e6;
+        }
+    }
+}
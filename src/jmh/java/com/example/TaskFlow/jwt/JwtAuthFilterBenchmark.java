@@ -0,0 +1,83 @@
+package com.example.TaskFlow.jwt;
+
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.UserPrincipalCache;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// One request through JwtAuthFilter, from the Authorization header to the SecurityContext or the 401, for a token
+// that is valid, expired, malformed or missing. Token cache, principal cache, lockout and denylist are the real
+// ones on an in-memory H2, the valid token and its user are cached after the first invocation like in production.
+// Run with -Djmh.args="JwtAuthFilterBenchmark -prof gc" and compare gc.alloc.rate.norm per case. The mock request
+// and response are reused, what they allocate (the already-filtered request attribute) is part of every case.
+// Expired and malformed tokens are never cached, each one pays for parsing and the exception JJWT throws.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthFilterBenchmark {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+    private static final List<String> ROLES = List.of("USER");
+
+    @Param({"valid", "expired", "malformed", "missing"})
+    public String token;
+
+    private JwtAuthFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private final FilterChain chain = (req, res) -> { };
+
+    @Setup
+    public void setUp(){
+        JwtService jwtService = new JwtService(SECRET, "taskflow-bench", 15L, 10080L);
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:filter-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL;INIT=CREATE SCHEMA IF NOT EXISTS taskflow_auth", "sa", "");
+        UserPrincipalCache principalCache = new UserPrincipalCache(null, 3600, 1000);
+        principalCache.put("alice", new UserPrincipalCache.Principal(1L, true, false, false));
+        filter = new JwtAuthFilter(jwtService, new VerifiedTokenCache(jwtService, 10000), principalCache,
+                new AccountLockoutService(dataSource, new DataSourceTransactionManager(dataSource), principalCache, 5, 900, 3600),
+                new AccessTokenDenylist(dataSource, "taskflow_auth.revoked_access_tokens", 10000, 0.001));
+
+        request = new MockHttpServletRequest("GET", "/user/me");
+        switch(token){
+            case "valid" -> request.addHeader("Authorization", "Bearer " + jwtService.createAccessToken("alice", ROLES));
+            case "expired" -> request.addHeader("Authorization", "Bearer "
+                    + new JwtService(SECRET, "taskflow-bench", -1L, 10080L).createAccessToken("alice", ROLES));
+            case "malformed" -> request.addHeader("Authorization", "Bearer not.a-token");
+            default -> { }
+        }
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public int filter() throws ServletException, IOException {
+        response.setStatus(200);
+        filter.doFilter(request, response, chain);
+        return response.getStatus();
+    }
+}
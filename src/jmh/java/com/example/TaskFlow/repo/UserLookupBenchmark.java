@@ -0,0 +1,167 @@
+package com.example.TaskFlow.repo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Identifier lookup against a real PostgreSQL with millions of users, the old OR query against the routed
+// lower(...) index probe of UserRepository.findUsernameByIdentifier and the UNION ALL alternative.
+// Needs a database to write to, the users are generated into their own schema (taskflow_bench) and reused by
+// later runs with the same row count:
+//   ./mvnw -Pjmh test-compile exec:exec -Djmh.args="UserLookupBenchmark -p url=jdbc:postgresql://localhost:5432/taskflowdb -p rows=5000000"
+// The setup prints EXPLAIN (ANALYZE, BUFFERS) of every query shape first, compare the plans (a BitmapOr over both
+// indexes, or a sequential scan for the case-insensitive OR, against single Index Scans) and the shared buffers hit.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UserLookupBenchmark {
+
+    private static final String TABLE = "taskflow_bench.users";
+    // Case-sensitive OR, the lookup /auth/identify used to run
+    private static final String OR_QUERY = "SELECT username FROM " + TABLE + " WHERE email = ? OR username = ?";
+    // What a case-insensitive OR would look like, neither lower(...) index can answer it alone
+    private static final String LOWER_OR_QUERY = "SELECT username FROM " + TABLE + " WHERE lower(email) = ? OR lower(username) = ?";
+    private static final String EMAIL_QUERY = "SELECT username FROM " + TABLE + " WHERE lower(email) = ? ORDER BY id LIMIT 1";
+    private static final String USERNAME_QUERY = "SELECT username FROM " + TABLE + " WHERE lower(username) = ? ORDER BY id LIMIT 1";
+    private static final String UNION_QUERY = "(SELECT username FROM " + TABLE + " WHERE lower(email) = ?) "
+            + "UNION ALL (SELECT username FROM " + TABLE + " WHERE lower(username) = ?) LIMIT 1";
+
+    @Param("jdbc:postgresql://localhost:5432/taskflowdb")
+    public String url;
+
+    @Param("postgres")
+    public String user;
+
+    @Param("postgres")
+    public String password;
+
+    @Param("2000000")
+    public int rows;
+
+    private Connection connection;
+    private PreparedStatement or;
+    private PreparedStatement email;
+    private PreparedStatement username;
+    private PreparedStatement union;
+    // Half emails, half usernames, as a client would type them
+    private final String[] identifiers = new String[4096];
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(url, user, password);
+        seed();
+        for(int i = 0; i < identifiers.length; i++){
+            long id = 1 + random.nextLong(rows);
+            identifiers[i] = i % 2 == 0 ? "User" + id + "@Example.com" : "user" + id;
+        }
+        explain("OR (case-sensitive)", OR_QUERY, identifiers[0], identifiers[0]);
+        explain("OR over lower()", LOWER_OR_QUERY, UserIdentifiers.normalize(identifiers[0]), UserIdentifiers.normalize(identifiers[0]));
+        explain("routed, email", EMAIL_QUERY, UserIdentifiers.normalize(identifiers[0]));
+        explain("routed, username", USERNAME_QUERY, UserIdentifiers.normalize(identifiers[1]));
+        explain("UNION ALL", UNION_QUERY, UserIdentifiers.normalize(identifiers[1]), UserIdentifiers.normalize(identifiers[1]));
+        or = connection.prepareStatement(OR_QUERY);
+        email = connection.prepareStatement(EMAIL_QUERY);
+        username = connection.prepareStatement(USERNAME_QUERY);
+        union = connection.prepareStatement(UNION_QUERY);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public String orLookup() throws SQLException {
+        String identifier = next();
+        or.setString(1, identifier);
+        or.setString(2, identifier);
+        return first(or);
+    }
+
+    @Benchmark
+    public String routedLookup() throws SQLException {
+        String identifier = UserIdentifiers.normalize(next());
+        PreparedStatement probe = UserIdentifiers.isEmail(identifier) ? email : username;
+        probe.setString(1, identifier);
+        return first(probe);
+    }
+
+    @Benchmark
+    public String unionAllLookup() throws SQLException {
+        String identifier = UserIdentifiers.normalize(next());
+        union.setString(1, identifier);
+        union.setString(2, identifier);
+        return first(union);
+    }
+
+    private String next(){
+        return identifiers[random.nextInt(identifiers.length)];
+    }
+
+    // Same table shape and indexes as taskflow_auth.users, generated in one statement
+    private void seed() throws SQLException {
+        try(Statement statement = connection.createStatement()){
+            statement.execute("CREATE SCHEMA IF NOT EXISTS taskflow_bench");
+            statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (id BIGINT PRIMARY KEY, "
+                    + "email VARCHAR(100) NOT NULL CONSTRAINT uk_bench_email UNIQUE, "
+                    + "username VARCHAR(255) NOT NULL CONSTRAINT uk_bench_username UNIQUE, "
+                    + "password_hash VARCHAR(255) NOT NULL, first_name VARCHAR(32) NOT NULL, last_name VARCHAR(32) NOT NULL)");
+            try(ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM " + TABLE)){
+                count.next();
+                if(count.getLong(1) == rows){
+                    return;
+                }
+            }
+            System.out.println("Generating " + rows + " users in " + TABLE);
+            statement.execute("TRUNCATE " + TABLE);
+            statement.execute("INSERT INTO " + TABLE + " SELECT g, 'User' || g || '@Example.com', 'user' || g, "
+                    + "'$2a$10$' || md5(g::text), 'First', 'Last' FROM generate_series(1, " + rows + ") g");
+            statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_bench_email_lower ON " + TABLE + " (lower(email))");
+            statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS uk_bench_username_lower ON " + TABLE + " (lower(username))");
+            statement.execute("ANALYZE " + TABLE);
+        }
+    }
+
+    private void explain(String label, String query, String... parameters) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + query)){
+            for(int i = 0; i < parameters.length; i++){
+                statement.setString(i + 1, parameters[i]);
+            }
+            System.out.println("-- " + label + ": " + query);
+            try(ResultSet plan = statement.executeQuery()){
+                while(plan.next()){
+                    System.out.println("   " + plan.getString(1));
+                }
+            }
+        }
+    }
+
+    private static String first(PreparedStatement statement) throws SQLException {
+        try(ResultSet rs = statement.executeQuery()){
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.TaskFlow.service;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.SecretKey;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Throughput of the JwtService hot paths.
+// Run with -prof gc (the default jmh.args of the jmh profile) to get gc.alloc.rate.norm, the bytes allocated per operation.
+// parsePerCallParser reproduces the old parse() that built a new JwtParser on every call and is kept as the baseline.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+    private static final List<String> ROLES = List.of("USER");
+    private static final String FAMILY = "0b7e9a52-3f4d-4c1e-9a8b-5d6f7e8a9b0c";
+    private static final String JTI = "6c1d2e3f-4a5b-4c6d-8e7f-9a0b1c2d3e4f";
+
+    private JwtService jwtService;
+    private SecretKey secretKey;
+    private String accessToken;
+
+    @Setup
+    public void setUp(){
+        jwtService = new JwtService(SECRET, "taskflow-bench", 15L, 10080L);
+        secretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+        accessToken = jwtService.createAccessToken("alice", ROLES);
+    }
+
+    @Benchmark
+    public Claims parse(){
+        return jwtService.parse(accessToken);
+    }
+
+    @Benchmark
+    public Claims parsePerCallParser(){
+        return Jwts.parser()
+                .verifyWith(secretKey)
+                .build()
+                .parseSignedClaims(accessToken)
+                .getPayload();
+    }
+
+    @Benchmark
+    public String createAccess(){
+        return jwtService.createAccessToken("alice", ROLES);
+    }
+
+    @Benchmark
+    public String createRefresh(){
+        return jwtService.createRefreshToken("alice", ROLES, FAMILY, JTI);
+    }
+}
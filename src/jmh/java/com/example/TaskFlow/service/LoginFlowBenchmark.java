@@ -0,0 +1,59 @@
+package com.example.TaskFlow.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+// Latency of the flow work done by one identify + login round trip for each in-memory FlowStore:
+// create() on identify, then get(), registerAttempt() and delete() on a successful login.
+// The jdbc store is left out, its cost is the database round trips.
+// Run with: ./mvnw -Pjmh test-compile exec:exec -Djmh.args="LoginFlowBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginFlowBenchmark {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+
+    @Param({"map", "compact", "token"})
+    public String store;
+
+    private LoginFlowService service;
+
+    @Setup(Level.Iteration)
+    public void setUp(){
+        service = new LoginFlowService(flowStore(store, 1_000_000));
+    }
+
+    @Benchmark
+    public int identifyThenLogin(){
+        LoginFlowService.Flow created = service.create("alice");
+        LoginFlowService.Flow flow = service.get(created.id).orElseThrow();
+        int attempts = service.registerAttempt(flow);
+        service.delete(flow);
+        return attempts;
+    }
+
+    static FlowStore flowStore(String store, int maxFlows){
+        return switch(store){
+            case "compact" -> new CompactFlowStore(300, maxFlows, Clock.systemUTC());
+            case "token" -> new SignedTokenFlowStore(new JwtService(SECRET, "taskflow-bench", 15, 10080), 300, maxFlows, Clock.systemUTC());
+            default -> new InMemoryFlowStore(300, maxFlows, Clock.systemUTC());
+        };
+    }
+}
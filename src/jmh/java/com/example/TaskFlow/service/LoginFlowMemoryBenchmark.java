@@ -0,0 +1,95 @@
+package com.example.TaskFlow.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.TimeUnit;
+
+// Retained heap per pending login flow for the map store against the compact and token stores.
+// Each iteration fills a fresh LoginFlowService with "flows" flows (timed, so the fill rate is reported too)
+// and the teardown prints the retained bytes per flow, measured as the heap still in use right after a full GC.
+// Run with: ./mvnw -Pjmh test-compile exec:exec -Djmh.args="LoginFlowMemoryBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+// ParallelGC because its full GC leaves exactly the live objects in the pools' post-collection usage
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g", "-XX:+UseParallelGC"})
+public class LoginFlowMemoryBenchmark {
+
+    @Param({"map", "compact", "token"})
+    public String store;
+
+    @Param({"1000000"})
+    public int flows;
+
+    private static final int USERS = 10_000;
+
+    private String[] usernames;
+    private LoginFlowService service;
+    private long usedBefore;
+
+    @Setup(Level.Trial)
+    public void createUsernames(){
+        usernames = new String[USERS];
+        for(int i = 0; i < USERS; i++){
+            usernames[i] = "user-" + i;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyService(){
+        service = null;
+        usedBefore = usedHeapAfterGc();
+        service = new LoginFlowService(LoginFlowBenchmark.flowStore(store, flows));
+    }
+
+    @Benchmark
+    public LoginFlowService fill(){
+        for(int i = 0; i < flows; i++){
+            service.create(usernames[i % USERS]);
+        }
+        return service;
+    }
+
+    @TearDown(Level.Iteration)
+    public void report(){
+        long retained = usedHeapAfterGc() - usedBefore;
+        // Divided by the flows created, not service.size(), which is 0 for the token store
+        System.out.printf("%n[%s] %d flows retain %d bytes, %.1f bytes per flow%n",
+                store, flows, retained, (double) retained / flows);
+        service = null;
+    }
+
+    // Sum of the heap pools' usage as recorded at the end of the last collection.
+    // Reading the current usage instead would also count whatever was allocated after the GC.
+    private static long usedHeapAfterGc(){
+        for(int i = 0; i < 3; i++){
+            System.gc();
+        }
+        long used = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+            MemoryUsage afterGc = pool.getCollectionUsage();
+            if(pool.getType() == MemoryType.HEAP && afterGc != null){
+                used += afterGc.getUsed();
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.TaskFlow.service;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Sign and verify throughput of each app.jwt.signing.algorithm, through JwtService and a SigningKeyRing on H2.
+// verify is JwtService.parse, the signature check VerifiedTokenCache saves on every repeated token.
+// Run with: ./mvnw -Pjmh test-compile exec:exec -Djmh.args="SigningAlgorithmBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SigningAlgorithmBenchmark {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+    private static final List<String> ROLES = List.of("USER");
+
+    @Param({"HS256", "ES256", "EdDSA"})
+    public String algorithm;
+
+    private JwtService jwtService;
+    private String accessToken;
+
+    @Setup
+    public void setUp(){
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:bench-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL;INIT=CREATE SCHEMA IF NOT EXISTS taskflow_auth", "sa", "");
+        SigningKeyRing keyRing = new SigningKeyRing(dataSource, SECRET, algorithm, "taskflow_auth.jwt_signing_keys", 24, 600, 10080);
+        jwtService = new JwtService(SECRET, "taskflow-bench", 15L, 10080L, keyRing);
+        accessToken = jwtService.createAccessToken("alice", ROLES);
+    }
+
+    @Benchmark
+    public String sign(){
+        return jwtService.createAccessToken("alice", ROLES);
+    }
+
+    @Benchmark
+    public Claims verify(){
+        return jwtService.parse(accessToken);
+    }
+}
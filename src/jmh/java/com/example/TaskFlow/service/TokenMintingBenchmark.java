@@ -0,0 +1,93 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.Constants;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// HS256 tokens per second and bytes per token (gc.alloc.rate.norm with -prof gc) of the TokenMinter behind
+// JwtService against Jwts.builder(), which JwtService used before.
+// The *Pair benchmarks are what a login or refresh mints, divide their numbers by two for one token.
+// Run with: ./mvnw -Pjmh test-compile exec:exec -Djmh.args="TokenMintingBenchmark -prof gc"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenMintingBenchmark {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+    private static final String ISSUER = "taskflow-bench";
+    private static final List<String> ROLES = List.of("USER");
+    private static final String FAMILY = "0b7e9a52-3f4d-4c1e-9a8b-5d6f7e8a9b0c";
+    private static final String JTI = "6c1d2e3f-4a5b-4c6d-8e7f-9a0b1c2d3e4f";
+
+    private JwtService jwtService;
+    private SecretKey secretKey;
+
+    @Setup
+    public void setUp(){
+        jwtService = new JwtService(SECRET, ISSUER, 15L, 10080L);
+        secretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+    }
+
+    @Benchmark
+    public String mintAccess(){
+        return jwtService.createAccessToken("alice", ROLES);
+    }
+
+    @Benchmark
+    public String builderAccess(){
+        return builder(Constants.ACCESS_TOKEN_CLAIM, 15 * 60)
+                .id(UUID.randomUUID().toString())
+                .compact();
+    }
+
+    @Benchmark
+    public JwtService.TokenPair mintPair(){
+        return jwtService.createTokenPair("alice", ROLES, FAMILY, JTI);
+    }
+
+    // The login path before: createAccessToken and createRefreshToken, each with its own clock read
+    @Benchmark
+    public void builderPair(Blackhole blackhole){
+        blackhole.consume(builder(Constants.ACCESS_TOKEN_CLAIM, 15 * 60)
+                .id(UUID.randomUUID().toString())
+                .compact());
+        blackhole.consume(builder(Constants.REFRESH_TOKEN_CLAIM, 10080 * 60)
+                .id(JTI)
+                .claim(Constants.FAMILY, FAMILY)
+                .compact());
+    }
+
+    // JwtService.tokenBuilder as it was
+    private io.jsonwebtoken.JwtBuilder builder(String type, long validitySeconds){
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .subject("alice")
+                .issuer(ISSUER)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + validitySeconds * 1000))
+                .claim(Constants.TYPE, type)
+                .claim(Constants.ROLES, ROLES)
+                .signWith(secretKey, Jwts.SIG.HS256);
+    }
+}
@@ -9,7 +9,12 @@ public class Constants {
 
     public static final String REFRESH_TOKEN_CLAIM = "refresh-token";
     public static final String ACCESS_TOKEN_CLAIM = "access-token";
+    public static final String FLOW_TOKEN_CLAIM = "flow-token";
+    public static final String NONCE = "nonce";
     public static final String ROLES = "roles";
+    public static final String ROLE_MASK = "rm";
+    public static final String ROLE_VERSION = "rv";
+    public static final String FAMILY = "fid";
     public static final String TYPE = "type";
     public static final String BEARER_PREFIX = "Bearer ";
     public static final String REFRESH_TOKEN_COOKIE = "refreshToken";
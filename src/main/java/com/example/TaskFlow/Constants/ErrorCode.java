@@ -11,7 +11,13 @@ public enum ErrorCode {
     USER_NOT_FOUND("User not found.",HttpStatus.NOT_FOUND),
     INVALID_FLOWID("Invalid FlowId",HttpStatus.BAD_REQUEST),
     MAXIMUM_PASSWORD_ATTEMPTS_REACHED("Maximum Password Attempts Reached.",HttpStatus.BAD_REQUEST),
-    INVALID_REFRESH_TOKEN("Refresh Token is Invalid",HttpStatus.BAD_REQUEST);
+    ACCOUNT_LOCKED("Account is locked.",HttpStatus.LOCKED),
+    LOGIN_FLOW_CAPACITY_REACHED("Too many pending logins, try again later.",HttpStatus.SERVICE_UNAVAILABLE),
+    PASSWORD_HASHING_BUSY("Too many logins in progress, try again later.",HttpStatus.SERVICE_UNAVAILABLE),
+    TOO_MANY_REQUESTS("Too many requests, try again later.",HttpStatus.TOO_MANY_REQUESTS),
+    INVALID_REFRESH_TOKEN("Refresh Token is Invalid",HttpStatus.BAD_REQUEST),
+    INVALID_CURSOR("Invalid cursor",HttpStatus.BAD_REQUEST),
+    INVALID_IMPORT_FILE("Invalid import file",HttpStatus.BAD_REQUEST);
 
     private final String message;
     private final HttpStatus status;
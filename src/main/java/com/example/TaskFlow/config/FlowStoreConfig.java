@@ -0,0 +1,56 @@
+package com.example.TaskFlow.config;
+
+import com.example.TaskFlow.service.CompactFlowStore;
+import com.example.TaskFlow.service.FlowStore;
+import com.example.TaskFlow.service.InMemoryFlowStore;
+import com.example.TaskFlow.service.JdbcFlowStore;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.SignedTokenFlowStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Clock;
+
+// Picks the FlowStore behind LoginFlowService from app.login-flow.store
+// map     - ConcurrentHashMap in this JVM (default)
+// compact - primitive arrays in this JVM, for very large numbers of pending logins
+// jdbc    - table in the application database, shared by all nodes so no sticky sessions are needed
+// token   - no stored flows at all, the flow id is a signed token and only attempt counters are kept
+@Configuration
+public class FlowStoreConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.login-flow.store", havingValue = "map", matchIfMissing = true)
+    public FlowStore inMemoryFlowStore(@Value("${app.login-flow.ttl-seconds:300}") long ttlSeconds,
+                                       @Value("${app.login-flow.max-flows:100000}") int maxFlows){
+        return new InMemoryFlowStore(ttlSeconds, maxFlows, Clock.systemUTC());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.login-flow.store", havingValue = "compact")
+    public FlowStore compactFlowStore(@Value("${app.login-flow.ttl-seconds:300}") long ttlSeconds,
+                                      @Value("${app.login-flow.max-flows:100000}") int maxFlows){
+        return new CompactFlowStore(ttlSeconds, maxFlows, Clock.systemUTC());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.login-flow.store", havingValue = "jdbc")
+    public FlowStore jdbcFlowStore(JdbcTemplate jdbcTemplate,
+                                   @Value("${app.login-flow.jdbc.table:taskflow_auth.login_flows}") String table,
+                                   @Value("${app.login-flow.jdbc.sweep-batch-size:1000}") int sweepBatchSize,
+                                   @Value("${app.login-flow.ttl-seconds:300}") long ttlSeconds,
+                                   @Value("${app.login-flow.max-flows:100000}") int maxFlows){
+        return new JdbcFlowStore(jdbcTemplate, table, ttlSeconds, maxFlows, sweepBatchSize, Clock.systemUTC());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.login-flow.store", havingValue = "token")
+    public FlowStore signedTokenFlowStore(JwtService jwtService,
+                                          @Value("${app.login-flow.ttl-seconds:300}") long ttlSeconds,
+                                          @Value("${app.login-flow.max-flows:100000}") int maxFlows){
+        return new SignedTokenFlowStore(jwtService, ttlSeconds, maxFlows, Clock.systemUTC());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.TaskFlow.config;
+
+import com.example.TaskFlow.service.BoundedPasswordEncoder;
+import com.example.TaskFlow.service.PasswordHashing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+// The PasswordEncoder shared by the servlet and the reactive stack
+@Configuration
+public class PasswordEncoderConfig {
+
+    // BCrypt runs on a dedicated pool sized to the cores (threads=0) with a bounded queue, see BoundedPasswordEncoder.
+    // Declared with the concrete type so the meter registry picks it up as a MeterBinder.
+    // The BCrypt cost is app.password-hashing.bcrypt.strength, or when that is 0 the highest cost that stays
+    // within target-ms per hash on this machine, measured at startup (see PasswordHashing).
+    @Bean
+    public BoundedPasswordEncoder passwordEncoder(@Value("${app.password-hashing.threads:0}") int threads,
+                                                  @Value("${app.password-hashing.queue-capacity:64}") int queueCapacity,
+                                                  @Value("${app.password-hashing.retry-after-seconds:1}") long retryAfterSeconds,
+                                                  @Value("${app.password-hashing.timeout-ms:10000}") long timeoutMs,
+                                                  @Value("${app.password-hashing.bcrypt.strength:0}") int strength,
+                                                  @Value("${app.password-hashing.bcrypt.target-ms:250}") long targetMs,
+                                                  @Value("${app.password-hashing.bcrypt.min-strength:10}") int minStrength,
+                                                  @Value("${app.password-hashing.bcrypt.max-strength:16}") int maxStrength){
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        int bcryptStrength = strength > 0
+                ? strength
+                : PasswordHashing.calibrateBCryptStrength(Duration.ofMillis(targetMs), minStrength, maxStrength);
+        return new BoundedPasswordEncoder(PasswordHashing.delegatingEncoder(bcryptStrength), poolSize, queueCapacity, retryAfterSeconds,
+                Duration.ofMillis(timeoutMs));
+    }
+}
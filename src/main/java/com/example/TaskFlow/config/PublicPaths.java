@@ -0,0 +1,57 @@
+package com.example.TaskFlow.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// The endpoints that need no token, permitted by SecurityConfig and ReactiveSecurityConfig and skipped by both JWT
+// filters. Patterns are either an exact path or a prefix ending in /**, which also matches the prefix itself.
+// matches() is compiled from the same patterns: a hash lookup for the exact paths, then a startsWith and one char
+// compare per prefix, nothing allocated.
+public final class PublicPaths {
+
+    public static final String[] PATTERNS = {
+            "/auth/login",
+            "/auth/identify",
+            "/auth/register",
+            "/auth/refresh",
+            "/.well-known/jwks.json",
+            "/swagger-ui.html",
+            "/swagger-ui/**",
+            "/v3/api-docs/**"
+    };
+
+    private static final Set<String> EXACT;
+    private static final String[] PREFIXES;
+
+    static{
+        List<String> exact = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        for(String pattern : PATTERNS){
+            if(pattern.endsWith("/**")){
+                prefixes.add(pattern.substring(0, pattern.length() - 3));
+            }else if(pattern.contains("*")){
+                throw new IllegalStateException("Unsupported public path pattern " + pattern);
+            }else{
+                exact.add(pattern);
+            }
+        }
+        EXACT = Set.copyOf(exact);
+        PREFIXES = prefixes.toArray(new String[0]);
+    }
+
+    private PublicPaths(){
+    }
+
+    public static boolean matches(String path){
+        if(EXACT.contains(path)){
+            return true;
+        }
+        for(String prefix : PREFIXES){
+            if(path.startsWith(prefix) && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/')){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.TaskFlow.config;
+
+import com.example.TaskFlow.jwt.ReactiveJwtAuthFilter;
+import com.example.TaskFlow.jwt.VerifiedTokenCache;
+import com.example.TaskFlow.repo.ReactiveUserRepository;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.UserPrincipalCache;
+import org.springframework.boot.actuate.autoconfigure.security.reactive.EndpointRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+
+// Security for the reactive profile (spring.main.web-application-type=reactive), the servlet stack uses SecurityConfig.
+// Same rules: the PublicPaths (login endpoints, JWKS, API docs) are public, everything else needs a valid access token.
+@Configuration
+@EnableWebFluxSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveSecurityConfig {
+
+    // With spring-boot-starter-web on the classpath Spring Boot would serve the reactive stack from Tomcat
+    // (it is tried first), Netty is what gives us a handful of event-loop threads for any number of connections
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(){
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http, JwtService jwtService, VerifiedTokenCache tokenCache,
+                                                         UserPrincipalCache principalCache, ReactiveUserRepository userRepository,
+                                                         AccountLockoutService lockoutService, AccessTokenDenylist denylist){
+        // Not a bean on purpose, WebFlux would otherwise run it a second time outside the security chain
+        ReactiveJwtAuthFilter jwtAuthFilter = new ReactiveJwtAuthFilter(jwtService, tokenCache, principalCache, userRepository, lockoutService, denylist);
+        return http.csrf(ServerHttpSecurity.CsrfSpec::disable) // No CSRF Protection needed for stateless REST APIs
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .logout(ServerHttpSecurity.LogoutSpec::disable)
+                // Stateless, nothing is kept in a WebSession
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .authorizeExchange(auth -> auth
+                        .pathMatchers(PublicPaths.PATTERNS).permitAll()
+                        .matchers(EndpointRequest.to("ratelimits", "metrics")).hasAuthority("ADMIN")
+                        .anyExchange().authenticated())
+                .addFilterAt(jwtAuthFilter, SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+}
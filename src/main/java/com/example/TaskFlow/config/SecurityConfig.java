@@ -2,21 +2,24 @@ package com.example.TaskFlow.config;
 
 import com.example.TaskFlow.jwt.JwtAuthFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 //Spring Annotations
 // @Configuration: Indicates that the class has @Bean definition methods
 // @EnableWebSecurity: Enables Spring Security's web security support
+// Only used by the servlet stack, the reactive profile is secured by ReactiveSecurityConfig
 @Configuration
 @EnableWebSecurity
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class SecurityConfig {
 
     private final JwtAuthFilter jwtAuthFilter;
@@ -24,9 +27,14 @@ public class SecurityConfig {
     public SecurityConfig(JwtAuthFilter jwtAuthFilter){
         this.jwtAuthFilter = jwtAuthFilter;
     }
+
+    // JwtAuthFilter is a @Component, so Spring Boot would also register it as a plain servlet filter
+    // outside the security chain. It must only run inside the chain, where the SecurityContext is managed.
     @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+    public FilterRegistrationBean<JwtAuthFilter> jwtAuthFilterRegistration(JwtAuthFilter filter){
+        FilterRegistrationBean<JwtAuthFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
     }
 
     // @Bean: Indicates that a method produces a bean to be managed by the Spring container
@@ -36,9 +44,13 @@ public class SecurityConfig {
         http.csrf(csrf -> csrf.disable()) // No CSRF Protection needed for stateless REST APIs
                 .formLogin( form -> form.disable()) // Disabling form login
                 .logout(l -> l.disable()) // Disabling default logout
-                // Permiting all requests to /auth/** endpoints
+                // Permiting all requests to the login endpoints, the JWKS and the API docs, which JwtAuthFilter skips too
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/auth/**","/swagger-ui/**","/v3/api-docs/**","/swagger-ui.html").permitAll()
+                        .requestMatchers(PublicPaths.PATTERNS).permitAll()
+                        // Roles come from the token as plain authorities, without a ROLE_ prefix
+                        .requestMatchers("/admin/**").hasAuthority("ADMIN")
+                        // Rate limiter state and metrics name client addresses and identifiers
+                        .requestMatchers(EndpointRequest.to("ratelimits", "metrics")).hasAuthority("ADMIN")
                         .anyRequest().authenticated())
                 // No session will be created or used by Spring Security
                 .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
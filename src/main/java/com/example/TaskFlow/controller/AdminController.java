@@ -0,0 +1,70 @@
+package com.example.TaskFlow.controller;
+
+import com.example.TaskFlow.Constants.ErrorCode;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.UserIdentifierFilter;
+import com.example.TaskFlow.service.UserImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Administration endpoints, only reachable with the ADMIN role (see SecurityConfig). Servlet stack only.
+@RestController
+@RequestMapping("/admin")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AdminController {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminController.class);
+
+    private final UserImportService userImportService;
+    private final UserIdentifierFilter identifierFilter;
+    private final AccountLockoutService lockoutService;
+
+    public AdminController(UserImportService userImportService, UserIdentifierFilter identifierFilter, AccountLockoutService lockoutService){
+        this.userImportService = userImportService;
+        this.identifierFilter = identifierFilter;
+        this.lockoutService = lockoutService;
+    }
+
+    // Registers every user of an NDJSON or CSV upload, the response is an NDJSON report with one line per record.
+    // Both are streamed, the upload is never held in memory as a whole.
+    @PostMapping(value = "/users/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        UserImportService.Format format = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                ? UserImportService.Format.NDJSON : UserImportService.Format.CSV;
+        log.info("User import started by {} as {}", request.getRemoteUser(), format);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        userImportService.importUsers(request.getInputStream(), format, response.getOutputStream());
+    }
+
+    // Rebuilds the identifier filter now instead of at the next interval, e.g. after users were deleted by hand.
+    // users is -1 when the filter is disabled or a rebuild is already running.
+    @PostMapping("/users/identifier-filter/rebuild")
+    public ResponseEntity<Map<String, Long>> rebuildIdentifierFilter(HttpServletRequest request){
+        log.info("Identifier filter rebuild requested by {}", request.getRemoteUser());
+        return ResponseEntity.ok(Map.of("users", identifierFilter.rebuild()));
+    }
+
+    // Lifts a lockout (see AccountLockoutService) and starts the failed login count over
+    @PostMapping("/users/{username}/unlock")
+    public ResponseEntity<String> unlock(@PathVariable String username, HttpServletRequest request){
+        log.info("Unlock of {} requested by {}", username, request.getRemoteUser());
+        if(!lockoutService.unlock(username)){
+            throw new ResponseStatusException(ErrorCode.USER_NOT_FOUND.getStatus(), ErrorCode.USER_NOT_FOUND.getMessage());
+        }
+        return ResponseEntity.ok("User Unlocked");
+    }
+}
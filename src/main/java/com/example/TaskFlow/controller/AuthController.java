@@ -7,8 +7,16 @@ import com.example.TaskFlow.dto.request.LoginRequestDTO;
 import com.example.TaskFlow.dto.request.RegisterDTO;
 import com.example.TaskFlow.model.User;
 import com.example.TaskFlow.repo.UserRepository;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.AuthRateLimiter;
 import com.example.TaskFlow.service.JwtService;
 import com.example.TaskFlow.service.LoginFlowService;
+import com.example.TaskFlow.service.PasswordUpgradeService;
+import com.example.TaskFlow.service.RefreshTokenService;
+import com.example.TaskFlow.service.UserIdentifierFilter;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
@@ -17,7 +25,9 @@ import org.apache.coyote.Response;
 import org.hibernate.resource.transaction.backend.jta.internal.synchronization.RegisteredSynchronization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.repository.support.Repositories;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
@@ -34,8 +44,10 @@ import org.springframework.web.bind.annotation.RestController;
 import java.time.Duration;
 import java.util.*;
 
+// Servlet handlers, the reactive profile serves the same endpoints from ReactiveAuthController
 @RestController
 @RequestMapping("/auth")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class AuthController {
 
     private static final Logger log = LoggerFactory.getLogger(AuthController.class);
@@ -44,12 +56,26 @@ public class AuthController {
     private final LoginFlowService loginFlowService;
     private final PasswordEncoder encoder;
     private final JwtService jwtService;
+    private final PasswordUpgradeService passwordUpgradeService;
+    private final UserIdentifierFilter identifierFilter;
+    private final AuthRateLimiter rateLimiter;
+    private final AccountLockoutService lockoutService;
+    private final RefreshTokenService refreshTokenService;
+    private final AccessTokenDenylist denylist;
 
-    public AuthController(UserRepository userRepository,LoginFlowService loginFlowService, JwtService jwtService, PasswordEncoder encoder) {
+    public AuthController(UserRepository userRepository,LoginFlowService loginFlowService, JwtService jwtService, PasswordEncoder encoder,
+                          PasswordUpgradeService passwordUpgradeService, UserIdentifierFilter identifierFilter, AuthRateLimiter rateLimiter,
+                          AccountLockoutService lockoutService, RefreshTokenService refreshTokenService, AccessTokenDenylist denylist) {
         this.userRepository = userRepository;
         this.loginFlowService = loginFlowService;
         this.jwtService = jwtService;
         this.encoder = encoder;
+        this.passwordUpgradeService = passwordUpgradeService;
+        this.identifierFilter = identifierFilter;
+        this.rateLimiter = rateLimiter;
+        this.lockoutService = lockoutService;
+        this.refreshTokenService = refreshTokenService;
+        this.denylist = denylist;
     }
 
     @PostMapping("/register")
@@ -57,7 +83,8 @@ public class AuthController {
         log.info("User Registeration Started with Username:{}", regRequest.username());
         String username = regRequest.username().trim();
         String email = regRequest.email().trim();
-        if(userRepository.findByEmailOrUsername(email,username).isPresent()){
+        // The filter rules out most new users without a query, the unique indexes still catch a concurrent registration
+        if(identifierFilter.mightContainAny(email, username) && userRepository.existsByEmailOrUsername(email,username)){
             throw new ResponseStatusException(ErrorCode.USER_ALREADY_EXISTS.getStatus(),ErrorCode.USER_ALREADY_EXISTS.getMessage());
         }
         User user = new User();
@@ -66,24 +93,36 @@ public class AuthController {
         user.setFirstname(regRequest.firstname().trim());
         user.setLastname(regRequest.lastname().trim());
         user.setPasswordHash(encoder.encode(regRequest.password().trim()));
-        userRepository.save(user);
+        try{
+            userRepository.save(user);
+        }catch(DataIntegrityViolationException e){
+            // Taken by a registration the filter or the check above didn't see yet, on this node or another
+            throw new ResponseStatusException(ErrorCode.USER_ALREADY_EXISTS.getStatus(),ErrorCode.USER_ALREADY_EXISTS.getMessage());
+        }
+        identifierFilter.add(email, username);
         log.info("User Registeration Successful for username :{} and email : {}", user.getUsername(), user.getUsername());
 
         return ResponseEntity.ok("User Created");
     }
 
     @PostMapping("/identify")
-    public ResponseEntity<IdentifyResponseDTO> identify(@RequestBody @Valid IdentifyRequestDTO identifyRequest) {
+    public ResponseEntity<IdentifyResponseDTO> identify(@RequestBody @Valid IdentifyRequestDTO identifyRequest, HttpServletRequest request) {
         log.info("User Identification Started for identifier:{}", identifyRequest.identifier());
-        Optional<User> userOptional = userRepository.findByEmailOrUsername(identifyRequest.identifier(), identifyRequest.identifier());
+        // Throttled before the filter, the database or a new login flow is touched
+        rateLimiter.checkClient(request.getRemoteAddr());
+        rateLimiter.checkIdentifier(identifyRequest.identifier());
+        // Only the username is read, the user itself is not loaded. Unknown identifiers mostly stop at the filter.
+        Optional<String> usernameOptional = identifierFilter.mightContain(identifyRequest.identifier())
+                ? userRepository.findUsernameByIdentifier(identifyRequest.identifier())
+                : Optional.empty();
 
-        if(userOptional.isEmpty()){
+        if(usernameOptional.isEmpty()){
             log.info("User failed for identifier:{}", identifyRequest.identifier());
             throw new ResponseStatusException(ErrorCode.USER_NOT_FOUND.getStatus(),ErrorCode.USER_NOT_FOUND.getMessage() + ": "+ identifyRequest.identifier());
         }
 
         IdentifyResponseDTO identifyResponseDTO = new IdentifyResponseDTO();
-        String username = userOptional.get().getUsername();
+        String username = usernameOptional.get();
         var flow = loginFlowService.create(username);
         identifyResponseDTO.setFlowId(flow.id);
         log.info("User Identification successful for identifier:{}", identifyRequest.identifier());
@@ -91,34 +130,41 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody @Valid LoginRequestDTO loginRequestDTO){
-
+    public ResponseEntity<?> login(@RequestBody @Valid LoginRequestDTO loginRequestDTO, HttpServletRequest request){
+        rateLimiter.checkClient(request.getRemoteAddr());
         var flowOpt = loginFlowService.get(loginRequestDTO.flowId());
         if(flowOpt.isEmpty()) throw new ResponseStatusException(ErrorCode.INVALID_FLOWID.getStatus(),ErrorCode.INVALID_FLOWID.getMessage());
         var flow = flowOpt.get();
-        if(++flow.attempts > 3) throw new ResponseStatusException(ErrorCode.MAXIMUM_PASSWORD_ATTEMPTS_REACHED.getStatus(),ErrorCode.MAXIMUM_PASSWORD_ATTEMPTS_REACHED.getMessage());
+        // Every flow of the same user draws from one budget, however many flows identify hands out
+        rateLimiter.checkIdentifier(flow.username);
+        if(loginFlowService.registerAttempt(flow) > 3) throw new ResponseStatusException(ErrorCode.MAXIMUM_PASSWORD_ATTEMPTS_REACHED.getStatus(),ErrorCode.MAXIMUM_PASSWORD_ATTEMPTS_REACHED.getMessage());
 
-        var uOpt = (flow.username !=null) ? userRepository.findByUsername(flow.username).orElse(null) : null;
+        // Id and password hash are all we need, the username comes with the flow
+        var uOpt = (flow.username !=null) ? userRepository.findCredentialsByUsername(flow.username).orElse(null) : null;
         if(uOpt ==null) throw new ResponseStatusException(ErrorCode.USER_NOT_FOUND.getStatus(),ErrorCode.USER_NOT_FOUND.getMessage());
-        log.info("User Login started for username:{}", uOpt.getUsername());
-        if(!encoder.matches(loginRequestDTO.password().trim() , uOpt.getPasswordHash())) {
-            log.info("User Login failed for username:{}", uOpt.getUsername());
+        // The lockout state comes with the credentials, a locked account never gets to the password check
+        if(lockoutService.isLocked(flow.username, uOpt)){
+            log.info("User Login rejected for locked username:{}", flow.username);
+            throw new ResponseStatusException(ErrorCode.ACCOUNT_LOCKED.getStatus(), ErrorCode.ACCOUNT_LOCKED.getMessage());
+        }
+        log.info("User Login started for username:{}", flow.username);
+        if(!encoder.matches(loginRequestDTO.password().trim() , uOpt.passwordHash())) {
+            log.info("User Login failed for username:{}", flow.username);
+            lockoutService.recordFailure(flow.username, uOpt);
             throw new ResponseStatusException(ErrorCode.INVALID_PASSWORD.getStatus(), ErrorCode.INVALID_PASSWORD.getMessage());
         }
+        lockoutService.recordSuccess(flow.username, uOpt);
+        // Moves a hash with an outdated algorithm or cost to the current one, in the background
+        passwordUpgradeService.upgradeIfNeeded(uOpt, loginRequestDTO.password().trim());
         var roles = java.util.List.of("USER");
-        String access = jwtService.createAccessToken(uOpt.getUsername(),roles);
-        String refresh = jwtService.createRefreshToken(uOpt.getUsername(),roles);
-        long refreshMaxAge = Duration.ofMinutes(jwtService.getRefreshTokenValidity()).getSeconds();
-        ResponseCookie responseCookie = ResponseCookie.from(Constants.REFRESH_TOKEN_COOKIE,refresh)
-                        .httpOnly(true)
-                                .secure(false)
-                                        .path("")
-                                                .maxAge(refreshMaxAge)
-                                                        .build();
-        log.info("User Login successful for username:{}", uOpt.getUsername());
+        // Starts the refresh token family of this login, its first refresh token is minted with the access token
+        JwtService.TokenPair tokens = refreshTokenService.issue(flow.username,roles);
+        // The flow is used up, drop it instead of waiting for the sweeper
+        loginFlowService.delete(flow);
+        log.info("User Login successful for username:{}", flow.username);
         return ResponseEntity.ok()
-                .header(HttpHeaders.SET_COOKIE, responseCookie.toString())
-                .body(Map.of(Constants.ACCESS_TOKEN_CLAIM,access));
+                .header(HttpHeaders.SET_COOKIE, refreshCookie(tokens.refreshToken()).toString())
+                .body(Map.of(Constants.ACCESS_TOKEN_CLAIM,tokens.accessToken()));
     }
 
     @PostMapping("/refresh")
@@ -154,14 +200,64 @@ public class AuthController {
             throw new ResponseStatusException(ErrorCode.INVALID_REFRESH_TOKEN.getStatus(),ErrorCode.INVALID_REFRESH_TOKEN.getMessage());
         }
 
-        List<String> roles = jwtService.roles(claims);
-        if(roles == null || roles.isEmpty()){
-            roles = List.of("USER");
+        // The cookie is used up, a replayed one revokes every token of its family.
+        // The new access token carries the roles of the refresh token.
+        JwtService.TokenPair tokens = refreshTokenService.rotate(claims);
+        log.info("Access Token refreshed for username {}",username);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, refreshCookie(tokens.refreshToken()).toString())
+                .body(Map.of(Constants.ACCESS_TOKEN_CLAIM,tokens.accessToken()));
+    }
+
+    // Revokes the access token it is called with (JwtAuthFilter has already checked it) and the family of the
+    // refresh token cookie, and clears the cookie
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(HttpServletRequest request){
+        String accessToken = jwtService.extractTokenFromHeader(request.getHeader(HttpHeaders.AUTHORIZATION)).orElse(null);
+        if(accessToken == null){
+            throw new ResponseStatusException(ErrorCode.BAD_REQUEST.getStatus(),ErrorCode.BAD_REQUEST.getMessage());
         }
+        Claims claims = jwtService.parse(accessToken);
+        String username = jwtService.extractUsername(claims);
+        denylist.revoke(claims.getId(), username, claims.getExpiration().getTime());
 
-        String access = jwtService.createAccessToken(username,roles);
-        log.info("Access Token refreshed for username {}",username);
-        return ResponseEntity.ok().body(Map.of(Constants.ACCESS_TOKEN_CLAIM,access));
+        Cookie[] cookies = request.getCookies();
+        String refreshToken = cookies == null ? null : Arrays.stream(cookies)
+                .filter(cookie -> Constants.REFRESH_TOKEN_COOKIE.equals(cookie.getName()))
+                .map(Cookie::getValue)
+                .filter(token -> token != null && !token.isEmpty())
+                .findFirst()
+                .orElse(null);
+        if(refreshToken != null){
+            try{
+                Claims refreshClaims = jwtService.parse(refreshToken);
+                if(jwtService.isRefreshToken(refreshClaims) && username.equals(jwtService.extractUsername(refreshClaims))){
+                    refreshTokenService.revoke(refreshClaims);
+                }
+            }catch(JwtException e){
+                log.info("Refresh Token cookie of username {} is invalid, nothing to revoke", username);
+            }
+        }
+        log.info("User Logout successful for username:{}", username);
+        ResponseCookie cleared = ResponseCookie.from(Constants.REFRESH_TOKEN_COOKIE,"")
+                .httpOnly(true)
+                .secure(false)
+                .path("")
+                .maxAge(0)
+                .build();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, cleared.toString())
+                .body("Logged Out");
+    }
+
+    private ResponseCookie refreshCookie(String refresh){
+        long refreshMaxAge = Duration.ofMinutes(jwtService.getRefreshTokenValidity()).getSeconds();
+        return ResponseCookie.from(Constants.REFRESH_TOKEN_COOKIE,refresh)
+                .httpOnly(true)
+                .secure(false)
+                .path("")
+                .maxAge(refreshMaxAge)
+                .build();
     }
 
 }
@@ -0,0 +1,39 @@
+package com.example.TaskFlow.controller;
+
+import com.example.TaskFlow.service.SigningKeyRing;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+
+// The public keys tokens are signed with, for services that verify them on their own (RFC 7517 JWK Set).
+// The document is serialized once per key change by SigningKeyRing. Clients may cache it for max-age-seconds and
+// revalidate with If-None-Match, answered with 304 by Spring from the ETag. A new key is published
+// app.jwt.signing.publish-ahead-seconds before it signs, keep max-age below that so every cache has it in time.
+// Plain ResponseEntity, so the same controller serves both stacks.
+@RestController
+public class JwksController {
+
+    private static final MediaType JWK_SET = MediaType.parseMediaType("application/jwk-set+json");
+
+    private final SigningKeyRing keyRing;
+    private final CacheControl cacheControl;
+
+    public JwksController(SigningKeyRing keyRing, @Value("${app.jwt.signing.jwks-max-age-seconds:300}") long maxAgeSeconds){
+        this.keyRing = keyRing;
+        this.cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAgeSeconds)).cachePublic();
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<String> jwks(){
+        return ResponseEntity.ok()
+                .contentType(JWK_SET)
+                .cacheControl(cacheControl)
+                .eTag(keyRing.jwksEtag())
+                .body(keyRing.jwks());
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.TaskFlow.controller;
+
+import com.example.TaskFlow.service.AuthRateLimiter;
+import com.example.TaskFlow.service.TokenBucketRateLimiter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// /actuator/ratelimits: limits and counters of the AuthRateLimiter buckets,
+// /actuator/ratelimits/{limiter}/{key} the tokens one client address or identifier has left.
+// Works on both stacks, exposed through management.endpoints.web.exposure.include and ADMIN only.
+@Component
+@Endpoint(id = "ratelimits")
+public class RateLimitEndpoint {
+
+    private final AuthRateLimiter rateLimiter;
+
+    public RateLimitEndpoint(AuthRateLimiter rateLimiter){
+        this.rateLimiter = rateLimiter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> rateLimits(){
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("enabled", rateLimiter.isEnabled());
+        limits.put("limiters", rateLimiter.limiters().stream().map(TokenBucketRateLimiter::snapshot).toList());
+        return limits;
+    }
+
+    // null (404) for an unknown limiter name
+    @ReadOperation
+    public Map<String, Object> bucket(@Selector String limiter, @Selector String key){
+        return rateLimiter.limiters().stream()
+                .filter(candidate -> candidate.name().equals(limiter))
+                .findFirst()
+                .map(candidate -> Map.<String, Object>of("limiter", limiter, "key", key, "available", candidate.available(key)))
+                .orElse(null);
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.TaskFlow.controller;
+
+import com.example.TaskFlow.Constants.Constants;
+import com.example.TaskFlow.Constants.ErrorCode;
+import com.example.TaskFlow.dto.request.IdentifyRequestDTO;
+import com.example.TaskFlow.dto.request.LoginRequestDTO;
+import com.example.TaskFlow.dto.request.RegisterDTO;
+import com.example.TaskFlow.dto.response.IdentifyResponseDTO;
+import com.example.TaskFlow.model.User;
+import com.example.TaskFlow.repo.ReactiveUserRepository;
+import com.example.TaskFlow.repo.UserCredentials;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.AuthRateLimiter;
+import com.example.TaskFlow.service.BoundedPasswordEncoder;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.LoginFlowService;
+import com.example.TaskFlow.service.PasswordUpgradeService;
+import com.example.TaskFlow.service.RefreshTokenService;
+import com.example.TaskFlow.service.UserIdentifierFilter;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Reactive version of AuthController, same endpoints and responses.
+// Handlers run on the event loop and never block it: users are read and written through R2DBC, BCrypt runs on
+// the bounded password hashing pool (a full queue still answers 503 with Retry-After) and a blocking login
+// flow store (jdbc) is called on the boundedElastic scheduler.
+@RestController
+@RequestMapping("/auth")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAuthController {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveAuthController.class);
+
+    private final ReactiveUserRepository userRepository;
+    private final LoginFlowService loginFlowService;
+    private final BoundedPasswordEncoder encoder;
+    private final JwtService jwtService;
+    private final PasswordUpgradeService passwordUpgradeService;
+    private final UserIdentifierFilter identifierFilter;
+    private final AuthRateLimiter rateLimiter;
+    private final AccountLockoutService lockoutService;
+    private final RefreshTokenService refreshTokenService;
+    private final AccessTokenDenylist denylist;
+
+    public ReactiveAuthController(ReactiveUserRepository userRepository, LoginFlowService loginFlowService, JwtService jwtService,
+                                  BoundedPasswordEncoder encoder, PasswordUpgradeService passwordUpgradeService,
+                                  UserIdentifierFilter identifierFilter, AuthRateLimiter rateLimiter,
+                                  AccountLockoutService lockoutService, RefreshTokenService refreshTokenService,
+                                  AccessTokenDenylist denylist){
+        this.userRepository = userRepository;
+        this.loginFlowService = loginFlowService;
+        this.jwtService = jwtService;
+        this.encoder = encoder;
+        this.passwordUpgradeService = passwordUpgradeService;
+        this.identifierFilter = identifierFilter;
+        this.rateLimiter = rateLimiter;
+        this.lockoutService = lockoutService;
+        this.refreshTokenService = refreshTokenService;
+        this.denylist = denylist;
+    }
+
+    @PostMapping("/register")
+    public Mono<ResponseEntity<String>> register(@RequestBody @Valid RegisterDTO regRequest){
+        log.info("User Registeration Started with Username:{}", regRequest.username());
+        String username = regRequest.username().trim();
+        String email = regRequest.email().trim();
+        // The filter is in memory, a definite miss skips the query without blocking the event loop
+        Mono<Boolean> taken = identifierFilter.mightContainAny(email, username)
+                ? userRepository.existsByEmailOrUsername(email, username)
+                : Mono.just(false);
+        return taken
+                .flatMap(exists -> exists
+                        ? Mono.<String>error(failure(ErrorCode.USER_ALREADY_EXISTS))
+                        : Mono.fromFuture(() -> encoder.encodeAsync(regRequest.password().trim())))
+                .flatMap(passwordHash -> {
+                    User user = new User();
+                    user.setEmail(email);
+                    user.setUsername(username);
+                    user.setFirstname(regRequest.firstname().trim());
+                    user.setLastname(regRequest.lastname().trim());
+                    user.setPasswordHash(passwordHash);
+                    return userRepository.insert(user);
+                })
+                // Taken by a registration the filter or the check above didn't see yet, on this node or another
+                .onErrorMap(DataIntegrityViolationException.class, e -> failure(ErrorCode.USER_ALREADY_EXISTS))
+                .map(id -> {
+                    identifierFilter.add(email, username);
+                    log.info("User Registeration Successful for username :{} and email : {}", username, email);
+                    return ResponseEntity.ok("User Created");
+                });
+    }
+
+    @PostMapping("/identify")
+    public Mono<ResponseEntity<IdentifyResponseDTO>> identify(@RequestBody @Valid IdentifyRequestDTO identifyRequest, ServerHttpRequest request){
+        log.info("User Identification Started for identifier:{}", identifyRequest.identifier());
+        // The buckets are in memory, over the limit fails right here on the event loop
+        rateLimiter.checkClient(clientAddress(request));
+        rateLimiter.checkIdentifier(identifyRequest.identifier());
+        Mono<String> username = identifierFilter.mightContain(identifyRequest.identifier())
+                ? userRepository.findUsernameByIdentifier(identifyRequest.identifier())
+                : Mono.empty();
+        return username
+                .switchIfEmpty(Mono.error(() -> {
+                    log.info("User failed for identifier:{}", identifyRequest.identifier());
+                    return new ResponseStatusException(ErrorCode.USER_NOT_FOUND.getStatus(),
+                            ErrorCode.USER_NOT_FOUND.getMessage() + ": " + identifyRequest.identifier());
+                }))
+                .flatMap(found -> flows(() -> loginFlowService.create(found)))
+                .map(flow -> {
+                    IdentifyResponseDTO identifyResponseDTO = new IdentifyResponseDTO();
+                    identifyResponseDTO.setFlowId(flow.id);
+                    log.info("User Identification successful for identifier:{}", identifyRequest.identifier());
+                    return ResponseEntity.ok(identifyResponseDTO);
+                });
+    }
+
+    @PostMapping("/login")
+    public Mono<ResponseEntity<Map<String, String>>> login(@RequestBody @Valid LoginRequestDTO loginRequestDTO, ServerHttpRequest request){
+        rateLimiter.checkClient(clientAddress(request));
+        String password = loginRequestDTO.password().trim();
+        return flows(() -> loginFlowService.get(loginRequestDTO.flowId()).orElse(null))
+                .switchIfEmpty(Mono.error(() -> failure(ErrorCode.INVALID_FLOWID)))
+                .doOnNext(flow -> rateLimiter.checkIdentifier(flow.username))
+                .flatMap(flow -> flows(() -> loginFlowService.registerAttempt(flow))
+                        .flatMap(attempts -> {
+                            if(attempts > 3){
+                                return Mono.error(failure(ErrorCode.MAXIMUM_PASSWORD_ATTEMPTS_REACHED));
+                            }
+                            if(flow.username == null){
+                                return Mono.error(failure(ErrorCode.USER_NOT_FOUND));
+                            }
+                            return userRepository.findCredentialsByUsername(flow.username)
+                                    .switchIfEmpty(Mono.error(() -> failure(ErrorCode.USER_NOT_FOUND)))
+                                    .flatMap(credentials -> authenticate(flow.username, credentials, password))
+                                    // The flow is used up, drop it instead of waiting for the sweeper
+                                    .flatMap(response -> flows(() -> {
+                                        loginFlowService.delete(flow);
+                                        return response;
+                                    }));
+                        }));
+    }
+
+    @PostMapping("/refresh")
+    public Mono<ResponseEntity<Map<String, String>>> refresh(ServerHttpRequest request){
+        if(request.getCookies().isEmpty()){
+            log.info("Refresh Token cookie missing from request.");
+            throw failure(ErrorCode.BAD_REQUEST);
+        }
+        HttpCookie cookie = request.getCookies().getFirst(Constants.REFRESH_TOKEN_COOKIE);
+        String refreshToken = cookie == null ? null : cookie.getValue();
+        if(refreshToken == null || refreshToken.isEmpty()){
+            log.info("Refresh Token cookie missing from request.");
+            throw failure(ErrorCode.INVALID_REFRESH_TOKEN);
+        }
+
+        var claims = jwtService.parse(refreshToken);
+        if(jwtService.isTokenExpired(claims) || !jwtService.isRefreshToken(claims)){
+            log.info("Refresh Token cookie has  expired from request.");
+            throw failure(ErrorCode.INVALID_REFRESH_TOKEN);
+        }
+
+        String username = jwtService.extractUsername(claims);
+        if(username == null || username.isBlank()){
+            log.info("Refresh Token cookie missing username from request.");
+            throw failure(ErrorCode.INVALID_REFRESH_TOKEN);
+        }
+
+        // The rotation writes to the families table through JDBC, so it runs off the event loop.
+        // The new access token carries the roles of the refresh token.
+        return Mono.fromCallable(() -> refreshTokenService.rotate(claims))
+                .subscribeOn(Schedulers.boundedElastic())
+                .map(tokens -> {
+                    log.info("Access Token refreshed for username {}", username);
+                    return ResponseEntity.ok()
+                            .header(HttpHeaders.SET_COOKIE, refreshCookie(tokens.refreshToken()).toString())
+                            .body(Map.of(Constants.ACCESS_TOKEN_CLAIM, tokens.accessToken()));
+                });
+    }
+
+    // Same as AuthController.logout, the revocations are JDBC writes and run off the event loop
+    @PostMapping("/logout")
+    public Mono<ResponseEntity<String>> logout(ServerHttpRequest request){
+        String accessToken = jwtService.extractTokenFromHeader(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION)).orElse(null);
+        if(accessToken == null){
+            throw failure(ErrorCode.BAD_REQUEST);
+        }
+        Claims claims = jwtService.parse(accessToken);
+        String username = jwtService.extractUsername(claims);
+        HttpCookie cookie = request.getCookies().getFirst(Constants.REFRESH_TOKEN_COOKIE);
+        String refreshToken = cookie == null || cookie.getValue().isEmpty() ? null : cookie.getValue();
+        return Mono.fromRunnable(() -> {
+                    denylist.revoke(claims.getId(), username, claims.getExpiration().getTime());
+                    if(refreshToken != null){
+                        try{
+                            Claims refreshClaims = jwtService.parse(refreshToken);
+                            if(jwtService.isRefreshToken(refreshClaims) && username.equals(jwtService.extractUsername(refreshClaims))){
+                                refreshTokenService.revoke(refreshClaims);
+                            }
+                        }catch(JwtException e){
+                            log.info("Refresh Token cookie of username {} is invalid, nothing to revoke", username);
+                        }
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then(Mono.fromSupplier(() -> {
+                    log.info("User Logout successful for username:{}", username);
+                    ResponseCookie cleared = ResponseCookie.from(Constants.REFRESH_TOKEN_COOKIE, "")
+                            .httpOnly(true)
+                            .secure(false)
+                            .path("")
+                            .maxAge(0)
+                            .build();
+                    return ResponseEntity.ok()
+                            .header(HttpHeaders.SET_COOKIE, cleared.toString())
+                            .body("Logged Out");
+                }));
+    }
+
+    // Checks the password on the hashing pool and issues the tokens
+    private Mono<ResponseEntity<Map<String, String>>> authenticate(String username, UserCredentials credentials, String password){
+        if(lockoutService.isLocked(username, credentials)){
+            log.info("User Login rejected for locked username:{}", username);
+            return Mono.error(failure(ErrorCode.ACCOUNT_LOCKED));
+        }
+        log.info("User Login started for username:{}", username);
+        return Mono.fromFuture(() -> encoder.matchesAsync(password, credentials.passwordHash()))
+                .flatMap(matches -> {
+                    if(!matches){
+                        log.info("User Login failed for username:{}", username);
+                        lockoutService.recordFailure(username, credentials);
+                        return Mono.error(failure(ErrorCode.INVALID_PASSWORD));
+                    }
+                    lockoutService.recordSuccess(username, credentials);
+                    // Moves a hash with an outdated algorithm or cost to the current one, in the background
+                    passwordUpgradeService.upgradeIfNeeded(credentials, password);
+                    var roles = List.of("USER");
+                    // Starting the refresh token family is a JDBC insert, kept off the hashing pool and the event loop.
+                    // Its first refresh token is minted with the access token.
+                    return Mono.fromCallable(() -> refreshTokenService.issue(username, roles))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .map(tokens -> {
+                                log.info("User Login successful for username:{}", username);
+                                return ResponseEntity.ok()
+                                        .header(HttpHeaders.SET_COOKIE, refreshCookie(tokens.refreshToken()).toString())
+                                        .body(Map.of(Constants.ACCESS_TOKEN_CLAIM, tokens.accessToken()));
+                            });
+                });
+    }
+
+    private ResponseCookie refreshCookie(String refresh){
+        long refreshMaxAge = Duration.ofMinutes(jwtService.getRefreshTokenValidity()).getSeconds();
+        return ResponseCookie.from(Constants.REFRESH_TOKEN_COOKIE, refresh)
+                .httpOnly(true)
+                .secure(false)
+                .path("")
+                .maxAge(refreshMaxAge)
+                .build();
+    }
+
+    // Runs a LoginFlowService call, off the event loop when the configured store blocks. A null result is empty.
+    private <T> Mono<T> flows(Callable<T> call){
+        Mono<T> result = Mono.fromCallable(call);
+        return loginFlowService.isBlocking() ? result.subscribeOn(Schedulers.boundedElastic()) : result;
+    }
+
+    private static String clientAddress(ServerHttpRequest request){
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null ? null : address.getHostString();
+    }
+
+    private static ResponseStatusException failure(ErrorCode errorCode){
+        return new ResponseStatusException(errorCode.getStatus(), errorCode.getMessage());
+    }
+}
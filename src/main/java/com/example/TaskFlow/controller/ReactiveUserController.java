@@ -0,0 +1,107 @@
+package com.example.TaskFlow.controller;
+
+import com.example.TaskFlow.Constants.ErrorCode;
+import com.example.TaskFlow.model.User;
+import com.example.TaskFlow.repo.ReactiveUserRepository;
+import com.example.TaskFlow.service.UserCursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// Reactive version of UserController. The authentication set by ReactiveJwtAuthFilter is read from the
+// Reactor context instead of the thread bound SecurityContextHolder.
+@RestController
+@RequestMapping("/user")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserController {
+
+    private final ReactiveUserRepository userRepository;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final int exportFetchSize;
+
+    public ReactiveUserController(ReactiveUserRepository userRepository,
+                                  @Value("${app.users.page.default-size:50}") int defaultPageSize,
+                                  @Value("${app.users.page.max-size:500}") int maxPageSize,
+                                  @Value("${app.users.export.fetch-size:500}") int exportFetchSize){
+        this.userRepository = userRepository;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.exportFetchSize = exportFetchSize;
+    }
+
+    // Same paging contract as UserController.getAll
+    @GetMapping("/all")
+    public Mono<ResponseEntity<List<User>>> getAll(@RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) Integer size){
+        int pageSize = pageSize(size);
+        return userRepository.findPageAfter(UserCursor.decode(cursor), pageSize + 1)
+                .collectList()
+                .map(users -> {
+                    if(users.size() <= pageSize){
+                        return ResponseEntity.ok(users);
+                    }
+                    List<User> page = users.subList(0, pageSize);
+                    String next = UserCursor.encode(page.get(pageSize - 1).getId());
+                    return ResponseEntity.ok()
+                            .header(HttpHeaders.LINK, "</user/all?size=" + pageSize + "&cursor=" + next + ">; rel=\"next\"")
+                            .body(page);
+                });
+    }
+
+    // WebFlux writes a Flux as NDJSON line by line, and only requests more rows as the client reads them
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<User> export(){
+        return userRepository.streamAll(exportFetchSize);
+    }
+
+    @GetMapping("/me")
+    public Mono<ResponseEntity<User>> getMe(){
+        return authenticatedUsername()
+                .flatMap(userRepository::findByUsername)
+                .switchIfEmpty(Mono.error(this::badRequest))
+                .map(ResponseEntity::ok);
+    }
+
+    @GetMapping("/updatePassword")
+    public Mono<ResponseEntity<Void>> updatePassword(){
+        return authenticatedUsername()
+                .switchIfEmpty(Mono.error(this::badRequest))
+                .map(username -> ResponseEntity.ok().<Void>build());
+    }
+
+    private int pageSize(Integer size){
+        if(size == null){
+            return defaultPageSize;
+        }
+        if(size < 1){
+            throw badRequest();
+        }
+        return Math.min(size, maxPageSize);
+    }
+
+    private Mono<String> authenticatedUsername(){
+        return ReactiveSecurityContextHolder.getContext()
+                .map(SecurityContext::getAuthentication)
+                .filter(Authentication::isAuthenticated)
+                .map(Authentication::getName);
+    }
+
+    private ResponseStatusException badRequest(){
+        return new ResponseStatusException(ErrorCode.BAD_REQUEST.getStatus(), ErrorCode.BAD_REQUEST.getMessage());
+    }
+}
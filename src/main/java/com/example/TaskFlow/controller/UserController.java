@@ -3,32 +3,71 @@ package com.example.TaskFlow.controller;
 import com.example.TaskFlow.Constants.ErrorCode;
 import com.example.TaskFlow.model.User;
 import com.example.TaskFlow.repo.UserRepository;
+import com.example.TaskFlow.service.UserCursor;
+import com.example.TaskFlow.service.UserExportService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
+// Servlet handlers, the reactive profile serves the same endpoints from ReactiveUserController
 @RestController
 @RequestMapping("/user")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserController {
 
     private final UserRepository userRepository;
+    private final UserExportService userExportService;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
-    public UserController(UserRepository userRepository){
+    public UserController(UserRepository userRepository, UserExportService userExportService,
+                          @Value("${app.users.page.default-size:50}") int defaultPageSize,
+                          @Value("${app.users.page.max-size:500}") int maxPageSize){
         this.userRepository = userRepository;
+        this.userExportService = userExportService;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
+    // One page of users ordered by id. The body stays a plain JSON array, when more users follow the response
+    // carries a Link header (rel="next") with the cursor to pass back for the next page.
     @GetMapping("/all")
-    public ResponseEntity<List<User>> getAll(){
-        List<User> users = userRepository.findAll();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<User>> getAll(@RequestParam(required = false) String cursor,
+                                             @RequestParam(required = false) Integer size){
+        int pageSize = pageSize(size);
+        // One extra row tells us whether there is a next page without a count query
+        List<User> users = userRepository.findByIdGreaterThanOrderByIdAsc(UserCursor.decode(cursor), Limit.of(pageSize + 1));
+        if(users.size() <= pageSize){
+            return ResponseEntity.ok(users);
+        }
+        List<User> page = users.subList(0, pageSize);
+        String next = UserCursor.encode(page.get(pageSize - 1).getId());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, "</user/all?size=" + pageSize + "&cursor=" + next + ">; rel=\"next\"")
+                .body(page);
+    }
+
+    // Every user as NDJSON, written to the response while the rows are read, see UserExportService
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        userExportService.export(response.getOutputStream());
     }
 
     @GetMapping("/me")
@@ -56,5 +95,13 @@ public class UserController {
         return ResponseEntity.ok().build();
     }
 
-
+    private int pageSize(Integer size){
+        if(size == null){
+            return defaultPageSize;
+        }
+        if(size < 1){
+            throw new ResponseStatusException(ErrorCode.BAD_REQUEST.getStatus(), ErrorCode.BAD_REQUEST.getMessage());
+        }
+        return Math.min(size, maxPageSize);
+    }
 }
@@ -2,6 +2,7 @@ package com.example.TaskFlow.dto.request;
 
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -34,7 +35,8 @@ public class RegisterDTO {
 
  */
 public record RegisterDTO(
-        @NotBlank @Size(min = 4,max = 50) String username,
+        // No '@', an identifier with one is always looked up as an email
+        @NotBlank @Size(min = 4,max = 50) @Pattern(regexp = "[^@]*", message = "must not contain @") String username,
         @Email @NotBlank String email,
         @NotBlank @Size(min = 8,max = 100) String password,
         @NotBlank @Size(min =1 , max =32) String firstname,
@@ -0,0 +1,22 @@
+package com.example.TaskFlow.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// One line of the bulk import report. row is the 1-based position of the record in the upload (the CSV header
+// not counted), message is only set for INVALID records.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UserImportResultDTO(int row, String username, String email, Status status, String message) {
+
+    public enum Status {
+        CREATED,
+        // Failed validation, or could not be parsed at all
+        INVALID,
+        // An earlier record of the same upload has the same email or username
+        DUPLICATE,
+        // Rejected by uk_users_email / uk_users_username
+        EMAIL_TAKEN,
+        USERNAME_TAKEN,
+        // Someone registered the same email or username while the import was running
+        CONFLICT
+    }
+}
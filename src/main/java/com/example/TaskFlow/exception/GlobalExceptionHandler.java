@@ -5,12 +5,17 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.validation.BindException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
@@ -32,8 +37,11 @@ import java.util.stream.Collectors;
 
 /**
  * Central place for translating server side exceptions into consistent JSON responses.
+ * <p>
+ * Servlet stack only, {@link ReactiveExceptionHandler} does the same for the reactive profile.
  */
 @RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class GlobalExceptionHandler {
 
     private static final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
@@ -130,7 +138,8 @@ public class GlobalExceptionHandler {
         }
         String message = ex.getReason() != null ? ex.getReason() : status.getReasonPhrase();
         ApiError apiError = ApiError.of(status, message, request.getRequestURI());
-        return ResponseEntity.status(status).body(apiError);
+        // Keeps headers such as Retry-After set by the exception
+        return ResponseEntity.status(status).headers(ex.getHeaders()).body(apiError);
     }
 
     @ExceptionHandler(AuthenticationException.class)
@@ -157,6 +166,17 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.CONFLICT).body(apiError);
     }
 
+    // No database connection could be obtained in time, e.g. when more requests wait for the pool than it can serve.
+    // That's load, not a bug, so the client is asked to retry instead of getting a 500.
+    @ExceptionHandler({CannotCreateTransactionException.class, DataAccessResourceFailureException.class})
+    public ResponseEntity<ApiError> handleDatabaseUnavailable(DataAccessException ex, HttpServletRequest request) {
+        log.warn("Database unavailable for {}: {}", request.getRequestURI(), ex.getMessage());
+        ApiError apiError = ApiError.of(HttpStatus.SERVICE_UNAVAILABLE, "Service temporarily unavailable, try again later", request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(apiError);
+    }
+
     @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class, NoSuchElementException.class})
     public ResponseEntity<ApiError> handleClientErrors(RuntimeException ex, HttpServletRequest request) {
         ApiError apiError = ApiError.of(HttpStatus.BAD_REQUEST, ex.getMessage(), request.getRequestURI());
@@ -0,0 +1,112 @@
+package com.example.TaskFlow.exception;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Reactive counterpart of {@link GlobalExceptionHandler}, rendering the same {@link ApiError} bodies
+ * for the handlers of the reactive profile.
+ */
+@RestControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveExceptionHandler.class);
+
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ApiError> handleBindException(WebExchangeBindException ex, ServerWebExchange exchange) {
+        Map<String, List<String>> validationErrors = new LinkedHashMap<>();
+        for (FieldError fieldError : ex.getBindingResult().getFieldErrors()) {
+            validationErrors.computeIfAbsent(fieldError.getField(), key -> new ArrayList<>())
+                    .add(fieldError.getDefaultMessage());
+        }
+        ex.getBindingResult().getGlobalErrors().forEach(error ->
+                validationErrors.computeIfAbsent(error.getObjectName(), key -> new ArrayList<>())
+                        .add(error.getDefaultMessage()));
+
+        ApiError apiError = ApiError.of(HttpStatus.BAD_REQUEST, "Validation failed", path(exchange), validationErrors);
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(apiError);
+    }
+
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<ApiError> handleServerWebInput(ServerWebInputException ex, ServerWebExchange exchange) {
+        log.debug("Malformed request for {}", path(exchange), ex);
+        ApiError apiError = ApiError.of(HttpStatus.BAD_REQUEST, "Malformed JSON request", path(exchange));
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(apiError);
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ApiError> handleResponseStatus(ResponseStatusException ex, ServerWebExchange exchange) {
+        HttpStatus status = HttpStatus.resolve(ex.getStatusCode().value());
+        if (status == null) {
+            status = HttpStatus.INTERNAL_SERVER_ERROR;
+        }
+        String message = ex.getReason() != null ? ex.getReason() : status.getReasonPhrase();
+        ApiError apiError = ApiError.of(status, message, path(exchange));
+        // Keeps headers such as Retry-After set by the exception
+        return ResponseEntity.status(status).headers(ex.getHeaders()).body(apiError);
+    }
+
+    @ExceptionHandler(AccessDeniedException.class)
+    public ResponseEntity<ApiError> handleAccessDenied(AccessDeniedException ex, ServerWebExchange exchange) {
+        ApiError apiError = ApiError.of(HttpStatus.FORBIDDEN, "Access is denied", path(exchange));
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(apiError);
+    }
+
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<ApiError> handleDataIntegrityViolation(DataIntegrityViolationException ex,
+                                                                 ServerWebExchange exchange) {
+        log.warn("Data integrity violation at {}: {}", path(exchange), ex.getMostSpecificCause().getMessage());
+        ApiError apiError = ApiError.of(HttpStatus.CONFLICT, "Database constraint violated", path(exchange));
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(apiError);
+    }
+
+    // Same as the servlet handler: no connection in time is load, the client is asked to retry
+    @ExceptionHandler({CannotCreateTransactionException.class, DataAccessResourceFailureException.class})
+    public ResponseEntity<ApiError> handleDatabaseUnavailable(DataAccessException ex, ServerWebExchange exchange) {
+        log.warn("Database unavailable for {}: {}", path(exchange), ex.getMessage());
+        ApiError apiError = ApiError.of(HttpStatus.SERVICE_UNAVAILABLE, "Service temporarily unavailable, try again later", path(exchange));
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(apiError);
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class, NoSuchElementException.class})
+    public ResponseEntity<ApiError> handleClientErrors(RuntimeException ex, ServerWebExchange exchange) {
+        ApiError apiError = ApiError.of(HttpStatus.BAD_REQUEST, ex.getMessage(), path(exchange));
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(apiError);
+    }
+
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ApiError> handleGenericException(Exception ex, ServerWebExchange exchange) {
+        log.error("Unexpected error processing request {}", path(exchange), ex);
+        ApiError apiError = ApiError.of(HttpStatus.INTERNAL_SERVER_ERROR, "An unexpected error occurred", path(exchange));
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(apiError);
+    }
+
+    private static String path(ServerWebExchange exchange) {
+        return exchange.getRequest().getPath().value();
+    }
+}
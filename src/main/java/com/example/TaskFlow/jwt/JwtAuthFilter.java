@@ -1,14 +1,23 @@
 package com.example.TaskFlow.jwt;
 
 import java.util.List;
-import com.example.TaskFlow.model.User;
-import com.example.TaskFlow.repo.UserRepository;
+import com.example.TaskFlow.config.PublicPaths;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
 import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.UserPrincipalCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
@@ -17,89 +26,137 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 // JWT authentication filter implementation
 // This filter will intercept requests to validate JWT tokens
 // and set the authentication context accordingly.
 //This will work between the client and server to ensure secure communication.
 //This class will be added to the security filter chain in SecurityConfig.
+//The reactive profile uses ReactiveJwtAuthFilter instead.
+// Every request runs through it, so the common path stays cheap: the public paths are matched without building
+// anything, the token is sliced out of the header once, the Claims, principal and authorities all come from caches,
+// and a rejection is a 401 plus one counter increment (auth.filter.rejections, by reason) instead of console output.
 @Component
-public class JwtAuthFilter extends OncePerRequestFilter {
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class JwtAuthFilter extends OncePerRequestFilter implements MeterBinder {
 
     private final JwtService jwtService;
-    private final UserRepository userRepository;
+    private final VerifiedTokenCache tokenCache;
+    private final UserPrincipalCache principalCache;
+    private final AccountLockoutService lockoutService;
+    private final AccessTokenDenylist denylist;
+    private final AtomicLong authenticated = new AtomicLong();
+    // Rejections: no Bearer token, a token that doesn't verify, an expired one, a revoked one,
+    // and a user that is unknown, disabled or locked
+    private final AtomicLong missing = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong revoked = new AtomicLong();
+    private final AtomicLong user = new AtomicLong();
 
-    public JwtAuthFilter(JwtService jwtService, UserRepository userRepository){
+    public JwtAuthFilter(JwtService jwtService, VerifiedTokenCache tokenCache, UserPrincipalCache principalCache,
+                         AccountLockoutService lockoutService, AccessTokenDenylist denylist){
         this.jwtService = jwtService;
-        this.userRepository = userRepository;
+        this.tokenCache = tokenCache;
+        this.principalCache = principalCache;
+        this.lockoutService = lockoutService;
+        this.denylist = denylist;
     }
 
+    // The paths SecurityConfig permits, see PublicPaths
     @Override
     public boolean shouldNotFilter(HttpServletRequest req){
-        String uri = req.getRequestURI();
-        return uri.equals("/auth/login") ||
-                uri.equals("/auth/identify") ||
-                uri.equals("/auth/register") ||
-                uri.equals("/auth/refresh") ||
-                uri.startsWith("/v3/api-docs") ||
-                uri.startsWith("/swagger-ui");
-
+        return PublicPaths.matches(req.getRequestURI());
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                     FilterChain filterChain) throws IOException, ServletException {
-
-        String authHeader = request.getHeader("Authorization");
-        System.out.println("Auth Header : "+authHeader);
-        String auth_token = jwtService.extractTokenFromHeader(authHeader).orElse(null);
-        System.out.println("Auth_Token : "+auth_token);
+        String token = jwtService.bearerToken(request.getHeader(HttpHeaders.AUTHORIZATION));
+        if(token == null){
+            reject(response, missing);
+            return;
+        }
+        Claims claims;
+        List<SimpleGrantedAuthority> auths;
         try{
-            if(auth_token != null){
-                Claims claims = jwtService.parse(auth_token);
-                // Block if token is expired
-                if (jwtService.isTokenExpired(claims)) {
-                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                    return;
-                }
-                String username = jwtService.extractUsername(claims);
-                if(username !=  null || SecurityContextHolder.getContext().getAuthentication() == null){
-                    User user = userRepository.findByUsername(username).orElse(null);
-                    if(user ==null ){
-                        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                        return;
-                    }
-                    // We create a List of Authorities from the claims objects
-                    // that will be set into the auth token for Spring Security's internal Memory
-                    // We are Using Java 8 Streams here for decreasing the code length
-                    List<SimpleGrantedAuthority> auths = jwtService.roles(claims)
-                            .stream().map(SimpleGrantedAuthority::new).toList();
-
-                    // SecurityContextHolder is the local Memory of the Spring Security.
-                    // It can be used to store the username and his roles or authentication related Data.
-                    // This is stored in thread memory of each request/thread.
-                    // The advantage of using this is the application is not required to parse the JWT again on the Internal Controllers to
-                    // to know the user specific details.
-                    UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(username,null,auths);
-                    SecurityContext sc = SecurityContextHolder.createEmptyContext();
-                    sc.setAuthentication(auth);
-                    SecurityContextHolder.setContext(sc);
-                }
-            } else {
-                // No token provided, block
-                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                return;
-            }
-        }catch(Exception e){
-            e.printStackTrace();
-            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            // Verified Claims are cached per token, so only the first request with a token pays for the signature check
+            claims = tokenCache.parse(token);
+            // The Authorities for Spring Security's internal Memory, a shared list looked up by the
+            // token's role mask instead of being built per request
+            auths = jwtService.authorities(claims);
+        }catch(ExpiredJwtException e){
+            reject(response, expired);
+            return;
+        }catch(JwtException | IllegalArgumentException e){
+            reject(response, invalid);
+            return;
+        }
+        // Refresh and flow tokens are signed by the same keys but are never revoked on logout, only access tokens pass
+        if(!jwtService.isActiveToken(claims)){
+            reject(response, invalid);
+            return;
+        }
+        // Block if token is expired
+        if(jwtService.isTokenExpired(claims)){
+            reject(response, expired);
+            return;
+        }
+        // Block if token was revoked before its expiry, almost always ruled out by a Bloom filter in memory
+        if(denylist.isRevoked(claims.getId())){
+            reject(response, revoked);
             return;
         }
-        // Only call filterChain if authentication is set
-        if (SecurityContextHolder.getContext().getAuthentication() != null) {
+        String username = jwtService.extractUsername(claims);
+        // The principal cache answers from memory in the common case and only queries the
+        // database when the entry is missing or older than the configured staleness window.
+        // A lock that may not have reached the database or the cached principal yet is known in memory.
+        UserPrincipalCache.Principal principal = username == null ? null : principalCache.get(username).orElse(null);
+        if(principal == null || !principal.canAuthenticate() || lockoutService.isLocked(username)){
+            reject(response, user);
+            return;
+        }
+        authenticated.incrementAndGet();
+
+        // SecurityContextHolder is the local Memory of the Spring Security.
+        // It can be used to store the username and his roles or authentication related Data.
+        // This is stored in thread memory of each request/thread.
+        // The advantage of using this is the application is not required to parse the JWT again on the Internal Controllers to
+        // to know the user specific details.
+        SecurityContext sc = SecurityContextHolder.createEmptyContext();
+        sc.setAuthentication(new UsernamePasswordAuthenticationToken(username, null, auths));
+        SecurityContextHolder.setContext(sc);
+        // The context is bound to the thread, clearing it when the request is done keeps a pooled thread
+        // from carrying this user's authentication into the next request it serves
+        try{
             filterChain.doFilter(request, response);
+        }finally{
+            SecurityContextHolder.clearContext();
         }
-        // Otherwise, do not continue the filter chain
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        FunctionCounter.builder("auth.filter.authenticated", authenticated, AtomicLong::get)
+                .description("Requests authenticated by their access token")
+                .register(registry);
+        rejections(registry, "missing", missing);
+        rejections(registry, "invalid", invalid);
+        rejections(registry, "expired", expired);
+        rejections(registry, "revoked", revoked);
+        rejections(registry, "user", user);
+    }
+
+    private static void rejections(MeterRegistry registry, String reason, AtomicLong counter){
+        FunctionCounter.builder("auth.filter.rejections", counter, AtomicLong::get)
+                .description("Requests turned away with 401 by the JWT filter")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    private static void reject(HttpServletResponse response, AtomicLong reason){
+        reason.incrementAndGet();
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
     }
 }
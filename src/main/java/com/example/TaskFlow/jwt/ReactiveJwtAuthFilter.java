@@ -0,0 +1,107 @@
+package com.example.TaskFlow.jwt;
+
+import com.example.TaskFlow.repo.ReactiveUserRepository;
+import com.example.TaskFlow.config.PublicPaths;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.UserPrincipalCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// WebFilter version of JwtAuthFilter for the reactive profile, added to the chain by ReactiveSecurityConfig.
+// It runs on the event loop, so nothing in here may block: the token check is pure CPU (and usually a
+// VerifiedTokenCache hit), the principal comes from UserPrincipalCache and only a miss goes to the database,
+// through R2DBC instead of the blocking JPA loader of the cache.
+// The authentication is handed downstream in the Reactor context instead of a ThreadLocal,
+// so there is nothing to clear once the request is done.
+public class ReactiveJwtAuthFilter implements WebFilter {
+
+    private final JwtService jwtService;
+    private final VerifiedTokenCache tokenCache;
+    private final UserPrincipalCache principalCache;
+    private final ReactiveUserRepository userRepository;
+    private final AccountLockoutService lockoutService;
+    private final AccessTokenDenylist denylist;
+
+    public ReactiveJwtAuthFilter(JwtService jwtService, VerifiedTokenCache tokenCache, UserPrincipalCache principalCache,
+                                 ReactiveUserRepository userRepository, AccountLockoutService lockoutService,
+                                 AccessTokenDenylist denylist){
+        this.jwtService = jwtService;
+        this.tokenCache = tokenCache;
+        this.principalCache = principalCache;
+        this.userRepository = userRepository;
+        this.lockoutService = lockoutService;
+        this.denylist = denylist;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain){
+        if(PublicPaths.matches(exchange.getRequest().getPath().value())){
+            return chain.filter(exchange);
+        }
+        String authHeader = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        String token = jwtService.bearerToken(authHeader);
+        if(token == null){
+            return unauthorized(exchange);
+        }
+        Claims claims;
+        List<SimpleGrantedAuthority> auths;
+        try{
+            claims = tokenCache.parse(token);
+            auths = jwtService.authorities(claims);
+        }catch(JwtException | IllegalArgumentException e){
+            return unauthorized(exchange);
+        }
+        // Only access tokens, see JwtAuthFilter
+        if(!jwtService.isActiveToken(claims)){
+            return unauthorized(exchange);
+        }
+        String username = jwtService.extractUsername(claims);
+        // The denylist is in memory too, the check never leaves the event loop
+        if(jwtService.isTokenExpired(claims) || denylist.isRevoked(claims.getId()) || username == null || lockoutService.isLocked(username)){
+            return unauthorized(exchange);
+        }
+        return principal(username)
+                .map(UserPrincipalCache.Principal::canAuthenticate)
+                .defaultIfEmpty(false)
+                .flatMap(canAuthenticate -> {
+                    if(!canAuthenticate){
+                        return unauthorized(exchange);
+                    }
+                    UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(username, null, auths);
+                    return chain.filter(exchange)
+                            .contextWrite(ReactiveSecurityContextHolder.withAuthentication(auth));
+                });
+    }
+
+    // Unknown usernames are not cached, same as UserPrincipalCache.get
+    private Mono<UserPrincipalCache.Principal> principal(String username){
+        UserPrincipalCache.Principal cached = principalCache.getIfPresent(username);
+        if(cached != null){
+            return Mono.just(cached);
+        }
+        return userRepository.findAuthStatusByUsername(username)
+                .map(status -> {
+                    UserPrincipalCache.Principal principal = UserPrincipalCache.Principal.of(status);
+                    principalCache.put(username, principal);
+                    return principal;
+                });
+    }
+
+    private static Mono<Void> unauthorized(ServerWebExchange exchange){
+        exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+        return exchange.getResponse().setComplete();
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.TaskFlow.jwt;
+
+import com.example.TaskFlow.service.JwtService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Cache of already verified JWT Claims used by the JwtAuthFilter.
+// A client sends the same access token on every request until it expires, so once a token has passed
+// the signature check we keep its Claims and skip the base64 decoding, HMAC check and JSON parsing next time.
+// Entries are keyed by the SHA-256 digest of the token (never the raw token) and expire at the token's "exp".
+// The cache is bounded by size, the least recently used tokens are evicted first.
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+
+    // Digest of the token split into four longs. Cheaper to hash and compare than the token String itself.
+    record TokenKey(long a, long b, long c, long d) { }
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+    private final JwtService jwtService;
+    private final Cache<TokenKey, Claims> cache;
+
+    public VerifiedTokenCache(JwtService jwtService,
+                              @Value("${app.jwt.token-cache.max-size:10000}") long maxSize){
+        this.jwtService = jwtService;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new ExpireAtTokenExpiry())
+                .recordStats()
+                .build();
+    }
+
+    // Returns the verified Claims of the token.
+    // On a miss the token is verified through JwtService.parse and only cached if the verification succeeded,
+    // any JwtException is passed on to the caller untouched.
+    public Claims parse(String token){
+        return cache.get(keyOf(token), key -> jwtService.parse(token));
+    }
+
+    // Drops a single token from the cache, for example when it has been revoked.
+    public void invalidate(String token){
+        cache.invalidate(keyOf(token));
+    }
+
+    public long hitCount(){
+        return cache.stats().hitCount();
+    }
+
+    public long missCount(){
+        return cache.stats().missCount();
+    }
+
+    public long size(){
+        return cache.estimatedSize();
+    }
+
+    // Publishes cache.gets{result=hit|miss}, cache.size and cache.evictions under the name "jwt.verified-tokens".
+    // Spring Boot Actuator binds every MeterBinder bean to its MeterRegistry on startup.
+    @Override
+    public void bindTo(MeterRegistry registry){
+        CaffeineCacheMetrics.monitor(registry, cache, "jwt.verified-tokens");
+    }
+
+    static TokenKey keyOf(String token){
+        MessageDigest digest = SHA_256.get();
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        return new TokenKey(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+    }
+
+    // Each entry lives exactly until the "exp" claim of its token.
+    // Tokens without an expiration are not kept at all.
+    private static final class ExpireAtTokenExpiry implements Expiry<TokenKey, Claims> {
+
+        @Override
+        public long expireAfterCreate(TokenKey key, Claims claims, long currentTime){
+            Date expiration = claims.getExpiration();
+            if(expiration == null){
+                return 0;
+            }
+            long millisLeft = expiration.getTime() - System.currentTimeMillis();
+            return millisLeft > 0 ? TimeUnit.MILLISECONDS.toNanos(millisLeft) : 0;
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenKey key, Claims claims, long currentTime, long currentDuration){
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(TokenKey key, Claims claims, long currentTime, long currentDuration){
+            return currentDuration;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.example.TaskFlow.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.Size;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
@@ -24,18 +25,27 @@ import lombok.ToString;
        },
        indexes = {
         @Index(name = "idx_users_email",columnList = "email"),
-        @Index(name = "idx_users_username",columnList = "username")
+        @Index(name = "idx_users_username",columnList = "username"),
+        // Only locked accounts have a locked_until, AccountLockoutService looks the expired ones up through it
+        @Index(name = "idx_users_locked_until",columnList = "locked_until")
        }
 )
 @Getter // Lombok annotation to generate getters for all fields
 @Setter // Lombok annotation to generate setters for all fields
 @EqualsAndHashCode // Lombok annotation to generate equals and hashCode methods
 @ToString // Lombok annotation to generate toString method
+// Drops the cached principal of this user whenever the row is inserted, updated or deleted
+@EntityListeners(UserPrincipalCacheListener.class)
 
 public class User {
     @Id //Primary key for the Table
-    // It is auto-incremented value. We can change it to UUID if needed by changing the strategy.
-    @GeneratedValue (strategy = GenerationType.IDENTITY)
+    // Ids come from the taskflow_auth.users_seq sequence. Hibernate reserves 50 ids per nextval call, so saving
+    // many users costs one sequence call per 50 and the inserts can be sent as JDBC batches, which IDENTITY prevents.
+    // The pooled-lo optimizer (hibernate.id.optimizer.pooled.preferred) hands out nextval..nextval+49, so any other
+    // writer calling nextval itself (the R2DBC insert, the column default) gets the start of a block nobody else uses.
+    // UserIdSequenceMigration moves tables created with the former IDENTITY id over to the sequence.
+    @GeneratedValue (strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", schema = "taskflow_auth", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true, nullable = false,length = 100)
@@ -79,4 +89,18 @@ public class User {
     @Column(name = "failed_login_attempts")
     private Integer failedLoginAttempts;
 
+    // Epoch millis at which the lock lifts itself, empty for an account that is not locked or locked until an admin unlocks it
+    @Column(name = "locked_until")
+    private Long lockedUntil;
+
+    // The username as it was read from or last written to the database, so UserPrincipalCacheListener can also
+    // drop the cache entry under the old name when a user is renamed
+    @Transient
+    @com.fasterxml.jackson.annotation.JsonIgnore
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    String loadedUsername;
+
 }
@@ -0,0 +1,52 @@
+package com.example.TaskFlow.model;
+
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// JPA entity listener registered on the User entity.
+// Every time Hibernate writes a User it publishes the usernames whose cached principal is now stale, the current
+// one and, after a rename, the one the row was loaded with. UserPrincipalCache drops them once the transaction
+// has committed; dropping them earlier would let a concurrent request cache the old row again before the commit.
+// Spring Boot lets Hibernate create entity listeners through the Spring bean factory, which is how the
+// publisher gets injected here. ObjectProvider keeps the lookup lazy because the listener is created
+// while the EntityManagerFactory is still being built.
+public class UserPrincipalCacheListener {
+
+    public record UsersChanged(Set<String> usernames){
+    }
+
+    private final ObjectProvider<ApplicationEventPublisher> events;
+
+    public UserPrincipalCacheListener(ObjectProvider<ApplicationEventPublisher> events){
+        this.events = events;
+    }
+
+    @PostLoad
+    void userLoaded(User user){
+        user.loadedUsername = user.getUsername();
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void userChanged(User user){
+        Set<String> usernames = new LinkedHashSet<>();
+        if(user.loadedUsername != null){
+            usernames.add(user.loadedUsername);
+        }
+        if(user.getUsername() != null){
+            usernames.add(user.getUsername());
+        }
+        user.loadedUsername = user.getUsername();
+        if(!usernames.isEmpty()){
+            events.ifAvailable(publisher -> publisher.publishEvent(new UsersChanged(usernames)));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.TaskFlow.repo;
+
+import com.example.TaskFlow.model.User;
+import io.r2dbc.spi.Readable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Non-blocking counterpart of UserRepository for the reactive profile, reading and writing the same
+// taskflow_auth.users table through R2DBC. The table itself is still owned by the JPA entity (schema updates,
+// the background password upgrade), this class only runs the lookups and inserts of the request path.
+@Repository
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserRepository {
+
+    private static final String COLUMNS = "id, email, username, password_hash, first_name, last_name, middle_name, "
+            + "is_active, is_locked, is_deleted, failed_login_attempts";
+    private static final String SELECT = "SELECT " + COLUMNS + " FROM taskflow_auth.users";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveUserRepository(DatabaseClient databaseClient){
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<User> findByUsername(String username){
+        return databaseClient.sql(SELECT + " WHERE username = :username")
+                .bind("username", username)
+                .map(ReactiveUserRepository::toUser)
+                .one();
+    }
+
+    // The lookups below mirror the projections of UserRepository, reading only the columns their caller needs
+
+    public Mono<UserAuthStatus> findAuthStatusByUsername(String username){
+        return databaseClient.sql("SELECT id, is_active, is_locked, is_deleted FROM taskflow_auth.users WHERE username = :username")
+                .bind("username", username)
+                .map(row -> new UserAuthStatus(row.get("id", Long.class), row.get("is_active", Boolean.class),
+                        row.get("is_locked", Boolean.class), row.get("is_deleted", Boolean.class)))
+                .one();
+    }
+
+    // Same routing as UserRepository.findUsernameByIdentifier, one lower(...) index probe per lookup
+    public Mono<String> findUsernameByIdentifier(String identifier){
+        String normalized = UserIdentifiers.normalize(identifier);
+        Mono<String> byUsername = findUsernameBy("username", normalized);
+        return UserIdentifiers.isEmail(normalized)
+                ? findUsernameBy("email", normalized).switchIfEmpty(byUsername)
+                : byUsername;
+    }
+
+    public Mono<UserCredentials> findCredentialsByUsername(String username){
+        return databaseClient.sql("SELECT id, password_hash, failed_login_attempts, is_locked FROM taskflow_auth.users WHERE username = :username")
+                .bind("username", username)
+                .map(row -> new UserCredentials(row.get("id", Long.class), row.get("password_hash", String.class),
+                        row.get("failed_login_attempts", Integer.class), row.get("is_locked", Boolean.class)))
+                .one();
+    }
+
+    public Mono<Boolean> existsByEmailOrUsername(String email, String username){
+        return findUsernameBy("email", UserIdentifiers.normalize(email))
+                .switchIfEmpty(findUsernameBy("username", UserIdentifiers.normalize(username)))
+                .hasElement();
+    }
+
+    // column is email or username, value already normalized
+    private Mono<String> findUsernameBy(String column, String value){
+        return databaseClient.sql("SELECT username FROM taskflow_auth.users WHERE lower(" + column + ") = :value ORDER BY id FETCH FIRST 1 ROWS ONLY")
+                .bind("value", value)
+                .map(row -> row.get("username", String.class))
+                .one();
+    }
+
+    // Keyset page, same as UserRepository.findByIdGreaterThanOrderByIdAsc
+    public Flux<User> findPageAfter(long afterId, int limit){
+        return databaseClient.sql(SELECT + " WHERE id > :afterId ORDER BY id FETCH FIRST " + limit + " ROWS ONLY")
+                .bind("afterId", afterId)
+                .map(ReactiveUserRepository::toUser)
+                .all();
+    }
+
+    // Every user in id order, fetched fetchSize rows at a time as the subscriber asks for them
+    public Flux<User> streamAll(int fetchSize){
+        return databaseClient.sql(SELECT + " ORDER BY id")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map(ReactiveUserRepository::toUser)
+                .all();
+    }
+
+    // Inserts a new user and returns the generated id. is_locked and is_deleted take their column defaults.
+    // The id is the next value of the sequence JPA allocates from. With the pooled-lo optimizer that value is the
+    // start of a block of ids no JPA node will hand out, so both can insert side by side.
+    public Mono<Long> insert(User user){
+        return databaseClient.sql("INSERT INTO taskflow_auth.users (id, email, username, password_hash, first_name, last_name, is_active) "
+                        + "VALUES (nextval('taskflow_auth.users_seq'), :email, :username, :passwordHash, :firstname, :lastname, :active)")
+                .bind("email", user.getEmail())
+                .bind("username", user.getUsername())
+                .bind("passwordHash", user.getPasswordHash())
+                .bind("firstname", user.getFirstname())
+                .bind("lastname", user.getLastname())
+                .bind("active", Boolean.TRUE.equals(user.getIsActive()))
+                .filter(statement -> statement.returnGeneratedValues("id"))
+                .map(row -> row.get("id", Long.class))
+                .one();
+    }
+
+    private static User toUser(Readable row){
+        User user = new User();
+        user.setId(row.get("id", Long.class));
+        user.setEmail(row.get("email", String.class));
+        user.setUsername(row.get("username", String.class));
+        user.setPasswordHash(row.get("password_hash", String.class));
+        user.setFirstname(row.get("first_name", String.class));
+        user.setLastname(row.get("last_name", String.class));
+        user.setMiddlename(row.get("middle_name", String.class));
+        user.setIsActive(row.get("is_active", Boolean.class));
+        user.setIsLocked(row.get("is_locked", Boolean.class));
+        user.setIsDeleted(row.get("is_deleted", Boolean.class));
+        user.setFailedLoginAttempts(row.get("failed_login_attempts", Integer.class));
+        return user;
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.TaskFlow.repo;
+
+// What JwtAuthFilter needs to know about a user on every request: that it exists and whether it may authenticate.
+// Read as a projection, never as a managed User, see UserRepository.findAuthStatusByUsername.
+public record UserAuthStatus(Long id, Boolean isActive, Boolean isLocked, Boolean isDeleted) {
+}
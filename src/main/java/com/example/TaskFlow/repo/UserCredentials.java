@@ -0,0 +1,18 @@
+package com.example.TaskFlow.repo;
+
+// What /auth/login needs to check a password: the id (for a background rehash), the stored hash, and the lockout
+// state (see AccountLockoutService)
+public record UserCredentials(Long id, String passwordHash, Integer failedLoginAttempts, Boolean isLocked) {
+
+    public UserCredentials(Long id, String passwordHash){
+        this(id, passwordHash, 0, false);
+    }
+
+    public int failedAttempts(){
+        return failedLoginAttempts == null ? 0 : failedLoginAttempts;
+    }
+
+    public boolean locked(){
+        return Boolean.TRUE.equals(isLocked);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.TaskFlow.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+// Moves an existing users table from an IDENTITY id to the users_seq sequence the User entity now draws its ids from.
+// It runs once before Hibernate starts (so ddl-auto=validate works too) and is a no-op on every later start:
+// - no users table yet: nothing to migrate, Hibernate creates the table and the sequence itself
+// - no sequence yet: it is created starting right after the highest existing id
+// - id still an IDENTITY column: the identity is dropped and the column defaults to nextval of the sequence,
+//   so an older node still inserting without an id keeps working during a rolling deploy
+// On PostgreSQL all of it runs in one transaction holding a lock that blocks concurrent inserts, so no row can
+// slip in between reading the highest id and creating the sequence, and two nodes starting together can't both migrate.
+@Component
+public class UserIdSequenceMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(UserIdSequenceMigration.class);
+
+    static final String TABLE = "taskflow_auth.users";
+    public static final String SEQUENCE = "taskflow_auth.users_seq";
+    // Must match allocationSize of the User id generator
+    public static final int INCREMENT = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public UserIdSequenceMigration(DataSource dataSource){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        migrate();
+    }
+
+    void migrate(){
+        boolean postgres = isPostgres();
+        transactionTemplate.executeWithoutResult(status -> {
+            if(!exists("SELECT COUNT(*) FROM information_schema.tables "
+                    + "WHERE LOWER(table_schema) = 'taskflow_auth' AND LOWER(table_name) = ?", "users")){
+                return;
+            }
+            if(postgres){
+                jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN SHARE ROW EXCLUSIVE MODE");
+            }
+            if(!exists("SELECT COUNT(*) FROM information_schema.sequences "
+                    + "WHERE LOWER(sequence_schema) = 'taskflow_auth' AND LOWER(sequence_name) = ?", "users_seq")){
+                Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + TABLE, Long.class);
+                long start = maxId == null ? 1 : maxId + 1;
+                jdbcTemplate.execute("CREATE SEQUENCE " + SEQUENCE + " START WITH " + start + " INCREMENT BY " + INCREMENT);
+                log.info("Created sequence {} starting at {}", SEQUENCE, start);
+            }
+            if(isIdentity()){
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " ALTER COLUMN id DROP IDENTITY");
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " ALTER COLUMN id SET DEFAULT nextval('" + SEQUENCE + "')");
+                log.info("Column {}.id now takes its values from {} instead of an identity", TABLE, SEQUENCE);
+            }
+        });
+    }
+
+    // Names are compared lowercased, H2 keeps unquoted names in upper case
+    private boolean exists(String query, String name){
+        Integer count = jdbcTemplate.queryForObject(query, Integer.class, name);
+        return count != null && count > 0;
+    }
+
+    private boolean isIdentity(){
+        String identity = jdbcTemplate.queryForObject("SELECT is_identity FROM information_schema.columns "
+                + "WHERE LOWER(table_schema) = 'taskflow_auth' AND LOWER(table_name) = 'users' AND LOWER(column_name) = 'id'", String.class);
+        return "YES".equalsIgnoreCase(identity);
+    }
+
+    private boolean isPostgres(){
+        try{
+            String product = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(), DatabaseMetaData::getDatabaseProductName);
+            return "PostgreSQL".equalsIgnoreCase(product);
+        }catch(MetaDataAccessException | DataAccessException e){
+            return false;
+        }
+    }
+
+    // Makes the entity manager factory wait for the migration, Hibernate's schema update or validation
+    // then already sees the sequence
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+        EntityManagerFactoryDependsOnMigration(){
+            super(UserIdSequenceMigration.class);
+        }
+    }
+}
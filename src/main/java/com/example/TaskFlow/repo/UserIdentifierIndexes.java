@@ -0,0 +1,136 @@
+package com.example.TaskFlow.repo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Functional indexes on lower(email) and lower(username), the ones the case-insensitive lookups of
+// UserRepository and ReactiveUserRepository are served from. JPA can't declare expression indexes, so they are
+// created here once Hibernate has created or updated the table. PostgreSQL only, elsewhere the lookups still
+// work, just without an index.
+// They are unique, which also makes the database reject Bob@x.com next to bob@x.com when two registrations race.
+// If existing rows already differ only in case the unique index can't be built, a plain one is created instead
+// and those users have to be merged by hand before it can become unique.
+// Built CONCURRENTLY so a large table keeps taking writes meanwhile. A build that failed halfway leaves an
+// invalid index behind, which is dropped and built again on the next start.
+// Nodes starting together take turns through an advisory lock, so one never mistakes the index another is still
+// building for a failed one. The lock is polled with pg_try_advisory_lock rather than waited for: a node blocked in
+// pg_advisory_lock holds a snapshot open, which the CONCURRENTLY build of the lock holder waits for in turn, a
+// deadlock PostgreSQL can't see. A node that doesn't get the lock within lock-wait-ms starts without checking the
+// indexes, the node holding it is building them. A build that fails for any other reason than duplicates is not papered over with the
+// plain index, it fails the start and is tried again on the next one.
+@Component
+@DependsOn("entityManagerFactory")
+public class UserIdentifierIndexes {
+
+    private static final Logger log = LoggerFactory.getLogger(UserIdentifierIndexes.class);
+    // Advisory lock key held while the indexes are checked and built
+    private static final long LOCK_KEY = 0x7461736b_666c6f77L;
+    private static final long LOCK_POLL_MILLIS = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserIdentifierIndexes(DataSource dataSource,
+                                 @Value("${app.users.identifier-indexes.lock-wait-ms:300000}") long lockWaitMillis){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        if(isPostgres()){
+            // A session lock on a connection of its own, the builds run on others as CONCURRENTLY can't be in a transaction
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                if(!tryLock(connection, lockWaitMillis)){
+                    log.warn("Another node has been building the identifier indexes for {} ms, starting without checking them", lockWaitMillis);
+                    return null;
+                }
+                try{
+                    createIndex("email");
+                    createIndex("username");
+                }finally{
+                    try(Statement statement = connection.createStatement()){
+                        statement.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+                    }
+                }
+                return null;
+            });
+        }
+    }
+
+    // Each attempt is a statement of its own in autocommit, no snapshot is held open between them
+    private static boolean tryLock(Connection connection, long waitMillis) throws SQLException {
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while(true){
+            try(Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")){
+                if(rs.next() && rs.getBoolean(1)){
+                    return true;
+                }
+            }
+            if(System.currentTimeMillis() >= deadline){
+                return false;
+            }
+            try{
+                Thread.sleep(LOCK_POLL_MILLIS);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private void createIndex(String column){
+        String unique = "uk_users_" + column + "_lower";
+        String plain = "idx_users_" + column + "_lower";
+        if(isValid(unique) || isValid(plain)){
+            return;
+        }
+        try{
+            jdbcTemplate.execute("CREATE UNIQUE INDEX CONCURRENTLY " + unique + " ON taskflow_auth.users (lower(" + column + "))");
+            log.info("Created unique index {} on lower({})", unique, column);
+        }catch(DataAccessException e){
+            // Drops what the failed build left behind, and only if it is not a usable index
+            if(isValid(unique)){
+                return;
+            }
+            Integer duplicates = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (SELECT lower(" + column + ") FROM taskflow_auth.users "
+                    + "GROUP BY lower(" + column + ") HAVING COUNT(*) > 1) d", Integer.class);
+            if(duplicates == null || duplicates == 0){
+                throw e;
+            }
+            log.warn("Could not create unique index {}, {} values of {} differ only in case. Creating the non unique {} instead",
+                    unique, duplicates, column, plain);
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY " + plain + " ON taskflow_auth.users (lower(" + column + "))");
+        }
+    }
+
+    // Drops the index if a failed build left it behind, returns whether a usable one exists
+    private boolean isValid(String index){
+        Boolean valid = jdbcTemplate.query("SELECT i.indisvalid FROM pg_index i WHERE i.indexrelid = to_regclass(?)",
+                rs -> rs.next() ? rs.getBoolean(1) : null, "taskflow_auth." + index);
+        if(Boolean.FALSE.equals(valid)){
+            jdbcTemplate.execute("DROP INDEX CONCURRENTLY IF EXISTS taskflow_auth." + index);
+            return false;
+        }
+        return valid != null;
+    }
+
+    private boolean isPostgres(){
+        try{
+            String product = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(), DatabaseMetaData::getDatabaseProductName);
+            return "PostgreSQL".equalsIgnoreCase(product);
+        }catch(MetaDataAccessException | DataAccessException e){
+            return false;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.TaskFlow.repo;
+
+import java.util.Locale;
+
+// Emails and usernames are matched case-insensitively: Bob@x.com and bob@x.com are the same user. Both are stored
+// the way they were registered, lookups compare lower(column) with the normalized identifier, which is what the
+// functional indexes of UserIdentifierIndexes serve. Usernames can't contain '@', so an identifier with one is an
+// email and only needs the email index.
+public final class UserIdentifiers {
+
+    private UserIdentifiers(){
+    }
+
+    public static String normalize(String identifier){
+        return identifier.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static boolean isEmail(String identifier){
+        return identifier.indexOf('@') >= 0;
+    }
+}
@@ -1,8 +1,16 @@
 package com.example.TaskFlow.repo;
 
 import com.example.TaskFlow.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -18,8 +26,68 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // It contains the full API of CrudRepository and PagingAndSortingRepository
     // It provides JPA related methods such as flushing the persistence context and delete records in a batch
 
-    Optional<User> findByEmailOrUsername(String identifier, String identifier2);
+    // The authentication path below only reads a few columns. Projections into records (or a single column)
+    // select just those, and Hibernate neither manages nor snapshots the result, there is no entity to dirty check.
+    // Declared query methods get no transaction from SimpleJpaRepository, readOnly = true gives them one that
+    // skips the flush and lets the driver treat the connection as read-only.
+
+    // Existence and status for JwtAuthFilter, through UserPrincipalCache
+    @Transactional(readOnly = true)
+    @Query("select new com.example.TaskFlow.repo.UserAuthStatus(u.id, u.isActive, u.isLocked, u.isDeleted) from User u where u.username = :username")
+    Optional<UserAuthStatus> findAuthStatusByUsername(@Param("username") String username);
+
+    // Username behind the identifier (email or username) for /auth/identify, case-insensitive.
+    // An OR over both columns can't be answered from either index alone, so the identifier goes to one index
+    // probe: an email to the email index, anything else to the username index. An identifier with '@' that
+    // matches no email still gets the username probe, usernames registered before '@' was rejected may have one.
+    default Optional<String> findUsernameByIdentifier(String identifier){
+        String normalized = UserIdentifiers.normalize(identifier);
+        if(UserIdentifiers.isEmail(normalized)){
+            List<String> byEmail = findUsernamesByNormalizedEmail(normalized, Limit.of(1));
+            if(!byEmail.isEmpty()){
+                return Optional.of(byEmail.get(0));
+            }
+        }
+        return findUsernamesByNormalizedUsername(normalized, Limit.of(1)).stream().findFirst();
+    }
+
+    // Id, password hash and lockout state for /auth/login
+    @Transactional(readOnly = true)
+    @Query("select new com.example.TaskFlow.repo.UserCredentials(u.id, u.passwordHash, u.failedLoginAttempts, u.isLocked) from User u where u.username = :username")
+    Optional<UserCredentials> findCredentialsByUsername(@Param("username") String username);
+
+    // Duplicate check of /auth/register, two index probes instead of an OR, same as above
+    default boolean existsByEmailOrUsername(String email, String username){
+        return !findUsernamesByNormalizedEmail(UserIdentifiers.normalize(email), Limit.of(1)).isEmpty()
+                || !findUsernamesByNormalizedUsername(UserIdentifiers.normalize(username), Limit.of(1)).isEmpty();
+    }
+
+    // Served by the lower(email) / lower(username) indexes of UserIdentifierIndexes, the argument must already be
+    // normalized. There is at most one match once those indexes are unique, before that the oldest user wins.
+    @Transactional(readOnly = true)
+    @Query("select u.username from User u where lower(u.email) = :email order by u.id")
+    List<String> findUsernamesByNormalizedEmail(@Param("email") String email, Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query("select u.username from User u where lower(u.username) = :username order by u.id")
+    List<String> findUsernamesByNormalizedUsername(@Param("username") String username, Limit limit);
+
+    // Full user, for /user/me. Loaded read-only, so Hibernate keeps no snapshot of it for dirty checking.
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
     Optional<User> findByUsername(String username);
     List<User> findAll();
 
+    // Keyset pagination: the next page starts after the last id of the previous one, served from the primary key
+    // index however deep the client pages, unlike an OFFSET that reads and discards every row before it
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<User> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Swaps the password hash only if it is still the one we read, so a concurrent password change wins
+    @Modifying
+    @Transactional
+    @Query("update User u set u.passwordHash = :newHash where u.id = :id and u.passwordHash = :oldHash")
+    int updatePasswordHash(@Param("id") Long id, @Param("oldHash") String oldHash, @Param("newHash") String newHash);
+
 }
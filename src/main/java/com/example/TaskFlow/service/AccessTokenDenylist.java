@@ -0,0 +1,202 @@
+package com.example.TaskFlow.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Access tokens revoked before their expiry (POST /auth/logout), by jti.
+// JwtAuthFilter and ReactiveJwtAuthFilter ask on every request. Nearly every token they see was never revoked,
+// and for those the answer comes from a Bloom filter of the revoked jtis (the Bits of UserIdentifierFilter):
+// a definite "no" after a few bit probes. Only a possible hit looks at the precise set of jti -> expiry.
+// A revocation is written to a table first, so it survives restarts and reaches every node: the set is loaded
+// from it at startup and every sync-interval-ms the rows revoked since the last sync are added. Until then a
+// token revoked on another node still works here, a few seconds at most.
+// Entries age out with their token, expired ones are dropped from the set and the table on every sync and the
+// filter is rebuilt from what is left, so it never fills up with tokens that can't be used anyway.
+@Service
+@DependsOn("entityManagerFactory")
+public class AccessTokenDenylist implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(AccessTokenDenylist.class);
+
+    // Rows revoked by another node slightly before our last sync may only become visible after it, and node
+    // clocks differ a little, so every sync reads back this far before the previous one
+    private static final long SYNC_OVERLAP_MILLIS = 60_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final long expectedRevocations;
+    private final double falsePositiveRate;
+    private final Clock clock;
+    // jti -> epoch millis at which its token expires
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong possibleHits = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong revocations = new AtomicLong();
+    private volatile UserIdentifierFilter.Bits bits;
+    // Set while a rebuild copies the set, revocations meanwhile go into both filters (see add)
+    private volatile UserIdentifierFilter.Bits building;
+    private long lastSync;
+    // Held by sync while it queries the table, a virtual thread running it unmounts while it waits
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    @Autowired
+    public AccessTokenDenylist(DataSource dataSource,
+                               @Value("${app.jwt.denylist.table:taskflow_auth.revoked_access_tokens}") String table,
+                               @Value("${app.jwt.denylist.expected-revocations:10000}") long expectedRevocations,
+                               @Value("${app.jwt.denylist.false-positive-rate:0.001}") double falsePositiveRate){
+        this(dataSource, table, expectedRevocations, falsePositiveRate, Clock.systemUTC());
+    }
+
+    AccessTokenDenylist(DataSource dataSource, String table, long expectedRevocations, double falsePositiveRate, Clock clock){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.table = table;
+        this.expectedRevocations = expectedRevocations;
+        this.falsePositiveRate = falsePositiveRate;
+        this.clock = clock;
+        this.bits = new UserIdentifierFilter.Bits(expectedRevocations, falsePositiveRate);
+        createTableIfMissing();
+        sync();
+    }
+
+    // True if the token with this jti was revoked and hasn't expired yet. Tokens without a jti predate revocation.
+    public boolean isRevoked(String jti){
+        if(jti == null){
+            return false;
+        }
+        checks.incrementAndGet();
+        if(!bits.mightContain(jti)){
+            return false;
+        }
+        possibleHits.incrementAndGet();
+        Long expiresAt = revoked.get(jti);
+        if(expiresAt == null || expiresAt < clock.millis()){
+            return false;
+        }
+        rejections.incrementAndGet();
+        return true;
+    }
+
+    // Denies the token from now on, on this node right away and on the others with their next sync
+    public void revoke(String jti, String username, long expiresAt){
+        long now = clock.millis();
+        if(jti == null || expiresAt < now){
+            return;
+        }
+        try{
+            jdbcTemplate.update("INSERT INTO " + table + " (jti, username, expires_at, revoked_at) VALUES (?, ?, ?, ?)",
+                    jti, username, expiresAt, now);
+        }catch(DuplicateKeyException e){
+            // Revoked twice, the first row stands
+        }
+        add(jti, expiresAt);
+        revocations.incrementAndGet();
+        log.info("Access Token {} of username {} revoked", jti, username);
+    }
+
+    // Adds what other nodes revoked since the last sync, then drops expired entries from the set, the filter
+    // and the table. Runs once from the constructor, which loads the whole denylist.
+    @Scheduled(fixedDelayString = "${app.jwt.denylist.sync-interval-ms:5000}")
+    public int sync(){
+        syncLock.lock();
+        try{
+            return syncRevocations();
+        }finally{
+            syncLock.unlock();
+        }
+    }
+
+    private int syncRevocations(){
+        long now = clock.millis();
+        long since = lastSync == 0 ? 0 : lastSync - SYNC_OVERLAP_MILLIS;
+        int[] read = {0};
+        jdbcTemplate.query("SELECT jti, expires_at FROM " + table + " WHERE revoked_at >= ? AND expires_at >= ?",
+                (RowCallbackHandler) rs -> {
+                    add(rs.getString(1), rs.getLong(2));
+                    read[0]++;
+                }, since, now);
+        lastSync = now;
+        if(revoked.values().removeIf(expiresAt -> expiresAt < now)){
+            rebuild();
+        }
+        jdbcTemplate.update("DELETE FROM " + table + " WHERE expires_at < ?", now);
+        return read[0];
+    }
+
+    public int size(){
+        return revoked.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        FunctionCounter.builder("auth.denylist.checks", checks, AtomicLong::get)
+                .description("Access tokens checked against the denylist")
+                .register(registry);
+        FunctionCounter.builder("auth.denylist.possible.hits", possibleHits, AtomicLong::get)
+                .description("Checks the Bloom filter couldn't rule out, each one a lookup in the precise set")
+                .register(registry);
+        FunctionCounter.builder("auth.denylist.rejections", rejections, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("auth.denylist.revocations", revocations, AtomicLong::get)
+                .register(registry);
+        Gauge.builder("auth.denylist.size", revoked, Map::size)
+                .description("Revoked access tokens that haven't expired yet")
+                .register(registry);
+    }
+
+    // The set first, a check that passes the filter must find the entry. building is read before bits, like
+    // UserIdentifierFilter.add, so a rebuild copying the set can't lose it.
+    private void add(String jti, long expiresAt){
+        if(revoked.put(jti, expiresAt) != null){
+            return;
+        }
+        UserIdentifierFilter.Bits next = building;
+        UserIdentifierFilter.Bits current = bits;
+        if(next != null){
+            next.put(jti);
+        }
+        current.put(jti);
+    }
+
+    // A fresh filter with only the entries still in the set, sized for twice as many
+    private void rebuild(){
+        UserIdentifierFilter.Bits next = new UserIdentifierFilter.Bits(Math.max(expectedRevocations, 2L * revoked.size()), falsePositiveRate);
+        building = next;
+        try{
+            revoked.keySet().forEach(next::put);
+            bits = next;
+        }finally{
+            building = null;
+        }
+    }
+
+    private void createTableIfMissing(){
+        String indexName = "idx_" + table.substring(table.lastIndexOf('.') + 1) + "_revoked_at";
+        // Times are epoch milliseconds, like the login flows and refresh token families
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "jti VARCHAR(36) PRIMARY KEY, "
+                + "username VARCHAR(255) NOT NULL, "
+                + "expires_at BIGINT NOT NULL, "
+                + "revoked_at BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + table + " (revoked_at)");
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.repo.UserCredentials;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Locks an account after max-failed-attempts wrong passwords in a row, across login flows, through the
+// failed_login_attempts, is_locked and locked_until columns. A successful login starts the count over. A lock lifts
+// itself duration-seconds after it was written (every flush first clears the locks whose locked_until has passed,
+// along with their count), an admin can lift it earlier (POST /admin/users/{username}/unlock). With a duration of 0
+// locked_until stays empty and only the admin unlocks.
+// Failed attempts are not written one by one: they are counted per username in memory and every
+// flush-interval-ms all counts go out as one JDBC batch of relative UPDATEs, so a brute force wave of any size
+// costs the database one batch per interval. Being relative, counts from several nodes add up in the table.
+// Login already reads both columns with the credentials, the count to compare is what is stored plus what is
+// still pending here, so the check needs no query of its own.
+// An account locked here is locked right away, before its flush: its username is kept in memory until every
+// principal that UserPrincipalCache could hold from before the lock has expired, which is what lets
+// JwtAuthFilter reject its tokens without a query too.
+@Service
+public class AccountLockoutService implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountLockoutService.class);
+
+    // Relative, so counts flushed by other nodes in the meantime are kept. A reset drops whatever was stored.
+    private static final String UPDATE = "UPDATE taskflow_auth.users SET "
+            + "failed_login_attempts = CASE WHEN ? THEN ? ELSE COALESCE(failed_login_attempts, 0) + ? END, "
+            + "is_locked = (COALESCE(is_locked, FALSE) OR ?), locked_until = COALESCE(?, locked_until) WHERE username = ?";
+    // Served locks, found through idx_users_locked_until
+    private static final String EXPIRED = "SELECT username FROM taskflow_auth.users WHERE locked_until <= ?";
+    private static final String LIFT = "UPDATE taskflow_auth.users SET is_locked = FALSE, failed_login_attempts = 0, "
+            + "locked_until = NULL WHERE locked_until <= ?";
+
+    // What happened to a user since the last flush. Immutable, replaced atomically in the map.
+    record Pending(boolean reset, int failures, boolean lock){
+
+        // This one followed by later, a reset in later discards what came before it
+        Pending then(Pending later){
+            return later.reset ? later : new Pending(reset, failures + later.failures, lock || later.lock);
+        }
+    }
+
+    private static final Pending FAILURE = new Pending(false, 1, false);
+    private static final Pending RESET = new Pending(true, 0, false);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final UserPrincipalCache principalCache;
+    private final int maxFailedAttempts;
+    private final long lockMillis;
+    private final Clock clock;
+    // A concurrent hash map updates each key under the lock of its own bin, so concurrent failures of different
+    // users never contend and those of one user are merged without a lost update
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Cache<String, Boolean> recentlyLocked;
+    // Held by flush and unlock while they write, a lock rather than synchronized so a virtual thread waiting on
+    // the database unmounts from its carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong locks = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    @Autowired
+    public AccountLockoutService(DataSource dataSource, PlatformTransactionManager transactionManager, UserPrincipalCache principalCache,
+                                 @Value("${app.auth.lockout.max-failed-attempts:5}") int maxFailedAttempts,
+                                 @Value("${app.auth.lockout.duration-seconds:900}") long lockSeconds,
+                                 @Value("${app.auth.principal-cache.ttl-seconds:30}") long principalTtlSeconds){
+        this(dataSource, transactionManager, principalCache, maxFailedAttempts, lockSeconds, principalTtlSeconds, Clock.systemUTC());
+    }
+
+    AccountLockoutService(DataSource dataSource, PlatformTransactionManager transactionManager, UserPrincipalCache principalCache,
+                          int maxFailedAttempts, long lockSeconds, long principalTtlSeconds, Clock clock){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.principalCache = principalCache;
+        this.maxFailedAttempts = maxFailedAttempts;
+        this.lockMillis = Math.max(0, lockSeconds) * 1000;
+        this.clock = clock;
+        // Twice the principal TTL, a principal loaded just before the lock was flushed may be cached a little after it,
+        // but never longer than the lock itself
+        long rememberSeconds = lockSeconds > 0 ? Math.min(2 * principalTtlSeconds, lockSeconds) : 2 * principalTtlSeconds;
+        this.recentlyLocked = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(rememberSeconds))
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+                .build();
+    }
+
+    // For login, with the credentials it just read
+    public boolean isLocked(String username, UserCredentials credentials){
+        return credentials.locked() || isLocked(username);
+    }
+
+    // For the JWT filters, in memory only. Accounts locked longer ago are rejected through their cached principal.
+    public boolean isLocked(String username){
+        return username != null && recentlyLocked.getIfPresent(username) != null;
+    }
+
+    // A wrong password. Returns true if this attempt locked the account.
+    public boolean recordFailure(String username, UserCredentials credentials){
+        failures.incrementAndGet();
+        Pending now = pending.merge(username, FAILURE, Pending::then);
+        int attempts = (now.reset ? 0 : credentials.failedAttempts()) + now.failures;
+        if(attempts < maxFailedAttempts || now.lock){
+            return false;
+        }
+        pending.merge(username, new Pending(false, 0, true), Pending::then);
+        recentlyLocked.put(username, Boolean.TRUE);
+        locks.incrementAndGet();
+        log.warn("Account {} locked after {} failed login attempts", username, attempts);
+        return true;
+    }
+
+    // A correct password, only written when there is a count to reset
+    public void recordSuccess(String username, UserCredentials credentials){
+        if(credentials.failedAttempts() > 0 || pending.containsKey(username)){
+            pending.merge(username, RESET, Pending::then);
+        }
+    }
+
+    // Clears the lock and the count, false if there is no such user. Serialized with flush, so a lock it is
+    // writing can't land after the unlock.
+    public boolean unlock(String username){
+        writeLock.lock();
+        try{
+            return clear(username);
+        }finally{
+            writeLock.unlock();
+        }
+    }
+
+    private boolean clear(String username){
+        pending.remove(username);
+        int updated = jdbcTemplate.update("UPDATE taskflow_auth.users SET is_locked = FALSE, failed_login_attempts = 0, "
+                + "locked_until = NULL WHERE username = ?", username);
+        recentlyLocked.invalidate(username);
+        principalCache.invalidate(username);
+        if(updated > 0){
+            log.info("Account {} unlocked", username);
+        }
+        return updated > 0;
+    }
+
+    // Lifts the expired locks, then takes every pending change out of the map (later ones start new entries) and
+    // writes them in one batch. If the batch fails they are merged back in front of anything recorded meanwhile and
+    // retried next time. A lock is written to last duration-seconds from this flush, at most one interval late.
+    // Login turns a locked account away before its password is checked, so the failures of an account whose lock
+    // just expired are all recorded after it and reach the table only after this flush has reset its count.
+    @Scheduled(fixedDelayString = "${app.auth.lockout.flush-interval-ms:1000}")
+    public int flush(){
+        writeLock.lock();
+        try{
+            return flushPending();
+        }finally{
+            writeLock.unlock();
+        }
+    }
+
+    private int flushPending(){
+        liftExpiredLocks();
+        if(pending.isEmpty()){
+            return 0;
+        }
+        List<Map.Entry<String, Pending>> changes = new ArrayList<>(pending.size());
+        for(String username : pending.keySet()){
+            Pending change = pending.remove(username);
+            if(change != null){
+                changes.add(Map.entry(username, change));
+            }
+        }
+        long lockedUntil = clock.millis() + lockMillis;
+        try{
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPDATE, changes, changes.size(), (ps, entry) -> {
+                Pending change = entry.getValue();
+                ps.setBoolean(1, change.reset);
+                ps.setInt(2, change.failures);
+                ps.setInt(3, change.failures);
+                ps.setBoolean(4, change.lock);
+                if(change.lock && lockMillis > 0){
+                    ps.setLong(5, lockedUntil);
+                }else{
+                    ps.setNull(5, Types.BIGINT);
+                }
+                ps.setString(6, entry.getKey());
+            }));
+        }catch(RuntimeException e){
+            for(Map.Entry<String, Pending> entry : changes){
+                pending.merge(entry.getKey(), entry.getValue(), (later, flushed) -> flushed.then(later));
+            }
+            log.warn("Could not flush {} failed login counts, retrying with the next flush", changes.size(), e);
+            return 0;
+        }
+        for(Map.Entry<String, Pending> entry : changes){
+            if(entry.getValue().lock){
+                // Starts the in-memory lock over, the stored one is now what the principal cache will load
+                recentlyLocked.put(entry.getKey(), Boolean.TRUE);
+            }
+        }
+        flushes.incrementAndGet();
+        flushedRows.addAndGet(changes.size());
+        return changes.size();
+    }
+
+    // Usually finds nothing, one range scan of idx_users_locked_until
+    private void liftExpiredLocks(){
+        long now = clock.millis();
+        try{
+            List<String> usernames = jdbcTemplate.queryForList(EXPIRED, String.class, now);
+            if(usernames.isEmpty()){
+                return;
+            }
+            jdbcTemplate.update(LIFT, now);
+            for(String username : usernames){
+                recentlyLocked.invalidate(username);
+                principalCache.invalidate(username);
+            }
+            expired.addAndGet(usernames.size());
+            log.info("Lock of {} accounts expired", usernames.size());
+        }catch(DataAccessException e){
+            log.warn("Could not lift expired account locks, retrying with the next flush", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        flush();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        FunctionCounter.builder("auth.lockout.failures", failures, AtomicLong::get)
+                .description("Wrong passwords counted towards a lockout")
+                .register(registry);
+        FunctionCounter.builder("auth.lockout.locks", locks, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("auth.lockout.expired", expired, AtomicLong::get)
+                .description("Locks lifted after app.auth.lockout.duration-seconds")
+                .register(registry);
+        FunctionCounter.builder("auth.lockout.flushes", flushes, AtomicLong::get)
+                .description("Batched UPDATEs of failed login counts")
+                .register(registry);
+        FunctionCounter.builder("auth.lockout.flushed.rows", flushedRows, AtomicLong::get)
+                .register(registry);
+        Gauge.builder("auth.lockout.pending", pending, Map::size)
+                .description("Users with failed login counts not written yet")
+                .register(registry);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.ErrorCode;
+import com.example.TaskFlow.exception.RetryLaterException;
+import com.example.TaskFlow.repo.UserIdentifiers;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Throttles /auth/identify and /auth/login before they reach the database or the BCrypt pool.
+// The 3 attempts per login flow alone don't stop anyone, a new flow is one identify call away. So every call
+// also takes a token from the bucket of the client address, and from the bucket of the identifier it is about:
+// the identifier sent to identify, the flow's username on login. A client spraying many accounts runs out of
+// its address budget, many addresses guessing one account run out of that account's budget.
+// Over the limit the request is answered with 429 and a Retry-After header.
+// The client address is the connection's remote address. Behind a proxy or load balancer that's the proxy,
+// set server.forward-headers-strategy so it is taken from the forwarded headers instead.
+@Service
+public class AuthRateLimiter implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthRateLimiter.class);
+
+    private final boolean enabled;
+    private final TokenBucketRateLimiter clients;
+    private final TokenBucketRateLimiter identifiers;
+
+    @Autowired
+    public AuthRateLimiter(@Value("${app.auth.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${app.auth.rate-limit.client.capacity:30}") long clientCapacity,
+                           @Value("${app.auth.rate-limit.client.refill-per-minute:30}") long clientRefillPerMinute,
+                           @Value("${app.auth.rate-limit.identifier.capacity:10}") long identifierCapacity,
+                           @Value("${app.auth.rate-limit.identifier.refill-per-minute:5}") long identifierRefillPerMinute,
+                           @Value("${app.auth.rate-limit.max-keys:100000}") long maxKeys){
+        this(enabled,
+                new TokenBucketRateLimiter("client", clientCapacity, clientRefillPerMinute, maxKeys, Clock.systemUTC()),
+                new TokenBucketRateLimiter("identifier", identifierCapacity, identifierRefillPerMinute, maxKeys, Clock.systemUTC()));
+    }
+
+    AuthRateLimiter(boolean enabled, TokenBucketRateLimiter clients, TokenBucketRateLimiter identifiers){
+        this.enabled = enabled;
+        this.clients = clients;
+        this.identifiers = identifiers;
+    }
+
+    // First thing identify and login do, throws a 429 when the client address is over its limit
+    public void checkClient(String address){
+        check(clients, address == null ? "unknown" : address);
+    }
+
+    // Same for the email or username a request is about, case doesn't matter
+    public void checkIdentifier(String identifier){
+        if(identifier != null){
+            check(identifiers, UserIdentifiers.normalize(identifier));
+        }
+    }
+
+    public List<TokenBucketRateLimiter> limiters(){
+        return List.of(clients, identifiers);
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    // auth.ratelimit.requests{limiter, outcome=allowed|rejected} and auth.ratelimit.keys{limiter}
+    @Override
+    public void bindTo(MeterRegistry registry){
+        for(TokenBucketRateLimiter limiter : limiters()){
+            FunctionCounter.builder("auth.ratelimit.requests", limiter, TokenBucketRateLimiter::allowedCount)
+                    .tags("limiter", limiter.name(), "outcome", "allowed")
+                    .register(registry);
+            FunctionCounter.builder("auth.ratelimit.requests", limiter, TokenBucketRateLimiter::rejectedCount)
+                    .tags("limiter", limiter.name(), "outcome", "rejected")
+                    .register(registry);
+            Gauge.builder("auth.ratelimit.keys", limiter, TokenBucketRateLimiter::trackedKeys)
+                    .tags("limiter", limiter.name())
+                    .description("Keys with a bucket that isn't full")
+                    .register(registry);
+        }
+    }
+
+    private void check(TokenBucketRateLimiter limiter, String key){
+        if(!enabled){
+            return;
+        }
+        long waitMicros = limiter.tryAcquire(key);
+        if(waitMicros > 0){
+            log.debug("Rate limit {} exceeded for {}", limiter.name(), key);
+            long retryAfterSeconds = Math.max(1, (waitMicros + TimeUnit.SECONDS.toMicros(1) - 1) / TimeUnit.SECONDS.toMicros(1));
+            throw new RetryLaterException(ErrorCode.TOO_MANY_REQUESTS.getStatus(), ErrorCode.TOO_MANY_REQUESTS.getMessage(), retryAfterSeconds);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.ErrorCode;
+import com.example.TaskFlow.exception.RetryLaterException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// PasswordEncoder that runs the wrapped (BCrypt) encoder on its own small pool instead of the request thread.
+// BCrypt is deliberately slow and purely CPU bound, running it on the Tomcat workers lets a burst of logins
+// occupy every worker and starve cheap endpoints. Here at most one hash per core runs at a time, a bounded
+// number of requests wait in the queue, and everything beyond that is answered right away with a 503 and
+// Retry-After instead of piling up. A blocking caller waits at most timeout for its hash and gets the same 503
+// after that, so a stuck pool can't hold request threads forever.
+//
+// Metrics: the executor gauges (queued, active, completed) under "auth.password-hashing", the hash time itself
+// in the "auth.password-hashing.duration" timer and the time spent queued in "auth.password-hashing.wait",
+// both tagged with the operation, rejected requests in "auth.password-hashing.rejected" and callers that
+// gave up waiting in "auth.password-hashing.timeouts".
+public class BoundedPasswordEncoder implements PasswordEncoder, MeterBinder, AutoCloseable {
+
+    private static final String METRIC_PREFIX = "auth.password-hashing";
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long retryAfterSeconds;
+    private final long timeoutNanos;
+
+    // Set once the meter registry binds us, until then nothing is recorded
+    private volatile Timer encodeTimer;
+    private volatile Timer matchesTimer;
+    private volatile Timer encodeWaitTimer;
+    private volatile Timer matchesWaitTimer;
+    private volatile Counter rejected;
+    private volatile Counter timeouts;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, long retryAfterSeconds){
+        this(delegate, threads, queueCapacity, retryAfterSeconds, Duration.ofSeconds(30));
+    }
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, long retryAfterSeconds, Duration timeout){
+        this.delegate = delegate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.timeoutNanos = timeout.toNanos();
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Fixed size, a full queue makes execute() throw RejectedExecutionException (AbortPolicy)
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.prestartAllCoreThreads();
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword){
+        return await(encodeAsync(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword){
+        return await(matchesAsync(rawPassword, encodedPassword));
+    }
+
+    // Non-blocking variants for callers that must not wait on their own thread, such as the reactive handlers.
+    // A full queue completes the future with a RetryLaterException instead of throwing.
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword){
+        return submit(() -> delegate.encode(rawPassword), encodeTimer, encodeWaitTimer);
+    }
+
+    public CompletableFuture<Boolean> matchesAsync(CharSequence rawPassword, String encodedPassword){
+        return submit(() -> delegate.matches(rawPassword, encodedPassword), matchesTimer, matchesWaitTimer);
+    }
+
+    // Only inspects the stored hash, no point in queueing it
+    @Override
+    public boolean upgradeEncoding(String encodedPassword){
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    // Requests waiting for a hashing thread right now
+    public int queueDepth(){
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        new ExecutorServiceMetrics(executor, METRIC_PREFIX, Tags.empty()).bindTo(registry);
+        encodeTimer = timer(registry, METRIC_PREFIX + ".duration", "encode");
+        matchesTimer = timer(registry, METRIC_PREFIX + ".duration", "matches");
+        encodeWaitTimer = timer(registry, METRIC_PREFIX + ".wait", "encode");
+        matchesWaitTimer = timer(registry, METRIC_PREFIX + ".wait", "matches");
+        rejected = Counter.builder(METRIC_PREFIX + ".rejected")
+                .description("Password hashing requests rejected because the queue was full")
+                .register(registry);
+        timeouts = Counter.builder(METRIC_PREFIX + ".timeouts")
+                .description("Password hashing requests given up on after waiting for the timeout")
+                .register(registry);
+    }
+
+    @Override
+    public void close(){
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> hashing, Timer durationTimer, Timer waitTimer){
+        long submittedAt = System.nanoTime();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try{
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                T value = null;
+                Throwable failure = null;
+                try{
+                    value = hashing.call();
+                }catch(Throwable e){
+                    failure = e;
+                }
+                // Recorded before completing, so whoever waits on the result sees the metrics already updated
+                record(waitTimer, startedAt - submittedAt);
+                record(durationTimer, System.nanoTime() - startedAt);
+                if(failure == null){
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(failure);
+                }
+            });
+        }catch(RejectedExecutionException e){
+            Counter counter = rejected;
+            if(counter != null){
+                counter.increment();
+            }
+            result.completeExceptionally(busy());
+        }
+        return result;
+    }
+
+    private <T> T await(CompletableFuture<T> result){
+        try{
+            return result.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        }catch(TimeoutException e){
+            // Still runs if it was picked up already, its result is dropped
+            result.cancel(false);
+            Counter counter = timeouts;
+            if(counter != null){
+                counter.increment();
+            }
+            throw busy();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw busy();
+        }catch(ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException runtimeException){
+                throw runtimeException;
+            }
+            if(cause instanceof Error error){
+                throw error;
+            }
+            throw new IllegalStateException("Password hashing failed", cause);
+        }
+    }
+
+    private RetryLaterException busy(){
+        return new RetryLaterException(ErrorCode.PASSWORD_HASHING_BUSY.getStatus(), ErrorCode.PASSWORD_HASHING_BUSY.getMessage(), retryAfterSeconds);
+    }
+
+    private static Timer timer(MeterRegistry registry, String name, String operation){
+        return Timer.builder(name)
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static void record(Timer timer, long nanos){
+        if(timer != null){
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
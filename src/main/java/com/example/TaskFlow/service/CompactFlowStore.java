@@ -0,0 +1,57 @@
+package com.example.TaskFlow.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Optional;
+
+// FlowStore backed by a CompactLoginFlowTable, a few dozen bytes per pending flow.
+// The Flow objects it hands out are short-lived views of a table slot, attempts are counted in the table.
+public class CompactFlowStore implements FlowStore {
+
+    private final CompactLoginFlowTable table;
+
+    public CompactFlowStore(long ttlSeconds, int maxFlows, Clock clock){
+        this.table = new CompactLoginFlowTable(maxFlows, ttlSeconds, clock);
+    }
+
+    @Override
+    public LoginFlowService.Flow create(String username){
+        CompactLoginFlowTable.Entry entry = table.create(username);
+        if(entry == null){
+            throw FlowStore.capacityReached();
+        }
+        return view(entry);
+    }
+
+    @Override
+    public Optional<LoginFlowService.Flow> get(String flowId){
+        return Optional.ofNullable(table.get(flowId)).map(CompactFlowStore::view);
+    }
+
+    @Override
+    public int registerAttempt(LoginFlowService.Flow flow){
+        int attempts = table.incrementAttempts(flow.id);
+        return attempts < 0 ? Integer.MAX_VALUE : attempts;
+    }
+
+    @Override
+    public void delete(String flowId){
+        table.delete(flowId);
+    }
+
+    @Override
+    public void sweepExpired(){
+        table.sweepExpired();
+    }
+
+    @Override
+    public int size(){
+        return table.size();
+    }
+
+    private static LoginFlowService.Flow view(CompactLoginFlowTable.Entry entry){
+        LoginFlowService.Flow flow = new LoginFlowService.Flow(entry.id(), entry.username(), Instant.ofEpochSecond(entry.expiresAtEpochSecond()));
+        flow.attempts.set(entry.attempts());
+        return flow;
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.TaskFlow.service;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Login flows kept in flat primitive arrays instead of one Flow object, UUID String and Instant per flow.
+// A flow costs one slot: the flow id as two longs, an int id of the interned username, the expiry as an int
+// number of seconds and the attempts as a byte, about 25 bytes (35 with the table's free space) against the
+// several hundred bytes of a ConcurrentHashMap entry. The arrays are allocated once, so millions of pending
+// flows are a handful of large arrays for the GC instead of millions of small objects.
+//
+// The table is split into segments, each an open addressing hash table with linear probing guarded by its own lock.
+// Removal uses backward shift deletion, so there are no tombstones and lookups stay short after a sweep.
+public final class CompactLoginFlowTable {
+
+    private static final int SEGMENTS = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // Snapshot of one slot handed out by create()/get()
+    public record Entry(String id, String username, long expiresAtEpochSecond, int attempts){ }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final UsernameRegistry usernames = new UsernameRegistry();
+    private final long ttlSeconds;
+    private final Clock clock;
+    // Expiry is stored relative to this second, plus one so that 0 can mean "free slot"
+    private final long baseEpochSecond;
+    private final int capacity;
+    private final int capacityPerSegment;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public CompactLoginFlowTable(int capacity, long ttlSeconds, Clock clock){
+        this.ttlSeconds = ttlSeconds;
+        this.clock = clock;
+        this.baseEpochSecond = clock.instant().getEpochSecond() - 1;
+        this.capacity = capacity;
+        // Random ids don't spread perfectly evenly, so each segment gets room for four standard deviations
+        // above its share. The hard limit is the table wide capacity.
+        double share = (double) capacity / SEGMENTS;
+        this.capacityPerSegment = (int) Math.ceil(share + 4 * Math.sqrt(share)) + 8;
+        int slots = (int) Math.ceil(capacityPerSegment / LOAD_FACTOR) + 1;
+        for(int i = 0; i < SEGMENTS; i++){
+            segments[i] = new Segment(slots);
+        }
+    }
+
+    // Returns null when the table (or, very unlikely, the segment of the new id) is full
+    public Entry create(String username){
+        if(size.incrementAndGet() > capacity){
+            size.decrementAndGet();
+            return null;
+        }
+        UUID uuid = UUID.randomUUID();
+        long hi = uuid.getMostSignificantBits();
+        long lo = uuid.getLeastSignificantBits();
+        long expiresAt = now() + ttlSeconds;
+        int user = usernames.intern(username);
+        if(!segmentFor(hi, lo).insert(hi, lo, user, encode(expiresAt))){
+            size.decrementAndGet();
+            return null;
+        }
+        return new Entry(uuid.toString(), username, expiresAt, 0);
+    }
+
+    public Entry get(String flowId){
+        UUID uuid = parse(flowId);
+        if(uuid == null){
+            return null;
+        }
+        return segmentFor(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())
+                .get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), flowId);
+    }
+
+    // Adds one attempt and returns the new count, or -1 if the flow is gone or expired.
+    // The byte saturates at Byte.MAX_VALUE, far above any attempt limit.
+    public int incrementAttempts(String flowId){
+        UUID uuid = parse(flowId);
+        if(uuid == null){
+            return -1;
+        }
+        return segmentFor(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())
+                .incrementAttempts(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public void delete(String flowId){
+        UUID uuid = parse(flowId);
+        if(uuid != null){
+            segmentFor(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())
+                    .delete(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+    }
+
+    // Removes every expired flow, one segment at a time. Returns the number of flows removed.
+    public int sweepExpired(){
+        int removed = 0;
+        int nowEncoded = encode(now());
+        for(Segment segment : segments){
+            removed += segment.sweep(nowEncoded);
+        }
+        return removed;
+    }
+
+    public int size(){
+        return size.get();
+    }
+
+    private Segment segmentFor(long hi, long lo){
+        // The top 6 bits of the hash pick the segment, home() inside the segment uses the low 32 bits
+        return segments[(int) (mix(hi, lo) >>> 58)];
+    }
+
+    private long now(){
+        return clock.instant().getEpochSecond();
+    }
+
+    private int encode(long epochSecond){
+        return (int) (epochSecond - baseEpochSecond);
+    }
+
+    private long decode(int expiry){
+        return expiry + baseEpochSecond;
+    }
+
+    private static UUID parse(String flowId){
+        if(flowId == null || flowId.length() != 36){
+            return null;
+        }
+        try{
+            return UUID.fromString(flowId);
+        }catch(IllegalArgumentException e){
+            return null;
+        }
+    }
+
+    // Murmur3 64 bit finalizer over both halves of the id
+    private static long mix(long hi, long lo){
+        long h = hi ^ Long.rotateLeft(lo, 32);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private final class Segment {
+        private final long[] idHi;
+        private final long[] idLo;
+        private final int[] user;
+        private final int[] expiry; // 0 means free
+        private final byte[] attempts;
+        private final int slots;
+        private int used;
+
+        Segment(int slots){
+            idHi = new long[slots];
+            idLo = new long[slots];
+            user = new int[slots];
+            expiry = new int[slots];
+            attempts = new byte[slots];
+            this.slots = slots;
+        }
+
+        synchronized boolean insert(long hi, long lo, int userId, int expiresAt){
+            if(used >= capacityPerSegment){
+                return false;
+            }
+            int i = home(hi, lo);
+            while(expiry[i] != 0){
+                i = next(i);
+            }
+            idHi[i] = hi;
+            idLo[i] = lo;
+            user[i] = userId;
+            expiry[i] = expiresAt;
+            attempts[i] = 0;
+            used++;
+            return true;
+        }
+
+        synchronized Entry get(long hi, long lo, String flowId){
+            int i = find(hi, lo);
+            if(i < 0 || expiry[i] < encode(now())){
+                return null;
+            }
+            return new Entry(flowId, usernames.name(user[i]), decode(expiry[i]), attempts[i]);
+        }
+
+        synchronized int incrementAttempts(long hi, long lo){
+            int i = find(hi, lo);
+            if(i < 0 || expiry[i] < encode(now())){
+                return -1;
+            }
+            if(attempts[i] < Byte.MAX_VALUE){
+                attempts[i]++;
+            }
+            return attempts[i];
+        }
+
+        synchronized void delete(long hi, long lo){
+            int i = find(hi, lo);
+            if(i >= 0){
+                removeAt(i);
+            }
+        }
+
+        synchronized int sweep(int nowEncoded){
+            int removed = 0;
+            int i = 0;
+            while(i < expiry.length){
+                if(expiry[i] != 0 && expiry[i] < nowEncoded){
+                    // removeAt may shift a later entry into slot i, so look at i again
+                    removeAt(i);
+                    removed++;
+                } else {
+                    i++;
+                }
+            }
+            return removed;
+        }
+
+        private int find(long hi, long lo){
+            int i = home(hi, lo);
+            while(expiry[i] != 0){
+                if(idHi[i] == hi && idLo[i] == lo){
+                    return i;
+                }
+                i = next(i);
+            }
+            return -1;
+        }
+
+        // Maps the low 32 bits of the hash onto [0, slots) with a multiply and shift instead of a modulo,
+        // which lets the table have any size instead of a power of two
+        private int home(long hi, long lo){
+            return (int) (((mix(hi, lo) & 0xFFFFFFFFL) * slots) >>> 32);
+        }
+
+        private int next(int i){
+            return i + 1 == slots ? 0 : i + 1;
+        }
+
+        // Backward shift deletion: entries after the hole move back into it unless their home slot
+        // lies cyclically between the hole and their current position.
+        private void removeAt(int hole){
+            int j = hole;
+            while(true){
+                j = next(j);
+                if(expiry[j] == 0){
+                    break;
+                }
+                int home = home(idHi[j], idLo[j]);
+                boolean stays = hole <= j
+                        ? (hole < home && home <= j)
+                        : (hole < home || home <= j);
+                if(!stays){
+                    idHi[hole] = idHi[j];
+                    idLo[hole] = idLo[j];
+                    user[hole] = user[j];
+                    expiry[hole] = expiry[j];
+                    attempts[hole] = attempts[j];
+                    hole = j;
+                }
+            }
+            expiry[hole] = 0;
+            used--;
+            size.decrementAndGet();
+        }
+    }
+
+    // Maps each distinct username to a small int so a flow only stores 4 bytes for it.
+    // Flows can only be created for existing users, so this grows with the user base, not with the flows.
+    private static final class UsernameRegistry {
+        private final Map<String,Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] names = new String[1024];
+        private int next;
+
+        int intern(String username){
+            Integer id = ids.get(username);
+            return id != null ? id : register(username);
+        }
+
+        String name(int id){
+            return names[id];
+        }
+
+        private synchronized int register(String username){
+            Integer id = ids.get(username);
+            if(id != null){
+                return id;
+            }
+            if(next == names.length){
+                names = Arrays.copyOf(names, names.length * 2);
+            }
+            String[] current = names;
+            current[next] = username;
+            // Re-publish the array so readers on other threads see the new name before its id
+            names = current;
+            ids.put(username, next);
+            return next++;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.TaskFlow.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads RFC 4180 CSV one record at a time: comma separated, fields optionally in double quotes, "" for a quote
+// inside a quoted field, which may also span lines. Records end with LF or CRLF, blank lines are skipped.
+// Only what the bulk import needs, so no other separators and no comments.
+class CsvRecordReader {
+
+    private final Reader reader;
+    private int peeked = -2;
+
+    CsvRecordReader(Reader reader){
+        this.reader = reader;
+    }
+
+    // The fields of the next record, null at the end of the input
+    List<String> next() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean sawAnything = false;
+        int c;
+        while((c = read()) != -1){
+            if(quoted){
+                if(c == '"'){
+                    if(peek() == '"'){
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+                continue;
+            }
+            if(c == '"'){
+                quoted = true;
+                sawAnything = true;
+            } else if(c == ','){
+                fields.add(field.toString());
+                field.setLength(0);
+                sawAnything = true;
+            } else if(c == '\n' || c == '\r'){
+                if(c == '\r' && peek() == '\n'){
+                    read();
+                }
+                if(sawAnything || field.length() > 0){
+                    fields.add(field.toString());
+                    return fields;
+                }
+            } else {
+                field.append((char) c);
+                sawAnything = true;
+            }
+        }
+        if(quoted){
+            throw new IOException("Unterminated quoted field");
+        }
+        if(sawAnything || field.length() > 0){
+            fields.add(field.toString());
+            return fields;
+        }
+        return null;
+    }
+
+    private int read() throws IOException {
+        if(peeked != -2){
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if(peeked == -2){
+            peeked = reader.read();
+        }
+        return peeked;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.ErrorCode;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Optional;
+
+// Storage behind LoginFlowService.
+// The in-memory stores keep the flows of one JVM, the JDBC store shares them between every node
+// so /auth/identify and /auth/login can be served by different instances.
+// The token store keeps no flows at all, the flow id is a signed token verified on login.
+// Selected with app.login-flow.store (map, compact, jdbc or token), see FlowStoreConfig.
+public interface FlowStore {
+
+    // Creates a flow for the username. Throws a 503 ResponseStatusException when the store is full.
+    LoginFlowService.Flow create(String username);
+
+    // Returns the flow if it exists and has not expired
+    Optional<LoginFlowService.Flow> get(String flowId);
+
+    // Counts one password attempt and returns the attempts so far, Integer.MAX_VALUE if the flow is gone
+    int registerAttempt(LoginFlowService.Flow flow);
+
+    void delete(String flowId);
+
+    // Deletes a flow returned by get(), stores that can use what the Flow already holds override this
+    default void delete(LoginFlowService.Flow flow){
+        delete(flow.id);
+    }
+
+    // Removes expired flows, called periodically by LoginFlowService
+    void sweepExpired();
+
+    // Number of flows held, expired ones included until they are swept
+    int size();
+
+    // True when the calls above wait on I/O, the reactive handlers then move them off the event loop
+    default boolean isBlocking(){
+        return false;
+    }
+
+    static ResponseStatusException capacityReached(){
+        return new ResponseStatusException(ErrorCode.LOGIN_FLOW_CAPACITY_REACHED.getStatus(),ErrorCode.LOGIN_FLOW_CAPACITY_REACHED.getMessage());
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.TaskFlow.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Default FlowStore. Flows are kept in a ConcurrentHashMap of this JVM.
+// The store is bounded and cleans itself up: every flow id is also put in a timing wheel slot for the second
+// it expires in, and sweepExpired() walks the slots of the seconds that have passed and drops the expired flows.
+// Nothing has to call delete() for the memory to be released.
+public class InMemoryFlowStore implements FlowStore {
+
+    // Flow that remembers its timing wheel slot, so delete() can find it without a scan
+    private static final class WheelFlow extends LoginFlowService.Flow {
+        final int slot;
+
+        WheelFlow(String id, String username, Instant expiresAt, int slot){
+            super(id, username, expiresAt);
+            this.slot = slot;
+        }
+    }
+
+    private final Map<String,WheelFlow> store = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final long ttlSeconds;
+    private final int maxFlows;
+    private final Clock clock;
+
+    // One slot per second. A flow created now expires at most ttlSeconds ahead,
+    // so ttlSeconds + 2 slots never mix the second being swept with a future second.
+    private final Set<String>[] wheel;
+    private long sweptUpTo;
+
+    @SuppressWarnings("unchecked")
+    public InMemoryFlowStore(long ttlSeconds, int maxFlows, Clock clock){
+        this.ttlSeconds = ttlSeconds;
+        this.maxFlows = maxFlows;
+        this.clock = clock;
+        this.wheel = new Set[(int) ttlSeconds + 2];
+        for(int i = 0; i < wheel.length; i++){
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        this.sweptUpTo = clock.instant().getEpochSecond();
+    }
+
+    @Override
+    public LoginFlowService.Flow create(String username){
+        reserveCapacity();
+        String flowId = UUID.randomUUID().toString();
+        Instant expiresAt = clock.instant().plusSeconds(ttlSeconds);
+        int slot = slotOf(expiresAt.getEpochSecond());
+        WheelFlow flow = new WheelFlow(flowId,username,expiresAt,slot);
+        wheel[slot].add(flowId);
+        store.put(flowId,flow);
+        return flow;
+    }
+
+    @Override
+    public Optional<LoginFlowService.Flow> get(String flowId){
+        WheelFlow flow = store.get(flowId);
+        if(flow == null){
+            return Optional.empty();
+        }
+        if(clock.instant().isAfter(flow.expiresAt)){
+            delete(flowId);
+            return Optional.empty();
+        }
+        return Optional.of(flow);
+    }
+
+    @Override
+    public int registerAttempt(LoginFlowService.Flow flow){
+        return flow.attempts.incrementAndGet();
+    }
+
+    @Override
+    public void delete(String flowId){
+        WheelFlow flow = store.remove(flowId);
+        if(flow != null){
+            wheel[flow.slot].remove(flowId);
+            size.decrementAndGet();
+        }
+    }
+
+    @Override
+    public int size(){
+        return size.get();
+    }
+
+    // Walks the wheel slots of every second since the last sweep and removes the flows that expired.
+    // Ids whose flow is still alive belong to a later lap of the wheel and stay in their slot.
+    @Override
+    public synchronized void sweepExpired(){
+        Instant now = clock.instant();
+        long nowSecond = now.getEpochSecond();
+        long from = Math.max(sweptUpTo, nowSecond - wheel.length + 1);
+        for(long second = from; second <= nowSecond; second++){
+            Set<String> slot = wheel[slotOf(second)];
+            for(String flowId : slot){
+                WheelFlow flow = store.get(flowId);
+                if(flow == null){
+                    slot.remove(flowId);
+                } else if(now.isAfter(flow.expiresAt)){
+                    delete(flowId);
+                }
+            }
+        }
+        sweptUpTo = nowSecond;
+    }
+
+    // Takes one slot of the capacity. When the store is full the expired flows are swept right away,
+    // if that doesn't free anything the identify request is rejected instead of growing the heap.
+    private void reserveCapacity(){
+        if(size.incrementAndGet() <= maxFlows){
+            return;
+        }
+        size.decrementAndGet();
+        sweepExpired();
+        if(size.incrementAndGet() > maxFlows){
+            size.decrementAndGet();
+            throw FlowStore.capacityReached();
+        }
+    }
+
+    private int slotOf(long epochSecond){
+        return (int) Math.floorMod(epochSecond, (long) wheel.length);
+    }
+}
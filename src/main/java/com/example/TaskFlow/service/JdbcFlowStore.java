@@ -0,0 +1,179 @@
+package com.example.TaskFlow.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import java.sql.DatabaseMetaData;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// FlowStore shared by every node through the application's datasource.
+// Flows are short-lived and can always be recreated by calling /auth/identify again, so on PostgreSQL
+// the table is UNLOGGED: no WAL is written for it, which makes inserts and deletes much cheaper, and
+// losing its content on a database crash only means the pending logins have to start over.
+// Expired rows are deleted by sweepExpired() in batches so one sweep never holds locks on a huge range.
+public class JdbcFlowStore implements FlowStore {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcFlowStore.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final long ttlSeconds;
+    private final int maxFlows;
+    private final int sweepBatchSize;
+    private final Clock clock;
+    // Estimated row count for the capacity check. Counting on every sweep would cost every node a scan per second,
+    // so the table is counted once per ttl and the count kept up to date in between with the rows this node inserts
+    // and deletes. Flows other nodes created or swept meanwhile are off by at most one ttl's worth, they have all
+    // expired by the next count.
+    private final AtomicInteger estimatedSize = new AtomicInteger();
+    private long nextCount;
+
+    public JdbcFlowStore(JdbcTemplate jdbcTemplate, String table, long ttlSeconds, int maxFlows, int sweepBatchSize, Clock clock){
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.ttlSeconds = ttlSeconds;
+        this.maxFlows = maxFlows;
+        this.sweepBatchSize = sweepBatchSize;
+        this.clock = clock;
+        createTableIfMissing();
+        count();
+    }
+
+    @Override
+    public LoginFlowService.Flow create(String username){
+        if(estimatedSize.get() >= maxFlows){
+            throw FlowStore.capacityReached();
+        }
+        UUID id = UUID.randomUUID();
+        Instant expiresAt = clock.instant().plusSeconds(ttlSeconds);
+        jdbcTemplate.update("INSERT INTO " + table + " (id, username, expires_at, attempts) VALUES (?, ?, ?, 0)",
+                id, username, expiresAt.toEpochMilli());
+        estimatedSize.incrementAndGet();
+        return new LoginFlowService.Flow(id.toString(), username, expiresAt);
+    }
+
+    @Override
+    public Optional<LoginFlowService.Flow> get(String flowId){
+        UUID id = parse(flowId);
+        if(id == null){
+            return Optional.empty();
+        }
+        List<LoginFlowService.Flow> flows = jdbcTemplate.query(
+                "SELECT username, expires_at, attempts FROM " + table + " WHERE id = ? AND expires_at >= ?",
+                (rs, rowNum) -> {
+                    LoginFlowService.Flow flow = new LoginFlowService.Flow(flowId, rs.getString(1), Instant.ofEpochMilli(rs.getLong(2)));
+                    flow.attempts.set(rs.getInt(3));
+                    return flow;
+                },
+                id, clock.millis());
+        return flows.stream().findFirst();
+    }
+
+    // The increment is a single UPDATE, so concurrent attempts on different nodes can't get lost.
+    // The count read afterwards may already include other concurrent attempts, which only ever makes
+    // the caller stricter, never lets it exceed the limit.
+    @Override
+    public int registerAttempt(LoginFlowService.Flow flow){
+        UUID id = parse(flow.id);
+        if(id == null){
+            return Integer.MAX_VALUE;
+        }
+        int updated = jdbcTemplate.update("UPDATE " + table + " SET attempts = attempts + 1 WHERE id = ? AND expires_at >= ?",
+                id, clock.millis());
+        if(updated == 0){
+            return Integer.MAX_VALUE;
+        }
+        List<Integer> attempts = jdbcTemplate.queryForList("SELECT attempts FROM " + table + " WHERE id = ?", Integer.class, id);
+        return attempts.isEmpty() ? Integer.MAX_VALUE : attempts.get(0);
+    }
+
+    @Override
+    public void delete(String flowId){
+        UUID id = parse(flowId);
+        if(id != null){
+            if(jdbcTemplate.update("DELETE FROM " + table + " WHERE id = ?", id) > 0){
+                shrink(1);
+            }
+        }
+    }
+
+    // Deletes expired rows sweepBatchSize at a time until a batch comes back short.
+    // Every node runs the sweep, the DELETEs are idempotent so they don't need to coordinate.
+    @Override
+    public void sweepExpired(){
+        long now = clock.millis();
+        int deleted;
+        do{
+            deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE id IN (SELECT id FROM " + table
+                    + " WHERE expires_at < ? FETCH FIRST " + sweepBatchSize + " ROWS ONLY)", now);
+            shrink(deleted);
+        }while(deleted == sweepBatchSize);
+        if(now >= nextCount){
+            count();
+        }
+    }
+
+    @Override
+    public int size(){
+        return estimatedSize.get();
+    }
+
+    // Every call is a JDBC round trip
+    @Override
+    public boolean isBlocking(){
+        return true;
+    }
+
+    // Never below 0, a sweep also deletes rows other nodes created
+    private void shrink(int rows){
+        estimatedSize.accumulateAndGet(rows, (size, deleted) -> Math.max(0, size - deleted));
+    }
+
+    private void count(){
+        Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+        estimatedSize.set(count == null ? 0 : count);
+        nextCount = clock.millis() + ttlSeconds * 1000;
+    }
+
+    private void createTableIfMissing(){
+        boolean postgres = isPostgres();
+        String indexName = "idx_" + table.substring(table.lastIndexOf('.') + 1) + "_expires_at";
+        // expires_at is kept as epoch milliseconds, which avoids any timezone handling between nodes and drivers
+        jdbcTemplate.execute("CREATE " + (postgres ? "UNLOGGED " : "") + "TABLE IF NOT EXISTS " + table + " ("
+                + "id UUID PRIMARY KEY, "
+                + "username VARCHAR(255) NOT NULL, "
+                + "expires_at BIGINT NOT NULL, "
+                + "attempts SMALLINT NOT NULL DEFAULT 0)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + table + " (expires_at)");
+        log.info("Login flows are stored in table {}{}", table, postgres ? " (unlogged)" : "");
+    }
+
+    private boolean isPostgres(){
+        try{
+            String product = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(), DatabaseMetaData::getDatabaseProductName);
+            return "PostgreSQL".equalsIgnoreCase(product);
+        }catch(MetaDataAccessException | DataAccessException e){
+            return false;
+        }
+    }
+
+    private static UUID parse(String flowId){
+        if(flowId == null || flowId.length() != 36){
+            return null;
+        }
+        try{
+            return UUID.fromString(flowId);
+        }catch(IllegalArgumentException e){
+            return null;
+        }
+    }
+}
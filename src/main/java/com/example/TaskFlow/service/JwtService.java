@@ -2,13 +2,23 @@ package com.example.TaskFlow.service;
 
 import com.example.TaskFlow.Constants.Constants;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
 import java.time.Instant;
 import java.util.List;
 import java.util.Date;
@@ -19,84 +29,195 @@ public class JwtService {
 
     private final SecretKey secretKey;
     private final String issuer;
-    private final long accessTokenValidity; // in milliseconds
-    private final long refreshTokenValidity; // in milliseconds
+    private final long accessTokenValidity; // in minutes
+    private final long refreshTokenValidity; // in minutes
+    private final long accessTokenValiditySeconds;
+    private final long refreshTokenValiditySeconds;
+
+    // The parser is immutable and thread-safe once built, so one instance is shared by every request
+    // instead of configuring a new parser and deserializer on each call to parse().
+    // It finds the key of each token by its kid in the SigningKeyRing, tokens without one are HS256 with secretKey.
+    private final JwtParser parser;
+
+    // Signs with ES256 or EdDSA keys when enabled, null or disabled means HS256 with secretKey
+    private final SigningKeyRing keyRing;
+
+    // Writes access and refresh tokens without Jwts.builder(), see TokenMinter
+    private final TokenMinter minter;
+
+    // Which bit of a token's role mask is which role, see RoleRegistry
+    private final RoleRegistry roleRegistry = RoleRegistry.DEFAULT;
+
+    // Login flow tokens are signed with a key derived from the same secret, so they can never pass
+    // as access or refresh tokens (which JwtAuthFilter verifies with secretKey) and vice versa.
+    private final SecretKey flowKey;
+    private final JwtParser flowParser;
 
 
     // The @Value Annotations take the data from the Application.properties file
     // Syntax - @Value("${variable_name}")
     // If we want a default value we use colon to add it a the end of the variable name
+    @Autowired
     public JwtService( @Value("${app.jwt.secret}") String base64Secret,
                        @Value("${app.jwt.issuer}") String issuer,
                        @Value("${app.jwt.access-ttl-min:15}") long accessTokenValidity,
-                       @Value("${app.jwt.refresh-ttl-min:10080}") long refreshTokenValidity
+                       @Value("${app.jwt.refresh-ttl-min:10080}") long refreshTokenValidity,
+                       SigningKeyRing keyRing,
+                       @Value("${app.jwt.roles.encoding:list}") String roleEncoding
                        ){
         this.issuer = issuer;
+        this.keyRing = keyRing != null && keyRing.isEnabled() ? keyRing : null;
         this.accessTokenValidity = accessTokenValidity;
         this.refreshTokenValidity = refreshTokenValidity;
+        this.accessTokenValiditySeconds = accessTokenValidity * 60;
+        this.refreshTokenValiditySeconds = refreshTokenValidity * 60;
         this.secretKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret));
+        // list until every node knows the registry version the others mint with, tokens of both kinds are read
+        this.minter = switch(roleEncoding){
+            case "mask" -> new TokenMinter(secretKey, issuer, roleRegistry);
+            case "list" -> new TokenMinter(secretKey, issuer, null);
+            default -> throw new IllegalArgumentException("app.jwt.roles.encoding must be mask or list, not " + roleEncoding);
+        };
+        this.parser = Jwts.parser()
+                .keyLocator(new KeyLocator())
+                .build();
+        this.flowKey = deriveKey(secretKey, "taskflow-login-flow");
+        this.flowParser = Jwts.parser()
+                .verifyWith(flowKey)
+                .requireIssuer(issuer)
+                .build();
+    }
+
+    public JwtService(String base64Secret, String issuer, long accessTokenValidity, long refreshTokenValidity, SigningKeyRing keyRing){
+        this(base64Secret, issuer, accessTokenValidity, refreshTokenValidity, keyRing, "mask");
+    }
+
+    // HS256 only, with the secret
+    public JwtService(String base64Secret, String issuer, long accessTokenValidity, long refreshTokenValidity){
+        this(base64Secret, issuer, accessTokenValidity, refreshTokenValidity, null);
     }
+
     // getter to access the Refesh Token Validity
     public long getRefreshTokenValidity(){
         return refreshTokenValidity;
     }
 
+    // Access token and refresh token of a login or a refresh
+    public record TokenPair(String accessToken, String refreshToken){ }
+
     // Creates JWT Access Token
     // Used by the refresh-token and login apis
-    // It uses the Jwts class to build the Access Token, Sign and compress it.
+    // The random jti is what AccessTokenDenylist revokes a single token by.
+    // Written by the TokenMinter and signed with the current key of the ring, or the secret.
     public String createAccessToken(String username, List<String> roles){
-        Instant now = Instant.now();
-        Instant expire = now.plusSeconds( accessTokenValidity * 60 );
-
-        return Jwts.builder()
-                .subject(username)
-                .issuer(issuer)
-                .issuedAt(Date.from(now))
-                .expiration(Date.from(expire))
-                .claim(Constants.TYPE, Constants.ACCESS_TOKEN_CLAIM)
-                .claim(Constants.ROLES,roles)
-                .signWith(secretKey, Jwts.SIG.HS256)
-                .compact();
+        long now = System.currentTimeMillis() / 1000;
+        return minter.access(signingKey(), username, roles, now, now + accessTokenValiditySeconds);
     }
 
     // Creates JWT Refresh Token
     // Used to create new accesstokens when the older ones expires
-    // Most probably we will set this in the http only Cookie. If an attacker has this he gets access until token is expired
-    // It uses the Jwts class to build the Access Token, Sign and compress it.
-    public String createRefreshToken(String username, List<String> roles){
-        Instant now = Instant.now();
-        Instant expire = now.plusSeconds(refreshTokenValidity * 60);
+    // Most probably we will set this in the http only Cookie. It is only ever good for one refresh: the jti names this
+    // token and the family id the login it descends from, RefreshTokenService rotates it on use and revokes the
+    // family when an already rotated one comes back. Issue them through RefreshTokenService, which records both.
+    public String createRefreshToken(String username, List<String> roles, String familyId, String jti){
+        long now = System.currentTimeMillis() / 1000;
+        return minter.refresh(signingKey(), username, roles, now, now + refreshTokenValiditySeconds, familyId, jti);
+    }
+
+    // Both tokens at once for login and refresh: one clock read, one signing key, subject and roles encoded once.
+    // RefreshTokenService calls it with the family and jti it has just recorded.
+    public TokenPair createTokenPair(String username, List<String> roles, String familyId, String refreshJti){
+        long now = System.currentTimeMillis() / 1000;
+        return minter.pair(signingKey(), username, roles, now, now + accessTokenValiditySeconds,
+                now + refreshTokenValiditySeconds, familyId, refreshJti);
+    }
+
+    // null signs with the secret
+    private SigningKeyRing.SigningKey signingKey(){
+        return keyRing == null ? null : keyRing.current();
+    }
+
+    // Creates the signed login flow token handed out by /auth/identify when app.login-flow.store=token.
+    // It carries everything /auth/login needs (username, expiry and a nonce to count the attempts against),
+    // so no flow has to be stored on the server.
+    public String createFlowToken(String username, long nonce, Instant expiresAt){
         return Jwts.builder()
                 .subject(username)
                 .issuer(issuer)
-                .issuedAt(Date.from(now))
-                .expiration(Date.from(expire))
-                .claim(Constants.TYPE,Constants.REFRESH_TOKEN_CLAIM)
-                .claim(Constants.ROLES,roles)
-                .signWith(secretKey,Jwts.SIG.HS256)
+                .expiration(Date.from(expiresAt))
+                .claim(Constants.TYPE, Constants.FLOW_TOKEN_CLAIM)
+                .claim(Constants.NONCE, nonce)
+                .signWith(flowKey, Jwts.SIG.HS256)
                 .compact();
     }
 
+    // Verifies a login flow token and returns its Claims.
+    // Throws a JwtException when the token is malformed, expired, forged or not a flow token.
+    public Claims parseFlowToken(String token){
+        Claims claims = flowParser.parseSignedClaims(token).getPayload();
+        if(!Constants.FLOW_TOKEN_CLAIM.equals(claims.get(Constants.TYPE))){
+            throw new JwtException("Not a login flow token");
+        }
+        return claims;
+    }
+
     // Returns the Claims of the token.
-    // Uses Jwts.parser to get the Claims out of a token.
+    // Uses the pre-built JwtParser to get the Claims out of a token.
     // Before that it verifies against the secretkey used to sign the accesstoken.
     public Claims parse(String token){
-        return Jwts.parser()
-                .verifyWith(secretKey)
-                .build()
-                .parseSignedClaims(token)
+        return parser.parseSignedClaims(token)
                 .getPayload();
     }
 
+    // HMAC of a fixed label under the main secret, a one-step HKDF-expand good enough to separate token purposes
+    static SecretKey deriveKey(SecretKey secret, String label){
+        try{
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(secret);
+            return Keys.hmacShaKeyFor(mac.doFinal(label.getBytes(StandardCharsets.UTF_8)));
+        }catch(GeneralSecurityException e){
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    // The key to verify a token with, chosen from its header before the signature is checked.
+    // A kid must name a key of the ring created for the algorithm the header claims, otherwise there is no key
+    // and the token is rejected. Tokens without a kid are the HS256 ones, signed before the ring was enabled.
+    private final class KeyLocator extends LocatorAdapter<Key> {
+
+        @Override
+        protected Key locate(JwsHeader header){
+            String kid = header.getKeyId();
+            if(kid == null){
+                return secretKey;
+            }
+            return keyRing == null ? null : keyRing.verificationKey(kid, header.getAlgorithm());
+        }
+    }
+
     // Used to extract Auth Token(JWT) from the request header
     // It returns an Optional String
     // Optional returntypes make developer to check before getting value.
     public  Optional<String> extractTokenFromHeader(String authHeader){
-        if(authHeader == null || authHeader.trim().isEmpty() || !authHeader.startsWith(Constants.BEARER_PREFIX)){
-            return Optional.empty();
+        return Optional.ofNullable(bearerToken(authHeader));
+    }
+
+    // The token of a "Bearer <token>" header, null when there is none.
+    // For the JWT filters: the header is sliced once after the surrounding whitespace is skipped, no Optional and no
+    // trimmed copies. A "Bearer " header with nothing behind it has no token either.
+    public String bearerToken(String authHeader){
+        if(authHeader == null || !authHeader.startsWith(Constants.BEARER_PREFIX)){
+            return null;
+        }
+        int start = Constants.BEARER_PREFIX.length();
+        int end = authHeader.length();
+        while(start < end && authHeader.charAt(start) <= ' '){
+            start++;
+        }
+        while(end > start && authHeader.charAt(end - 1) <= ' '){
+            end--;
         }
-        // Extract token by removing "Bearer " prefix
-        return Optional.of(authHeader.substring(7).trim());
+        return start == end ? null : authHeader.substring(start, end);
     }
 
     // Returns the username from the Claims Object
@@ -112,12 +233,46 @@ public class JwtService {
         return Constants.ACCESS_TOKEN_CLAIM.equals(claims.get(Constants.TYPE));
     }
 
+    // Role names of the token, out of its mask or, for tokens minted before it, its list.
+    // Throws a JwtException for a mask of a registry version or role this node doesn't know.
     @SuppressWarnings("unchecked")
     public List<String> roles(Claims c){
-        Object v = c.get("roles");
+        Object mask = c.get(Constants.ROLE_MASK);
+        if(mask != null){
+            return roleRegistry.names(roleVersion(c), roleMask(mask));
+        }
+        Object v = c.get(Constants.ROLES);
         return (v instanceof List) ? (List<String>) v : List.of() ;
     }
 
+    // The roles as authorities for the SecurityContext. Shared immutable lists, built once per mask by the
+    // RoleRegistry, so the filters map no roles per request. Throws like roles().
+    @SuppressWarnings("unchecked")
+    public List<SimpleGrantedAuthority> authorities(Claims c){
+        Object mask = c.get(Constants.ROLE_MASK);
+        if(mask != null){
+            return roleRegistry.authorities(roleVersion(c), roleMask(mask));
+        }
+        Object v = c.get(Constants.ROLES);
+        return (v instanceof List) ? roleRegistry.authorities((List<String>) v) : List.of();
+    }
+
+    // Jackson reads both as Integer, anything else was not minted by us
+    private static int roleMask(Object mask){
+        if(!(mask instanceof Integer i)){
+            throw new JwtException("Malformed role mask");
+        }
+        return i;
+    }
+
+    private static int roleVersion(Claims c){
+        Object version = c.get(Constants.ROLE_VERSION);
+        if(!(version instanceof Integer i)){
+            throw new JwtException("Role mask without registry version");
+        }
+        return i;
+    }
+
     // Checks if the token is expired
     public boolean isTokenExpired(Claims claims) {
         Date expiration = claims.getExpiration();
@@ -1,15 +1,19 @@
 package com.example.TaskFlow.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.Instant;
-import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-// This class stores the FlowId's map which allows us to recognize which user is trying to Login
-// It has a Concurrent HashMap called Store. Which stores all the flowIds againts their flow objects.
+// This class stores the FlowId's which allows us to recognize which user is trying to Login
+// The flows themselves live in a FlowStore chosen with app.login-flow.store (see FlowStoreConfig):
+// map (default) keeps them in this JVM, compact keeps them in primitive arrays and jdbc shares them
+// between nodes through the database, so identify and login don't have to hit the same instance,
+// and token replaces the stored flow with a signed flow token.
 
 @Service
 public class LoginFlowService {
@@ -17,7 +21,8 @@ public class LoginFlowService {
     public static class Flow{
         public final String id;
         public final String username;
-        public int attempts = 0;
+        // Incremented by parallel /auth/login calls for the same flow, so it has to be atomic
+        public final AtomicInteger attempts = new AtomicInteger();
         public Instant expiresAt;
 
         Flow (String id, String username, Instant expiresAt){
@@ -28,26 +33,55 @@ public class LoginFlowService {
 
     }
 
-    private final Map<String,Flow> store = new ConcurrentHashMap<>();
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    private static final int DEFAULT_MAX_FLOWS = 100_000;
+
+    private final FlowStore store;
+
+    public LoginFlowService(){
+        this(new InMemoryFlowStore(DEFAULT_TTL_SECONDS, DEFAULT_MAX_FLOWS, Clock.systemUTC()));
+    }
+
+    @Autowired
+    public LoginFlowService(FlowStore store){
+        this.store = store;
+    }
 
     public Flow create(String username){
-        String flowId = UUID.randomUUID().toString();
-        Flow flow = new Flow(flowId,username,Instant.now().plusSeconds(300));
-        store.put(flowId,flow);
-        return flow;
+        return store.create(username);
     }
 
     public Optional<Flow> get(String flowId){
-        Flow flow = store.get(flowId);
-        if(flow == null || Instant.now().isAfter(flow.expiresAt)){
-            return Optional.empty();
-        }
-        return Optional.of(flow);
+        return store.get(flowId);
+    }
+
+    // Counts one password attempt against the flow and returns the number of attempts so far.
+    // A flow that vanished in the meantime counts as exhausted.
+    public int registerAttempt(Flow flow){
+        return store.registerAttempt(flow);
     }
 
     public void delete(String flowId){
-        store.remove(flowId);
+        store.delete(flowId);
     }
 
+    public void delete(Flow flow){
+        store.delete(flow);
+    }
+
+    // Number of flows currently held, expired ones included until the sweeper reaches them.
+    public int size(){
+        return store.size();
+    }
+
+    // Whether the calls above block on I/O, see FlowStore.isBlocking()
+    public boolean isBlocking(){
+        return store.isBlocking();
+    }
+
+    @Scheduled(fixedDelayString = "${app.login-flow.sweep-interval-ms:1000}")
+    public void sweepExpired(){
+        store.sweepExpired();
+    }
 
 }
@@ -0,0 +1,66 @@
+package com.example.TaskFlow.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.IntToLongFunction;
+
+// Builds the password encoder used for stored passwords and picks its BCrypt cost.
+//
+// New hashes are written as "{bcrypt}$2a$<cost>$...", the {id} prefix lets us add or switch algorithms later
+// without touching existing rows. Hashes stored before the prefix was introduced are plain BCrypt and still match.
+// upgradeEncoding() is true for hashes without the current id or with a lower cost, which PasswordUpgradeService
+// uses to rehash them on the next successful login.
+public final class PasswordHashing {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashing.class);
+
+    public static final String BCRYPT_ID = "bcrypt";
+
+    private PasswordHashing(){
+    }
+
+    public static DelegatingPasswordEncoder delegatingEncoder(int bcryptStrength){
+        Map<String,PasswordEncoder> encoders = Map.of(BCRYPT_ID, new BCryptPasswordEncoder(bcryptStrength));
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(BCRYPT_ID, encoders);
+        // Hashes written before the {id} prefix existed are BCrypt without prefix
+        encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        return encoder;
+    }
+
+    // Returns the highest BCrypt cost between minStrength and maxStrength whose hash still takes at most
+    // the target time on this machine, never less than minStrength.
+    public static int calibrateBCryptStrength(Duration target, int minStrength, int maxStrength){
+        // Warms up the JIT on the cheapest cost so the first real measurement isn't inflated
+        timeBCrypt(4);
+        int strength = calibrate(target.toNanos(), minStrength, maxStrength, PasswordHashing::timeBCrypt);
+        log.info("BCrypt cost calibrated to {} for a target of {} ms per hash", strength, target.toMillis());
+        return strength;
+    }
+
+    // Every extra cost doubles the work, so costs are tried upwards until one exceeds the target
+    static int calibrate(long targetNanos, int minStrength, int maxStrength, IntToLongFunction nanosAtStrength){
+        int strength = minStrength;
+        while(strength < maxStrength && nanosAtStrength.applyAsLong(strength + 1) <= targetNanos){
+            strength++;
+        }
+        return strength;
+    }
+
+    // Best of two runs, the slower one usually includes a GC or scheduling hiccup
+    private static long timeBCrypt(int strength){
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long best = Long.MAX_VALUE;
+        for(int i = 0; i < 2; i++){
+            long start = System.nanoTime();
+            encoder.encode("calibration-password");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.exception.RetryLaterException;
+import com.example.TaskFlow.repo.UserCredentials;
+import com.example.TaskFlow.repo.UserRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Rehashes a password whose stored hash uses an old algorithm or a lower BCrypt cost than the current one.
+// Only possible right after a successful login, the one moment we have the raw password, and done in the
+// background so the login response doesn't wait for a second BCrypt run.
+// The work is best effort: when the queue is full or the hashing pool is busy the upgrade is skipped
+// and simply happens on one of the user's next logins.
+@Service
+public class PasswordUpgradeService {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordUpgradeService.class);
+
+    private final UserRepository userRepository;
+    private final PasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+
+    @Autowired
+    public PasswordUpgradeService(UserRepository userRepository, PasswordEncoder encoder,
+                                  @Value("${app.password-hashing.upgrade-queue-capacity:100}") int queueCapacity,
+                                  Environment environment){
+        this(userRepository, encoder, queueCapacity, Threading.VIRTUAL.isActive(environment));
+    }
+
+    PasswordUpgradeService(UserRepository userRepository, PasswordEncoder encoder, int queueCapacity, boolean virtualThreads){
+        this.userRepository = userRepository;
+        this.encoder = encoder;
+        // One thread is plenty, the hashing itself runs on the encoder's pool.
+        // It mostly waits (for the hashing pool and the database), so in virtual thread mode it is a virtual one.
+        ThreadFactory threadFactory = virtualThreads
+                ? new VirtualThreadTaskExecutor("password-upgrade-").getVirtualThreadFactory()
+                : runnable -> {
+                    Thread thread = new Thread(runnable, "password-upgrade");
+                    thread.setDaemon(true);
+                    return thread;
+                };
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Called after the raw password was verified against the user's stored hash
+    public void upgradeIfNeeded(UserCredentials credentials, String rawPassword){
+        String currentHash = credentials.passwordHash();
+        if(credentials.id() == null || !encoder.upgradeEncoding(currentHash)){
+            return;
+        }
+        Long userId = credentials.id();
+        try{
+            executor.execute(() -> upgrade(userId, rawPassword, currentHash));
+        }catch(RejectedExecutionException e){
+            log.debug("Password upgrade queue full, skipping user {}", userId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        executor.shutdown();
+    }
+
+    private void upgrade(Long userId, String rawPassword, String currentHash){
+        try{
+            String newHash = encoder.encode(rawPassword);
+            // Only replaces the hash we verified, a password changed in the meantime is left alone
+            if(userRepository.updatePasswordHash(userId, currentHash, newHash) == 1){
+                log.info("Password hash upgraded for user {}", userId);
+            }
+        }catch(RetryLaterException e){
+            log.debug("Password hashing busy, skipping upgrade for user {}", userId);
+        }catch(RuntimeException e){
+            log.warn("Password upgrade failed for user {}", userId, e);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.TaskFlow.service;
+
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-memory view of the refresh token families, laid out like CompactLoginFlowTable: flat primitive arrays split
+// into segments, each an open addressing hash table with linear probing and backward shift deletion under its own lock.
+// A family costs one slot: its id and the jti of its current token as two longs each, the expiry as an int number
+// of seconds and a revoked flag, about 37 bytes (50 with the free space) where a map of objects would take several
+// hundred. A million active sessions fit in 50 MB and are a few dozen arrays for the GC.
+// It is only a cache of the table RefreshTokenService keeps in the database: a family it doesn't hold (not loaded
+// yet, or evicted) is UNKNOWN and looked up there.
+// A full segment makes room for a new family by evicting one of the next EVICTION_SAMPLE families from its home
+// slot: a revoked one if there is one (the database still turns its tokens away), otherwise the one that expires
+// first, the one rotated least recently. Sampling keeps the cost of a put bounded however large the segments are.
+public final class RefreshTokenFamilyTable {
+
+    private static final int SEGMENTS = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int EVICTION_SAMPLE = 16;
+
+    public enum State { UNKNOWN, CURRENT, STALE, REVOKED }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final Clock clock;
+    // Expiry is stored relative to this second, plus one so that 0 can mean "free slot"
+    private final long baseEpochSecond;
+    private final int capacity;
+    private final int capacityPerSegment;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public RefreshTokenFamilyTable(int capacity, Clock clock){
+        this.clock = clock;
+        this.baseEpochSecond = clock.instant().getEpochSecond() - 1;
+        this.capacity = capacity;
+        // Same headroom per segment as CompactLoginFlowTable, family ids are random UUIDs too
+        double share = (double) capacity / SEGMENTS;
+        this.capacityPerSegment = (int) Math.ceil(share + 4 * Math.sqrt(share)) + 8;
+        int slots = (int) Math.ceil(capacityPerSegment / LOAD_FACTOR) + 1;
+        for(int i = 0; i < SEGMENTS; i++){
+            segments[i] = new Segment(slots);
+        }
+    }
+
+    // Adds the family or overwrites what is known about it, evicting another one of its segment when full.
+    // False only when there is no room at all, the family then stays UNKNOWN.
+    public boolean put(UUID family, UUID jti, long expiresAtEpochSecond, boolean revoked){
+        long hi = family.getMostSignificantBits();
+        long lo = family.getLeastSignificantBits();
+        return segmentFor(hi, lo).put(hi, lo, jti.getMostSignificantBits(), jti.getLeastSignificantBits(), encode(expiresAtEpochSecond), revoked);
+    }
+
+    // What the family says about a token with this jti. An expired family is UNKNOWN.
+    public State check(UUID family, UUID jti){
+        long hi = family.getMostSignificantBits();
+        long lo = family.getLeastSignificantBits();
+        return segmentFor(hi, lo).check(hi, lo, jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+    }
+
+    // Moves the family from jti to next if jti is still its current token, like a compare and set
+    public boolean rotate(UUID family, UUID jti, UUID next, long expiresAtEpochSecond){
+        long hi = family.getMostSignificantBits();
+        long lo = family.getLeastSignificantBits();
+        return segmentFor(hi, lo).rotate(hi, lo, jti.getMostSignificantBits(), jti.getLeastSignificantBits(),
+                next.getMostSignificantBits(), next.getLeastSignificantBits(), encode(expiresAtEpochSecond));
+    }
+
+    // Removes every expired family, one segment at a time. Returns the number of families removed.
+    public int sweepExpired(){
+        int removed = 0;
+        int nowEncoded = encode(now());
+        for(Segment segment : segments){
+            removed += segment.sweep(nowEncoded);
+        }
+        return removed;
+    }
+
+    public int size(){
+        return size.get();
+    }
+
+    public int capacity(){
+        return capacity;
+    }
+
+    public long evictions(){
+        return evictions.get();
+    }
+
+    private Segment segmentFor(long hi, long lo){
+        return segments[(int) (mix(hi, lo) >>> 58)];
+    }
+
+    private long now(){
+        return clock.instant().getEpochSecond();
+    }
+
+    private int encode(long epochSecond){
+        return (int) Math.max(1, epochSecond - baseEpochSecond);
+    }
+
+    // Murmur3 64 bit finalizer over both halves of the id
+    private static long mix(long hi, long lo){
+        long h = hi ^ Long.rotateLeft(lo, 32);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private final class Segment {
+        private final long[] idHi;
+        private final long[] idLo;
+        private final long[] jtiHi;
+        private final long[] jtiLo;
+        private final int[] expiry; // 0 means free
+        private final boolean[] revoked;
+        private final int slots;
+        private int used;
+
+        Segment(int slots){
+            idHi = new long[slots];
+            idLo = new long[slots];
+            jtiHi = new long[slots];
+            jtiLo = new long[slots];
+            expiry = new int[slots];
+            revoked = new boolean[slots];
+            this.slots = slots;
+        }
+
+        synchronized boolean put(long hi, long lo, long currentHi, long currentLo, int expiresAt, boolean isRevoked){
+            int i = find(hi, lo);
+            if(i < 0){
+                // Over the overall capacity an empty segment still takes the family, its arrays are allocated anyway
+                if(used >= capacityPerSegment || (size.get() >= capacity && used > 0)){
+                    if(used == 0){
+                        return false;
+                    }
+                    evict(home(hi, lo));
+                }
+                size.incrementAndGet();
+                i = home(hi, lo);
+                while(expiry[i] != 0){
+                    i = next(i);
+                }
+                idHi[i] = hi;
+                idLo[i] = lo;
+                used++;
+            }
+            jtiHi[i] = currentHi;
+            jtiLo[i] = currentLo;
+            expiry[i] = expiresAt;
+            revoked[i] = isRevoked;
+            return true;
+        }
+
+        synchronized State check(long hi, long lo, long tokenHi, long tokenLo){
+            int i = find(hi, lo);
+            if(i < 0 || expiry[i] < encode(now())){
+                return State.UNKNOWN;
+            }
+            if(revoked[i]){
+                return State.REVOKED;
+            }
+            return jtiHi[i] == tokenHi && jtiLo[i] == tokenLo ? State.CURRENT : State.STALE;
+        }
+
+        synchronized boolean rotate(long hi, long lo, long tokenHi, long tokenLo, long nextHi, long nextLo, int expiresAt){
+            int i = find(hi, lo);
+            if(i < 0 || revoked[i] || jtiHi[i] != tokenHi || jtiLo[i] != tokenLo){
+                return false;
+            }
+            jtiHi[i] = nextHi;
+            jtiLo[i] = nextLo;
+            expiry[i] = expiresAt;
+            return true;
+        }
+
+        synchronized int sweep(int nowEncoded){
+            int removed = 0;
+            int i = 0;
+            while(i < expiry.length){
+                if(expiry[i] != 0 && expiry[i] < nowEncoded){
+                    // removeAt may shift a later entry into slot i, so look at i again
+                    removeAt(i);
+                    removed++;
+                } else {
+                    i++;
+                }
+            }
+            return removed;
+        }
+
+        // Removes the best candidate among the next EVICTION_SAMPLE families from start, the segment isn't empty
+        private void evict(int start){
+            int victim = -1;
+            int seen = 0;
+            for(int i = start, n = 0; n < slots && seen < EVICTION_SAMPLE; i = next(i), n++){
+                if(expiry[i] == 0){
+                    continue;
+                }
+                if(revoked[i]){
+                    victim = i;
+                    break;
+                }
+                if(victim < 0 || expiry[i] < expiry[victim]){
+                    victim = i;
+                }
+                seen++;
+            }
+            removeAt(victim);
+            evictions.incrementAndGet();
+        }
+
+        private int find(long hi, long lo){
+            int i = home(hi, lo);
+            while(expiry[i] != 0){
+                if(idHi[i] == hi && idLo[i] == lo){
+                    return i;
+                }
+                i = next(i);
+            }
+            return -1;
+        }
+
+        private int home(long hi, long lo){
+            return (int) (((mix(hi, lo) & 0xFFFFFFFFL) * slots) >>> 32);
+        }
+
+        private int next(int i){
+            return i + 1 == slots ? 0 : i + 1;
+        }
+
+        // Backward shift deletion, see CompactLoginFlowTable
+        private void removeAt(int hole){
+            int j = hole;
+            while(true){
+                j = next(j);
+                if(expiry[j] == 0){
+                    break;
+                }
+                int home = home(idHi[j], idLo[j]);
+                boolean stays = hole <= j
+                        ? (hole < home && home <= j)
+                        : (hole < home || home <= j);
+                if(!stays){
+                    idHi[hole] = idHi[j];
+                    idLo[hole] = idLo[j];
+                    jtiHi[hole] = jtiHi[j];
+                    jtiLo[hole] = jtiLo[j];
+                    expiry[hole] = expiry[j];
+                    revoked[hole] = revoked[j];
+                    hole = j;
+                }
+            }
+            expiry[hole] = 0;
+            used--;
+            size.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.Constants;
+import com.example.TaskFlow.Constants.ErrorCode;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Refresh token rotation with reuse detection.
+// Every login starts a family, every refresh token names its family (fid) and itself (jti). /auth/refresh only
+// accepts the family's current token and replaces it with a new one, so each refresh token is good for one use.
+// A token that was already rotated coming back means two parties hold the family, the legitimate client and
+// whoever copied its cookie, and there is no telling which is which: the whole family is revoked and both have
+// to log in again. Tokens issued before rotation carry no ids and are refused the same way.
+// The families are kept in a table of the application database, so they survive restarts and every node sees
+// the same state, and cached in a RefreshTokenFamilyTable. Revoked and out of date tokens are turned away from
+// the cache without a query. A rotation writes one conditional UPDATE by primary key, the compare and set that
+// decides between two nodes racing on the same token. A family missing from the cache, or one that looks rotated
+// there but may have been rotated by another node, is read from the database before anything is revoked.
+@Service
+@DependsOn("entityManagerFactory")
+public class RefreshTokenService implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    // A family as stored, expires_at in epoch milliseconds like the login flows
+    private record Family(String username, UUID currentJti, long expiresAt, boolean revoked){ }
+
+    private final JwtService jwtService;
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final long ttlSeconds;
+    private final int sweepBatchSize;
+    private final Clock clock;
+    private final RefreshTokenFamilyTable families;
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    @Autowired
+    public RefreshTokenService(JwtService jwtService, DataSource dataSource,
+                               @Value("${app.auth.refresh.table:taskflow_auth.refresh_token_families}") String table,
+                               @Value("${app.auth.refresh.cache-size:100000}") int cacheSize,
+                               @Value("${app.auth.refresh.sweep-batch-size:1000}") int sweepBatchSize){
+        this(jwtService, dataSource, table, cacheSize, sweepBatchSize, Clock.systemUTC());
+    }
+
+    RefreshTokenService(JwtService jwtService, DataSource dataSource, String table, int cacheSize, int sweepBatchSize, Clock clock){
+        this.jwtService = jwtService;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.table = table;
+        this.ttlSeconds = jwtService.getRefreshTokenValidity() * 60;
+        this.sweepBatchSize = sweepBatchSize;
+        this.clock = clock;
+        this.families = new RefreshTokenFamilyTable(cacheSize, clock);
+        createTableIfMissing();
+    }
+
+    // Starts a family for a login and returns its first refresh token, minted together with the access token
+    public JwtService.TokenPair issue(String username, List<String> roles){
+        UUID family = UUID.randomUUID();
+        UUID jti = UUID.randomUUID();
+        long expiresAt = expiresAt();
+        jdbcTemplate.update("INSERT INTO " + table + " (family_id, username, current_jti, expires_at, revoked) VALUES (?, ?, ?, ?, FALSE)",
+                family, username, jti, expiresAt);
+        families.put(family, jti, expiresAt / 1000, false);
+        issued.incrementAndGet();
+        return jwtService.createTokenPair(username, roles, family.toString(), jti.toString());
+    }
+
+    // Trades a verified, unexpired refresh token for the next one of its family and a new access token, both with
+    // the roles of the old token (USER if it has none).
+    // Throws INVALID_REFRESH_TOKEN for a token that is not its family's current one, revoking the family if it
+    // was current once.
+    public JwtService.TokenPair rotate(Claims claims){
+        String username = claims.getSubject();
+        UUID family = parse(claims.get(Constants.FAMILY, String.class));
+        UUID jti = parse(claims.getId());
+        if(family == null || jti == null){
+            log.info("Refresh Token without rotation ids for username {}", username);
+            throw reject();
+        }
+        UUID next = UUID.randomUUID();
+        long expiresAt = expiresAt();
+        switch(families.check(family, jti)){
+            case REVOKED -> {
+                log.info("Refresh Token of revoked family {} for username {}", family, username);
+                throw reject();
+            }
+            case CURRENT -> {
+                if(advance(family, jti, next, expiresAt)){
+                    families.rotate(family, jti, next, expiresAt / 1000);
+                    return rotated(username, claims, family, next);
+                }
+                // Rotated or revoked through another node meanwhile, the database knows which
+            }
+            default -> cacheMisses.incrementAndGet();
+        }
+        return rotateFromDatabase(username, claims, family, jti, next, expiresAt);
+    }
+
+    // Logout: revokes the family of a verified refresh token, without counting it as reuse
+    public void revoke(Claims claims){
+        UUID family = parse(claims.get(Constants.FAMILY, String.class));
+        UUID jti = parse(claims.getId());
+        if(family == null || jti == null || claims.getExpiration() == null){
+            return;
+        }
+        jdbcTemplate.update("UPDATE " + table + " SET revoked = TRUE WHERE family_id = ? AND username = ?", family, claims.getSubject());
+        families.put(family, jti, claims.getExpiration().getTime() / 1000, true);
+    }
+
+    // Deletes expired families sweepBatchSize at a time, from the cache and the table. Revoked families are kept
+    // until they expire, so their tokens are recognized as reused until then.
+    @Scheduled(fixedDelayString = "${app.auth.refresh.sweep-interval-ms:60000}")
+    public int sweepExpired(){
+        families.sweepExpired();
+        long now = clock.millis();
+        int total = 0;
+        int deleted;
+        do{
+            deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE family_id IN (SELECT family_id FROM " + table
+                    + " WHERE expires_at < ? FETCH FIRST " + sweepBatchSize + " ROWS ONLY)", now);
+            total += deleted;
+        }while(deleted == sweepBatchSize);
+        return total;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        FunctionCounter.builder("auth.refresh.issued", issued, AtomicLong::get)
+                .description("Refresh token families started by a login")
+                .register(registry);
+        FunctionCounter.builder("auth.refresh.rotations", rotations, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("auth.refresh.reuse", reuses, AtomicLong::get)
+                .description("Families revoked because an already rotated refresh token was used again")
+                .register(registry);
+        FunctionCounter.builder("auth.refresh.rejected", rejected, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("auth.refresh.cache.misses", cacheMisses, AtomicLong::get)
+                .description("Refreshes that had to read their family from the database")
+                .register(registry);
+        Gauge.builder("auth.refresh.cache.size", families, RefreshTokenFamilyTable::size)
+                .register(registry);
+        FunctionCounter.builder("auth.refresh.cache.evictions", families, RefreshTokenFamilyTable::evictions)
+                .description("Families dropped from the full cache to make room for new ones")
+                .register(registry);
+    }
+
+    private JwtService.TokenPair rotateFromDatabase(String username, Claims claims, UUID family, UUID jti, UUID next, long expiresAt){
+        Family stored = load(family);
+        if(stored == null || stored.expiresAt < clock.millis() || !stored.username.equals(username)){
+            log.info("Refresh Token of unknown family {} for username {}", family, username);
+            throw reject();
+        }
+        if(stored.revoked){
+            families.put(family, stored.currentJti, stored.expiresAt / 1000, true);
+            log.info("Refresh Token of revoked family {} for username {}", family, username);
+            throw reject();
+        }
+        if(stored.currentJti.equals(jti) && advance(family, jti, next, expiresAt)){
+            families.put(family, next, expiresAt / 1000, false);
+            return rotated(username, claims, family, next);
+        }
+        // Rotated before, by this request's twin or by whoever else holds the token
+        jdbcTemplate.update("UPDATE " + table + " SET revoked = TRUE WHERE family_id = ?", family);
+        families.put(family, stored.currentJti, stored.expiresAt / 1000, true);
+        reuses.incrementAndGet();
+        log.warn("Refresh Token reuse detected for username {}, family {} revoked", username, family);
+        throw reject();
+    }
+
+    // Compare and set in the table, false if the family's current token is no longer jti
+    private boolean advance(UUID family, UUID jti, UUID next, long expiresAt){
+        return jdbcTemplate.update("UPDATE " + table + " SET current_jti = ?, expires_at = ? "
+                        + "WHERE family_id = ? AND current_jti = ? AND revoked = FALSE AND expires_at >= ?",
+                next, expiresAt, family, jti, clock.millis()) == 1;
+    }
+
+    private Family load(UUID family){
+        List<Family> rows = jdbcTemplate.query("SELECT username, current_jti, expires_at, revoked FROM " + table + " WHERE family_id = ?",
+                (rs, rowNum) -> new Family(rs.getString(1), rs.getObject(2, UUID.class), rs.getLong(3), rs.getBoolean(4)),
+                family);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private JwtService.TokenPair rotated(String username, Claims claims, UUID family, UUID next){
+        rotations.incrementAndGet();
+        List<String> roles = jwtService.roles(claims);
+        return jwtService.createTokenPair(username, roles.isEmpty() ? List.of("USER") : roles, family.toString(), next.toString());
+    }
+
+    private ResponseStatusException reject(){
+        rejected.incrementAndGet();
+        return new ResponseStatusException(ErrorCode.INVALID_REFRESH_TOKEN.getStatus(), ErrorCode.INVALID_REFRESH_TOKEN.getMessage());
+    }
+
+    private long expiresAt(){
+        return clock.millis() + ttlSeconds * 1000;
+    }
+
+    private void createTableIfMissing(){
+        String indexName = "idx_" + table.substring(table.lastIndexOf('.') + 1) + "_expires_at";
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "family_id UUID PRIMARY KEY, "
+                + "username VARCHAR(255) NOT NULL, "
+                + "current_jti UUID NOT NULL, "
+                + "expires_at BIGINT NOT NULL, "
+                + "revoked BOOLEAN NOT NULL DEFAULT FALSE)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + table + " (expires_at)");
+    }
+
+    private static UUID parse(String id){
+        if(id == null || id.length() != 36){
+            return null;
+        }
+        try{
+            return UUID.fromString(id);
+        }catch(IllegalArgumentException e){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.TaskFlow.service;
+
+import io.jsonwebtoken.JwtException;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Roles as the bits of one number in a token ("rm") instead of a list of names, under a version of this
+// registry ("rv") that says which bit stands for which role.
+// A version is never changed once tokens have been minted with it: adding, removing or reordering a role means
+// appending a new version, and the old one stays until its last refresh token has expired. Every node has to know
+// a version before any node mints with it, roll a new one out with app.jwt.roles.encoding=list first.
+// For every version and mask the immutable role name and authority lists are built up front, a role is the same
+// SimpleGrantedAuthority instance in all of them, so decoding the roles of a token is an array lookup.
+final class RoleRegistry {
+
+    // Bit i of a mask is role i of its version, versions count from 1
+    private static final List<List<String>> VERSIONS = List.of(
+            List.of("USER", "ADMIN")
+    );
+    // 2^roles lists are built per version
+    private static final int MAX_ROLES = 12;
+
+    static final RoleRegistry DEFAULT = new RoleRegistry(VERSIONS);
+
+    private record Version(Map<String, Integer> bits, List<List<String>> names, List<List<SimpleGrantedAuthority>> authorities){ }
+
+    private final List<Version> versions;
+    private final Map<String, SimpleGrantedAuthority> interned = new HashMap<>();
+
+    RoleRegistry(List<List<String>> versions){
+        List<Version> built = new ArrayList<>();
+        for(List<String> roles : versions){
+            if(roles.size() > MAX_ROLES || roles.stream().distinct().count() != roles.size()){
+                throw new IllegalArgumentException("A role registry version needs at most " + MAX_ROLES + " distinct roles: " + roles);
+            }
+            built.add(build(roles));
+        }
+        this.versions = List.copyOf(built);
+    }
+
+    // The version tokens are minted with
+    int current(){
+        return versions.size();
+    }
+
+    // Mask of roles in the current version, -1 if one of them is not in it and they have to be written as a list
+    int mask(List<String> roles){
+        Map<String, Integer> bits = versions.get(versions.size() - 1).bits;
+        int mask = 0;
+        for(int i = 0; i < roles.size(); i++){
+            Integer bit = bits.get(roles.get(i));
+            if(bit == null){
+                return -1;
+            }
+            mask |= 1 << bit;
+        }
+        return mask;
+    }
+
+    List<String> names(int version, int mask){
+        return version(version, mask).names.get(mask);
+    }
+
+    List<SimpleGrantedAuthority> authorities(int version, int mask){
+        return version(version, mask).authorities.get(mask);
+    }
+
+    // Authorities of a token that lists its roles by name, minted before the mask or with a role the registry lacks
+    List<SimpleGrantedAuthority> authorities(List<String> roles){
+        int mask = mask(roles);
+        if(mask >= 0){
+            return versions.get(versions.size() - 1).authorities.get(mask);
+        }
+        return roles.stream().map(SimpleGrantedAuthority::new).toList();
+    }
+
+    // A version or bit this node doesn't know comes from a newer node that minted with it too early
+    private Version version(int version, int mask){
+        if(version < 1 || version > versions.size()){
+            throw new JwtException("Unknown role registry version " + version);
+        }
+        Version v = versions.get(version - 1);
+        if(mask < 0 || mask >= v.names.size()){
+            throw new JwtException("Unknown roles in mask " + mask + " of role registry version " + version);
+        }
+        return v;
+    }
+
+    private Version build(List<String> roles){
+        Map<String, Integer> bits = new HashMap<>();
+        for(int i = 0; i < roles.size(); i++){
+            bits.put(roles.get(i), i);
+        }
+        List<List<String>> names = new ArrayList<>();
+        List<List<SimpleGrantedAuthority>> authorities = new ArrayList<>();
+        for(int mask = 0; mask < 1 << roles.size(); mask++){
+            List<String> n = new ArrayList<>();
+            List<SimpleGrantedAuthority> a = new ArrayList<>();
+            for(int i = 0; i < roles.size(); i++){
+                if((mask & 1 << i) != 0){
+                    n.add(roles.get(i));
+                    a.add(interned.computeIfAbsent(roles.get(i), SimpleGrantedAuthority::new));
+                }
+            }
+            names.add(List.copyOf(n));
+            authorities.add(List.copyOf(a));
+        }
+        return new Version(Map.copyOf(bits), List.copyOf(names), List.copyOf(authorities));
+    }
+}
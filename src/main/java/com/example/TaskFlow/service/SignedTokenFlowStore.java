@@ -0,0 +1,161 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.Constants;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Stateless FlowStore. The flow id handed out by /auth/identify is a short-lived token signed by JwtService
+// carrying the username, the expiry and a random nonce, so a flow costs no memory until someone tries a password
+// and any node can verify it without coordination.
+// The only state kept is the attempt counter of each nonce, created on the first attempt and expiring with the token.
+// A successful login marks the nonce as used, so the same token can't be replayed until it expires.
+public class SignedTokenFlowStore implements FlowStore {
+
+    private static final int USED = Integer.MAX_VALUE;
+
+    // Token flow that keeps its nonce, so registerAttempt() doesn't have to verify the token again
+    private static final class TokenFlow extends LoginFlowService.Flow {
+        final long nonce;
+
+        TokenFlow(String id, String username, Instant expiresAt, long nonce){
+            super(id, username, expiresAt);
+            this.nonce = nonce;
+        }
+    }
+
+    private final JwtService jwtService;
+    private final long ttlSeconds;
+    private final int maxCounters;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+    // Keyed by the 64 bit nonce. A counter is written at the first attempt, never before its token was issued,
+    // and lives ttlSeconds from then on, so it can't expire while its token is still accepted.
+    private final Cache<Long,AtomicInteger> attempts;
+
+    public SignedTokenFlowStore(JwtService jwtService, long ttlSeconds, int maxCounters, Clock clock){
+        this.jwtService = jwtService;
+        this.ttlSeconds = ttlSeconds;
+        this.maxCounters = maxCounters;
+        this.clock = clock;
+        this.attempts = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                // Every login writes a counter, handing each write's cache maintenance to the common
+                // pool costs a thread wake-up per login, doing it on the calling thread is far cheaper
+                .executor(Runnable::run)
+                .build();
+    }
+
+    @Override
+    public LoginFlowService.Flow create(String username){
+        long nonce = random.nextLong();
+        // JWT expiry has second precision, truncating keeps the Flow and the token in agreement
+        Instant expiresAt = clock.instant().plusSeconds(ttlSeconds).truncatedTo(ChronoUnit.SECONDS);
+        String token = jwtService.createFlowToken(username, nonce, expiresAt);
+        return new TokenFlow(token, username, expiresAt, nonce);
+    }
+
+    @Override
+    public Optional<LoginFlowService.Flow> get(String flowId){
+        TokenFlow flow = verify(flowId);
+        if(flow == null){
+            return Optional.empty();
+        }
+        AtomicInteger counter = attempts.getIfPresent(flow.nonce);
+        if(counter != null){
+            if(counter.get() == USED){
+                return Optional.empty();
+            }
+            flow.attempts.set(counter.get());
+        }
+        return Optional.of(flow);
+    }
+
+    // Counters are only created here, so they are bounded by the logins actually being attempted.
+    // When maxCounters are already live new attempts get a 503 instead of silently evicting an existing
+    // counter, which would hand an attacker a fresh set of attempts.
+    @Override
+    public int registerAttempt(LoginFlowService.Flow flow){
+        long nonce;
+        if(flow instanceof TokenFlow tokenFlow){
+            nonce = tokenFlow.nonce;
+        } else {
+            TokenFlow verified = verify(flow.id);
+            if(verified == null){
+                return Integer.MAX_VALUE;
+            }
+            nonce = verified.nonce;
+        }
+        AtomicInteger counter = attempts.getIfPresent(nonce);
+        if(counter == null){
+            if(attempts.estimatedSize() >= maxCounters){
+                throw FlowStore.capacityReached();
+            }
+            counter = attempts.get(nonce, k -> new AtomicInteger());
+        }
+        return counter.updateAndGet(n -> n == USED ? USED : n + 1);
+    }
+
+    // Nothing to remove, the token lives on the client. Its nonce is marked as used instead.
+    @Override
+    public void delete(String flowId){
+        TokenFlow flow = verify(flowId);
+        if(flow != null){
+            markUsed(flow.nonce);
+        }
+    }
+
+    // A flow returned by get() was verified already, so its nonce can be used as is
+    @Override
+    public void delete(LoginFlowService.Flow flow){
+        if(flow instanceof TokenFlow tokenFlow){
+            markUsed(tokenFlow.nonce);
+        } else {
+            delete(flow.id);
+        }
+    }
+
+    @Override
+    public void sweepExpired(){
+        attempts.cleanUp();
+    }
+
+    // Number of attempt counters held, the tokens themselves take no server memory
+    @Override
+    public int size(){
+        return (int) attempts.estimatedSize();
+    }
+
+    private void markUsed(long nonce){
+        attempts.put(nonce, new AtomicInteger(USED));
+    }
+
+    private TokenFlow verify(String token){
+        if(token == null || token.isEmpty()){
+            return null;
+        }
+        try{
+            Claims claims = jwtService.parseFlowToken(token);
+            Object nonce = claims.get(Constants.NONCE);
+            if(claims.getExpiration() == null || !(nonce instanceof Number)){
+                return null;
+            }
+            Instant expiresAt = claims.getExpiration().toInstant();
+            if(expiresAt.isBefore(clock.instant())){
+                return null;
+            }
+            return new TokenFlow(token, claims.getSubject(), expiresAt, ((Number) nonce).longValue());
+        }catch(JwtException | IllegalArgumentException e){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.TaskFlow.service;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.PublicJwk;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import javax.sql.DataSource;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Asymmetric keys the access and refresh tokens are signed with (app.jwt.signing.algorithm ES256 or EdDSA), so any
+// service can verify our tokens with the public keys of /.well-known/jwks.json instead of calling back or sharing
+// app.jwt.secret. With HS256 there are no keys here and JwtService signs with the secret as before.
+// Keys are kept in a table so every node signs and verifies with the same ones. Every token names its key (kid),
+// and each key is published in the JWKS from the moment it is created, publish-ahead-seconds before it signs
+// anything, so verifiers that cached the JWKS already know it. The newest active key signs, a new one is created
+// rotate-after-hours after the current one became active (or right away when the algorithm changes), and a retired
+// key stays until every token it signed has expired, that is the refresh token lifetime after its successor took over.
+// Private keys are stored encrypted (AES-GCM) under a key derived from app.jwt.secret, the table alone can't sign.
+// All of it is held in one immutable snapshot, swapped on every reload: the signing key, the public key of every
+// kid to verify with, and the JWKS document, so none of it is rebuilt per request.
+@Service
+@DependsOn("entityManagerFactory")
+public class SigningKeyRing implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(SigningKeyRing.class);
+
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    // Node clocks differ a little, a retired key is kept this much longer than its last token could live
+    private static final long CLOCK_SKEW_MILLIS = 60_000;
+
+    // The key new tokens are signed with
+    public record SigningKey(String kid, SignatureAlgorithm algorithm, PrivateKey privateKey){ }
+
+    // A key to verify with, only for tokens whose header names the algorithm it was created for
+    record Verifier(String algorithm, PublicKey publicKey){ }
+
+    private record StoredKey(String kid, long generation, String algorithm, String publicKey, String privateKey, long activatesAt){ }
+
+    private record Snapshot(SigningKey signing, Map<String, Verifier> verifiers, String jwks, String etag){ }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SignatureAlgorithm algorithm;
+    private final String table;
+    private final long rotateAfterMillis;
+    private final long publishAheadMillis;
+    private final long retainMillis;
+    private final SecretKey wrappingKey;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong rotations = new AtomicLong();
+    // One rotation check at a time, without pinning a virtual thread through its JDBC calls
+    private final ReentrantLock rotateLock = new ReentrantLock();
+    private volatile Snapshot snapshot = new Snapshot(null, Map.of(), "{\"keys\":[]}", etag("{\"keys\":[]}"));
+
+    @Autowired
+    public SigningKeyRing(DataSource dataSource,
+                          @Value("${app.jwt.secret}") String base64Secret,
+                          @Value("${app.jwt.signing.algorithm:ES256}") String algorithm,
+                          @Value("${app.jwt.signing.table:taskflow_auth.jwt_signing_keys}") String table,
+                          @Value("${app.jwt.signing.rotate-after-hours:24}") long rotateAfterHours,
+                          @Value("${app.jwt.signing.publish-ahead-seconds:600}") long publishAheadSeconds,
+                          @Value("${app.jwt.refresh-ttl-min:10080}") long refreshTokenValidity){
+        this(dataSource, base64Secret, algorithm, table, rotateAfterHours, publishAheadSeconds, refreshTokenValidity, Clock.systemUTC());
+    }
+
+    SigningKeyRing(DataSource dataSource, String base64Secret, String algorithm, String table, long rotateAfterHours,
+                   long publishAheadSeconds, long refreshTokenValidity, Clock clock){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.algorithm = signatureAlgorithm(algorithm);
+        this.table = table;
+        this.rotateAfterMillis = rotateAfterHours * 3_600_000;
+        this.publishAheadMillis = publishAheadSeconds * 1000;
+        this.retainMillis = refreshTokenValidity * 60_000 + CLOCK_SKEW_MILLIS;
+        this.wrappingKey = new SecretKeySpec(JwtService.deriveKey(Keys.hmacShaKeyFor(Decoders.BASE64.decode(base64Secret)), "taskflow-signing-keys").getEncoded(), "AES");
+        this.clock = clock;
+        if(this.algorithm != null){
+            createTableIfMissing();
+            rotateIfDue();
+        }
+    }
+
+    // False with HS256, JwtService then signs with app.jwt.secret
+    public boolean isEnabled(){
+        return algorithm != null;
+    }
+
+    // The key to sign with now, null with HS256
+    public SigningKey current(){
+        return snapshot.signing;
+    }
+
+    // The public key of kid, if the ring has one and it was created for this algorithm
+    public PublicKey verificationKey(String kid, String algorithm){
+        Verifier verifier = snapshot.verifiers.get(kid);
+        return verifier != null && verifier.algorithm.equals(algorithm) ? verifier.publicKey : null;
+    }
+
+    // The JWK Set of every key a token may be signed with, already serialized
+    public String jwks(){
+        return snapshot.jwks;
+    }
+
+    // Changes with the JWKS, for the ETag of /.well-known/jwks.json
+    public String jwksEtag(){
+        return snapshot.etag;
+    }
+
+    // Reloads the keys from the table and creates the next one when the current key is due for rotation.
+    // Two nodes rotating at once both try to insert the same generation, the second insert fails and it reloads
+    // the winner's key instead. Returns true if this call created a key.
+    @Scheduled(fixedDelayString = "${app.jwt.signing.check-interval-ms:60000}")
+    public boolean rotateIfDue(){
+        rotateLock.lock();
+        try{
+            return rotate();
+        }finally{
+            rotateLock.unlock();
+        }
+    }
+
+    private boolean rotate(){
+        if(algorithm == null){
+            return false;
+        }
+        List<StoredKey> keys = reload();
+        StoredKey newest = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+        long now = clock.millis();
+        boolean due = newest == null
+                || !newest.algorithm.equals(algorithm.getId())
+                || now >= newest.activatesAt + rotateAfterMillis - publishAheadMillis;
+        if(!due){
+            return false;
+        }
+        // The very first key has nothing to take over from and signs right away
+        long activatesAt = newest == null ? now : now + publishAheadMillis;
+        long generation = newest == null ? 1 : newest.generation + 1;
+        if(!insert(generation, activatesAt)){
+            reload();
+            return false;
+        }
+        rotations.incrementAndGet();
+        reload();
+        return true;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        Gauge.builder("jwt.signing.keys", this, ring -> ring.snapshot.verifiers.size())
+                .description("Keys published in the JWKS, the signing key and the ones tokens may still be signed with")
+                .register(registry);
+        FunctionCounter.builder("jwt.signing.rotations", rotations, AtomicLong::get)
+                .register(registry);
+    }
+
+    // Reads every key, deletes the ones nothing can be signed with anymore and swaps in a new snapshot.
+    // Verifiers of kids the previous snapshot already had are kept, only new keys are decoded.
+    private List<StoredKey> reload(){
+        List<StoredKey> keys = jdbcTemplate.query("SELECT kid, generation, algorithm, public_key, private_key, activates_at FROM "
+                        + table + " ORDER BY generation",
+                (rs, rowNum) -> new StoredKey(rs.getString(1), rs.getLong(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getLong(6)));
+        long now = clock.millis();
+        // The newest active key signs. Before the first one activates on this node's clock, the oldest one does.
+        int signing = 0;
+        for(int i = 0; i < keys.size(); i++){
+            if(keys.get(i).activatesAt <= now){
+                signing = i;
+            }
+        }
+        List<StoredKey> live = new ArrayList<>(keys.size());
+        for(int i = 0; i < keys.size(); i++){
+            // Retired when its successor took over, expired once the last token it signed has too
+            if(i < signing && keys.get(i + 1).activatesAt + retainMillis < now){
+                jdbcTemplate.update("DELETE FROM " + table + " WHERE kid = ?", keys.get(i).kid);
+                log.info("Signing key {} expired", keys.get(i).kid);
+                continue;
+            }
+            live.add(keys.get(i));
+        }
+        if(live.isEmpty()){
+            return live;
+        }
+        Snapshot previous = snapshot;
+        Map<String, Verifier> verifiers = new HashMap<>();
+        StringJoiner jwks = new StringJoiner(",", "{\"keys\":[", "]}");
+        for(StoredKey key : live){
+            Verifier verifier = previous.verifiers.get(key.kid);
+            if(verifier == null){
+                verifier = new Verifier(key.algorithm, decodePublicKey(key.publicKey, keyFactoryAlgorithm(key.algorithm)));
+            }
+            verifiers.put(key.kid, verifier);
+            PublicJwk<PublicKey> jwk = Jwks.builder().key(verifier.publicKey)
+                    .id(key.kid)
+                    .algorithm(key.algorithm)
+                    .publicKeyUse("sig")
+                    .build();
+            jwks.add(Jwks.json(jwk));
+        }
+        StoredKey current = keys.get(signing);
+        SigningKey signingKey = previous.signing != null && previous.signing.kid.equals(current.kid)
+                ? previous.signing
+                : new SigningKey(current.kid, signatureAlgorithm(current.algorithm), unwrap(current));
+        String document = jwks.toString();
+        snapshot = new Snapshot(signingKey, Map.copyOf(verifiers), document, etag(document));
+        return live;
+    }
+
+    // A fresh key pair, its kid the RFC 7638 thumbprint of the public key. False if another node inserted this generation first.
+    private boolean insert(long generation, long activatesAt){
+        // EdDSA would default to Ed448, Ed25519 is faster and the curve verifiers support
+        KeyPair pair = algorithm == Jwts.SIG.EdDSA ? Jwks.CRV.Ed25519.keyPair().build() : algorithm.keyPair().build();
+        String kid = Jwks.builder().key(pair.getPublic()).idFromThumbprint().build().getId();
+        try{
+            jdbcTemplate.update("INSERT INTO " + table + " (kid, generation, algorithm, public_key, private_key, created_at, activates_at) "
+                            + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                    kid, generation, algorithm.getId(),
+                    Base64.getEncoder().encodeToString(pair.getPublic().getEncoded()),
+                    wrap(kid, pair.getPrivate()),
+                    clock.millis(), activatesAt);
+        }catch(DuplicateKeyException e){
+            return false;
+        }
+        log.info("Signing key {} ({}) created, signs from {}", kid, algorithm.getId(), Instant.ofEpochMilli(activatesAt));
+        return true;
+    }
+
+    // IV followed by the AES-GCM ciphertext of the PKCS#8 key, the kid is authenticated with it
+    private String wrap(String kid, PrivateKey privateKey){
+        try{
+            byte[] iv = new byte[GCM_IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = cipher.doFinal(privateKey.getEncoded());
+            return Base64.getEncoder().encodeToString(ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array());
+        }catch(GeneralSecurityException e){
+            throw new IllegalStateException("Could not encrypt signing key " + kid, e);
+        }
+    }
+
+    // Fails when app.jwt.secret is not the one the key was stored with
+    private PrivateKey unwrap(StoredKey key){
+        try{
+            byte[] stored = Base64.getDecoder().decode(key.privateKey);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_BITS, stored, 0, GCM_IV_BYTES));
+            cipher.updateAAD(key.kid.getBytes(StandardCharsets.UTF_8));
+            byte[] pkcs8 = cipher.doFinal(stored, GCM_IV_BYTES, stored.length - GCM_IV_BYTES);
+            return KeyFactory.getInstance(keyFactoryAlgorithm(key.algorithm)).generatePrivate(new PKCS8EncodedKeySpec(pkcs8));
+        }catch(GeneralSecurityException e){
+            throw new IllegalStateException("Could not decrypt signing key " + key.kid + ", was app.jwt.secret changed?", e);
+        }
+    }
+
+    private static PublicKey decodePublicKey(String encoded, String keyFactoryAlgorithm){
+        try{
+            return KeyFactory.getInstance(keyFactoryAlgorithm).generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(encoded)));
+        }catch(GeneralSecurityException e){
+            throw new IllegalStateException("Could not decode signing key", e);
+        }
+    }
+
+    private void createTableIfMissing(){
+        // Times are epoch milliseconds like the other auth tables, keys are Base64 text so the table looks the same in H2
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "kid VARCHAR(64) PRIMARY KEY, "
+                + "generation BIGINT NOT NULL UNIQUE, "
+                + "algorithm VARCHAR(16) NOT NULL, "
+                + "public_key VARCHAR(1024) NOT NULL, "
+                + "private_key VARCHAR(1024) NOT NULL, "
+                + "created_at BIGINT NOT NULL, "
+                + "activates_at BIGINT NOT NULL)");
+    }
+
+    // null for HS256, which needs no key pairs
+    private static SignatureAlgorithm signatureAlgorithm(String id){
+        return switch(id){
+            case "HS256" -> null;
+            case "ES256" -> Jwts.SIG.ES256;
+            case "EdDSA" -> Jwts.SIG.EdDSA;
+            default -> throw new IllegalArgumentException("app.jwt.signing.algorithm must be HS256, ES256 or EdDSA, not " + id);
+        };
+    }
+
+    private static String keyFactoryAlgorithm(String algorithm){
+        return "ES256".equals(algorithm) ? "EC" : "EdDSA";
+    }
+
+    private static String etag(String document){
+        try{
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(document.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22);
+        }catch(GeneralSecurityException e){
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
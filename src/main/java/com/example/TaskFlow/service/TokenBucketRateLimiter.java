@@ -0,0 +1,104 @@
+package com.example.TaskFlow.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Token bucket per key (client address, identifier, ...) holding up to capacity tokens and refilled with
+// refillPerMinute of them, each request takes one.
+// A bucket is a single AtomicLong: the time at which it would be full again (the "theoretical arrival time" of
+// the generic cell rate algorithm, which behaves exactly like a token bucket). Taking a token is one CAS that
+// moves it forward by the refill interval, no lock and no refill task. A request that would move it more than
+// capacity intervals past now finds the bucket empty and is rejected without taking anything.
+// The buckets live in a Caffeine cache, a concurrent hash table that spreads keys over independently updated
+// bins, and a bucket left alone for capacity intervals is full again, so expiring it after that long loses nothing.
+// maximumSize bounds the memory a flood of distinct keys can take, the least recently used are evicted first.
+public final class TokenBucketRateLimiter {
+
+    public record Snapshot(String name, long capacity, long refillPerMinute, long trackedKeys, long allowed, long rejected){ }
+
+    private final String name;
+    private final long capacity;
+    private final long refillPerMinute;
+    // Microseconds between two tokens, and how far ahead a full bucket can be spent
+    private final long interval;
+    private final long burst;
+    private final Clock clock;
+    private final Cache<String, AtomicLong> buckets;
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public TokenBucketRateLimiter(String name, long capacity, long refillPerMinute, long maxKeys, Clock clock){
+        if(capacity < 1 || refillPerMinute < 1){
+            throw new IllegalArgumentException("Rate limit " + name + " needs a capacity and refill of at least 1");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.refillPerMinute = refillPerMinute;
+        this.interval = TimeUnit.MINUTES.toMicros(1) / refillPerMinute;
+        this.burst = capacity * interval;
+        this.clock = clock;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos(TimeUnit.MICROSECONDS.toNanos(burst)))
+                .maximumSize(maxKeys)
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+                .build();
+    }
+
+    // Takes a token from the key's bucket. Returns 0 if there was one, otherwise the microseconds until there is
+    public long tryAcquire(String key){
+        AtomicLong bucket = buckets.get(key, k -> new AtomicLong());
+        long now = now();
+        while(true){
+            long full = bucket.get();
+            long next = Math.max(full, now) + interval;
+            if(next - now > burst){
+                rejected.increment();
+                return next - burst - now;
+            }
+            if(bucket.compareAndSet(full, next)){
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    // Tokens left in the key's bucket, capacity for a key without one
+    public long available(String key){
+        AtomicLong bucket = buckets.getIfPresent(key);
+        if(bucket == null){
+            return capacity;
+        }
+        long now = now();
+        return (burst - (Math.max(bucket.get(), now) - now)) / interval;
+    }
+
+    public Snapshot snapshot(){
+        return new Snapshot(name, capacity, refillPerMinute, buckets.estimatedSize(), allowed.sum(), rejected.sum());
+    }
+
+    public String name(){
+        return name;
+    }
+
+    long allowedCount(){
+        return allowed.sum();
+    }
+
+    long rejectedCount(){
+        return rejected.sum();
+    }
+
+    long trackedKeys(){
+        return buckets.estimatedSize();
+    }
+
+    private long now(){
+        return TimeUnit.MILLISECONDS.toMicros(clock.millis());
+    }
+}
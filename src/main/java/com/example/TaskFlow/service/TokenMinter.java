@@ -0,0 +1,362 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.Constants;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+// Writes access and refresh tokens byte by byte instead of going through Jwts.builder(), which puts the claims in
+// maps, serializes header and payload with Jackson, base64-encodes the results into new Strings and looks up a new
+// Mac or Signature for every token. Login and refresh mint two tokens each, JwtService.parse reads them back like any other.
+// - The header never changes for a given key, it is kept base64url-encoded, and so are the constant claims
+//   (issuer, token type) as JSON fragments, escaped once.
+// - The payload is written straight into a per-thread buffer, username and roles escaped on the way (or the roles
+//   as a RoleRegistry mask), numbers as digits, the jti from the bits of its UUID, then base64url-encoded into a second buffer behind the header.
+// - The signature comes from a per-thread Mac (HS256) or Signature (ES256, EdDSA) that is only initialized again
+//   when the signing key changes, and is written into a fixed array.
+// - A pair shares its clock read and the subject, roles and iat fragment, which is written once and copied.
+// What is left per token is the String itself and whatever the signature provider allocates.
+// The buffers live as long as the thread: a platform thread pool reuses them, a virtual thread starts afresh.
+final class TokenMinter {
+
+    private static final byte[] BASE64URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    // {"alg":"HS256"}, exactly what Jwts.builder() writes for a token without kid
+    private static final byte[] HS256_HEADER = base64url("{\"alg\":\"HS256\"}");
+
+    private static final byte[] SUB = ascii("\"sub\":");
+    private static final byte[] ROLES = ascii(",\"" + Constants.ROLES + "\":[");
+    private static final byte[] ROLE_MASK = ascii(",\"" + Constants.ROLE_MASK + "\":");
+    private static final byte[] ROLE_VERSION = ascii(",\"" + Constants.ROLE_VERSION + "\":");
+    private static final byte[] IAT = ascii(",\"iat\":");
+    private static final byte[] ACCESS_TYPE = ascii(",\"" + Constants.TYPE + "\":\"" + Constants.ACCESS_TOKEN_CLAIM + "\",\"exp\":");
+    private static final byte[] REFRESH_TYPE = ascii(",\"" + Constants.TYPE + "\":\"" + Constants.REFRESH_TOKEN_CLAIM + "\",\"exp\":");
+    private static final byte[] JTI = ascii(",\"jti\":");
+    private static final byte[] FAMILY = ascii(",\"" + Constants.FAMILY + "\":");
+
+    // Header of the ring key tokens were last signed with, replaced when it rotates
+    private record KeyHeader(String kid, byte[] encoded){ }
+
+    private final SecretKey hmacKey;
+    // null writes the roles as a list of names
+    private final RoleRegistry roleRegistry;
+    private final int roleVersion;
+    // {"iss":"<issuer>",
+    private final byte[] issuer;
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    private volatile KeyHeader keyHeader = new KeyHeader("", new byte[0]);
+
+    TokenMinter(SecretKey hmacKey, String issuer, RoleRegistry roleRegistry){
+        this.hmacKey = hmacKey;
+        this.roleRegistry = roleRegistry;
+        this.roleVersion = roleRegistry == null ? 0 : roleRegistry.current();
+        Scratch s = new Scratch();
+        s.append(ascii("{\"iss\":"));
+        s.appendJson(issuer);
+        s.append((byte) ',');
+        this.issuer = Arrays.copyOf(s.json, s.length);
+    }
+
+    // Signed with key, or HS256 with the secret when key is null. Expiry and issued at are epoch seconds.
+    String access(SigningKeyRing.SigningKey key, String username, List<String> roles, long issuedAt, long expiresAt){
+        Scratch s = scratch.get();
+        s.writeCommon(issuer, username, roles, roleMask(roles), roleVersion, issuedAt);
+        return s.access(this, key, expiresAt);
+    }
+
+    String refresh(SigningKeyRing.SigningKey key, String username, List<String> roles, long issuedAt, long expiresAt,
+                   String familyId, String jti){
+        Scratch s = scratch.get();
+        s.writeCommon(issuer, username, roles, roleMask(roles), roleVersion, issuedAt);
+        return s.refresh(this, key, expiresAt, familyId, jti);
+    }
+
+    // Both tokens of a login or refresh, signed with the same key and issued at the same second
+    JwtService.TokenPair pair(SigningKeyRing.SigningKey key, String username, List<String> roles, long issuedAt,
+                              long accessExpiresAt, long refreshExpiresAt, String familyId, String refreshJti){
+        Scratch s = scratch.get();
+        s.writeCommon(issuer, username, roles, roleMask(roles), roleVersion, issuedAt);
+        String access = s.access(this, key, accessExpiresAt);
+        String refresh = s.refresh(this, key, refreshExpiresAt, familyId, refreshJti);
+        return new JwtService.TokenPair(access, refresh);
+    }
+
+    private int roleMask(List<String> roles){
+        return roleRegistry == null ? -1 : roleRegistry.mask(roles);
+    }
+
+    private byte[] header(SigningKeyRing.SigningKey key){
+        if(key == null){
+            return HS256_HEADER;
+        }
+        KeyHeader current = keyHeader;
+        if(!current.kid.equals(key.kid())){
+            current = new KeyHeader(key.kid(), base64url("{\"kid\":\"" + key.kid() + "\",\"alg\":\"" + key.algorithm().getId() + "\"}"));
+            keyHeader = current;
+        }
+        return current.encoded;
+    }
+
+    private static byte[] ascii(String s){
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] base64url(String json){
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[(raw.length * 4 + 2) / 3];
+        encode(raw, 0, raw.length, out, 0);
+        return out;
+    }
+
+    // Base64url without padding of src[off, off + len) into dst at dp, returns the end in dst
+    private static int encode(byte[] src, int off, int len, byte[] dst, int dp){
+        int end = off + len - len % 3;
+        int i = off;
+        while(i < end){
+            int bits = (src[i++] & 0xFF) << 16 | (src[i++] & 0xFF) << 8 | (src[i++] & 0xFF);
+            dst[dp++] = BASE64URL[bits >>> 18];
+            dst[dp++] = BASE64URL[(bits >>> 12) & 0x3F];
+            dst[dp++] = BASE64URL[(bits >>> 6) & 0x3F];
+            dst[dp++] = BASE64URL[bits & 0x3F];
+        }
+        int rest = off + len - end;
+        if(rest == 1){
+            int bits = (src[i] & 0xFF) << 16;
+            dst[dp++] = BASE64URL[bits >>> 18];
+            dst[dp++] = BASE64URL[(bits >>> 12) & 0x3F];
+        }else if(rest == 2){
+            int bits = (src[i] & 0xFF) << 16 | (src[i + 1] & 0xFF) << 8;
+            dst[dp++] = BASE64URL[bits >>> 18];
+            dst[dp++] = BASE64URL[(bits >>> 12) & 0x3F];
+            dst[dp++] = BASE64URL[(bits >>> 6) & 0x3F];
+        }
+        return dp;
+    }
+
+    // One per thread: the payload being written, the common part of a pair, the token and the signing state
+    private static final class Scratch {
+        byte[] json = new byte[512];
+        int length;
+        byte[] common = new byte[256];
+        int commonLength;
+        byte[] token = new byte[1024];
+        final byte[] signature = new byte[64];
+        Mac mac;
+        Signature signer;
+        String signerKid;
+
+        // {"iss":..,"sub":..,"rm":..,"rv":..,"iat":.. shared by every token minted from it,
+        // "roles":[..] in place of rm and rv when roleMask is -1
+        void writeCommon(byte[] issuer, String username, List<String> roles, int roleMask, int roleVersion, long issuedAt){
+            length = 0;
+            append(issuer);
+            append(SUB);
+            appendJson(username);
+            if(roleMask >= 0){
+                append(ROLE_MASK);
+                appendLong(roleMask);
+                append(ROLE_VERSION);
+                appendLong(roleVersion);
+            }else{
+                append(ROLES);
+                for(int i = 0; i < roles.size(); i++){
+                    if(i > 0){
+                        append((byte) ',');
+                    }
+                    appendJson(roles.get(i));
+                }
+                append((byte) ']');
+            }
+            append(IAT);
+            appendLong(issuedAt);
+            if(common.length < length){
+                common = new byte[json.length];
+            }
+            System.arraycopy(json, 0, common, 0, length);
+            commonLength = length;
+        }
+
+        String access(TokenMinter minter, SigningKeyRing.SigningKey key, long expiresAt){
+            startFromCommon();
+            append(ACCESS_TYPE);
+            appendLong(expiresAt);
+            append(JTI);
+            // The random jti AccessTokenDenylist revokes by, written from its bits without a String
+            UUID jti = UUID.randomUUID();
+            appendUuid(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+            append((byte) '}');
+            return sign(minter, key);
+        }
+
+        String refresh(TokenMinter minter, SigningKeyRing.SigningKey key, long expiresAt, String familyId, String jti){
+            startFromCommon();
+            append(REFRESH_TYPE);
+            appendLong(expiresAt);
+            append(JTI);
+            appendJson(jti);
+            append(FAMILY);
+            appendJson(familyId);
+            append((byte) '}');
+            return sign(minter, key);
+        }
+
+        private void startFromCommon(){
+            System.arraycopy(common, 0, json, 0, commonLength);
+            length = commonLength;
+        }
+
+        // header.payload, then the signature over those bytes
+        private String sign(TokenMinter minter, SigningKeyRing.SigningKey key){
+            byte[] header = minter.header(key);
+            int needed = header.length + 1 + (length * 4 + 2) / 3 + 1 + 86;
+            if(token.length < needed){
+                token = new byte[Math.max(needed, token.length * 2)];
+            }
+            System.arraycopy(header, 0, token, 0, header.length);
+            int end = header.length;
+            token[end++] = '.';
+            end = encode(json, 0, length, token, end);
+            int signatureLength;
+            try{
+                signatureLength = key == null ? hmac(minter.hmacKey, end) : signature(key, end);
+            }catch(GeneralSecurityException e){
+                throw new IllegalStateException("Could not sign token", e);
+            }
+            token[end++] = '.';
+            end = encode(signature, 0, signatureLength, token, end);
+            return new String(token, 0, end, StandardCharsets.ISO_8859_1);
+        }
+
+        private int hmac(SecretKey secret, int end) throws GeneralSecurityException {
+            if(mac == null){
+                mac = Mac.getInstance("HmacSHA256");
+                mac.init(secret);
+            }
+            mac.update(token, 0, end);
+            mac.doFinal(signature, 0);
+            return mac.getMacLength();
+        }
+
+        // ES256 signatures in JWS are R || S, the P1363 format, not the DER encoding of the plain SHA256withECDSA
+        private int signature(SigningKeyRing.SigningKey key, int end) throws GeneralSecurityException {
+            if(signer == null || !key.kid().equals(signerKid)){
+                signer = Signature.getInstance("ES256".equals(key.algorithm().getId()) ? "SHA256withECDSAinP1363Format" : "Ed25519");
+                signer.initSign(key.privateKey());
+                signerKid = key.kid();
+            }
+            signer.update(token, 0, end);
+            return signer.sign(signature, 0, signature.length);
+        }
+
+        void append(byte b){
+            ensure(1);
+            json[length++] = b;
+        }
+
+        void append(byte[] bytes){
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, json, length, bytes.length);
+            length += bytes.length;
+        }
+
+        // A JSON string in UTF-8, quotes, backslashes and control characters escaped, null as null
+        void appendJson(String value){
+            if(value == null){
+                append(ascii("null"));
+                return;
+            }
+            ensure(value.length() * 6 + 2);
+            json[length++] = '"';
+            for(int i = 0; i < value.length(); i++){
+                char c = value.charAt(i);
+                if(c < 0x80){
+                    if(c == '"' || c == '\\'){
+                        json[length++] = '\\';
+                        json[length++] = (byte) c;
+                    }else if(c < 0x20){
+                        appendEscaped(c);
+                    }else{
+                        json[length++] = (byte) c;
+                    }
+                }else if(c < 0x800){
+                    json[length++] = (byte) (0xC0 | c >> 6);
+                    json[length++] = (byte) (0x80 | c & 0x3F);
+                }else if(Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))){
+                    int cp = Character.toCodePoint(c, value.charAt(++i));
+                    json[length++] = (byte) (0xF0 | cp >> 18);
+                    json[length++] = (byte) (0x80 | (cp >> 12) & 0x3F);
+                    json[length++] = (byte) (0x80 | (cp >> 6) & 0x3F);
+                    json[length++] = (byte) (0x80 | cp & 0x3F);
+                }else if(Character.isSurrogate(c)){
+                    // Unpaired, not encodable in UTF-8
+                    appendEscaped(c);
+                }else{
+                    json[length++] = (byte) (0xE0 | c >> 12);
+                    json[length++] = (byte) (0x80 | (c >> 6) & 0x3F);
+                    json[length++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            json[length++] = '"';
+        }
+
+        void appendLong(long value){
+            ensure(20);
+            if(value < 0){
+                json[length++] = '-';
+                value = -value;
+            }
+            int start = length;
+            do{
+                json[length++] = (byte) ('0' + value % 10);
+                value /= 10;
+            }while(value != 0);
+            for(int i = start, j = length - 1; i < j; i++, j--){
+                byte t = json[i];
+                json[i] = json[j];
+                json[j] = t;
+            }
+        }
+
+        // "xxxxxxxx-xxxx-xxxx-xxxx-xxxxxxxxxxxx" like UUID.toString()
+        void appendUuid(long msb, long lsb){
+            ensure(38);
+            json[length++] = '"';
+            appendHex(msb >>> 32, 8);
+            json[length++] = '-';
+            appendHex(msb >>> 16, 4);
+            json[length++] = '-';
+            appendHex(msb, 4);
+            json[length++] = '-';
+            appendHex(lsb >>> 48, 4);
+            json[length++] = '-';
+            appendHex(lsb, 12);
+            json[length++] = '"';
+        }
+
+        private void appendHex(long value, int digits){
+            for(int i = digits - 1; i >= 0; i--){
+                json[length + i] = HEX[(int) (value & 0xF)];
+                value >>>= 4;
+            }
+            length += digits;
+        }
+
+        private void appendEscaped(char c){
+            json[length++] = '\\';
+            json[length++] = 'u';
+            appendHex(c, 4);
+        }
+
+        private void ensure(int more){
+            if(length + more > json.length){
+                json = Arrays.copyOf(json, Math.max(length + more, json.length * 2));
+            }
+        }
+    }
+}
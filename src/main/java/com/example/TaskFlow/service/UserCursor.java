@@ -0,0 +1,48 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.ErrorCode;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+// Cursor token of the keyset paginated /user/all. It only carries the id of the last user on the previous page,
+// but clients get it as an opaque URL safe string so the format can change (the leading version byte) without
+// them noticing. A cursor doesn't need to be signed, it can't reach anything a plain id in the query couldn't.
+public final class UserCursor {
+
+    private static final byte VERSION = 1;
+    private static final int LENGTH = 1 + Long.BYTES;
+
+    // Starting point when no cursor is given, before every id
+    public static final long START = Long.MIN_VALUE;
+
+    private UserCursor(){
+    }
+
+    public static String encode(long lastId){
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH).put(VERSION).putLong(lastId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    // The id after which the next page starts, START when there is no cursor. Throws a 400 for anything we didn't issue.
+    public static long decode(String cursor){
+        if(cursor == null || cursor.isEmpty()){
+            return START;
+        }
+        byte[] bytes;
+        try{
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        }catch(IllegalArgumentException e){
+            throw invalid();
+        }
+        if(bytes.length != LENGTH || bytes[0] != VERSION){
+            throw invalid();
+        }
+        return ByteBuffer.wrap(bytes, 1, Long.BYTES).getLong();
+    }
+
+    private static ResponseStatusException invalid(){
+        return new ResponseStatusException(ErrorCode.INVALID_CURSOR.getStatus(), ErrorCode.INVALID_CURSOR.getMessage());
+    }
+}
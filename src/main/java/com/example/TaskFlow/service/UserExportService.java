@@ -0,0 +1,88 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.model.User;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Streams the whole users table as NDJSON (one JSON object per line) without ever holding more than a
+// fetch-size worth of rows. The rows come straight from JDBC, not through the persistence context, and each
+// one is serialized into the response buffer as soon as it is read.
+// PostgreSQL only uses a server side cursor when the statement is forward-only, has a fetch size and runs
+// outside auto-commit, which is what the read-only transaction around export() is for. Without it the driver
+// would pull the complete result into memory before handing out the first row.
+@Service
+public class UserExportService {
+
+    // Same fields /user/all returns, the password hash is never read
+    private static final String SELECT = "SELECT id, email, username, first_name, last_name, middle_name, "
+            + "is_active, is_locked, is_deleted, failed_login_attempts FROM taskflow_auth.users ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectWriter writer;
+
+    public UserExportService(DataSource dataSource, ObjectMapper objectMapper,
+                             @Value("${app.users.export.fetch-size:500}") int fetchSize){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        // Flushing after every user would turn each line into its own network write, the response buffer flushes when full
+        this.writer = objectMapper.writerFor(User.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+    }
+
+    // Writes every user to out and returns how many were written. out is flushed but left open.
+    // Once the first bytes are out a failure can't become an error response any more, the caller just sees the
+    // exception and the client a truncated stream.
+    @Transactional(readOnly = true)
+    public long export(OutputStream out) throws IOException {
+        long[] count = {0};
+        try(JsonGenerator generator = writer.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            SequenceWriter lines = writer.writeValues(generator)){
+            jdbcTemplate.query(SELECT, (ResultSet rs) -> {
+                try{
+                    lines.write(toUser(rs));
+                    count[0]++;
+                }catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // The last line gets its separator too, so the output can be concatenated or appended to
+            if(count[0] > 0){
+                generator.writeRaw('\n');
+            }
+        }catch(UncheckedIOException e){
+            throw e.getCause();
+        }
+        out.flush();
+        return count[0];
+    }
+
+    private static User toUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getLong("id"));
+        user.setEmail(rs.getString("email"));
+        user.setUsername(rs.getString("username"));
+        user.setFirstname(rs.getString("first_name"));
+        user.setLastname(rs.getString("last_name"));
+        user.setMiddlename(rs.getString("middle_name"));
+        user.setIsActive(rs.getObject("is_active", Boolean.class));
+        user.setIsLocked(rs.getObject("is_locked", Boolean.class));
+        user.setIsDeleted(rs.getObject("is_deleted", Boolean.class));
+        user.setFailedLoginAttempts(rs.getObject("failed_login_attempts", Integer.class));
+        return user;
+    }
+}
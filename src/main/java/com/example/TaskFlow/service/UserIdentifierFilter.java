@@ -0,0 +1,332 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.repo.UserIdentifiers;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bloom filter over every email and username, normalized the way UserIdentifiers matches them.
+// /auth/identify and /auth/register ask it first: "no" is definite and answered without a query, which is what
+// almost every identifier a credential stuffing bot tries gets. "Maybe" still goes to the database, a false
+// positive only costs the query we would have run anyway.
+// It is filled by a streaming scan of the users table, on startup and then every rebuild-interval-ms (or through
+// POST /admin/users/identifier-filter/rebuild), and every user registered or imported on this node is added once
+// its insert has committed. Bits can't be removed, the rebuild is what drops users deleted or renamed in the
+// database and resizes the filter for the current number of users.
+// Until the first build completes, and with enabled=false, everything is a "maybe".
+// Each node has its own filter, so a user added on one node is also written to a table (normalized, with the time
+// it was added) that every node reads back every sync-interval-ms, the same way AccessTokenDenylist spreads
+// revocations. A user registered elsewhere is a "maybe" here after the next sync instead of the next rebuild.
+// Rows are kept for a rebuild interval, by then every node has read them from the users table as well.
+@Service
+@DependsOn("entityManagerFactory")
+public class UserIdentifierFilter implements MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(UserIdentifierFilter.class);
+
+    // Each user adds an email and a username
+    private static final String SELECT = "SELECT email, username FROM taskflow_auth.users";
+    // Rows committed by another node shortly before our last sync may only become visible after it, and node
+    // clocks differ a little, so every sync reads back this far before the previous one
+    private static final long SYNC_OVERLAP_MILLIS = 60_000;
+
+    // An email and username to add, for adding a batch at once
+    public record Identifiers(String email, String username){ }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long expectedUsers;
+    private final double falsePositiveRate;
+    private final String table;
+    private final long retentionMillis;
+    private final Clock clock;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    // One sync at a time. A lock rather than synchronized, sync waits on the database while holding it
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final AtomicLong definiteMisses = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong synced = new AtomicLong();
+    private long lastSync;
+    private volatile Bits current;
+    // Set while a rebuild scans the table, inserts committed meanwhile go into both filters (see add)
+    private volatile Bits building;
+
+    @Autowired
+    public UserIdentifierFilter(DataSource dataSource, PlatformTransactionManager transactionManager,
+                                @Value("${app.users.identifier-filter.enabled:true}") boolean enabled,
+                                @Value("${app.users.identifier-filter.expected-users:100000}") long expectedUsers,
+                                @Value("${app.users.identifier-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                                @Value("${app.users.identifier-filter.fetch-size:1000}") int fetchSize,
+                                @Value("${app.users.identifier-filter.table:taskflow_auth.user_identifier_additions}") String table,
+                                @Value("${app.users.identifier-filter.rebuild-interval-ms:3600000}") long rebuildIntervalMs){
+        this(dataSource, transactionManager, enabled, expectedUsers, falsePositiveRate, fetchSize, table, rebuildIntervalMs, Clock.systemUTC());
+    }
+
+    UserIdentifierFilter(DataSource dataSource, PlatformTransactionManager transactionManager, boolean enabled, long expectedUsers,
+                         double falsePositiveRate, int fetchSize, String table, long rebuildIntervalMs, Clock clock){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        // A forward-only cursor only streams inside a transaction on PostgreSQL, same as in UserExportService
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.expectedUsers = expectedUsers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.table = table;
+        this.retentionMillis = rebuildIntervalMs + SYNC_OVERLAP_MILLIS;
+        this.clock = clock;
+        // Everything added before now is in the users table the first rebuild reads
+        this.lastSync = clock.millis();
+        createTableIfMissing();
+    }
+
+    // False means no user has this email or username. The identifier doesn't have to be normalized.
+    public boolean mightContain(String identifier){
+        Bits bits = current;
+        if(bits == null){
+            return true;
+        }
+        probes.incrementAndGet();
+        if(bits.mightContain(UserIdentifiers.normalize(identifier))){
+            return true;
+        }
+        definiteMisses.incrementAndGet();
+        return false;
+    }
+
+    // Registration duplicate check: false means neither is taken
+    public boolean mightContainAny(String email, String username){
+        return mightContain(email) || mightContain(username);
+    }
+
+    // Call once the user's insert has committed. A rebuild that starts afterwards reads it from the table, one
+    // that is already scanning gets it here, which is why building is read before current.
+    // The other nodes get it through the additions table with their next sync.
+    public void add(String email, String username){
+        addAll(List.of(new Identifiers(email, username)));
+    }
+
+    // Same as add for a batch of users, the import adds a committed chunk with one batched insert
+    public void addAll(List<Identifiers> users){
+        if(!enabled || users.isEmpty()){
+            return;
+        }
+        long now = clock.millis();
+        List<Object[]> rows = new ArrayList<>(users.size());
+        for(Identifiers user : users){
+            String normalizedEmail = UserIdentifiers.normalize(user.email());
+            String normalizedUsername = UserIdentifiers.normalize(user.username());
+            put(normalizedEmail, normalizedUsername);
+            rows.add(new Object[]{normalizedEmail, normalizedUsername, now});
+        }
+        try{
+            jdbcTemplate.batchUpdate("INSERT INTO " + table + " (email, username, added_at) VALUES (?, ?, ?)", rows);
+        }catch(DataAccessException e){
+            // The users are committed, the other nodes still find them with their next rebuild
+            log.warn("Could not share {} added identifiers with the other nodes", users.size(), e);
+        }
+    }
+
+    // Adds what other nodes added since the last sync and deletes rows every node has rebuilt from the users table since
+    @Scheduled(fixedDelayString = "${app.users.identifier-filter.sync-interval-ms:5000}")
+    public int sync(){
+        syncLock.lock();
+        try{
+            return syncAdditions();
+        }finally{
+            syncLock.unlock();
+        }
+    }
+
+    private int syncAdditions(){
+        if(!enabled){
+            return 0;
+        }
+        long now = clock.millis();
+        int[] read = {0};
+        jdbcTemplate.query("SELECT email, username FROM " + table + " WHERE added_at >= ?", (RowCallbackHandler) rs -> {
+            put(rs.getString(1), rs.getString(2));
+            read[0]++;
+        }, lastSync - SYNC_OVERLAP_MILLIS);
+        lastSync = now;
+        jdbcTemplate.update("DELETE FROM " + table + " WHERE added_at < ?", now - retentionMillis);
+        synced.addAndGet(read[0]);
+        return read[0];
+    }
+
+    private void put(String normalizedEmail, String normalizedUsername){
+        Bits next = building;
+        Bits bits = current;
+        if(next != null){
+            next.put(normalizedEmail);
+            next.put(normalizedUsername);
+        }
+        if(bits != null){
+            bits.put(normalizedEmail);
+            bits.put(normalizedUsername);
+        }
+    }
+
+    // Builds a new filter from the table and swaps it in. A rebuild already running makes this one a no-op.
+    // Returns the number of users read, -1 when nothing was built.
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.users.identifier-filter.rebuild-interval-ms:3600000}")
+    public long rebuild(){
+        if(!enabled || !rebuildLock.tryLock()){
+            return -1;
+        }
+        try{
+            long startNanos = System.nanoTime();
+            Long users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM taskflow_auth.users", Long.class);
+            // Room for half as many users again before the false positive rate starts to climb
+            Bits next = new Bits(2 * Math.max(expectedUsers, users + users / 2), falsePositiveRate);
+            building = next;
+            long[] read = {0};
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(SELECT, (RowCallbackHandler) rs -> {
+                next.put(UserIdentifiers.normalize(rs.getString(1)));
+                next.put(UserIdentifiers.normalize(rs.getString(2)));
+                read[0]++;
+            }));
+            current = next;
+            rebuilds.incrementAndGet();
+            log.info("Identifier filter rebuilt from {} users in {} ms, {} KiB, {} hash functions", read[0],
+                    (System.nanoTime() - startNanos) / 1_000_000, next.sizeInBits() / 8192, next.hashFunctions());
+            return read[0];
+        }finally{
+            building = null;
+            rebuildLock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        FunctionCounter.builder("auth.identifier.filter.probes", probes, AtomicLong::get)
+                .description("Identifiers checked against the filter")
+                .register(registry);
+        FunctionCounter.builder("auth.identifier.filter.misses", definiteMisses, AtomicLong::get)
+                .description("Identifiers the filter ruled out, each one a query saved")
+                .register(registry);
+        FunctionCounter.builder("auth.identifier.filter.rebuilds", rebuilds, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("auth.identifier.filter.synced", synced, AtomicLong::get)
+                .description("Identifiers read back from the additions table, those of other nodes and our own")
+                .register(registry);
+        Gauge.builder("auth.identifier.filter.size", this, filter -> filter.current == null ? 0 : filter.current.sizeInBits() / 8)
+                .baseUnit("bytes")
+                .register(registry);
+        // What a key never added would currently hit, rises as users are added after a rebuild
+        Gauge.builder("auth.identifier.filter.false.positive.rate", this, filter -> filter.current == null ? 1 : filter.current.falsePositiveRate())
+                .register(registry);
+    }
+
+    private void createTableIfMissing(){
+        String indexName = "idx_" + table.substring(table.lastIndexOf('.') + 1) + "_added_at";
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "email VARCHAR(255) NOT NULL, "
+                + "username VARCHAR(255) NOT NULL, "
+                + "added_at BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + indexName + " ON " + table + " (added_at)");
+    }
+
+    // Bit array with k probes per key derived from two 64 bit hashes (h1 + i * h2). Bits are set with a CAS per
+    // word, so concurrent puts never lose each other's bits and readers never lock.
+    static final class Bits {
+
+        private final AtomicLongArray words;
+        private final long size;
+        private final int hashFunctions;
+
+        Bits(long expectedKeys, double falsePositiveRate){
+            long keys = Math.max(1, expectedKeys);
+            // Optimal size and probe count for n keys at rate p: m = -n ln p / (ln 2)^2, k = m / n ln 2
+            long bits = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+            this.words = new AtomicLongArray(wordCount);
+            this.size = (long) wordCount << 6;
+            this.hashFunctions = (int) Math.max(1, Math.min(16, Math.round((double) size / keys * Math.log(2))));
+        }
+
+        void put(String key){
+            long h1 = hash(key);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            for(int i = 0; i < hashFunctions; i++){
+                long index = Long.remainderUnsigned(h1 + i * h2, size);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long value = words.get(word);
+                while((value & mask) == 0 && !words.weakCompareAndSetVolatile(word, value, value | mask)){
+                    value = words.get(word);
+                }
+            }
+        }
+
+        boolean mightContain(String key){
+            long h1 = hash(key);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            for(int i = 0; i < hashFunctions; i++){
+                long index = Long.remainderUnsigned(h1 + i * h2, size);
+                if((words.get((int) (index >>> 6)) & (1L << index)) == 0){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long sizeInBits(){
+            return size;
+        }
+
+        int hashFunctions(){
+            return hashFunctions;
+        }
+
+        // (share of bits set)^k, a full scan of the array, only for the metrics
+        double falsePositiveRate(){
+            long set = 0;
+            for(int i = 0; i < words.length(); i++){
+                set += Long.bitCount(words.get(i));
+            }
+            return Math.pow((double) set / size, hashFunctions);
+        }
+
+        // FNV-1a over the chars, spread by the MurmurHash3 finalizer, no byte[] for the key
+        private static long hash(String key){
+            long h = 0xcbf29ce484222325L;
+            for(int i = 0; i < key.length(); i++){
+                h = (h ^ key.charAt(i)) * 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        private static long mix(long h){
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93e7f6d9a53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.ErrorCode;
+import com.example.TaskFlow.dto.request.RegisterDTO;
+import com.example.TaskFlow.dto.response.UserImportResultDTO;
+import com.example.TaskFlow.dto.response.UserImportResultDTO.Status;
+import com.example.TaskFlow.exception.RetryLaterException;
+import com.example.TaskFlow.repo.UserIdSequenceMigration;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.validation.Validator;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+// Bulk registration of whole organizations: reads RegisterDTO shaped records as NDJSON or CSV and streams back
+// one report line per record (see UserImportResultDTO). The upload is handled chunk-size records at a time, so
+// memory stays flat and the report grows while the upload is still being read:
+// 1. every record is validated like /auth/register would, invalid ones only show up in the report
+// 2. the passwords of the valid ones are hashed on the shared BCrypt pool, at most max-in-flight at a time so
+//    logins still get their turn. A full queue just makes the import wait, it is never failed for it
+// 3. ids are reserved from users_seq in blocks (one nextval per 50 records, same as JPA) and the chunk is loaded
+//    into the staging table, through COPY on PostgreSQL
+// 4. a few set-based statements sort out duplicates within the upload and conflicts with existing users,
+//    insert the rest with ON CONFLICT DO NOTHING (anyone registering concurrently wins) and mark what went in
+// Each chunk is its own short transaction, a failure halfway keeps the users of the chunks already reported.
+@Service
+public class UserImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    public enum Format { NDJSON, CSV }
+
+    private static final List<String> CSV_COLUMNS = List.of("username", "email", "password", "firstname", "lastname");
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BoundedPasswordEncoder encoder;
+    private final UserIdentifierFilter identifierFilter;
+    private final Validator validator;
+    private final ObjectReader recordReader;
+    private final ObjectWriter reportWriter;
+    private final String stagingTable;
+    private final int chunkSize;
+    private final int maxInFlight;
+    private final boolean postgres;
+
+    public UserImportService(DataSource dataSource, PlatformTransactionManager transactionManager, BoundedPasswordEncoder encoder,
+                             UserIdentifierFilter identifierFilter, Validator validator, ObjectMapper objectMapper,
+                             @Value("${app.users.import.staging-table:taskflow_auth.user_import_staging}") String stagingTable,
+                             @Value("${app.users.import.chunk-size:1000}") int chunkSize,
+                             @Value("${app.users.import.max-in-flight:4}") int maxInFlight){
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.encoder = encoder;
+        this.identifierFilter = identifierFilter;
+        this.validator = validator;
+        this.recordReader = objectMapper.readerFor(RegisterDTO.class);
+        this.reportWriter = objectMapper.writerFor(UserImportResultDTO.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("");
+        this.stagingTable = stagingTable;
+        this.chunkSize = chunkSize;
+        this.maxInFlight = maxInFlight;
+        this.postgres = isPostgres();
+        createStagingTableIfMissing();
+    }
+
+    // Reads every record from in and writes the report to out, which is flushed after every chunk but left open.
+    // Returns the number of users created. A CSV upload without the expected header is rejected with a 400
+    // before anything is written.
+    public long importUsers(InputStream in, Format format, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        RecordSource source = format == Format.CSV ? csv(reader) : ndjson(reader);
+        UUID importId = UUID.randomUUID();
+        long created = 0;
+        int rows = 0;
+        try(JsonGenerator generator = reportWriter.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            SequenceWriter report = reportWriter.writeValues(generator)){
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            ImportRow row;
+            while((row = source.next(rows + 1)) != null){
+                rows++;
+                chunk.add(row);
+                if(chunk.size() == chunkSize){
+                    created += process(importId, chunk, report, generator);
+                    chunk.clear();
+                }
+            }
+            if(!chunk.isEmpty()){
+                created += process(importId, chunk, report, generator);
+            }
+        }finally{
+            jdbcTemplate.update("DELETE FROM " + stagingTable + " WHERE import_id = ?", importId);
+        }
+        log.info("User import {} finished, {} of {} records created", importId, created, rows);
+        return created;
+    }
+
+    private long process(UUID importId, List<ImportRow> chunk, SequenceWriter report, JsonGenerator generator) throws IOException {
+        List<ImportRow> valid = chunk.stream().filter(row -> row.status == null).toList();
+        hashPasswords(valid);
+        if(!valid.isEmpty()){
+            transactionTemplate.executeWithoutResult(status -> merge(importId, valid));
+        }
+        List<UserIdentifierFilter.Identifiers> created = new ArrayList<>();
+        for(ImportRow row : chunk){
+            report.write(new UserImportResultDTO(row.row, row.username, row.email, row.status, row.message));
+            generator.writeRaw('\n');
+            if(row.status == Status.CREATED){
+                created.add(new UserIdentifierFilter.Identifiers(row.email, row.username));
+            }
+        }
+        // The chunk has committed, /auth/identify has to find its users from now on, on every node
+        identifierFilter.addAll(created);
+        generator.flush();
+        return created.size();
+    }
+
+    // Keeps up to maxInFlight hashes queued on the BCrypt pool, waiting for the oldest one before adding more
+    private void hashPasswords(List<ImportRow> rows){
+        ArrayDeque<ImportRow> inFlight = new ArrayDeque<>();
+        for(ImportRow row : rows){
+            while(true){
+                if(inFlight.size() >= maxInFlight){
+                    await(inFlight.poll());
+                }
+                row.hash = encoder.encodeAsync(row.password);
+                if(!rejected(row.hash)){
+                    inFlight.add(row);
+                    break;
+                }
+                // The pool is busy with logins, wait for a slot to free up before trying again
+                if(inFlight.isEmpty()){
+                    pause();
+                } else {
+                    await(inFlight.poll());
+                }
+            }
+        }
+        while(!inFlight.isEmpty()){
+            await(inFlight.poll());
+        }
+    }
+
+    private void merge(UUID importId, List<ImportRow> rows){
+        reserveIds(rows);
+        stage(importId, rows);
+        // Anything found here never reaches the users table. An earlier record of the same upload wins over a later one.
+        // Emails and usernames compare case-insensitively (see UserIdentifiers), every EXISTS is one probe of a lower(...) index.
+        String earlier = "SELECT 1 FROM " + stagingTable + " o WHERE o.import_id = s.import_id AND o.row_no < s.row_no AND ";
+        jdbcTemplate.update("UPDATE " + stagingTable + " s SET status = CASE "
+                + "WHEN EXISTS (" + earlier + "lower(o.email) = lower(s.email)) "
+                + "OR EXISTS (" + earlier + "lower(o.username) = lower(s.username)) THEN 'DUPLICATE' "
+                + "WHEN EXISTS (SELECT 1 FROM taskflow_auth.users u WHERE lower(u.email) = lower(s.email)) THEN 'EMAIL_TAKEN' "
+                + "WHEN EXISTS (SELECT 1 FROM taskflow_auth.users u WHERE lower(u.username) = lower(s.username)) THEN 'USERNAME_TAKEN' END "
+                + "WHERE s.import_id = ? AND s.status IS NULL", importId);
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users (id, email, username, password_hash, first_name, last_name, is_active) "
+                + "SELECT user_id, email, username, password_hash, first_name, last_name, FALSE FROM " + stagingTable
+                + " WHERE import_id = ? AND status IS NULL ORDER BY row_no ON CONFLICT DO NOTHING", importId);
+        // A row that is not there under its reserved id lost against a concurrent registration
+        jdbcTemplate.update("UPDATE " + stagingTable + " s SET status = CASE "
+                + "WHEN EXISTS (SELECT 1 FROM taskflow_auth.users u WHERE u.id = s.user_id) THEN 'CREATED' ELSE 'CONFLICT' END "
+                + "WHERE s.import_id = ? AND s.status IS NULL", importId);
+        Map<Integer, ImportRow> byRow = rows.stream().collect(Collectors.toMap(row -> row.row, row -> row));
+        jdbcTemplate.query("SELECT row_no, status FROM " + stagingTable + " WHERE import_id = ? AND row_no BETWEEN ? AND ?",
+                (RowCallbackHandler) rs -> byRow.get(rs.getInt(1)).status = Status.valueOf(rs.getString(2)),
+                importId, rows.get(0).row, rows.get(rows.size() - 1).row);
+    }
+
+    // users_seq hands out the first id of a block of INCREMENT ids (pooled-lo), one call covers 50 records
+    private void reserveIds(List<ImportRow> rows){
+        long next = 0;
+        long blockEnd = 0;
+        for(ImportRow row : rows){
+            if(next == blockEnd){
+                Long lo = jdbcTemplate.queryForObject("SELECT nextval('" + UserIdSequenceMigration.SEQUENCE + "')", Long.class);
+                next = lo;
+                blockEnd = lo + UserIdSequenceMigration.INCREMENT;
+            }
+            row.userId = next++;
+        }
+    }
+
+    private void stage(UUID importId, List<ImportRow> rows){
+        String columns = " (import_id, row_no, user_id, email, username, password_hash, first_name, last_name)";
+        if(!postgres){
+            jdbcTemplate.batchUpdate("INSERT INTO " + stagingTable + columns + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows, rows.size(),
+                    (ps, row) -> {
+                        ps.setObject(1, importId);
+                        ps.setInt(2, row.row);
+                        ps.setLong(3, row.userId);
+                        ps.setString(4, row.email);
+                        ps.setString(5, row.username);
+                        ps.setString(6, row.passwordHash);
+                        ps.setString(7, row.firstname);
+                        ps.setString(8, row.lastname);
+                    });
+            return;
+        }
+        // COPY skips the per-row statement handling entirely, the chunk goes over as one CSV stream written row by
+        // row into the driver's copy buffer, which sends it on as it fills up
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            PGCopyOutputStream copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class),
+                    "COPY " + stagingTable + columns + " FROM STDIN (FORMAT csv)", COPY_BUFFER_SIZE);
+            try(Writer out = new OutputStreamWriter(copy, StandardCharsets.UTF_8)){
+                for(ImportRow row : rows){
+                    out.write(importId.toString());
+                    out.write(',');
+                    out.write(Integer.toString(row.row));
+                    out.write(',');
+                    out.write(Long.toString(row.userId));
+                    for(String value : new String[]{row.email, row.username, row.passwordHash, row.firstname, row.lastname}){
+                        out.write(",\"");
+                        out.write(value.replace("\"", "\"\""));
+                        out.write('"');
+                    }
+                    out.write('\n');
+                }
+            }catch(IOException e){
+                // Closing ends the COPY, one that failed halfway has to be cancelled for the connection to be usable again
+                if(copy.isActive()){
+                    copy.cancelCopy();
+                }
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+    }
+
+    private RecordSource csv(BufferedReader reader) throws IOException {
+        CsvRecordReader csv = new CsvRecordReader(reader);
+        List<String> header = csv.next();
+        if(header == null){
+            return row -> null;
+        }
+        int[] positions = new int[CSV_COLUMNS.size()];
+        List<String> names = header.stream().map(name -> name.trim().toLowerCase(Locale.ROOT)).toList();
+        for(int i = 0; i < positions.length; i++){
+            positions[i] = names.indexOf(CSV_COLUMNS.get(i));
+            if(positions[i] < 0){
+                throw new ResponseStatusException(ErrorCode.INVALID_IMPORT_FILE.getStatus(),
+                        ErrorCode.INVALID_IMPORT_FILE.getMessage() + ": CSV header must name the columns " + String.join(",", CSV_COLUMNS));
+            }
+        }
+        return row -> {
+            List<String> fields = csv.next();
+            if(fields == null){
+                return null;
+            }
+            String[] values = new String[positions.length];
+            for(int i = 0; i < positions.length; i++){
+                values[i] = positions[i] < fields.size() ? fields.get(positions[i]) : null;
+            }
+            return validate(row, new RegisterDTO(values[0], values[1], values[2], values[3], values[4]));
+        };
+    }
+
+    private RecordSource ndjson(BufferedReader reader){
+        return row -> {
+            String line;
+            do{
+                line = reader.readLine();
+            }while(line != null && line.isBlank());
+            if(line == null){
+                return null;
+            }
+            try{
+                return validate(row, recordReader.readValue(line));
+            }catch(JsonProcessingException e){
+                return ImportRow.invalid(row, null, null, "Malformed JSON record");
+            }
+        };
+    }
+
+    // Same constraints as /auth/register, checked before trimming just like there
+    private ImportRow validate(int row, RegisterDTO record){
+        var violations = validator.validate(record);
+        if(!violations.isEmpty()){
+            String message = violations.stream()
+                    .sorted(Comparator.comparing(violation -> violation.getPropertyPath().toString()))
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .collect(Collectors.joining(", "));
+            return ImportRow.invalid(row, record.username(), record.email(), message);
+        }
+        // Not part of RegisterDTO, but longer emails don't fit the column and would fail the whole chunk
+        if(record.email().trim().length() > 100){
+            return ImportRow.invalid(row, record.username(), record.email(), "email: size must be between 0 and 100");
+        }
+        ImportRow importRow = new ImportRow(row);
+        importRow.username = record.username().trim();
+        importRow.email = record.email().trim();
+        importRow.password = record.password().trim();
+        importRow.firstname = record.firstname().trim();
+        importRow.lastname = record.lastname().trim();
+        return importRow;
+    }
+
+    private void createStagingTableIfMissing(){
+        String table = stagingTable.substring(stagingTable.lastIndexOf('.') + 1);
+        // Rows only live for the duration of one import, no point in writing them to the WAL
+        jdbcTemplate.execute("CREATE " + (postgres ? "UNLOGGED " : "") + "TABLE IF NOT EXISTS " + stagingTable + " ("
+                + "import_id UUID NOT NULL, "
+                + "row_no INTEGER NOT NULL, "
+                + "user_id BIGINT NOT NULL, "
+                + "email VARCHAR(100) NOT NULL, "
+                + "username VARCHAR(255) NOT NULL, "
+                + "password_hash VARCHAR(255) NOT NULL, "
+                + "first_name VARCHAR(32) NOT NULL, "
+                + "last_name VARCHAR(32) NOT NULL, "
+                + "status VARCHAR(16), "
+                + "PRIMARY KEY (import_id, row_no))");
+        // For the duplicate check against the earlier records of the same import, H2 has no expression indexes
+        String email = postgres ? "lower(email)" : "email";
+        String username = postgres ? "lower(username)" : "username";
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_email ON " + stagingTable + " (import_id, " + email + ")");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_" + table + "_username ON " + stagingTable + " (import_id, " + username + ")");
+    }
+
+    private boolean isPostgres(){
+        try{
+            String product = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(), DatabaseMetaData::getDatabaseProductName);
+            return "PostgreSQL".equalsIgnoreCase(product);
+        }catch(MetaDataAccessException | DataAccessException e){
+            return false;
+        }
+    }
+
+    private static void await(ImportRow row){
+        row.passwordHash = row.hash.join();
+        row.hash = null;
+        row.password = null;
+    }
+
+    // A full queue completes the future right away, before encodeAsync even returns
+    private static boolean rejected(CompletableFuture<String> hash){
+        if(!hash.isCompletedExceptionally()){
+            return false;
+        }
+        try{
+            hash.join();
+            return false;
+        }catch(CompletionException e){
+            if(e.getCause() instanceof RetryLaterException){
+                return true;
+            }
+            throw e;
+        }
+    }
+
+    private static void pause(){
+        try{
+            Thread.sleep(10);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("User import interrupted", e);
+        }
+    }
+
+    // Next record of the upload numbered row, or null at the end
+    private interface RecordSource {
+        ImportRow next(int row) throws IOException;
+    }
+
+    private static final class ImportRow {
+        final int row;
+        String username;
+        String email;
+        String password;
+        String firstname;
+        String lastname;
+        CompletableFuture<String> hash;
+        String passwordHash;
+        long userId;
+        Status status;
+        String message;
+
+        ImportRow(int row){
+            this.row = row;
+        }
+
+        static ImportRow invalid(int row, String username, String email, String message){
+            ImportRow importRow = new ImportRow(row);
+            importRow.username = username;
+            importRow.email = email;
+            importRow.status = Status.INVALID;
+            importRow.message = message;
+            return importRow;
+        }
+    }
+}
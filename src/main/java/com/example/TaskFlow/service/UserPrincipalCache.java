@@ -0,0 +1,99 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.model.UserPrincipalCacheListener;
+import com.example.TaskFlow.repo.UserAuthStatus;
+import com.example.TaskFlow.repo.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Optional;
+
+// This class keeps the small part of a User that the JwtAuthFilter needs on every request.
+// Instead of a status query per authenticated request we only go to the database
+// when the principal is not cached yet or its entry is older than the staleness window (ttl).
+// Entries are also dropped explicitly once a transaction that saved, updated or removed a User has committed.
+@Service
+public class UserPrincipalCache implements MeterBinder {
+
+    public record Principal(Long id, boolean active, boolean locked, boolean deleted){
+
+        public static Principal of(UserAuthStatus status){
+            return new Principal(status.id(),
+                    Boolean.TRUE.equals(status.isActive()),
+                    Boolean.TRUE.equals(status.isLocked()),
+                    Boolean.TRUE.equals(status.isDeleted()));
+        }
+
+        // A locked or deleted user must not be able to use a token that is still valid
+        public boolean canAuthenticate(){
+            return !locked && !deleted;
+        }
+    }
+
+    private final UserRepository userRepository;
+    private final Cache<String, Principal> cache;
+
+    public UserPrincipalCache(UserRepository userRepository,
+                              @Value("${app.auth.principal-cache.ttl-seconds:30}") long ttlSeconds,
+                              @Value("${app.auth.principal-cache.max-size:10000}") long maxSize){
+        this.userRepository = userRepository;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    // Returns the cached principal or loads it from the database.
+    // Unknown usernames are not cached, so a user created right after a miss is found on the next request.
+    public Optional<Principal> get(String username){
+        if(username == null){
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.get(username, this::load));
+    }
+
+    // Cache only, for callers that load the user themselves, like the reactive filter which can't block on the JPA lookup
+    public Principal getIfPresent(String username){
+        return username == null ? null : cache.getIfPresent(username);
+    }
+
+    public void put(String username, Principal principal){
+        cache.put(username, principal);
+    }
+
+    public void invalidate(String username){
+        if(username != null){
+            cache.invalidate(username);
+        }
+    }
+
+    // Published by UserPrincipalCacheListener, runs straight away when the write happened outside a transaction
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void usersChanged(UserPrincipalCacheListener.UsersChanged event){
+        event.usernames().forEach(this::invalidate);
+    }
+
+    public void invalidateAll(){
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry){
+        CaffeineCacheMetrics.monitor(registry, cache, "auth.principals");
+    }
+
+    private Principal load(String username){
+        return userRepository.findAuthStatusByUsername(username)
+                .map(Principal::of)
+                .orElse(null);
+    }
+}
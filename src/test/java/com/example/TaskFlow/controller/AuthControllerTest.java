@@ -7,13 +7,24 @@ import com.example.TaskFlow.dto.request.IdentifyRequestDTO;
 import com.example.TaskFlow.dto.request.LoginRequestDTO;
 import com.example.TaskFlow.dto.request.RegisterDTO;
 import com.example.TaskFlow.exception.GlobalExceptionHandler;
+import com.example.TaskFlow.exception.RetryLaterException;
+import com.example.TaskFlow.jwt.VerifiedTokenCache;
 import com.example.TaskFlow.model.User;
+import com.example.TaskFlow.repo.UserCredentials;
 import com.example.TaskFlow.repo.UserRepository;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.AuthRateLimiter;
 import com.example.TaskFlow.service.JwtService;
 import com.example.TaskFlow.service.LoginFlowService;
+import com.example.TaskFlow.service.PasswordUpgradeService;
+import com.example.TaskFlow.service.RefreshTokenService;
+import com.example.TaskFlow.service.UserIdentifierFilter;
+import com.example.TaskFlow.service.UserPrincipalCache;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,12 +32,15 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import jakarta.servlet.http.Cookie;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -34,6 +48,8 @@ import java.util.Optional;
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -63,12 +79,42 @@ public class AuthControllerTest {
     @MockBean
     private PasswordEncoder passwordEncoder;
 
+    @MockBean
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @MockBean
+    private UserPrincipalCache userPrincipalCache;
+
+    @MockBean
+    private PasswordUpgradeService passwordUpgradeService;
+
+    @MockBean
+    private UserIdentifierFilter identifierFilter;
+
+    @MockBean
+    private AuthRateLimiter rateLimiter;
+
+    @MockBean
+    private AccountLockoutService lockoutService;
+
+    @MockBean
+    private RefreshTokenService refreshTokenService;
+
+    @MockBean
+    private AccessTokenDenylist denylist;
+
+    // Every identifier might exist unless a test says otherwise, so the repository decides
+    @BeforeEach
+    void setUp(){
+        when(identifierFilter.mightContain(anyString())).thenReturn(true);
+        when(identifierFilter.mightContainAny(anyString(), anyString())).thenReturn(true);
+    }
 
     @Test
     void registerShouldPersistNewUser() throws Exception{
         RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
 
-        when(userRepository.findByEmailOrUsername("alice@example.com","alice")).thenReturn(Optional.empty());
+        when(userRepository.existsByEmailOrUsername("alice@example.com","alice")).thenReturn(false);
         when(passwordEncoder.encode("Alice@123!")).thenReturn("encoded-password");
         when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
@@ -86,12 +132,43 @@ public class AuthControllerTest {
         assertThat(saved.getPasswordHash()).isEqualTo("encoded-password");
         assertThat(saved.getFirstname()).isEqualTo("Alice");
         assertThat(saved.getLastname()).isEqualTo("Smith");
+        verify(identifierFilter).add("alice@example.com", "alice");
+    }
+
+    @Test
+    void registerShouldSkipDuplicateQueryWhenFilterRulesUserOut() throws Exception{
+        RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
+        when(identifierFilter.mightContainAny("alice@example.com","alice")).thenReturn(false);
+        when(passwordEncoder.encode("Alice@123!")).thenReturn("encoded-password");
+
+        mockMVC.perform(post("/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk());
+
+        verify(userRepository, never()).existsByEmailOrUsername(anyString(), anyString());
+        verify(userRepository).save(any(User.class));
+    }
+
+    @Test
+    void registerShouldAskToRetryLaterWhenPasswordHashingIsBusy() throws Exception{
+        RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
+        when(userRepository.existsByEmailOrUsername("alice@example.com","alice")).thenReturn(false);
+        when(passwordEncoder.encode("Alice@123!")).thenThrow(new RetryLaterException(
+                ErrorCode.PASSWORD_HASHING_BUSY.getStatus(), ErrorCode.PASSWORD_HASHING_BUSY.getMessage(), 2));
+
+        mockMVC.perform(post("/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"))
+                .andExpect(jsonPath("$.message").value(ErrorCode.PASSWORD_HASHING_BUSY.getMessage()));
     }
 
     @Test
     void registerShouldReturnConflictWhenUserExists() throws Exception{
         RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
-        when(userRepository.findByEmailOrUsername("alice@example.com","alice")).thenReturn(Optional.of(new User()));
+        when(userRepository.existsByEmailOrUsername("alice@example.com","alice")).thenReturn(true);
 
         mockMVC.perform(post("/auth/register")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -100,6 +177,33 @@ public class AuthControllerTest {
                 .andExpect(jsonPath("$.message").value(ErrorCode.USER_ALREADY_EXISTS.getMessage()));
     }
 
+    @Test
+    void registerShouldReturnConflictWhenTheUniqueIndexCatchesTheDuplicate() throws Exception{
+        // Registered through another node moments ago, neither the filter nor the check saw it yet
+        RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
+        when(identifierFilter.mightContainAny("alice@example.com","alice")).thenReturn(false);
+        when(passwordEncoder.encode("Alice@123!")).thenReturn("encoded-password");
+        when(userRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("uk_users_username_lower"));
+
+        mockMVC.perform(post("/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message").value(ErrorCode.USER_ALREADY_EXISTS.getMessage()));
+        verify(identifierFilter, never()).add(anyString(), anyString());
+    }
+
+    @Test
+    void registerShouldRejectUsernameWithAt() throws Exception{
+        RegisterDTO request = new RegisterDTO("al@ce","alice@example.com","Alice@123!","Alice","Smith");
+
+        mockMVC.perform(post("/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isBadRequest());
+        verify(userRepository, never()).save(any(User.class));
+    }
+
     @Test
     void refreshShouldFailWhenCookieIsMissing() throws Exception{
         mockMVC.perform(post("/auth/refresh"))
@@ -110,9 +214,7 @@ public class AuthControllerTest {
     @Test
     void identifyShouldReturnFlowidForExistingUser() throws Exception{
         IdentifyRequestDTO identify = new IdentifyRequestDTO("alice");
-        User user = new User();
-        user.setUsername("alice");
-        when(userRepository.findByEmailOrUsername("alice", "alice")).thenReturn(Optional.of(user));
+        when(userRepository.findUsernameByIdentifier("alice")).thenReturn(Optional.of("alice"));
         LoginFlowService.Flow flow = new LoginFlowService().create("alice");
         when(loginFlowService.create("alice")).thenReturn(flow);
 
@@ -126,7 +228,7 @@ public class AuthControllerTest {
     @Test
     void identifyShouldReturnNotFoundWhenUserMissing() throws Exception {
         IdentifyRequestDTO request = new IdentifyRequestDTO("void");
-        when(userRepository.findByEmailOrUsername("void", "void")).thenReturn(Optional.empty());
+        when(userRepository.findUsernameByIdentifier("void")).thenReturn(Optional.empty());
 
         mockMVC.perform(post("/auth/identify")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -135,19 +237,59 @@ public class AuthControllerTest {
                 .andExpect(jsonPath("$.message").value("User not found.: void"));
     }
 
+    @Test
+    void identifyShouldNotQueryWhenFilterRulesIdentifierOut() throws Exception {
+        when(identifierFilter.mightContain("bot@example.com")).thenReturn(false);
+
+        mockMVC.perform(post("/auth/identify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new IdentifyRequestDTO("bot@example.com"))))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("User not found.: bot@example.com"));
+        verify(userRepository, never()).findUsernameByIdentifier(anyString());
+    }
+
+    @Test
+    void identifyShouldBeRejectedBeforeAnyLookupWhenOverTheRateLimit() throws Exception {
+        doThrow(new RetryLaterException(ErrorCode.TOO_MANY_REQUESTS.getStatus(), ErrorCode.TOO_MANY_REQUESTS.getMessage(), 12))
+                .when(rateLimiter).checkClient("127.0.0.1");
+
+        mockMVC.perform(post("/auth/identify")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new IdentifyRequestDTO("alice"))))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "12"));
+        verify(identifierFilter, never()).mightContain(anyString());
+        verify(userRepository, never()).findUsernameByIdentifier(anyString());
+        verify(loginFlowService, never()).create(anyString());
+    }
+
+    @Test
+    void loginShouldBeRejectedBeforeHashingWhenUserIsOverTheRateLimit() throws Exception {
+        LoginFlowService.Flow flow = new LoginFlowService().create("alice");
+        when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        doThrow(new RetryLaterException(ErrorCode.TOO_MANY_REQUESTS.getStatus(), ErrorCode.TOO_MANY_REQUESTS.getMessage(), 12))
+                .when(rateLimiter).checkIdentifier("alice");
+
+        mockMVC.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new LoginRequestDTO("Password123", flow.id))))
+                .andExpect(status().isTooManyRequests());
+        verify(rateLimiter).checkClient("127.0.0.1");
+        verify(userRepository, never()).findCredentialsByUsername(anyString());
+        verify(passwordEncoder, never()).matches(any(), any());
+    }
+
     @Test
     void loginShouldReturnTokensWhenCredentialsValid() throws Exception {
         LoginFlowService.Flow flow = new LoginFlowService().create("alice");
         LoginRequestDTO request = new LoginRequestDTO(" Password123", flow.id);
-        User user = new User();
-        user.setUsername("alice");
-        user.setPasswordHash("stored-hash");
+        UserCredentials credentials = new UserCredentials(1L, "stored-hash");
 
         when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
-        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
+        when(userRepository.findCredentialsByUsername("alice")).thenReturn(Optional.of(credentials));
         when(passwordEncoder.matches("Password123", "stored-hash")).thenReturn(true);
-        when(jwtService.createAccessToken(eq("alice"), anyList())).thenReturn("access-token-value");
-        when(jwtService.createRefreshToken(eq("alice"), anyList())).thenReturn("refresh-token-value");
+        when(refreshTokenService.issue(eq("alice"), anyList())).thenReturn(new JwtService.TokenPair("access-token-value", "refresh-token-value"));
         when(jwtService.getRefreshTokenValidity()).thenReturn(120L);
 
         mockMVC.perform(post("/auth/login")
@@ -156,6 +298,8 @@ public class AuthControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.access-token").value("access-token-value"))
                 .andExpect(header().string(HttpHeaders.SET_COOKIE, containsString("refreshToken=refresh-token-value")));
+        verify(passwordUpgradeService).upgradeIfNeeded(credentials, "Password123");
+        verify(lockoutService).recordSuccess("alice", credentials);
     }
 
     @Test
@@ -173,9 +317,9 @@ public class AuthControllerTest {
     @Test
     void loginShouldReturnBadRequestWhenAttemptsExceeded() throws Exception {
         LoginFlowService.Flow flow = new LoginFlowService().create("alice");
-        flow.attempts = 3;
         LoginRequestDTO request = new LoginRequestDTO("Password123", flow.id);
         when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        when(loginFlowService.registerAttempt(flow)).thenReturn(4);
 
         mockMVC.perform(post("/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -188,12 +332,10 @@ public class AuthControllerTest {
     void loginShouldReturnUnauthorizedWhenPasswordInvalid() throws Exception {
         LoginFlowService.Flow flow = new LoginFlowService().create("alice");
         LoginRequestDTO request = new LoginRequestDTO("Password123", flow.id);
-        User user = new User();
-        user.setUsername("alice");
-        user.setPasswordHash("stored-hash");
+        UserCredentials credentials = new UserCredentials(1L, "stored-hash");
 
         when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
-        when(userRepository.findByUsername("alice")).thenReturn(Optional.of(user));
+        when(userRepository.findCredentialsByUsername("alice")).thenReturn(Optional.of(credentials));
         when(passwordEncoder.matches("Password123", "stored-hash")).thenReturn(false);
 
         mockMVC.perform(post("/auth/login")
@@ -201,6 +343,25 @@ public class AuthControllerTest {
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isUnauthorized())
                 .andExpect(jsonPath("$.message").value("Invalid Password"));
+        verify(passwordUpgradeService, never()).upgradeIfNeeded(any(), any());
+        verify(lockoutService).recordFailure("alice", credentials);
+    }
+
+    @Test
+    void loginShouldRejectLockedAccountWithoutCheckingPassword() throws Exception {
+        LoginFlowService.Flow flow = new LoginFlowService().create("alice");
+        UserCredentials credentials = new UserCredentials(1L, "stored-hash", 5, true);
+        when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        when(userRepository.findCredentialsByUsername("alice")).thenReturn(Optional.of(credentials));
+        when(lockoutService.isLocked("alice", credentials)).thenReturn(true);
+
+        mockMVC.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new LoginRequestDTO("Password123", flow.id))))
+                .andExpect(status().isLocked())
+                .andExpect(jsonPath("$.message").value(ErrorCode.ACCOUNT_LOCKED.getMessage()));
+        verify(passwordEncoder, never()).matches(any(), any());
+        verify(lockoutService, never()).recordFailure(any(), any());
     }
     @Test
     void refreshShouldReturnNewAccessTokenWhenCookieValid() throws Exception {
@@ -211,12 +372,32 @@ public class AuthControllerTest {
         when(jwtService.isTokenExpired(claims)).thenReturn(false);
         when(jwtService.isRefreshToken(claims)).thenReturn(true);
         when(jwtService.extractUsername(claims)).thenReturn("alice");
-        when(jwtService.roles(claims)).thenReturn(List.of("USER"));
-        when(jwtService.createAccessToken(eq("alice"), anyList())).thenReturn("new-access-token");
+        when(refreshTokenService.rotate(claims)).thenReturn(new JwtService.TokenPair("new-access-token", "next-refresh-token"));
+        when(jwtService.getRefreshTokenValidity()).thenReturn(120L);
 
         mockMVC.perform(post("/auth/refresh").cookie(refreshCookie))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.access-token").value("new-access-token"));
+                .andExpect(jsonPath("$.access-token").value("new-access-token"))
+                .andExpect(header().string(HttpHeaders.SET_COOKIE, containsString("refreshToken=next-refresh-token")));
+    }
+
+    @Test
+    void refreshShouldFailWithoutAccessTokenWhenRefreshTokenWasRotatedBefore() throws Exception {
+        Cookie refreshCookie = new Cookie(Constants.REFRESH_TOKEN_COOKIE, "rotated-refresh-token");
+        Claims claims = Jwts.claims().build();
+
+        when(jwtService.parse("rotated-refresh-token")).thenReturn(claims);
+        when(jwtService.isTokenExpired(claims)).thenReturn(false);
+        when(jwtService.isRefreshToken(claims)).thenReturn(true);
+        when(jwtService.extractUsername(claims)).thenReturn("alice");
+        when(refreshTokenService.rotate(claims)).thenThrow(new ResponseStatusException(
+                ErrorCode.INVALID_REFRESH_TOKEN.getStatus(), ErrorCode.INVALID_REFRESH_TOKEN.getMessage()));
+
+        mockMVC.perform(post("/auth/refresh").cookie(refreshCookie))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Refresh Token is Invalid"));
+        verify(jwtService, never()).createAccessToken(anyString(), anyList());
+        verify(jwtService, never()).createTokenPair(anyString(), anyList(), anyString(), anyString());
     }
 
     @Test
@@ -238,4 +419,24 @@ public class AuthControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.message").value("Refresh Token is Invalid"));
     }
+
+    @Test
+    void logoutShouldRevokeTheAccessTokenAndTheRefreshTokenFamily() throws Exception {
+        Claims access = Jwts.claims().subject("alice").id("access-jti").expiration(new Date(System.currentTimeMillis() + 60_000)).build();
+        Claims refresh = Jwts.claims().subject("alice").build();
+        when(jwtService.extractTokenFromHeader("Bearer access-token")).thenReturn(Optional.of("access-token"));
+        when(jwtService.parse("access-token")).thenReturn(access);
+        when(jwtService.extractUsername(access)).thenReturn("alice");
+        when(jwtService.parse("refresh-token")).thenReturn(refresh);
+        when(jwtService.isRefreshToken(refresh)).thenReturn(true);
+        when(jwtService.extractUsername(refresh)).thenReturn("alice");
+
+        mockMVC.perform(post("/auth/logout")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer access-token")
+                        .cookie(new Cookie(Constants.REFRESH_TOKEN_COOKIE, "refresh-token")))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.SET_COOKIE, containsString("Max-Age=0")));
+        verify(denylist).revoke("access-jti", "alice", access.getExpiration().getTime());
+        verify(refreshTokenService).revoke(refresh);
+    }
 }
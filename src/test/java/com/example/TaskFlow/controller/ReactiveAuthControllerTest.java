@@ -0,0 +1,322 @@
+package com.example.TaskFlow.controller;
+
+import com.example.TaskFlow.Constants.Constants;
+import com.example.TaskFlow.Constants.ErrorCode;
+import com.example.TaskFlow.dto.request.IdentifyRequestDTO;
+import com.example.TaskFlow.dto.request.LoginRequestDTO;
+import com.example.TaskFlow.dto.request.RegisterDTO;
+import com.example.TaskFlow.exception.ReactiveExceptionHandler;
+import com.example.TaskFlow.exception.RetryLaterException;
+import com.example.TaskFlow.model.User;
+import com.example.TaskFlow.repo.ReactiveUserRepository;
+import com.example.TaskFlow.repo.UserCredentials;
+import com.example.TaskFlow.service.BoundedPasswordEncoder;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.AuthRateLimiter;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.LoginFlowService;
+import com.example.TaskFlow.service.PasswordUpgradeService;
+import com.example.TaskFlow.service.RefreshTokenService;
+import com.example.TaskFlow.service.UserIdentifierFilter;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.security.reactive.ReactiveSecurityAutoConfiguration;
+import org.springframework.boot.autoconfigure.security.reactive.ReactiveUserDetailsServiceAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Security is left out like in AuthControllerTest, ReactiveJwtAuthFilter is not under test here
+@WebFluxTest(controllers = ReactiveAuthController.class,
+        excludeAutoConfiguration = {ReactiveSecurityAutoConfiguration.class, ReactiveUserDetailsServiceAutoConfiguration.class})
+@Import(ReactiveExceptionHandler.class)
+public class ReactiveAuthControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockBean
+    private ReactiveUserRepository userRepository;
+
+    @MockBean
+    private LoginFlowService loginFlowService;
+
+    @MockBean
+    private JwtService jwtService;
+
+    @MockBean
+    private BoundedPasswordEncoder passwordEncoder;
+
+    @MockBean
+    private PasswordUpgradeService passwordUpgradeService;
+
+    @MockBean
+    private UserIdentifierFilter identifierFilter;
+
+    @MockBean
+    private AuthRateLimiter rateLimiter;
+
+    @MockBean
+    private AccountLockoutService lockoutService;
+
+    @MockBean
+    private RefreshTokenService refreshTokenService;
+
+    @MockBean
+    private AccessTokenDenylist denylist;
+
+    @BeforeEach
+    void setUp(){
+        when(identifierFilter.mightContain(anyString())).thenReturn(true);
+        when(identifierFilter.mightContainAny(anyString(), anyString())).thenReturn(true);
+    }
+
+    @Test
+    void registerShouldInsertNewUser(){
+        RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
+        when(userRepository.existsByEmailOrUsername("alice@example.com","alice")).thenReturn(Mono.just(false));
+        when(passwordEncoder.encodeAsync("Alice@123!")).thenReturn(CompletableFuture.completedFuture("encoded-password"));
+        when(userRepository.insert(any(User.class))).thenReturn(Mono.just(1L));
+
+        webTestClient.post().uri("/auth/register").bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("User Created");
+
+        ArgumentCaptor<User> userCaptor = ArgumentCaptor.forClass(User.class);
+        verify(userRepository).insert(userCaptor.capture());
+        assertThat(userCaptor.getValue().getUsername()).isEqualTo("alice");
+        assertThat(userCaptor.getValue().getPasswordHash()).isEqualTo("encoded-password");
+        verify(identifierFilter).add("alice@example.com", "alice");
+    }
+
+    @Test
+    void registerShouldReturnConflictWhenUserExists(){
+        RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
+        when(userRepository.existsByEmailOrUsername("alice@example.com","alice")).thenReturn(Mono.just(true));
+
+        webTestClient.post().uri("/auth/register").bodyValue(request)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody().jsonPath("$.message").isEqualTo(ErrorCode.USER_ALREADY_EXISTS.getMessage());
+        verify(passwordEncoder, never()).encodeAsync(any());
+    }
+
+    @Test
+    void registerShouldReturnConflictWhenTheUniqueIndexCatchesTheDuplicate(){
+        RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
+        when(identifierFilter.mightContainAny("alice@example.com","alice")).thenReturn(false);
+        when(passwordEncoder.encodeAsync("Alice@123!")).thenReturn(CompletableFuture.completedFuture("encoded-password"));
+        when(userRepository.insert(any(User.class))).thenReturn(Mono.error(new DataIntegrityViolationException("uk_users_username_lower")));
+
+        webTestClient.post().uri("/auth/register").bodyValue(request)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody().jsonPath("$.message").isEqualTo(ErrorCode.USER_ALREADY_EXISTS.getMessage());
+        verify(identifierFilter, never()).add(any(), any());
+    }
+
+    @Test
+    void registerShouldAskToRetryLaterWhenPasswordHashingIsBusy(){
+        RegisterDTO request = new RegisterDTO("alice","alice@example.com","Alice@123!","Alice","Smith");
+        when(userRepository.existsByEmailOrUsername("alice@example.com","alice")).thenReturn(Mono.just(false));
+        when(passwordEncoder.encodeAsync("Alice@123!")).thenReturn(CompletableFuture.failedFuture(new RetryLaterException(
+                ErrorCode.PASSWORD_HASHING_BUSY.getStatus(), ErrorCode.PASSWORD_HASHING_BUSY.getMessage(), 2)));
+
+        webTestClient.post().uri("/auth/register").bodyValue(request)
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "2")
+                .expectBody().jsonPath("$.message").isEqualTo(ErrorCode.PASSWORD_HASHING_BUSY.getMessage());
+    }
+
+    @Test
+    void identifyShouldReturnNotFoundWhenUserMissing(){
+        when(userRepository.findUsernameByIdentifier("void")).thenReturn(Mono.empty());
+
+        webTestClient.post().uri("/auth/identify").bodyValue(new IdentifyRequestDTO("void"))
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody().jsonPath("$.message").isEqualTo("User not found.: void");
+    }
+
+    @Test
+    void identifyShouldNotQueryWhenFilterRulesIdentifierOut(){
+        when(identifierFilter.mightContain("bot@example.com")).thenReturn(false);
+
+        webTestClient.post().uri("/auth/identify").bodyValue(new IdentifyRequestDTO("bot@example.com"))
+                .exchange()
+                .expectStatus().isNotFound();
+        verify(userRepository, never()).findUsernameByIdentifier(anyString());
+    }
+
+    @Test
+    void loginShouldRejectLockedAccountWithoutCheckingPassword(){
+        LoginFlowService.Flow flow = new LoginFlowService().create("alice");
+        UserCredentials credentials = new UserCredentials(1L, "stored-hash", 5, true);
+        when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        when(loginFlowService.registerAttempt(flow)).thenReturn(1);
+        when(userRepository.findCredentialsByUsername("alice")).thenReturn(Mono.just(credentials));
+        when(lockoutService.isLocked("alice", credentials)).thenReturn(true);
+
+        webTestClient.post().uri("/auth/login").bodyValue(new LoginRequestDTO("Password123", flow.id))
+                .exchange()
+                .expectStatus().isEqualTo(423)
+                .expectBody().jsonPath("$.message").isEqualTo(ErrorCode.ACCOUNT_LOCKED.getMessage());
+        verify(passwordEncoder, never()).matchesAsync(any(), any());
+    }
+
+    @Test
+    void loginShouldBeRejectedBeforeHashingWhenUserIsOverTheRateLimit(){
+        LoginFlowService.Flow flow = new LoginFlowService().create("alice");
+        when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        doThrow(new RetryLaterException(ErrorCode.TOO_MANY_REQUESTS.getStatus(), ErrorCode.TOO_MANY_REQUESTS.getMessage(), 12))
+                .when(rateLimiter).checkIdentifier("alice");
+
+        webTestClient.post().uri("/auth/login").bodyValue(new LoginRequestDTO("Password123", flow.id))
+                .exchange()
+                .expectStatus().isEqualTo(429)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "12");
+        verify(userRepository, never()).findCredentialsByUsername(anyString());
+        verify(passwordEncoder, never()).matchesAsync(any(), any());
+    }
+
+    @Test
+    void loginShouldReturnTokensWhenCredentialsValid(){
+        LoginFlowService.Flow flow = new LoginFlowService().create("alice");
+        UserCredentials credentials = new UserCredentials(1L, "stored-hash");
+        when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        when(loginFlowService.registerAttempt(flow)).thenReturn(1);
+        when(userRepository.findCredentialsByUsername("alice")).thenReturn(Mono.just(credentials));
+        when(passwordEncoder.matchesAsync("Password123", "stored-hash")).thenReturn(CompletableFuture.completedFuture(true));
+        when(refreshTokenService.issue(eq("alice"), anyList())).thenReturn(new JwtService.TokenPair("access-token-value", "refresh-token-value"));
+        when(jwtService.getRefreshTokenValidity()).thenReturn(120L);
+
+        webTestClient.post().uri("/auth/login").bodyValue(new LoginRequestDTO(" Password123", flow.id))
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.SET_COOKIE, containsString("refreshToken=refresh-token-value"))
+                .expectBody().jsonPath("$.access-token").isEqualTo("access-token-value");
+        verify(passwordUpgradeService).upgradeIfNeeded(credentials, "Password123");
+        verify(loginFlowService).delete(flow);
+    }
+
+    @Test
+    void loginShouldReturnUnauthorizedWhenPasswordInvalid(){
+        LoginFlowService.Flow flow = new LoginFlowService().create("alice");
+        UserCredentials credentials = new UserCredentials(1L, "stored-hash");
+        when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        when(loginFlowService.registerAttempt(flow)).thenReturn(1);
+        when(userRepository.findCredentialsByUsername("alice")).thenReturn(Mono.just(credentials));
+        when(passwordEncoder.matchesAsync("Password123", "stored-hash")).thenReturn(CompletableFuture.completedFuture(false));
+
+        webTestClient.post().uri("/auth/login").bodyValue(new LoginRequestDTO("Password123", flow.id))
+                .exchange()
+                .expectStatus().isUnauthorized()
+                .expectBody().jsonPath("$.message").isEqualTo("Invalid Password");
+        verify(passwordUpgradeService, never()).upgradeIfNeeded(any(), any());
+        verify(loginFlowService, never()).delete(any(LoginFlowService.Flow.class));
+    }
+
+    @Test
+    void loginShouldReturnBadRequestWhenAttemptsExceeded(){
+        LoginFlowService.Flow flow = new LoginFlowService().create("alice");
+        when(loginFlowService.get(flow.id)).thenReturn(Optional.of(flow));
+        when(loginFlowService.registerAttempt(flow)).thenReturn(4);
+
+        webTestClient.post().uri("/auth/login").bodyValue(new LoginRequestDTO("Password123", flow.id))
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("Maximum Password Attempts Reached.");
+    }
+
+    @Test
+    void refreshShouldRotateTheRefreshToken(){
+        Claims claims = Jwts.claims().build();
+        when(jwtService.parse("valid-refresh-token")).thenReturn(claims);
+        when(jwtService.isTokenExpired(claims)).thenReturn(false);
+        when(jwtService.isRefreshToken(claims)).thenReturn(true);
+        when(jwtService.extractUsername(claims)).thenReturn("alice");
+        when(jwtService.getRefreshTokenValidity()).thenReturn(120L);
+        when(refreshTokenService.rotate(claims)).thenReturn(new JwtService.TokenPair("new-access-token", "next-refresh-token"));
+
+        webTestClient.post().uri("/auth/refresh").cookie(Constants.REFRESH_TOKEN_COOKIE, "valid-refresh-token")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.SET_COOKIE, containsString("refreshToken=next-refresh-token"))
+                .expectBody().jsonPath("$.access-token").isEqualTo("new-access-token");
+    }
+
+    @Test
+    void refreshShouldFailWhenRefreshTokenWasRotatedBefore(){
+        Claims claims = Jwts.claims().build();
+        when(jwtService.parse("rotated-refresh-token")).thenReturn(claims);
+        when(jwtService.isTokenExpired(claims)).thenReturn(false);
+        when(jwtService.isRefreshToken(claims)).thenReturn(true);
+        when(jwtService.extractUsername(claims)).thenReturn("alice");
+        when(refreshTokenService.rotate(claims)).thenThrow(new ResponseStatusException(
+                ErrorCode.INVALID_REFRESH_TOKEN.getStatus(), ErrorCode.INVALID_REFRESH_TOKEN.getMessage()));
+
+        webTestClient.post().uri("/auth/refresh").cookie(Constants.REFRESH_TOKEN_COOKIE, "rotated-refresh-token")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("Refresh Token is Invalid");
+        verify(jwtService, never()).createAccessToken(anyString(), anyList());
+        verify(jwtService, never()).createTokenPair(anyString(), anyList(), anyString(), anyString());
+    }
+
+    @Test
+    void refreshShouldFailWhenCookieMissing(){
+        webTestClient.post().uri("/auth/refresh")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.message").isEqualTo("Bad Request");
+    }
+
+    @Test
+    void logoutShouldRevokeTheAccessTokenAndTheRefreshTokenFamily(){
+        Claims access = Jwts.claims().subject("alice").id("access-jti").expiration(new Date(System.currentTimeMillis() + 60_000)).build();
+        Claims refresh = Jwts.claims().subject("alice").build();
+        when(jwtService.extractTokenFromHeader("Bearer access-token")).thenReturn(Optional.of("access-token"));
+        when(jwtService.parse("access-token")).thenReturn(access);
+        when(jwtService.extractUsername(access)).thenReturn("alice");
+        when(jwtService.parse("refresh-token")).thenReturn(refresh);
+        when(jwtService.isRefreshToken(refresh)).thenReturn(true);
+        when(jwtService.extractUsername(refresh)).thenReturn("alice");
+
+        webTestClient.post().uri("/auth/logout")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer access-token")
+                .cookie(Constants.REFRESH_TOKEN_COOKIE, "refresh-token")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().value(HttpHeaders.SET_COOKIE, containsString("Max-Age=0"));
+        verify(denylist).revoke("access-jti", "alice", access.getExpiration().getTime());
+        verify(refreshTokenService).revoke(refresh);
+    }
+}
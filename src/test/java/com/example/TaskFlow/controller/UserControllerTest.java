@@ -0,0 +1,109 @@
+package com.example.TaskFlow.controller;
+
+import com.example.TaskFlow.exception.GlobalExceptionHandler;
+import com.example.TaskFlow.jwt.VerifiedTokenCache;
+import com.example.TaskFlow.model.User;
+import com.example.TaskFlow.repo.UserRepository;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.UserCursor;
+import com.example.TaskFlow.service.UserExportService;
+import com.example.TaskFlow.service.UserPrincipalCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(UserController.class)
+@AutoConfigureMockMvc(addFilters = false)
+@Import(GlobalExceptionHandler.class)
+public class UserControllerTest {
+
+    @Autowired
+    private MockMvc mockMVC;
+
+    @MockBean
+    private UserRepository userRepository;
+
+    @MockBean
+    private UserExportService userExportService;
+
+    @MockBean
+    private JwtService jwtService;
+
+    @MockBean
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @MockBean
+    private UserPrincipalCache userPrincipalCache;
+
+    @MockBean
+    private AccountLockoutService accountLockoutService;
+
+    @MockBean
+    private AccessTokenDenylist accessTokenDenylist;
+
+    @Test
+    void fullPageShouldLinkToTheNextOne() throws Exception{
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(UserCursor.START, Limit.of(3))).thenReturn(users(1, 2, 3));
+
+        mockMVC.perform(get("/user/all").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].id").value(2))
+                .andExpect(header().string(HttpHeaders.LINK,
+                        "</user/all?size=2&cursor=" + UserCursor.encode(2) + ">; rel=\"next\""));
+    }
+
+    @Test
+    void lastPageShouldHaveNoLink() throws Exception{
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(2L, Limit.of(3))).thenReturn(users(3));
+
+        mockMVC.perform(get("/user/all").param("size", "2").param("cursor", UserCursor.encode(2)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    void pageSizeShouldBeCappedAndDefaulted() throws Exception{
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(any(), any())).thenReturn(List.of());
+
+        mockMVC.perform(get("/user/all").param("size", "100000")).andExpect(status().isOk());
+        verify(userRepository).findByIdGreaterThanOrderByIdAsc(UserCursor.START, Limit.of(501));
+
+        mockMVC.perform(get("/user/all")).andExpect(status().isOk());
+        verify(userRepository).findByIdGreaterThanOrderByIdAsc(UserCursor.START, Limit.of(51));
+    }
+
+    @Test
+    void invalidCursorShouldBeRejected() throws Exception{
+        mockMVC.perform(get("/user/all").param("cursor", "garbage"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid cursor"));
+    }
+
+    private static List<User> users(long... ids){
+        return LongStream.of(ids).mapToObj(id -> {
+            User user = new User();
+            user.setId(id);
+            user.setUsername("user" + id);
+            return user;
+        }).toList();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.TaskFlow.jwt;
+
+import com.example.TaskFlow.config.PublicPaths;
+import com.example.TaskFlow.repo.ReactiveUserRepository;
+import com.example.TaskFlow.service.AccessTokenDenylist;
+import com.example.TaskFlow.service.AccountLockoutService;
+import com.example.TaskFlow.service.JwtService;
+import com.example.TaskFlow.service.UserPrincipalCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JwtAuthFilterTest {
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+
+    private final JwtService jwtService = new JwtService(SECRET, "taskflow-test", 5L, 60L);
+    private final UserPrincipalCache principalCache = mock(UserPrincipalCache.class);
+    private final AccountLockoutService lockoutService = mock(AccountLockoutService.class);
+    private final AccessTokenDenylist denylist = mock(AccessTokenDenylist.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicReference<Authentication> seen = new AtomicReference<>();
+    private final FilterChain chain = (req, res) -> seen.set(SecurityContextHolder.getContext().getAuthentication());
+    private JwtAuthFilter filter;
+
+    @BeforeEach
+    void setUp(){
+        filter = new JwtAuthFilter(jwtService, new VerifiedTokenCache(jwtService, 100), principalCache, lockoutService, denylist);
+        filter.bindTo(registry);
+        when(principalCache.get(anyString())).thenReturn(Optional.of(new UserPrincipalCache.Principal(1L, true, false, false)));
+    }
+
+    @Test
+    void validTokenShouldAuthenticateWithItsRoles() throws Exception {
+        MockHttpServletResponse response = filter("/user/me", "Bearer  " + jwtService.createAccessToken("alice", List.of("USER", "ADMIN")) + " ");
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(seen.get().getName()).isEqualTo("alice");
+        assertThat(seen.get().getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("USER", "ADMIN");
+        assertThat(SecurityContextHolder.getContext().getAuthentication()).isNull();
+        assertThat(registry.get("auth.filter.authenticated").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectionsShouldBeCountedByReason() throws Exception {
+        String token = jwtService.createAccessToken("alice", List.of("USER"));
+        String expired = new JwtService(SECRET, "taskflow-test", -1L, 60L).createAccessToken("alice", List.of("USER"));
+        String revoked = jwtService.createAccessToken("bob", List.of("USER"));
+        when(denylist.isRevoked(jwtService.parse(revoked).getId())).thenReturn(true);
+        when(lockoutService.isLocked("carol")).thenReturn(true);
+
+        assertThat(filter("/user/me", null).getStatus()).isEqualTo(401);
+        assertThat(filter("/user/me", "Bearer ").getStatus()).isEqualTo(401);
+        assertThat(filter("/user/me", "Token " + token).getStatus()).isEqualTo(401);
+        assertThat(filter("/user/me", "Bearer " + token + "x").getStatus()).isEqualTo(401);
+        assertThat(filter("/user/me", "Bearer " + expired).getStatus()).isEqualTo(401);
+        assertThat(filter("/user/me", "Bearer " + revoked).getStatus()).isEqualTo(401);
+        assertThat(filter("/user/me", "Bearer " + jwtService.createAccessToken("carol", List.of("USER"))).getStatus()).isEqualTo(401);
+
+        assertThat(seen.get()).isNull();
+        assertThat(rejections("missing")).isEqualTo(3);
+        assertThat(rejections("invalid")).isEqualTo(1);
+        assertThat(rejections("expired")).isEqualTo(1);
+        assertThat(rejections("revoked")).isEqualTo(1);
+        assertThat(rejections("user")).isEqualTo(1);
+    }
+
+    @Test
+    void refreshTokenShouldNotBeAcceptedAsBearerToken() throws Exception {
+        String refresh = jwtService.createRefreshToken("alice", List.of("USER"), "family", "jti");
+
+        assertThat(filter("/user/me", "Bearer " + refresh).getStatus()).isEqualTo(401);
+        assertThat(seen.get()).isNull();
+        assertThat(rejections("invalid")).isEqualTo(1);
+
+        ReactiveJwtAuthFilter reactive = new ReactiveJwtAuthFilter(jwtService, new VerifiedTokenCache(jwtService, 100), principalCache,
+                mock(ReactiveUserRepository.class), lockoutService, denylist);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/user/me")
+                .header("Authorization", "Bearer " + refresh));
+        reactive.filter(exchange, e -> Mono.error(new AssertionError("refresh token passed"))).block();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    @Test
+    void publicPathsShouldPassWithoutToken() throws Exception {
+        assertThat(filter("/auth/login", null).getStatus()).isEqualTo(200);
+        assertThat(filter("/swagger-ui/index.html", null).getStatus()).isEqualTo(200);
+        assertThat(PublicPaths.matches("/v3/api-docs")).isTrue();
+        assertThat(PublicPaths.matches("/.well-known/jwks.json")).isTrue();
+        assertThat(PublicPaths.matches("/auth/logout")).isFalse();
+        assertThat(PublicPaths.matches("/v3/api-docsx")).isFalse();
+        assertThat(PublicPaths.matches("/auth/login/x")).isFalse();
+    }
+
+    private MockHttpServletResponse filter(String path, String authorization) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        if(authorization != null){
+            request.addHeader("Authorization", authorization);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private double rejections(String reason){
+        return registry.get("auth.filter.rejections").tag("reason", reason).functionCounter().count();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.TaskFlow.jwt;
+
+import com.example.TaskFlow.service.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class VerifiedTokenCacheTest {
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+
+    private JwtService jwtService;
+    private VerifiedTokenCache cache;
+
+    @BeforeEach
+    void setUp(){
+        jwtService = spy(new JwtService(SECRET, "taskflow-test", 5L, 60L));
+        cache = new VerifiedTokenCache(jwtService, 100);
+    }
+
+    @Test
+    void repeatedTokenShouldBeVerifiedOnlyOnce(){
+        String token = jwtService.createAccessToken("alice", List.of("USER"));
+
+        Claims first = cache.parse(token);
+        Claims second = cache.parse(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(second.getSubject()).isEqualTo("alice");
+        verify(jwtService, times(1)).parse(token);
+        assertThat(cache.missCount()).isEqualTo(1);
+        assertThat(cache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidTokenShouldNotBeCached(){
+        String token = jwtService.createAccessToken("alice", List.of("USER")) + "x";
+
+        assertThatThrownBy(() -> cache.parse(token)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> cache.parse(token)).isInstanceOf(JwtException.class);
+
+        verify(jwtService, times(2)).parse(token);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void invalidateShouldForceVerificationAgain(){
+        String token = jwtService.createAccessToken("alice", List.of("USER"));
+
+        cache.parse(token);
+        cache.invalidate(token);
+        cache.parse(token);
+
+        verify(jwtService, times(2)).parse(token);
+    }
+
+    @Test
+    void keyOfShouldDependOnTheWholeToken(){
+        assertThat(VerifiedTokenCache.keyOf("a.b.c")).isEqualTo(VerifiedTokenCache.keyOf("a.b.c"));
+        assertThat(VerifiedTokenCache.keyOf("a.b.c")).isNotEqualTo(VerifiedTokenCache.keyOf("a.b.d"));
+    }
+}
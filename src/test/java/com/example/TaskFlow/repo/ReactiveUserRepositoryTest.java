@@ -0,0 +1,106 @@
+package com.example.TaskFlow.repo;
+
+import com.example.TaskFlow.model.User;
+import io.r2dbc.spi.ConnectionFactories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs against R2DBC H2 standing in for PostgreSQL, with the table as JPA creates it
+public class ReactiveUserRepositoryTest {
+
+    private ReactiveUserRepository repository;
+
+    @BeforeEach
+    void setUp(){
+        DatabaseClient databaseClient = DatabaseClient.create(ConnectionFactories.get(
+                "r2dbc:h2:mem:///users-" + UUID.randomUUID() + "?options=DB_CLOSE_DELAY=-1;MODE=PostgreSQL"));
+        databaseClient.sql("CREATE SCHEMA taskflow_auth").then().block();
+        databaseClient.sql("CREATE SEQUENCE taskflow_auth.users_seq START WITH 1 INCREMENT BY 50").then().block();
+        databaseClient.sql("CREATE TABLE taskflow_auth.users ("
+                + "id BIGINT PRIMARY KEY, "
+                + "email VARCHAR(100) NOT NULL UNIQUE, "
+                + "username VARCHAR(255) NOT NULL UNIQUE, "
+                + "password_hash VARCHAR(255) NOT NULL, "
+                + "first_name VARCHAR(32) NOT NULL, "
+                + "last_name VARCHAR(32) NOT NULL, "
+                + "middle_name VARCHAR(32), "
+                + "is_active BOOLEAN NOT NULL, "
+                + "is_locked BOOLEAN DEFAULT FALSE, "
+                + "is_deleted BOOLEAN DEFAULT FALSE, "
+                + "failed_login_attempts INTEGER)").then().block();
+        repository = new ReactiveUserRepository(databaseClient);
+    }
+
+    @Test
+    void insertedUserShouldBeFoundByUsernameAndEmail(){
+        Long id = repository.insert(user("alice")).block();
+
+        User byUsername = repository.findByUsername("alice").block();
+        assertThat(byUsername).isNotNull();
+        assertThat(byUsername.getId()).isEqualTo(id);
+        assertThat(byUsername.getEmail()).isEqualTo("alice@example.com");
+        assertThat(byUsername.getPasswordHash()).isEqualTo("hash-alice");
+        assertThat(byUsername.getFirstname()).isEqualTo("Alice");
+        assertThat(byUsername.getIsLocked()).isFalse();
+        assertThat(byUsername.getIsDeleted()).isFalse();
+
+        assertThat(repository.findUsernameByIdentifier("alice@example.com").block()).isEqualTo("alice");
+        assertThat(repository.findUsernameByIdentifier("alice").block()).isEqualTo("alice");
+        assertThat(repository.findUsernameByIdentifier(" Alice@Example.COM ").block()).isEqualTo("alice");
+        assertThat(repository.findUsernameByIdentifier("ALICE").block()).isEqualTo("alice");
+        assertThat(repository.existsByEmailOrUsername("ALICE@example.com", "nobody").block()).isTrue();
+        assertThat(repository.existsByEmailOrUsername("nobody@example.com", "Alice").block()).isTrue();
+        assertThat(repository.existsByEmailOrUsername("alice@example.com", "nobody").block()).isTrue();
+        assertThat(repository.findAuthStatusByUsername("alice").block())
+                .isEqualTo(new UserAuthStatus(id, false, false, false));
+        assertThat(repository.findCredentialsByUsername("alice").block())
+                .isEqualTo(new UserCredentials(id, "hash-alice", null, false));
+    }
+
+    @Test
+    void unknownUsersShouldBeEmpty(){
+        repository.insert(user("alice")).block();
+
+        assertThat(repository.findByUsername("bob").blockOptional()).isEmpty();
+        assertThat(repository.findUsernameByIdentifier("bob").blockOptional()).isEmpty();
+        assertThat(repository.findAuthStatusByUsername("bob").blockOptional()).isEmpty();
+        assertThat(repository.findCredentialsByUsername("bob").blockOptional()).isEmpty();
+        assertThat(repository.existsByEmailOrUsername("bob@example.com", "bob").block()).isFalse();
+    }
+
+    @Test
+    void streamAllShouldReturnEveryUserInIdOrder(){
+        repository.insert(user("alice")).block();
+        repository.insert(user("bob1")).block();
+
+        assertThat(repository.streamAll(1).map(User::getUsername).collectList().block())
+                .containsExactly("alice", "bob1");
+    }
+
+    @Test
+    void pagesShouldContinueAfterTheGivenId(){
+        Long first = repository.insert(user("alice")).block();
+        repository.insert(user("bob1")).block();
+        repository.insert(user("carol")).block();
+
+        assertThat(repository.findPageAfter(Long.MIN_VALUE, 2).map(User::getUsername).collectList().block())
+                .containsExactly("alice", "bob1");
+        assertThat(repository.findPageAfter(first, 5).map(User::getUsername).collectList().block())
+                .containsExactly("bob1", "carol");
+    }
+
+    private static User user(String username){
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPasswordHash("hash-" + username);
+        user.setFirstname("Alice");
+        user.setLastname("Smith");
+        return user;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.TaskFlow.repo;
+
+import com.example.TaskFlow.support.TestDataSources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs against H2 standing in for PostgreSQL
+public class UserIdSequenceMigrationTest {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = TestDataSources.h2("ids");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void identityTableShouldMoveToSequenceAfterHighestId(){
+        // The table as Hibernate created it for the former IDENTITY id
+        jdbcTemplate.execute("CREATE TABLE taskflow_auth.users (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, username VARCHAR(255))");
+        for(String username : new String[]{"alice", "bob1", "carol"}){
+            jdbcTemplate.update("INSERT INTO taskflow_auth.users (username) VALUES (?)", username);
+        }
+        jdbcTemplate.update("DELETE FROM taskflow_auth.users WHERE username = 'bob1'");
+
+        new UserIdSequenceMigration(dataSource);
+
+        assertThat(nextval()).isEqualTo(4);
+        assertThat(nextval()).isEqualTo(4 + UserIdSequenceMigration.INCREMENT);
+        // Inserts without an id, like an older node's, now draw from the sequence
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users (username) VALUES ('dave')");
+        assertThat(jdbcTemplate.queryForObject("SELECT id FROM taskflow_auth.users WHERE username = 'dave'", Long.class))
+                .isEqualTo(4 + 2 * UserIdSequenceMigration.INCREMENT);
+        assertThat(jdbcTemplate.queryForObject("SELECT is_identity FROM information_schema.columns "
+                + "WHERE table_schema = 'TASKFLOW_AUTH' AND table_name = 'USERS' AND column_name = 'ID'", String.class)).isEqualTo("NO");
+    }
+
+    @Test
+    void secondRunShouldKeepTheSequenceWhereItIs(){
+        jdbcTemplate.execute("CREATE TABLE taskflow_auth.users (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, username VARCHAR(255))");
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users (username) VALUES ('alice')");
+        new UserIdSequenceMigration(dataSource);
+        long first = nextval();
+
+        new UserIdSequenceMigration(dataSource);
+
+        assertThat(nextval()).isEqualTo(first + UserIdSequenceMigration.INCREMENT);
+    }
+
+    @Test
+    void missingTableShouldBeLeftToHibernate(){
+        new UserIdSequenceMigration(dataSource);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.sequences "
+                + "WHERE sequence_schema = 'TASKFLOW_AUTH'", Integer.class)).isZero();
+    }
+
+    private long nextval(){
+        return jdbcTemplate.queryForObject("SELECT nextval('" + UserIdSequenceMigration.SEQUENCE + "')", Long.class);
+    }
+}
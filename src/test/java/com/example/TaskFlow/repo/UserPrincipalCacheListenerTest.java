@@ -0,0 +1,98 @@
+package com.example.TaskFlow.repo;
+
+import com.example.TaskFlow.model.User;
+import com.example.TaskFlow.service.UserPrincipalCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Commits for real instead of rolling back like the other @DataJpaTests, the cache is only invalidated after a commit
+@DataJpaTest
+@Import(UserPrincipalCache.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestPropertySource(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true"
+})
+public class UserPrincipalCacheListenerTest {
+
+    private static final UserPrincipalCache.Principal PRINCIPAL = new UserPrincipalCache.Principal(1L, true, false, false);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserPrincipalCache principalCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    void tearDown(){
+        userRepository.deleteAll();
+        principalCache.invalidateAll();
+    }
+
+    @Test
+    void renameShouldDropTheOldAndNewUsernameOnlyAfterCommit(){
+        Long id = userRepository.save(user("alice")).getId();
+        principalCache.put("alice", PRINCIPAL);
+        principalCache.put("alice2", PRINCIPAL);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            User user = userRepository.findById(id).orElseThrow();
+            user.setUsername("alice2");
+            userRepository.saveAndFlush(user);
+            // Written but not committed yet, a concurrent load would still see the old row
+            assertThat(principalCache.getIfPresent("alice")).isNotNull();
+            assertThat(principalCache.getIfPresent("alice2")).isNotNull();
+        });
+
+        assertThat(principalCache.getIfPresent("alice")).isNull();
+        assertThat(principalCache.getIfPresent("alice2")).isNull();
+    }
+
+    @Test
+    void rolledBackWriteShouldKeepTheCachedPrincipal(){
+        Long id = userRepository.save(user("bobby")).getId();
+        principalCache.put("bobby", PRINCIPAL);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            User user = userRepository.findById(id).orElseThrow();
+            user.setIsLocked(true);
+            userRepository.saveAndFlush(user);
+            status.setRollbackOnly();
+        });
+
+        assertThat(principalCache.getIfPresent("bobby")).isNotNull();
+    }
+
+    @Test
+    void deleteShouldDropTheCachedPrincipal(){
+        User user = userRepository.save(user("carol"));
+        principalCache.put("carol", PRINCIPAL);
+
+        userRepository.delete(user);
+
+        assertThat(principalCache.getIfPresent("carol")).isNull();
+    }
+
+    private static User user(String username){
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(username + "@example.com");
+        user.setPasswordHash("hash");
+        user.setFirstname("First");
+        user.setLastname("Last");
+        return user;
+    }
+}
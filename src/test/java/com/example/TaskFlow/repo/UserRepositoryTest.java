@@ -0,0 +1,61 @@
+package com.example.TaskFlow.repo;
+
+import com.example.TaskFlow.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs against an embedded H2 standing in for PostgreSQL, without the lower(...) indexes, so this only covers the
+// query semantics, not the plans (see UserLookupBenchmark for those)
+@DataJpaTest
+@TestPropertySource(properties = {
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true"
+})
+public class UserRepositoryTest {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp(){
+        userRepository.save(user("Bob1", "Bob@Example.com"));
+        // Registered before '@' was rejected in usernames
+        userRepository.save(user("old@name", "old@example.com"));
+    }
+
+    @Test
+    void identifierShouldMatchEmailOrUsernameIgnoringCase(){
+        assertThat(userRepository.findUsernameByIdentifier("bob@example.com")).contains("Bob1");
+        assertThat(userRepository.findUsernameByIdentifier(" BOB@EXAMPLE.COM ")).contains("Bob1");
+        assertThat(userRepository.findUsernameByIdentifier("bob1")).contains("Bob1");
+        assertThat(userRepository.findUsernameByIdentifier("Bob")).isEmpty();
+    }
+
+    @Test
+    void identifierWithAtShouldFallBackToUsername(){
+        assertThat(userRepository.findUsernameByIdentifier("OLD@name")).contains("old@name");
+        assertThat(userRepository.findUsernameByIdentifier("nobody@example.com")).isEmpty();
+    }
+
+    @Test
+    void existsShouldIgnoreCase(){
+        assertThat(userRepository.existsByEmailOrUsername("BOB@example.com", "someone")).isTrue();
+        assertThat(userRepository.existsByEmailOrUsername("someone@example.com", "BOB1")).isTrue();
+        assertThat(userRepository.existsByEmailOrUsername("someone@example.com", "someone")).isFalse();
+    }
+
+    private static User user(String username, String email){
+        User user = new User();
+        user.setUsername(username);
+        user.setEmail(email);
+        user.setPasswordHash("hash");
+        user.setFirstname("First");
+        user.setLastname("Last");
+        return user;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.MutableClock;
+import com.example.TaskFlow.support.TestDataSources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccessTokenDenylistTest {
+
+    private static final String TABLE = "taskflow_auth.revoked_access_tokens";
+
+    private final MutableClock clock = new MutableClock();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = TestDataSources.h2("denylist");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Test
+    void revokedTokensShouldBeDeniedAndAllOthersNot(){
+        AccessTokenDenylist denylist = node();
+        denylist.revoke("revoked-jti", "alice", expiresIn(900));
+        denylist.revoke("revoked-jti", "alice", expiresIn(900));
+
+        assertThat(denylist.isRevoked("revoked-jti")).isTrue();
+        int denied = 0;
+        for(int i = 0; i < 10000; i++){
+            if(denylist.isRevoked(UUID.randomUUID().toString())){
+                denied++;
+            }
+        }
+        // A false positive of the filter is settled by the precise set, never a wrong answer
+        assertThat(denied).isZero();
+        assertThat(denylist.isRevoked(null)).isFalse();
+    }
+
+    @Test
+    void denylistShouldBeLoadedAtStartupAndSyncedFromOtherNodes(){
+        AccessTokenDenylist first = node();
+        first.revoke("before-start", "alice", expiresIn(900));
+
+        AccessTokenDenylist second = node();
+        assertThat(second.isRevoked("before-start")).isTrue();
+
+        first.revoke("after-start", "bob", expiresIn(900));
+        assertThat(second.isRevoked("after-start")).isFalse();
+        clock.advanceSeconds(5);
+        assertThat(second.sync()).isGreaterThanOrEqualTo(1);
+        assertThat(second.isRevoked("after-start")).isTrue();
+    }
+
+    @Test
+    void entriesShouldAgeOutWithTheirToken(){
+        AccessTokenDenylist denylist = node();
+        denylist.revoke("short", "alice", expiresIn(60));
+        denylist.revoke("long", "bob", expiresIn(900));
+        // Already expired tokens are rejected by the filter anyway, nothing to store
+        denylist.revoke("expired", "carol", expiresIn(-1));
+
+        clock.advanceSeconds(61);
+        denylist.sync();
+
+        assertThat(denylist.isRevoked("short")).isFalse();
+        assertThat(denylist.isRevoked("long")).isTrue();
+        assertThat(denylist.size()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class)).isEqualTo(1);
+    }
+
+    private AccessTokenDenylist node(){
+        return new AccessTokenDenylist(dataSource, TABLE, 100, 0.001, clock);
+    }
+
+    private long expiresIn(long seconds){
+        return clock.millis() + seconds * 1000;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.repo.UserCredentials;
+import com.example.TaskFlow.support.MutableClock;
+import com.example.TaskFlow.support.TestDataSources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class AccountLockoutServiceTest {
+
+    private final UserPrincipalCache principalCache = mock(UserPrincipalCache.class);
+    private final MutableClock clock = new MutableClock();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private AccountLockoutService lockout;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = TestDataSources.h2("lockout");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE taskflow_auth.users (id BIGINT PRIMARY KEY, username VARCHAR(255) NOT NULL UNIQUE, "
+                + "is_locked BOOLEAN DEFAULT FALSE, failed_login_attempts INTEGER, locked_until BIGINT)");
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users (id, username) VALUES (1, 'alice'), (2, 'bob')");
+        lockout = new AccountLockoutService(dataSource, new DataSourceTransactionManager(dataSource), principalCache, 5, 900, 30, clock);
+    }
+
+    @Test
+    void failuresShouldBeWrittenInOneBatchPerFlush(){
+        UserCredentials alice = credentials("alice");
+        UserCredentials bob = credentials("bob");
+        for(int i = 0; i < 3; i++){
+            lockout.recordFailure("alice", alice);
+            lockout.recordFailure("bob", bob);
+        }
+        // Nothing written until the flush
+        assertThat(state("alice")).containsEntry("FAILED_LOGIN_ATTEMPTS", null);
+
+        assertThat(lockout.flush()).isEqualTo(2);
+        assertThat(state("alice")).containsEntry("FAILED_LOGIN_ATTEMPTS", 3).containsEntry("IS_LOCKED", false);
+        assertThat(state("bob")).containsEntry("FAILED_LOGIN_ATTEMPTS", 3);
+        assertThat(lockout.flush()).isZero();
+    }
+
+    @Test
+    void accountShouldLockOnceStoredAndPendingFailuresReachTheLimit(){
+        // Three failures stored by an earlier flush (or another node), two more pending here
+        jdbcTemplate.update("UPDATE taskflow_auth.users SET failed_login_attempts = 3 WHERE username = 'alice'");
+        UserCredentials alice = credentials("alice");
+
+        assertThat(lockout.recordFailure("alice", alice)).isFalse();
+        assertThat(lockout.isLocked("alice")).isFalse();
+        assertThat(lockout.recordFailure("alice", alice)).isTrue();
+
+        // Locked before anything was written, for login and the JWT filters
+        assertThat(lockout.isLocked("alice")).isTrue();
+        assertThat(lockout.isLocked("alice", alice)).isTrue();
+
+        lockout.flush();
+        assertThat(state("alice")).containsEntry("FAILED_LOGIN_ATTEMPTS", 5).containsEntry("IS_LOCKED", true);
+        assertThat(lockout.isLocked("alice", credentials("alice"))).isTrue();
+        assertThat(lockout.isLocked("bob")).isFalse();
+    }
+
+    @Test
+    void successfulLoginShouldResetTheCount(){
+        UserCredentials alice = credentials("alice");
+        lockout.recordFailure("alice", alice);
+        lockout.recordFailure("alice", alice);
+        lockout.flush();
+
+        lockout.recordSuccess("alice", credentials("alice"));
+        lockout.recordFailure("alice", credentials("alice"));
+        lockout.flush();
+
+        // The reset came first, only the failure after it counts
+        assertThat(state("alice")).containsEntry("FAILED_LOGIN_ATTEMPTS", 1);
+    }
+
+    @Test
+    void successWithoutFailuresShouldNotWrite(){
+        lockout.recordSuccess("alice", credentials("alice"));
+
+        assertThat(lockout.flush()).isZero();
+    }
+
+    @Test
+    void unlockShouldClearLockAndCount(){
+        UserCredentials alice = credentials("alice");
+        for(int i = 0; i < 5; i++){
+            lockout.recordFailure("alice", alice);
+        }
+        lockout.flush();
+
+        assertThat(lockout.unlock("alice")).isTrue();
+
+        assertThat(state("alice")).containsEntry("FAILED_LOGIN_ATTEMPTS", 0).containsEntry("IS_LOCKED", false);
+        assertThat(lockout.isLocked("alice")).isFalse();
+        verify(principalCache).invalidate("alice");
+        assertThat(lockout.unlock("nobody")).isFalse();
+    }
+
+    @Test
+    void lockShouldLiftItselfAfterItsDuration(){
+        UserCredentials alice = credentials("alice");
+        for(int i = 0; i < 5; i++){
+            lockout.recordFailure("alice", alice);
+        }
+        lockout.flush();
+        assertThat(state("alice")).containsEntry("IS_LOCKED", true).containsEntry("LOCKED_UNTIL", clock.millis() + 900_000);
+
+        clock.advanceSeconds(899);
+        lockout.flush();
+        assertThat(lockout.isLocked("alice", credentials("alice"))).isTrue();
+
+        clock.advanceSeconds(1);
+        lockout.flush();
+
+        assertThat(state("alice")).containsEntry("IS_LOCKED", false).containsEntry("FAILED_LOGIN_ATTEMPTS", 0).containsEntry("LOCKED_UNTIL", null);
+        assertThat(lockout.isLocked("alice")).isFalse();
+        assertThat(lockout.isLocked("alice", credentials("alice"))).isFalse();
+        verify(principalCache).invalidate("alice");
+        // The count starts over, one more wrong password doesn't lock it again
+        assertThat(lockout.recordFailure("alice", credentials("alice"))).isFalse();
+    }
+
+    @Test
+    void lockWithoutDurationShouldLastUntilUnlocked(){
+        lockout = new AccountLockoutService(dataSource, new DataSourceTransactionManager(dataSource), principalCache, 5, 0, 30, clock);
+        UserCredentials alice = credentials("alice");
+        for(int i = 0; i < 5; i++){
+            lockout.recordFailure("alice", alice);
+        }
+        lockout.flush();
+
+        clock.advanceSeconds(365L * 24 * 3600);
+        lockout.flush();
+
+        assertThat(state("alice")).containsEntry("IS_LOCKED", true).containsEntry("LOCKED_UNTIL", null);
+        assertThat(lockout.isLocked("alice", credentials("alice"))).isTrue();
+    }
+
+    @Test
+    void failedFlushShouldKeepTheCountsForTheNextOne(){
+        UserCredentials alice = credentials("alice");
+        lockout.recordFailure("alice", alice);
+        jdbcTemplate.execute("ALTER TABLE taskflow_auth.users RENAME TO users_away");
+
+        assertThat(lockout.flush()).isZero();
+        lockout.recordFailure("alice", alice);
+        jdbcTemplate.execute("ALTER TABLE taskflow_auth.users_away RENAME TO users");
+
+        assertThat(lockout.flush()).isEqualTo(1);
+        assertThat(state("alice")).containsEntry("FAILED_LOGIN_ATTEMPTS", 2);
+    }
+
+    private UserCredentials credentials(String username){
+        Map<String, Object> row = state(username);
+        return new UserCredentials(((Number) row.get("ID")).longValue(), "hash",
+                (Integer) row.get("FAILED_LOGIN_ATTEMPTS"), (Boolean) row.get("IS_LOCKED"));
+    }
+
+    private Map<String, Object> state(String username){
+        return jdbcTemplate.queryForMap("SELECT id, is_locked, failed_login_attempts, locked_until FROM taskflow_auth.users WHERE username = ?", username);
+    }
+}
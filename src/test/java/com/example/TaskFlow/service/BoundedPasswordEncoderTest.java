@@ -0,0 +1,137 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.exception.RetryLaterException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BoundedPasswordEncoderTest {
+
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown(){
+        encoder.close();
+    }
+
+    @Test
+    void encodeAndMatchesShouldRunOnTheHashingPool(){
+        RecordingEncoder delegate = new RecordingEncoder(new CountDownLatch(0));
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1, 1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        encoder.bindTo(registry);
+
+        assertThat(encoder.encode("secret")).isEqualTo("hashed:secret");
+        assertThat(encoder.matches("secret", "hashed:secret")).isTrue();
+        assertThat(delegate.lastThread).startsWith("password-hashing-");
+        assertThat(registry.get("auth.password-hashing.duration").tag("operation", "encode").timer().count()).isEqualTo(1);
+        assertThat(registry.get("auth.password-hashing.duration").tag("operation", "matches").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void requestsBeyondTheQueueShouldBeRejectedWithRetryAfter() throws Exception{
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEncoder delegate = new RecordingEncoder(release);
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1, 3);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        encoder.bindTo(registry);
+
+        // One hash running, one waiting in the queue
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("a"));
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> encoder.encode("b"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(encoder.queueDepth() == 0 && System.nanoTime() < deadline){
+            Thread.sleep(10);
+        }
+        assertThat(encoder.queueDepth()).isEqualTo(1);
+
+        assertThatThrownBy(() -> encoder.encode("c"))
+                .isInstanceOf(RetryLaterException.class)
+                .satisfies(e -> {
+                    RetryLaterException retry = (RetryLaterException) e;
+                    assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+                    assertThat(retry.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+                });
+        assertThat(registry.get("auth.password-hashing.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.join()).isEqualTo("hashed:a");
+        assertThat(queued.join()).isEqualTo("hashed:b");
+    }
+
+    @Test
+    void asyncRequestsBeyondTheQueueShouldFailTheFutureInsteadOfThrowing() throws Exception{
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEncoder delegate = new RecordingEncoder(release);
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1, 3);
+
+        CompletableFuture<String> running = encoder.encodeAsync("a");
+        assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = encoder.encodeAsync("b");
+        CompletableFuture<Boolean> rejected = encoder.matchesAsync("c", "hashed:c");
+
+        assertThat(rejected).isCompletedExceptionally();
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(RetryLaterException.class);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("hashed:a");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("hashed:b");
+        assertThat(delegate.lastThread).startsWith("password-hashing-");
+    }
+
+    @Test
+    void callerShouldGiveUpAfterTheTimeout() throws Exception{
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEncoder delegate = new RecordingEncoder(release);
+        encoder = new BoundedPasswordEncoder(delegate, 1, 1, 3, Duration.ofMillis(50));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        encoder.bindTo(registry);
+
+        assertThatThrownBy(() -> encoder.encode("a"))
+                .isInstanceOf(RetryLaterException.class)
+                .satisfies(e -> assertThat(((RetryLaterException) e).getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("3"));
+        assertThat(registry.get("auth.password-hashing.timeouts").counter().count()).isEqualTo(1);
+        release.countDown();
+    }
+
+    // Stand-in for BCrypt that can be held until the test releases it
+    private static final class RecordingEncoder implements PasswordEncoder {
+        private final CountDownLatch release;
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile String lastThread;
+
+        RecordingEncoder(CountDownLatch release){
+            this.release = release;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword){
+            lastThread = Thread.currentThread().getName();
+            started.countDown();
+            try{
+                release.await();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            return "hashed:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword){
+            lastThread = Thread.currentThread().getName();
+            return encodedPassword.equals("hashed:" + rawPassword);
+        }
+    }
+}
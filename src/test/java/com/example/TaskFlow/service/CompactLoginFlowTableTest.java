@@ -0,0 +1,99 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompactLoginFlowTableTest {
+
+    @Test
+    void createShouldBeReadableThroughGet(){
+        CompactLoginFlowTable table = new CompactLoginFlowTable(1000, 300, Clock.fixed(MutableClock.START, ZoneOffset.UTC));
+
+        CompactLoginFlowTable.Entry created = table.create("alice");
+        CompactLoginFlowTable.Entry found = table.get(created.id());
+
+        assertThat(found).isEqualTo(created);
+        assertThat(found.username()).isEqualTo("alice");
+        assertThat(found.expiresAtEpochSecond()).isEqualTo(MutableClock.START.getEpochSecond() + 300);
+        assertThat(table.get("not-a-flow-id")).isNull();
+        assertThat(table.get("00000000-0000-0000-0000-000000000000")).isNull();
+    }
+
+    @Test
+    void incrementAttemptsShouldCountPerFlow(){
+        CompactLoginFlowTable table = new CompactLoginFlowTable(1000, 300, Clock.fixed(MutableClock.START, ZoneOffset.UTC));
+        CompactLoginFlowTable.Entry flow = table.create("alice");
+
+        assertThat(table.incrementAttempts(flow.id())).isEqualTo(1);
+        assertThat(table.incrementAttempts(flow.id())).isEqualTo(2);
+        assertThat(table.get(flow.id()).attempts()).isEqualTo(2);
+
+        table.delete(flow.id());
+        assertThat(table.incrementAttempts(flow.id())).isEqualTo(-1);
+    }
+
+    @Test
+    void sweepShouldRemoveOnlyExpiredFlows(){
+        MutableClock clock = new MutableClock();
+        CompactLoginFlowTable table = new CompactLoginFlowTable(1000, 10, clock);
+        CompactLoginFlowTable.Entry early = table.create("alice");
+        clock.advanceSeconds(5);
+        CompactLoginFlowTable.Entry late = table.create("bob");
+
+        clock.advanceSeconds(6);
+        assertThat(table.get(early.id())).isNull();
+        assertThat(table.sweepExpired()).isEqualTo(1);
+        assertThat(table.size()).isEqualTo(1);
+        assertThat(table.get(late.id())).isNotNull();
+
+        clock.advanceSeconds(5);
+        assertThat(table.sweepExpired()).isEqualTo(1);
+        assertThat(table.size()).isZero();
+    }
+
+    @Test
+    void tableShouldStayConsistentUnderRandomCreateDeleteAndSweep(){
+        MutableClock clock = new MutableClock();
+        CompactLoginFlowTable table = new CompactLoginFlowTable(64 * 16, 20, clock);
+        Random random = new Random(42);
+        Map<String, Long> live = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+
+        for(int i = 0; i < 20_000; i++){
+            int op = random.nextInt(10);
+            if(op == 0 && !ids.isEmpty()){
+                String id = ids.remove(random.nextInt(ids.size()));
+                live.remove(id);
+                table.delete(id);
+                assertThat(table.get(id)).isNull();
+            } else if(op == 1){
+                clock.advanceSeconds(1);
+                table.sweepExpired();
+                long now = clock.instant().getEpochSecond();
+                live.values().removeIf(expiresAt -> expiresAt < now);
+                ids.retainAll(live.keySet());
+            } else {
+                CompactLoginFlowTable.Entry entry = table.create("user" + (i % 17));
+                if(entry != null){
+                    live.put(entry.id(), entry.expiresAtEpochSecond());
+                    ids.add(entry.id());
+                }
+            }
+        }
+
+        assertThat(table.size()).isEqualTo(live.size());
+        for(String id : live.keySet()){
+            assertThat(table.get(id)).isNotNull();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.MutableClock;
+import com.example.TaskFlow.support.TestDataSources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs against H2 standing in for PostgreSQL
+public class JdbcFlowStoreTest {
+
+    private MutableClock clock;
+    private JdbcTemplate jdbcTemplate;
+    private JdbcFlowStore store;
+
+    @BeforeEach
+    void setUp(){
+        DriverManagerDataSource dataSource = TestDataSources.h2("flows");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        clock = new MutableClock();
+        store = new JdbcFlowStore(jdbcTemplate, "taskflow_auth.login_flows", 10, 100, 2, clock);
+    }
+
+    @Test
+    void flowCreatedOnOneNodeShouldBeVisibleOnAnother(){
+        JdbcFlowStore otherNode = new JdbcFlowStore(jdbcTemplate, "taskflow_auth.login_flows", 10, 100, 2, clock);
+
+        LoginFlowService.Flow flow = store.create("alice");
+        LoginFlowService.Flow found = otherNode.get(flow.id).orElseThrow();
+
+        assertThat(found.username).isEqualTo("alice");
+        assertThat(found.expiresAt).isEqualTo(flow.expiresAt);
+        assertThat(otherNode.registerAttempt(found)).isEqualTo(1);
+        assertThat(store.registerAttempt(flow)).isEqualTo(2);
+        assertThat(store.get(flow.id).orElseThrow().attempts.get()).isEqualTo(2);
+    }
+
+    @Test
+    void expiredOrUnknownFlowsShouldNotBeReturned(){
+        LoginFlowService.Flow flow = store.create("alice");
+
+        assertThat(store.get("not-a-uuid")).isEmpty();
+        assertThat(store.get(UUID.randomUUID().toString())).isEmpty();
+
+        clock.advanceSeconds(11);
+        assertThat(store.get(flow.id)).isEmpty();
+        assertThat(store.registerAttempt(flow)).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void deleteShouldRemoveTheRow(){
+        LoginFlowService.Flow flow = store.create("alice");
+        store.delete(flow.id);
+        assertThat(store.get(flow.id)).isEmpty();
+    }
+
+    @Test
+    void sweepShouldDeleteExpiredRowsInBatches(){
+        for(int i = 0; i < 5; i++){
+            store.create("user" + i);
+        }
+        clock.advanceSeconds(5);
+        LoginFlowService.Flow alive = store.create("bob");
+
+        clock.advanceSeconds(6);
+        store.sweepExpired();
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.get(alive.id)).isPresent();
+    }
+
+    @Test
+    void createShouldRejectOnceTheTableIsFull(){
+        JdbcFlowStore small = new JdbcFlowStore(jdbcTemplate, "taskflow_auth.small_flows", 10, 2, 100, clock);
+        small.create("alice");
+        LoginFlowService.Flow bob = small.create("bob");
+
+        assertThatThrownBy(() -> small.create("carol"))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+        small.delete(bob.id);
+        small.create("carol");
+        assertThat(small.size()).isEqualTo(2);
+    }
+
+    @Test
+    void sizeShouldFollowInsertsAndDeletesWithoutCounting(){
+        store.create("alice");
+        // A node started later counts the rows already there once
+        JdbcFlowStore otherNode = new JdbcFlowStore(jdbcTemplate, "taskflow_auth.login_flows", 10, 100, 2, clock);
+        assertThat(otherNode.size()).isEqualTo(1);
+
+        for(int i = 0; i < 4; i++){
+            store.create("user" + i);
+        }
+        assertThat(store.size()).isEqualTo(5);
+
+        clock.advanceSeconds(5);
+        LoginFlowService.Flow alive = otherNode.create("bob");
+        clock.advanceSeconds(6);
+        store.sweepExpired();
+        otherNode.sweepExpired();
+        // A ttl after their last count both nodes count again, in between only their own inserts and deletes move it
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(otherNode.size()).isEqualTo(1);
+
+        otherNode.delete(alive.id);
+        assertThat(otherNode.size()).isZero();
+        assertThat(store.size()).isEqualTo(1);
+        store.sweepExpired();
+        assertThat(store.size()).isEqualTo(1);
+    }
+}
@@ -2,15 +2,20 @@ package com.example.TaskFlow.service;
 
 import com.example.TaskFlow.Constants.Constants;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class JwtServiceTest {
     private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
@@ -39,16 +44,80 @@ public class JwtServiceTest {
 
     @Test
     void createRefreshTokenShouldBeRecognizableAsRefreshToken(){
-        String refreshToken = jwtService.createRefreshToken(userName,roles);
+        String refreshToken = jwtService.createRefreshToken(userName,roles,"family-1","token-1");
         Claims claims = jwtService.parse(refreshToken);
 
         assertThat(claims.getSubject()).isEqualTo(userName);
         assertThat(claims.get(Constants.TYPE)).isEqualTo(Constants.REFRESH_TOKEN_CLAIM);
+        assertThat(claims.get(Constants.FAMILY)).isEqualTo("family-1");
+        assertThat(claims.getId()).isEqualTo("token-1");
         assertThat(jwtService.roles(claims)).containsExactlyElementsOf(roles);
         assertThat(claims.getExpiration().toInstant()).isAfter(Instant.now());
 
     }
 
+    @Test
+    void tokenPairShouldShareIssuedAtAndCarryBothTypes(){
+        JwtService.TokenPair pair = jwtService.createTokenPair(userName, roles, "family-1", "token-1");
+        Claims access = jwtService.parse(pair.accessToken());
+        Claims refresh = jwtService.parse(pair.refreshToken());
+
+        assertThat(jwtService.isActiveToken(access)).isTrue();
+        assertThat(jwtService.isRefreshToken(refresh)).isTrue();
+        assertThat(access.getIssuedAt()).isEqualTo(refresh.getIssuedAt());
+        assertThat(access.getExpiration().getTime() - access.getIssuedAt().getTime()).isEqualTo(5 * 60_000L);
+        assertThat(refresh.getExpiration().getTime() - refresh.getIssuedAt().getTime()).isEqualTo(60 * 60_000L);
+        assertThat(UUID.fromString(access.getId()).toString()).isEqualTo(access.getId());
+        assertThat(refresh.getId()).isEqualTo("token-1");
+        assertThat(refresh.get(Constants.FAMILY)).isEqualTo("family-1");
+        assertThat(access).doesNotContainKey(Constants.FAMILY);
+    }
+
+    @Test
+    void mintedTokensShouldHoldTheClaimsJwtsBuilderWould(){
+        String odd = "al\"ice\\ \u00e9\u4e2d\ud83d\ude00\n\u0001";
+        List<String> oddRoles = List.of("USER", "r\"o");
+        Claims minted = jwtService.parse(jwtService.createRefreshToken(odd, oddRoles, "family-1", "token-1"));
+
+        String built = Jwts.builder()
+                .subject(odd)
+                .issuer(tokenIssuer)
+                .issuedAt(minted.getIssuedAt())
+                .expiration(minted.getExpiration())
+                .claim(Constants.TYPE, Constants.REFRESH_TOKEN_CLAIM)
+                .claim(Constants.ROLES, oddRoles)
+                .id("token-1")
+                .claim(Constants.FAMILY, "family-1")
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)), Jwts.SIG.HS256)
+                .compact();
+        assertThat(minted).isEqualTo(jwtService.parse(built));
+        assertThat(minted.getSubject()).isEqualTo(odd);
+    }
+
+    @Test
+    void rolesShouldBeMintedAsMaskAndListedRolesStillRead(){
+        Claims masked = jwtService.parse(jwtService.createAccessToken(userName, roles));
+        assertThat(masked).doesNotContainKey(Constants.ROLES);
+        assertThat(masked.get(Constants.ROLE_MASK)).isEqualTo(0b11);
+        assertThat(jwtService.authorities(masked)).extracting(a -> a.getAuthority()).containsExactly("USER", "ADMIN");
+
+        // Minted before the mask, or by a node still on app.jwt.roles.encoding=list
+        JwtService listing = new JwtService(SECRET, tokenIssuer, 5L, 60L, null, "list");
+        String listed = listing.createAccessToken(userName, List.of("ADMIN", "USER"));
+        Claims claims = jwtService.parse(listed);
+        assertThat(claims).doesNotContainKey(Constants.ROLE_MASK);
+        assertThat(jwtService.roles(claims)).containsExactly("ADMIN", "USER");
+        assertThat(jwtService.authorities(claims)).isSameAs(jwtService.authorities(masked));
+        assertThat(jwtService.createAccessToken(userName, roles).length()).isLessThan(listed.length());
+    }
+
+    @Test
+    void rolesOfAnUnknownRegistryVersionShouldBeRejected(){
+        Claims claims = Jwts.claims().add(Constants.ROLE_MASK, 1).add(Constants.ROLE_VERSION, 99).build();
+        assertThatThrownBy(() -> jwtService.authorities(claims)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> jwtService.roles(Jwts.claims().add(Constants.ROLE_MASK, 1).build())).isInstanceOf(JwtException.class);
+    }
+
     @Test
     void extractTokenFromHeaderShouldReturnTokenValue(){
         String rawToken = "abc.efg.ghj";
@@ -58,6 +127,15 @@ public class JwtServiceTest {
         assertThat(jwtService.extractTokenFromHeader("Token  "+rawToken)).isEmpty();
     }
 
+    @Test
+    void bearerTokenShouldSliceTheTokenOutOfTheHeader(){
+        assertThat(jwtService.bearerToken("Bearer abc.efg.ghj")).isEqualTo("abc.efg.ghj");
+        assertThat(jwtService.bearerToken("Bearer   abc.efg.ghj \t")).isEqualTo("abc.efg.ghj");
+        assertThat(jwtService.bearerToken("Bearer   ")).isNull();
+        assertThat(jwtService.bearerToken("bearer abc")).isNull();
+        assertThat(jwtService.bearerToken(null)).isNull();
+    }
+
     @Test
     void rolesShouldReturnEmptyWhenClaimMissing(){
         Claims claims = Jwts.claims().build();
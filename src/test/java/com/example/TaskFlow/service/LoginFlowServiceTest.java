@@ -1,8 +1,12 @@
 package com.example.TaskFlow.service;
 
+import com.example.TaskFlow.support.MutableClock;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Clock;
 import java.time.Instant;
 import java.util.List;
 import java.util.Set;
@@ -10,9 +14,13 @@ import java.util.concurrent.*;
 import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class LoginFlowServiceTest {
 
+    // The limit AuthController.login enforces
+    private static final int MAX_ATTEMPTS = 3;
+
     private LoginFlowService service;
 
     @BeforeEach
@@ -71,4 +79,76 @@ public class LoginFlowServiceTest {
 
     }
 
+    @Test
+    void sweepShouldDropExpiredFlowsWithoutDelete(){
+        MutableClock clock = new MutableClock();
+        LoginFlowService flows = new LoginFlowService(new InMemoryFlowStore(10, 100, clock));
+        LoginFlowService.Flow early = flows.create("alice");
+        clock.advanceSeconds(5);
+        LoginFlowService.Flow late = flows.create("bob");
+
+        clock.advanceSeconds(6);
+        flows.sweepExpired();
+
+        assertThat(flows.size()).isEqualTo(1);
+        assertThat(flows.get(early.id)).isEmpty();
+        assertThat(flows.get(late.id)).contains(late);
+
+        clock.advanceSeconds(5);
+        flows.sweepExpired();
+        assertThat(flows.size()).isZero();
+    }
+
+    @Test
+    void createShouldRejectWhenCapacityIsReached(){
+        MutableClock clock = new MutableClock();
+        LoginFlowService flows = new LoginFlowService(new InMemoryFlowStore(10, 2, clock));
+        flows.create("alice");
+        flows.create("bob");
+
+        assertThatThrownBy(() -> flows.create("carol"))
+                .isInstanceOf(ResponseStatusException.class)
+                .satisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+        // Once the pending flows expired there is room again
+        clock.advanceSeconds(11);
+        assertThat(flows.create("carol").username).isEqualTo("carol");
+        assertThat(flows.size()).isEqualTo(1);
+    }
+
+    @Test
+    void attemptsShouldNotExceedLimitUnderConcurrency() throws Exception{
+        Clock clock = Clock.systemUTC();
+        for(FlowStore store : List.of(new InMemoryFlowStore(300, 100, clock), new CompactFlowStore(300, 100, clock))){
+            LoginFlowService flows = new LoginFlowService(store);
+            String flowId = flows.create("alice").id;
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            try{
+                // Every guess looks the flow up and counts its attempt like /auth/login does, all released at once
+                List<Callable<Integer>> guesses = IntStream.range(0,50)
+                        .mapToObj(i -> (Callable<Integer>) () -> {
+                            start.await();
+                            return flows.registerAttempt(flows.get(flowId).orElseThrow());
+                        })
+                        .toList();
+                List<Future<Integer>> results = guesses.stream().map(executor::submit).toList();
+                start.countDown();
+                Set<Integer> counts = ConcurrentHashMap.newKeySet();
+                long allowed = 0;
+                for(Future<Integer> result : results){
+                    int attempts = result.get(5,TimeUnit.SECONDS);
+                    counts.add(attempts);
+                    if(attempts <= MAX_ATTEMPTS) allowed++;
+                }
+                assertThat(allowed).as(store.getClass().getSimpleName()).isEqualTo(MAX_ATTEMPTS);
+                // No attempt was lost or counted twice
+                assertThat(counts).as(store.getClass().getSimpleName()).hasSize(50).allMatch(c -> c >= 1 && c <= 50);
+            }finally{
+                executor.shutdown();
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,37 @@
+package com.example.TaskFlow.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PasswordHashingTest {
+
+    @Test
+    void calibrateShouldPickTheHighestCostWithinTheTarget(){
+        // 1 ms at cost 4, doubling with every extra cost: cost 10 takes 64 ms, cost 11 takes 128 ms
+        long millisAtFour = 1_000_000L;
+        assertThat(PasswordHashing.calibrate(100_000_000L, 4, 16, strength -> millisAtFour << (strength - 4))).isEqualTo(10);
+        // Never below the minimum, never above the maximum
+        assertThat(PasswordHashing.calibrate(1L, 10, 16, strength -> millisAtFour << (strength - 4))).isEqualTo(10);
+        assertThat(PasswordHashing.calibrate(Long.MAX_VALUE, 4, 12, strength -> millisAtFour << (strength - 4))).isEqualTo(12);
+    }
+
+    @Test
+    void delegatingEncoderShouldPrefixNewHashesAndAcceptLegacyOnes(){
+        PasswordEncoder encoder = PasswordHashing.delegatingEncoder(5);
+        String legacy = new BCryptPasswordEncoder(4).encode("Password123");
+        String current = encoder.encode("Password123");
+
+        assertThat(current).startsWith("{bcrypt}$2a$05$");
+        assertThat(encoder.matches("Password123", current)).isTrue();
+        assertThat(encoder.matches("Password123", legacy)).isTrue();
+        assertThat(encoder.matches("wrong-password", legacy)).isFalse();
+
+        assertThat(encoder.upgradeEncoding(legacy)).isTrue();
+        assertThat(encoder.upgradeEncoding("{bcrypt}" + legacy)).isTrue();
+        assertThat(encoder.upgradeEncoding(current)).isFalse();
+        assertThat(encoder.upgradeEncoding("{bcrypt}" + new BCryptPasswordEncoder(6).encode("Password123"))).isFalse();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.repo.UserCredentials;
+import com.example.TaskFlow.repo.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class PasswordUpgradeServiceTest {
+
+    private UserRepository userRepository;
+    private PasswordEncoder encoder;
+    private PasswordUpgradeService service;
+
+    @BeforeEach
+    void setUp(){
+        userRepository = mock(UserRepository.class);
+        encoder = PasswordHashing.delegatingEncoder(5);
+        service = new PasswordUpgradeService(userRepository, encoder, 10, false);
+    }
+
+    @AfterEach
+    void tearDown(){
+        service.shutdown();
+    }
+
+    @Test
+    void outdatedHashShouldBeReplacedInTheBackground(){
+        String legacy = new BCryptPasswordEncoder(4).encode("Password123");
+        service.upgradeIfNeeded(new UserCredentials(7L, legacy), "Password123");
+
+        ArgumentCaptor<String> newHash = ArgumentCaptor.forClass(String.class);
+        verify(userRepository, timeout(5000)).updatePasswordHash(eq(7L), eq(legacy), newHash.capture());
+        assertThat(newHash.getValue()).startsWith("{bcrypt}$2a$05$");
+        assertThat(encoder.matches("Password123", newHash.getValue())).isTrue();
+    }
+
+    @Test
+    void currentHashShouldBeLeftAlone(){
+        service.upgradeIfNeeded(new UserCredentials(7L, encoder.encode("Password123")), "Password123");
+
+        verify(userRepository, after(200).never()).updatePasswordHash(anyLong(), anyString(), any());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RefreshTokenFamilyTableTest {
+
+    @Test
+    void onlyTheCurrentTokenShouldBeCurrent(){
+        RefreshTokenFamilyTable table = new RefreshTokenFamilyTable(1000, new MutableClock());
+        UUID family = UUID.randomUUID();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        assertThat(table.check(family, first)).isEqualTo(RefreshTokenFamilyTable.State.UNKNOWN);
+        assertThat(table.put(family, first, MutableClock.START.getEpochSecond() + 60, false)).isTrue();
+        assertThat(table.check(family, first)).isEqualTo(RefreshTokenFamilyTable.State.CURRENT);
+
+        assertThat(table.rotate(family, first, second, MutableClock.START.getEpochSecond() + 60)).isTrue();
+        assertThat(table.check(family, second)).isEqualTo(RefreshTokenFamilyTable.State.CURRENT);
+        assertThat(table.check(family, first)).isEqualTo(RefreshTokenFamilyTable.State.STALE);
+        // A compare and set, the old token can't rotate the family a second time
+        assertThat(table.rotate(family, first, UUID.randomUUID(), MutableClock.START.getEpochSecond() + 60)).isFalse();
+
+        table.put(family, second, MutableClock.START.getEpochSecond() + 60, true);
+        assertThat(table.check(family, second)).isEqualTo(RefreshTokenFamilyTable.State.REVOKED);
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredFamiliesShouldBeUnknownAndSweptAway(){
+        MutableClock clock = new MutableClock();
+        RefreshTokenFamilyTable table = new RefreshTokenFamilyTable(1000, clock);
+        List<UUID[]> shortLived = new ArrayList<>();
+        List<UUID[]> longLived = new ArrayList<>();
+        for(int i = 0; i < 300; i++){
+            UUID[] family = {UUID.randomUUID(), UUID.randomUUID()};
+            boolean expiresSoon = i % 3 == 0;
+            table.put(family[0], family[1], MutableClock.START.getEpochSecond() + (expiresSoon ? 10 : 100), false);
+            (expiresSoon ? shortLived : longLived).add(family);
+        }
+
+        clock.advanceSeconds(11);
+        assertThat(table.check(shortLived.get(0)[0], shortLived.get(0)[1])).isEqualTo(RefreshTokenFamilyTable.State.UNKNOWN);
+        assertThat(table.sweepExpired()).isEqualTo(100);
+
+        assertThat(table.size()).isEqualTo(200);
+        for(UUID[] family : longLived){
+            assertThat(table.check(family[0], family[1])).isEqualTo(RefreshTokenFamilyTable.State.CURRENT);
+        }
+    }
+
+    @Test
+    void fullTableShouldEvictToMakeRoom(){
+        RefreshTokenFamilyTable table = new RefreshTokenFamilyTable(1000, new MutableClock());
+        List<UUID[]> families = families(table, 5000, MutableClock.START.getEpochSecond() + 60, false);
+
+        assertThat(table.size()).isEqualTo(1000);
+        assertThat(table.evictions()).isEqualTo(4000);
+        UUID[] last = families.get(families.size() - 1);
+        assertThat(table.check(last[0], last[1])).isEqualTo(RefreshTokenFamilyTable.State.CURRENT);
+    }
+
+    @Test
+    void evictionShouldPreferRevokedFamilies(){
+        RefreshTokenFamilyTable table = new RefreshTokenFamilyTable(1000, new MutableClock());
+        families(table, 800, MutableClock.START.getEpochSecond() + 100, true);
+        List<UUID[]> active = families(table, 200, MutableClock.START.getEpochSecond() + 10, false);
+
+        families(table, 100, MutableClock.START.getEpochSecond() + 100, false);
+
+        assertThat(table.size()).isEqualTo(1000);
+        for(UUID[] family : active){
+            assertThat(table.check(family[0], family[1])).isEqualTo(RefreshTokenFamilyTable.State.CURRENT);
+        }
+    }
+
+    @Test
+    void evictionShouldPreferFamiliesRotatedLeastRecently(){
+        RefreshTokenFamilyTable table = new RefreshTokenFamilyTable(1000, new MutableClock());
+        List<UUID[]> idle = families(table, 900, MutableClock.START.getEpochSecond() + 10, false);
+        List<UUID[]> recent = families(table, 100, MutableClock.START.getEpochSecond() + 100, false);
+
+        families(table, 100, MutableClock.START.getEpochSecond() + 100, false);
+
+        for(UUID[] family : recent){
+            assertThat(table.check(family[0], family[1])).isEqualTo(RefreshTokenFamilyTable.State.CURRENT);
+        }
+        assertThat(idle.stream().filter(f -> table.check(f[0], f[1]) == RefreshTokenFamilyTable.State.UNKNOWN)).hasSize(100);
+    }
+
+    private static List<UUID[]> families(RefreshTokenFamilyTable table, int count, long expiresAt, boolean revoked){
+        List<UUID[]> families = new ArrayList<>();
+        for(int i = 0; i < count; i++){
+            UUID[] family = {UUID.randomUUID(), UUID.randomUUID()};
+            assertThat(table.put(family[0], family[1], expiresAt, revoked)).isTrue();
+            families.add(family);
+        }
+        return families;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.Constants.Constants;
+import com.example.TaskFlow.support.MutableClock;
+import com.example.TaskFlow.support.TestDataSources;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RefreshTokenServiceTest {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+    private static final String TABLE = "taskflow_auth.refresh_token_families";
+
+    private final JwtService jwtService = new JwtService(SECRET, "taskflow-test", 5L, 60L);
+    private final MutableClock clock = new MutableClock(Instant.now());
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private RefreshTokenService refreshTokens;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = TestDataSources.h2("refresh");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        refreshTokens = node();
+    }
+
+    @Test
+    void everyRefreshShouldRotateTheToken(){
+        String first = refreshTokens.issue("alice", List.of("USER")).refreshToken();
+        String second = refreshTokens.rotate(claims(first)).refreshToken();
+        JwtService.TokenPair rotated = refreshTokens.rotate(claims(second));
+        String third = rotated.refreshToken();
+
+        // The access token minted with it
+        Claims access = jwtService.parse(rotated.accessToken());
+        assertThat(jwtService.isActiveToken(access)).isTrue();
+        assertThat(access.getSubject()).isEqualTo("alice");
+        assertThat(jwtService.roles(access)).containsExactly("USER");
+        assertThat(access.getIssuedAt()).isEqualTo(claims(third).getIssuedAt());
+
+        Claims latest = claims(third);
+        assertThat(latest.getSubject()).isEqualTo("alice");
+        assertThat(jwtService.roles(latest)).containsExactly("USER");
+        assertThat(latest.get(Constants.FAMILY)).isEqualTo(claims(first).get(Constants.FAMILY));
+        assertThat(latest.getId()).isNotEqualTo(claims(second).getId()).isNotEqualTo(claims(first).getId());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void reusingARotatedTokenShouldRevokeTheWholeFamily(){
+        String stolen = refreshTokens.issue("alice", List.of("USER")).refreshToken();
+        String current = refreshTokens.rotate(claims(stolen)).refreshToken();
+        String other = refreshTokens.issue("alice", List.of("USER")).refreshToken();
+
+        assertThatThrownBy(() -> refreshTokens.rotate(claims(stolen))).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> refreshTokens.rotate(claims(current))).isInstanceOf(ResponseStatusException.class);
+        // Revoked in the table too, for every node and after a restart
+        assertThatThrownBy(() -> node().rotate(claims(current))).isInstanceOf(ResponseStatusException.class);
+        // Another login of the same user is a family of its own
+        assertThat(refreshTokens.rotate(claims(other))).isNotNull();
+    }
+
+    @Test
+    void familiesShouldSurviveARestart(){
+        String first = refreshTokens.issue("alice", List.of("USER")).refreshToken();
+
+        String second = node().rotate(claims(first)).refreshToken();
+
+        assertThatThrownBy(() -> node().rotate(claims(first))).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> refreshTokens.rotate(claims(second))).isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void aTokenRotatedOnAnotherNodeShouldNotCountAsReuse(){
+        RefreshTokenService other = node();
+        String first = refreshTokens.issue("alice", List.of("USER")).refreshToken();
+        // Both nodes have the family cached at its first token
+        String second = other.rotate(claims(first)).refreshToken();
+
+        // This node's cache still holds the first token, the table says the second one is current
+        String third = refreshTokens.rotate(claims(second)).refreshToken();
+
+        assertThat(other.rotate(claims(third))).isNotNull();
+    }
+
+    @Test
+    void tokensWithoutRotationIdsShouldBeRejected(){
+        long now = System.currentTimeMillis();
+        String legacy = Jwts.builder()
+                .subject("alice")
+                .expiration(new Date(now + 60_000))
+                .claim(Constants.TYPE, Constants.REFRESH_TOKEN_CLAIM)
+                .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET)))
+                .compact();
+
+        assertThatThrownBy(() -> refreshTokens.rotate(claims(legacy))).isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void expiredFamiliesShouldBeRejectedAndSwept(){
+        String token = refreshTokens.issue("alice", List.of("USER")).refreshToken();
+        refreshTokens.issue("bob", List.of("USER"));
+
+        clock.advanceSeconds(60 * 60 + 1);
+
+        assertThatThrownBy(() -> refreshTokens.rotate(claims(token))).isInstanceOf(ResponseStatusException.class);
+        assertThat(refreshTokens.sweepExpired()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class)).isZero();
+    }
+
+    // Another node, or this one after a restart: same table, empty cache
+    private RefreshTokenService node(){
+        return new RefreshTokenService(jwtService, dataSource, TABLE, 1000, 1, clock);
+    }
+
+    private Claims claims(String token){
+        return jwtService.parse(token);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.TaskFlow.service;
+
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RoleRegistryTest {
+
+    private final RoleRegistry registry = new RoleRegistry(List.of(
+            List.of("USER", "ADMIN"),
+            List.of("USER", "AUDITOR", "ADMIN")));
+
+    @Test
+    void masksShouldBeOfTheCurrentVersion(){
+        assertThat(registry.current()).isEqualTo(2);
+        assertThat(registry.mask(List.of("ADMIN", "USER"))).isEqualTo(0b101);
+        assertThat(registry.mask(List.of())).isZero();
+        assertThat(registry.mask(List.of("USER", "OWNER"))).isEqualTo(-1);
+    }
+
+    @Test
+    void everyVersionShouldDecodeToSharedImmutableLists(){
+        assertThat(registry.names(1, 0b10)).containsExactly("ADMIN");
+        assertThat(registry.names(2, 0b10)).containsExactly("AUDITOR");
+        List<SimpleGrantedAuthority> admins = registry.authorities(1, 0b11);
+        assertThat(admins).extracting(SimpleGrantedAuthority::getAuthority).containsExactly("USER", "ADMIN");
+        assertThat(registry.authorities(1, 0b11)).isSameAs(admins);
+        // The same authority instance for a role in every version
+        assertThat(registry.authorities(2, 0b100).get(0)).isSameAs(admins.get(1));
+        assertThatThrownBy(() -> admins.add(new SimpleGrantedAuthority("OWNER"))).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void listedRolesShouldResolveToTheSameListsUnlessUnknown(){
+        assertThat(registry.authorities(List.of("ADMIN", "USER"))).isSameAs(registry.authorities(2, 0b101));
+        assertThat(registry.authorities(List.of("OWNER"))).extracting(SimpleGrantedAuthority::getAuthority).containsExactly("OWNER");
+    }
+
+    @Test
+    void unknownVersionsAndBitsShouldBeRejected(){
+        assertThatThrownBy(() -> registry.authorities(3, 1)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> registry.authorities(0, 1)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> registry.names(1, 0b100)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> new RoleRegistry(List.of(List.of("USER", "USER")))).isInstanceOf(IllegalArgumentException.class);
+    }
+}
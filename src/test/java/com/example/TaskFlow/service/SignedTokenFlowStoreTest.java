@@ -0,0 +1,92 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.MutableClock;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SignedTokenFlowStoreTest {
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+
+    private JwtService jwtService;
+    private MutableClock clock;
+    private SignedTokenFlowStore store;
+
+    @BeforeEach
+    void setUp(){
+        jwtService = new JwtService(SECRET, "taskflow-test", 5L, 60L);
+        // The token's own exp is checked against the real time, so the test clock starts at now
+        clock = new MutableClock(Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        store = new SignedTokenFlowStore(jwtService, 60, 100, clock);
+    }
+
+    @Test
+    void flowTokenShouldBeVerifiedWithoutStoringTheFlow(){
+        LoginFlowService.Flow flow = store.create("alice");
+        SignedTokenFlowStore otherNode = new SignedTokenFlowStore(jwtService, 60, 100, clock);
+
+        assertThat(store.size()).isZero();
+        LoginFlowService.Flow found = otherNode.get(flow.id).orElseThrow();
+        assertThat(found.username).isEqualTo("alice");
+        assertThat(found.expiresAt).isEqualTo(flow.expiresAt);
+    }
+
+    @Test
+    void attemptsShouldBeCountedPerNonce(){
+        LoginFlowService.Flow first = store.create("alice");
+        LoginFlowService.Flow second = store.create("alice");
+
+        assertThat(store.registerAttempt(first)).isEqualTo(1);
+        assertThat(store.registerAttempt(store.get(first.id).orElseThrow())).isEqualTo(2);
+        assertThat(store.registerAttempt(second)).isEqualTo(1);
+        assertThat(store.get(first.id).orElseThrow().attempts.get()).isEqualTo(2);
+        assertThat(store.size()).isEqualTo(2);
+    }
+
+    @Test
+    void tamperedExpiredOrUsedTokensShouldBeRejected(){
+        LoginFlowService.Flow flow = store.create("alice");
+
+        assertThat(store.get(flow.id + "x")).isEmpty();
+        assertThat(store.get("not-a-token")).isEmpty();
+        // An access token is signed with a different key and can't be used as a flow
+        assertThat(store.get(jwtService.createAccessToken("alice", java.util.List.of("USER")))).isEmpty();
+
+        store.delete(flow.id);
+        assertThat(store.get(flow.id)).isEmpty();
+        assertThat(store.registerAttempt(flow)).isEqualTo(Integer.MAX_VALUE);
+
+        LoginFlowService.Flow loggedIn = store.get(store.create("carol").id).orElseThrow();
+        store.delete(loggedIn);
+        assertThat(store.get(loggedIn.id)).isEmpty();
+
+        LoginFlowService.Flow expiring = store.create("bob");
+        clock.advanceSeconds(61);
+        assertThat(store.get(expiring.id)).isEmpty();
+    }
+
+    @Test
+    void flowTokenShouldNotBeAcceptedAsAccessToken(){
+        LoginFlowService.Flow flow = store.create("alice");
+
+        assertThatThrownBy(() -> jwtService.parse(flow.id)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void newCountersShouldBeRejectedWhenFull(){
+        SignedTokenFlowStore small = new SignedTokenFlowStore(jwtService, 60, 1, clock);
+        LoginFlowService.Flow first = small.create("alice");
+        LoginFlowService.Flow second = small.create("bob");
+        small.registerAttempt(first);
+
+        assertThatThrownBy(() -> small.registerAttempt(second)).isInstanceOf(ResponseStatusException.class);
+        assertThat(small.registerAttempt(first)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.MutableClock;
+import com.example.TaskFlow.support.TestDataSources;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwk;
+import io.jsonwebtoken.security.JwkSet;
+import io.jsonwebtoken.security.Jwks;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SigningKeyRingTest {
+
+    private static final String SECRET = "MDEyMzQ1Njc4OTAxMjM0NTY3ODkwMTIzNDU2Nzg5MDE=";
+    private static final String TABLE = "taskflow_auth.jwt_signing_keys";
+    private static final List<String> ROLES = List.of("USER");
+
+    private final MutableClock clock = new MutableClock();
+    private DriverManagerDataSource dataSource;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = TestDataSources.h2("signing");
+    }
+
+    @Test
+    void tokensShouldBeVerifiableWithThePublishedKeysAlone(){
+        for(String algorithm : List.of("ES256", "EdDSA")){
+            SigningKeyRing ring = ring(algorithm, SECRET);
+            JwtService jwtService = jwtService(ring);
+            String token = jwtService.createAccessToken("alice", ROLES);
+
+            assertThat(jwtService.parse(token).getSubject()).isEqualTo("alice");
+            // What a downstream service does: the key named by the token's kid, out of the JWK Set
+            PublicKey published = (PublicKey) publishedKeys(ring).getKeys().iterator().next().toKey();
+            Claims claims = Jwts.parser().verifyWith(published).build().parseSignedClaims(token).getPayload();
+            assertThat(claims.getSubject()).isEqualTo("alice");
+            assertThat(Jwts.parser().verifyWith(published).build().parseSignedClaims(token).getHeader().getKeyId())
+                    .isEqualTo(ring.current().kid());
+        }
+        assertThat(ring("EdDSA", SECRET).jwks()).contains("\"crv\":\"Ed25519\"");
+    }
+
+    @Test
+    void secretTokensShouldStillBeAcceptedAndForgedKidsNot(){
+        JwtService jwtService = jwtService(ring("ES256", SECRET));
+        String hs256 = new JwtService(SECRET, "taskflow-test", 5L, 60L).createAccessToken("alice", ROLES);
+        assertThat(jwtService.parse(hs256).getSubject()).isEqualTo("alice");
+
+        // Signed by a key of another ring, under a kid this one doesn't have
+        JwtService stranger = jwtService(new SigningKeyRing(dataSource, SECRET, "ES256", "taskflow_auth.other_keys", 24, 600, 60, clock));
+        String forged = stranger.createAccessToken("alice", ROLES);
+        assertThatThrownBy(() -> jwtService.parse(forged)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void nextKeyShouldBePublishedBeforeItSignsAndOldKeyKeptUntilItsTokensExpire(){
+        SigningKeyRing ring = ring("ES256", SECRET);
+        JwtService jwtService = jwtService(ring);
+        String first = ring.current().kid();
+        String signedByFirst = jwtService.createAccessToken("alice", ROLES);
+        String etag = ring.jwksEtag();
+
+        clock.advanceSeconds(24 * 3600 - 600);
+        assertThat(ring.rotateIfDue()).isTrue();
+        assertThat(ring.rotateIfDue()).isFalse();
+        // Published, but the first key still signs
+        assertThat(publishedKeys(ring).getKeys()).hasSize(2);
+        assertThat(ring.jwksEtag()).isNotEqualTo(etag);
+        assertThat(ring.current().kid()).isEqualTo(first);
+
+        clock.advanceSeconds(600);
+        ring.rotateIfDue();
+        assertThat(ring.current().kid()).isNotEqualTo(first);
+        assertThat(jwtService.parse(signedByFirst).getSubject()).isEqualTo("alice");
+
+        // The refresh token lifetime (60 minutes) and the clock skew allowance after the second key took over
+        clock.advanceSeconds(3600 + 61);
+        ring.rotateIfDue();
+        assertThat(publishedKeys(ring).getKeys()).extracting(Jwk::getId).containsExactly(ring.current().kid());
+        assertThatThrownBy(() -> jwtService.parse(signedByFirst)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void nodesShouldShareKeysAndStoreThemEncrypted(){
+        SigningKeyRing first = ring("EdDSA", SECRET);
+        SigningKeyRing second = ring("EdDSA", SECRET);
+        assertThat(second.current().kid()).isEqualTo(first.current().kid());
+        assertThat(jwtService(second).parse(jwtService(first).createAccessToken("alice", ROLES)).getSubject()).isEqualTo("alice");
+
+        // Switching the algorithm publishes a key of the new one and keeps signing with the old until it is active
+        SigningKeyRing switched = ring("ES256", SECRET);
+        assertThat(switched.current().algorithm().getId()).isEqualTo("EdDSA");
+        assertThat(publishedKeys(switched).getKeys()).extracting(Jwk::getAlgorithm).containsExactlyInAnyOrder("EdDSA", "ES256");
+
+        assertThatThrownBy(() -> ring("EdDSA", "c29tZSBvdGhlciBzZWNyZXQgb2YgMzIgYnl0ZXMgISE="))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void hs256ShouldNeedNoKeys(){
+        SigningKeyRing ring = ring("HS256", SECRET);
+        assertThat(ring.isEnabled()).isFalse();
+        assertThat(ring.current()).isNull();
+        assertThat(ring.jwks()).isEqualTo("{\"keys\":[]}");
+        String token = jwtService(ring).createAccessToken("alice", ROLES);
+        assertThat(new String(Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.'))), StandardCharsets.UTF_8))
+                .contains("HS256")
+                .doesNotContain("kid");
+    }
+
+    private SigningKeyRing ring(String algorithm, String secret){
+        return new SigningKeyRing(dataSource, secret, algorithm, TABLE, 24, 600, 60, clock);
+    }
+
+    private static JwtService jwtService(SigningKeyRing ring){
+        return new JwtService(SECRET, "taskflow-test", 5L, 60L, ring);
+    }
+
+    private static JwkSet publishedKeys(SigningKeyRing ring){
+        return Jwks.setParser().build().parse(ring.jwks());
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.exception.RetryLaterException;
+import com.example.TaskFlow.support.MutableClock;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TokenBucketRateLimiterTest {
+
+    private final MutableClock clock = new MutableClock();
+
+    @Test
+    void shouldAllowBurstThenRefillOverTime(){
+        // 3 at once, then one every 10 seconds
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 3, 6, 100, clock);
+
+        for(int i = 0; i < 3; i++){
+            assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+        }
+        assertThat(limiter.tryAcquire("10.0.0.1")).isEqualTo(TimeUnit.SECONDS.toMicros(10));
+        assertThat(limiter.available("10.0.0.1")).isZero();
+        // Other keys have their own bucket
+        assertThat(limiter.tryAcquire("10.0.0.2")).isZero();
+
+        clock.advanceSeconds(10);
+        assertThat(limiter.tryAcquire("10.0.0.1")).isZero();
+        assertThat(limiter.tryAcquire("10.0.0.1")).isPositive();
+
+        // Never more than capacity, however long the key was left alone
+        clock.advanceSeconds(3600);
+        assertThat(limiter.available("10.0.0.1")).isEqualTo(3);
+        assertThat(limiter.snapshot().allowed()).isEqualTo(5);
+        assertThat(limiter.snapshot().rejected()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectedRequestsShouldNotDrainTheBucket(){
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 1, 6, 100, clock);
+        limiter.tryAcquire("bot");
+        for(int i = 0; i < 100; i++){
+            assertThat(limiter.tryAcquire("bot")).isPositive();
+        }
+
+        clock.advanceSeconds(10);
+
+        assertThat(limiter.tryAcquire("bot")).isZero();
+    }
+
+    @Test
+    void concurrentRequestsShouldNeverGetMoreThanCapacity() throws Exception{
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 100, 1, 100, clock);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for(int t = 0; t < 8; t++){
+            executor.execute(() -> {
+                try{
+                    start.await();
+                }catch(InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                for(int i = 0; i < 1000; i++){
+                    if(limiter.tryAcquire("shared") == 0){
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(allowed.get()).isEqualTo(100);
+        assertThat(limiter.snapshot().rejected()).isEqualTo(8 * 1000 - 100);
+    }
+
+    @Test
+    void authRateLimiterShouldAnswerTooManyRequestsWithRetryAfter(){
+        AuthRateLimiter rateLimiter = new AuthRateLimiter(true,
+                new TokenBucketRateLimiter("client", 5, 60, 100, clock),
+                new TokenBucketRateLimiter("identifier", 1, 2, 100, clock));
+
+        rateLimiter.checkIdentifier("Alice@Example.com");
+
+        // Same identifier in another case, the next token comes in 30 seconds
+        assertThatThrownBy(() -> rateLimiter.checkIdentifier(" alice@example.com"))
+                .isInstanceOfSatisfying(RetryLaterException.class, e -> {
+                    assertThat(e.getStatusCode().value()).isEqualTo(429);
+                    assertThat(e.getRetryAfterSeconds()).isEqualTo(30);
+                });
+    }
+
+    @Test
+    void disabledAuthRateLimiterShouldLetEverythingThrough(){
+        AuthRateLimiter rateLimiter = new AuthRateLimiter(false,
+                new TokenBucketRateLimiter("client", 1, 1, 100, clock),
+                new TokenBucketRateLimiter("identifier", 1, 1, 100, clock));
+
+        for(int i = 0; i < 10; i++){
+            rateLimiter.checkClient("10.0.0.1");
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.TaskFlow.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UserCursorTest {
+
+    @Test
+    void cursorShouldRoundTripTheLastId(){
+        for(long id : new long[]{1, 42, Long.MAX_VALUE, UserCursor.START}){
+            String cursor = UserCursor.encode(id);
+            assertThat(cursor).doesNotContain("=", "+", "/");
+            assertThat(UserCursor.decode(cursor)).isEqualTo(id);
+        }
+    }
+
+    @Test
+    void missingCursorShouldStartAtTheBeginning(){
+        assertThat(UserCursor.decode(null)).isEqualTo(UserCursor.START);
+        assertThat(UserCursor.decode("")).isEqualTo(UserCursor.START);
+    }
+
+    @Test
+    void foreignCursorsShouldBeRejected(){
+        for(String cursor : new String[]{"not base64!", "AQ", "AgAAAAAAAAAq", "AQAAAAAAAAAqAA"}){
+            assertThatThrownBy(() -> UserCursor.decode(cursor))
+                    .isInstanceOf(ResponseStatusException.class)
+                    .satisfies(e -> assertThat(((ResponseStatusException) e).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.TestDataSources;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs against H2 standing in for PostgreSQL
+public class UserExportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private JdbcTemplate jdbcTemplate;
+    private UserExportService exportService;
+
+    @BeforeEach
+    void setUp(){
+        DriverManagerDataSource dataSource = TestDataSources.h2("export");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE taskflow_auth.users (id BIGINT PRIMARY KEY, email VARCHAR(100), username VARCHAR(255), "
+                + "password_hash VARCHAR(255), first_name VARCHAR(32), last_name VARCHAR(32), middle_name VARCHAR(32), "
+                + "is_active BOOLEAN, is_locked BOOLEAN, is_deleted BOOLEAN, failed_login_attempts INTEGER)");
+        // Small fetch size so the export crosses several fetches
+        exportService = new UserExportService(dataSource, objectMapper, 2);
+    }
+
+    @Test
+    void exportShouldWriteOneJsonLinePerUserInIdOrder() throws Exception{
+        for(long id : new long[]{3, 1, 2, 5, 4}){
+            jdbcTemplate.update("INSERT INTO taskflow_auth.users VALUES (?, ?, ?, 'secret-hash', 'First', 'Last', NULL, TRUE, FALSE, FALSE, 0)",
+                    id, "user" + id + "@example.com", "user" + id);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long written = exportService.export(out);
+
+        String ndjson = out.toString(StandardCharsets.UTF_8);
+        String[] lines = ndjson.split("\n");
+        assertThat(written).isEqualTo(5);
+        assertThat(ndjson).endsWith("\n").doesNotContain("secret-hash").doesNotContain("passwordHash");
+        assertThat(lines).hasSize(5);
+        for(int i = 0; i < lines.length; i++){
+            JsonNode user = objectMapper.readTree(lines[i]);
+            assertThat(user.get("id").asLong()).isEqualTo(i + 1);
+            assertThat(user.get("username").asText()).isEqualTo("user" + (i + 1));
+            assertThat(user.get("isActive").asBoolean()).isTrue();
+        }
+    }
+
+    @Test
+    void emptyTableShouldWriteNothing() throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(exportService.export(out)).isZero();
+        assertThat(out.size()).isZero();
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.support.MutableClock;
+import com.example.TaskFlow.support.TestDataSources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UserIdentifierFilterTest {
+
+    private static final String ADDITIONS = "taskflow_auth.user_identifier_additions";
+
+    private final MutableClock clock = new MutableClock();
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = TestDataSources.h2("filter");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE taskflow_auth.users (id BIGINT PRIMARY KEY, email VARCHAR(100) NOT NULL, username VARCHAR(255) NOT NULL)");
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users SELECT x, 'User' || x || '@Example.com', 'user' || x FROM SYSTEM_RANGE(1, 5000)");
+    }
+
+    @Test
+    void shouldContainEveryStoredIdentifierIgnoringCase(){
+        UserIdentifierFilter filter = filter(true);
+
+        assertThat(filter.rebuild()).isEqualTo(5000);
+
+        for(int i = 1; i <= 5000; i++){
+            assertThat(filter.mightContain("user" + i + "@example.com")).isTrue();
+            assertThat(filter.mightContain(" USER" + i + " ")).isTrue();
+        }
+    }
+
+    @Test
+    void shouldRuleOutAlmostAllUnknownIdentifiers(){
+        UserIdentifierFilter filter = filter(true);
+        filter.rebuild();
+
+        int falsePositives = 0;
+        for(int i = 0; i < 10000; i++){
+            if(filter.mightContain("bot" + i + "@example.com")){
+                falsePositives++;
+            }
+        }
+        // Sized for 1%, with room to spare for half as many users again
+        assertThat(falsePositives).isLessThan(100);
+    }
+
+    @Test
+    void addedUsersShouldBeFoundBeforeTheNextRebuild(){
+        UserIdentifierFilter filter = filter(true);
+        filter.rebuild();
+        assertThat(filter.mightContainAny("newcomer@example.com", "newcomer")).isFalse();
+
+        filter.add("NewComer@Example.com", "NewComer");
+
+        assertThat(filter.mightContain("newcomer@example.com")).isTrue();
+        assertThat(filter.mightContain("newcomer")).isTrue();
+    }
+
+    @Test
+    void rebuildShouldDropDeletedUsers(){
+        UserIdentifierFilter filter = filter(true);
+        filter.rebuild();
+        assertThat(filter.mightContain("user1")).isTrue();
+
+        jdbcTemplate.update("DELETE FROM taskflow_auth.users WHERE id = 1");
+        filter.rebuild();
+
+        assertThat(filter.mightContain("user1")).isFalse();
+        assertThat(filter.mightContain("user1@example.com")).isFalse();
+    }
+
+    @Test
+    void everythingMightExistUntilBuiltOrWhenDisabled(){
+        assertThat(filter(true).mightContain("anyone")).isTrue();
+
+        UserIdentifierFilter disabled = filter(false);
+        assertThat(disabled.rebuild()).isEqualTo(-1);
+        assertThat(disabled.mightContain("anyone")).isTrue();
+    }
+
+    @Test
+    void usersAddedOnAnotherNodeShouldBeFoundAfterTheNextSync(){
+        UserIdentifierFilter nodeA = filter(true);
+        UserIdentifierFilter nodeB = filter(true);
+        nodeA.rebuild();
+        nodeB.rebuild();
+
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users VALUES (9999, 'NewComer@Example.com', 'NewComer')");
+        nodeA.add("NewComer@Example.com", "NewComer");
+        assertThat(nodeB.mightContainAny("newcomer@example.com", "newcomer")).isFalse();
+
+        assertThat(nodeB.sync()).isEqualTo(1);
+        assertThat(nodeB.mightContain("newcomer@example.com")).isTrue();
+        assertThat(nodeB.mightContain("NEWCOMER")).isTrue();
+    }
+
+    @Test
+    void sharedAdditionsShouldBeDeletedOnceEveryNodeHasRebuiltSince(){
+        UserIdentifierFilter filter = filter(true);
+        filter.add("newcomer@example.com", "newcomer");
+        assertThat(additions()).isEqualTo(1);
+
+        // The rebuild interval of 10 seconds and the sync overlap
+        clock.advanceSeconds(10 + 60 + 1);
+        filter.sync();
+
+        assertThat(additions()).isZero();
+    }
+
+    private int additions(){
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + ADDITIONS, Integer.class);
+    }
+
+    private UserIdentifierFilter filter(boolean enabled){
+        return new UserIdentifierFilter(dataSource, new DataSourceTransactionManager(dataSource), enabled, 100, 0.01, 500,
+                ADDITIONS, 10_000, clock);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.dto.response.UserImportResultDTO;
+import com.example.TaskFlow.repo.UserIdentifierIndexes;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.TaskFlow.dto.response.UserImportResultDTO.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The PostgreSQL paths of the import, which H2 never takes: records staged through COPY and merged with
+// ON CONFLICT DO NOTHING against the lower(...) unique indexes
+@Testcontainers(disabledWithoutDocker = true)
+public class UserImportServicePostgresTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+    private final BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(bcrypt, 2, 16, 1);
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private UserImportService importService;
+
+    @BeforeEach
+    void setUp(){
+        dataSource = new DriverManagerDataSource(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS taskflow_auth CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA taskflow_auth");
+        jdbcTemplate.execute("CREATE SEQUENCE taskflow_auth.users_seq START WITH 1 INCREMENT BY 50");
+        jdbcTemplate.execute("CREATE TABLE taskflow_auth.users (id BIGINT PRIMARY KEY, "
+                + "email VARCHAR(100) NOT NULL CONSTRAINT uk_users_email UNIQUE, "
+                + "username VARCHAR(255) NOT NULL CONSTRAINT uk_users_username UNIQUE, "
+                + "password_hash VARCHAR(255) NOT NULL, first_name VARCHAR(32) NOT NULL, last_name VARCHAR(32) NOT NULL, "
+                + "middle_name VARCHAR(32), is_active BOOLEAN NOT NULL, is_locked BOOLEAN DEFAULT FALSE, "
+                + "is_deleted BOOLEAN DEFAULT FALSE, failed_login_attempts INTEGER, locked_until BIGINT)");
+        new UserIdentifierIndexes(dataSource, 10_000);
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users (id, email, username, password_hash, first_name, last_name, is_active) "
+                + "VALUES (nextval('taskflow_auth.users_seq'), 'taken@example.com', 'existing', 'hash', 'Ex', 'Isting', TRUE)");
+        UserIdentifierFilter identifierFilter = new UserIdentifierFilter(dataSource, new DataSourceTransactionManager(dataSource),
+                true, 100, 0.01, 100, "taskflow_auth.user_identifier_additions", 3600000, Clock.systemUTC());
+        identifierFilter.rebuild();
+        importService = new UserImportService(dataSource, new DataSourceTransactionManager(dataSource), encoder, identifierFilter,
+                Validation.buildDefaultValidatorFactory().getValidator(), objectMapper,
+                "taskflow_auth.user_import_staging", 3, 4);
+    }
+
+    @AfterEach
+    void tearDown(){
+        encoder.close();
+    }
+
+    @Test
+    void recordsShouldBeCopiedAndMergedCaseInsensitively() throws Exception{
+        String upload = "email,lastname,username,firstname,password\r\n"
+                + "alice@example.com,\"Smith, Jr.\",alice,Alice,Password123\r\n"
+                + "Taken@Example.com,Last,bobby,Bob,Password123\r\n"
+                + "carol@example.com,\"Multi\nLine \"\"Quoted\"\"\",EXISTING,Carol,Password123\r\n"
+                + "other@example.com,Last,ALICE,Alice,Password123\r\n"
+                + "dave@example.com,Müller,dave,Dave,Password123\r\n";
+
+        List<UserImportResultDTO> report = run(upload);
+
+        assertThat(report).extracting(UserImportResultDTO::status)
+                .containsExactly(CREATED, EMAIL_TAKEN, USERNAME_TAKEN, DUPLICATE, CREATED);
+        assertThat(jdbcTemplate.queryForList("SELECT last_name FROM taskflow_auth.users WHERE username <> 'existing' ORDER BY id", String.class))
+                .containsExactly("Smith, Jr.", "Müller");
+        // Ids reserved in blocks of 50 per chunk of 3
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM taskflow_auth.users WHERE username <> 'existing' ORDER BY id", Long.class))
+                .containsExactly(51L, 102L);
+        String hash = jdbcTemplate.queryForObject("SELECT password_hash FROM taskflow_auth.users WHERE username = 'dave'", String.class);
+        assertThat(bcrypt.matches("Password123", hash)).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM taskflow_auth.user_import_staging", Integer.class)).isZero();
+    }
+
+    @Test
+    void registrationCommittedDuringTheMergeShouldWinAsConflict() throws Exception{
+        // Not committed yet, so the checks of the merge don't see it and its INSERT waits on the unique index
+        try(Connection registration = dataSource.getConnection(); Statement statement = registration.createStatement()){
+            registration.setAutoCommit(false);
+            statement.executeUpdate("INSERT INTO taskflow_auth.users (id, email, username, password_hash, first_name, last_name, is_active) "
+                    + "VALUES (nextval('taskflow_auth.users_seq'), 'Racer@Example.com', 'racer', 'hash', 'Ra', 'Cer', TRUE)");
+
+            CompletableFuture<List<UserImportResultDTO>> report = CompletableFuture.supplyAsync(() -> {
+                try{
+                    return run("email,lastname,username,firstname,password\r\n"
+                            + "racer@example.com,Last,racer2,Racer,Password123\r\n"
+                            + "erin@example.com,Last,erin,Erin,Password123\r\n");
+                }catch(Exception e){
+                    throw new IllegalStateException(e);
+                }
+            });
+            long deadline = System.currentTimeMillis() + 10_000;
+            while(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_locks WHERE NOT granted", Integer.class) == 0){
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                Thread.sleep(20);
+            }
+            registration.commit();
+
+            assertThat(report.get(10, TimeUnit.SECONDS)).extracting(UserImportResultDTO::status).containsExactly(CONFLICT, CREATED);
+        }
+        assertThat(jdbcTemplate.queryForList("SELECT username FROM taskflow_auth.users ORDER BY username", String.class))
+                .containsExactly("erin", "existing", "racer");
+    }
+
+    private List<UserImportResultDTO> run(String upload) throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        importService.importUsers(new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)), UserImportService.Format.CSV, out);
+        return Arrays.stream(out.toString(StandardCharsets.UTF_8).split("\n"))
+                .map(line -> {
+                    try{
+                        return objectMapper.readValue(line, UserImportResultDTO.class);
+                    }catch(Exception e){
+                        throw new AssertionError(line, e);
+                    }
+                })
+                .toList();
+    }
+}
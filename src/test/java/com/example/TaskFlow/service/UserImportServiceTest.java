@@ -0,0 +1,151 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.dto.response.UserImportResultDTO;
+import com.example.TaskFlow.support.TestDataSources;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.TaskFlow.dto.response.UserImportResultDTO.Status.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs against H2 standing in for PostgreSQL, so records are staged with a batch insert instead of COPY,
+// UserImportServicePostgresTest covers COPY
+public class UserImportServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+    // One thread and one queue slot, so the import runs into a full queue all the time
+    private final BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(bcrypt, 1, 1, 1);
+    private JdbcTemplate jdbcTemplate;
+    private UserIdentifierFilter identifierFilter;
+    private UserImportService importService;
+
+    @BeforeEach
+    void setUp(){
+        DriverManagerDataSource dataSource = TestDataSources.h2("import");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE SEQUENCE taskflow_auth.users_seq START WITH 1 INCREMENT BY 50");
+        jdbcTemplate.execute("CREATE TABLE taskflow_auth.users (id BIGINT PRIMARY KEY, "
+                + "email VARCHAR(100) NOT NULL CONSTRAINT uk_users_email UNIQUE, "
+                + "username VARCHAR(255) NOT NULL CONSTRAINT uk_users_username UNIQUE, "
+                + "password_hash VARCHAR(255) NOT NULL, first_name VARCHAR(32) NOT NULL, last_name VARCHAR(32) NOT NULL, "
+                + "middle_name VARCHAR(32), is_active BOOLEAN NOT NULL, is_locked BOOLEAN DEFAULT FALSE, "
+                + "is_deleted BOOLEAN DEFAULT FALSE, failed_login_attempts INTEGER)");
+        jdbcTemplate.update("INSERT INTO taskflow_auth.users (id, email, username, password_hash, first_name, last_name, is_active) "
+                + "VALUES (nextval('taskflow_auth.users_seq'), 'taken@example.com', 'existing', 'hash', 'Ex', 'Isting', TRUE)");
+        identifierFilter = new UserIdentifierFilter(dataSource, new DataSourceTransactionManager(dataSource), true, 100, 0.01, 100,
+                "taskflow_auth.user_identifier_additions", 3600000, Clock.systemUTC());
+        identifierFilter.rebuild();
+        // Chunks of 3, so the records below cross chunk boundaries
+        importService = new UserImportService(dataSource, new DataSourceTransactionManager(dataSource), encoder, identifierFilter,
+                Validation.buildDefaultValidatorFactory().getValidator(), objectMapper,
+                "taskflow_auth.user_import_staging", 3, 4);
+    }
+
+    @AfterEach
+    void tearDown(){
+        encoder.close();
+    }
+
+    @Test
+    void ndjsonImportShouldReportEveryRecordInOrder() throws Exception{
+        String upload = String.join("\n",
+                record("alice", "alice@example.com"),
+                record("bob1", "Taken@Example.com"),
+                "",
+                "{not json",
+                record("Existing", "new@example.com"),
+                "{\"username\":\"carol\",\"email\":\"not-an-email\",\"password\":\"short\",\"firstname\":\"C\",\"lastname\":\"D\"}",
+                record("ALICE", "other@example.com"),
+                record(" dave ", "dave@example.com")) + "\n";
+
+        List<UserImportResultDTO> report = run(upload, UserImportService.Format.NDJSON);
+
+        assertThat(report).extracting(UserImportResultDTO::row).containsExactly(1, 2, 3, 4, 5, 6, 7);
+        assertThat(report).extracting(UserImportResultDTO::status)
+                .containsExactly(CREATED, EMAIL_TAKEN, INVALID, USERNAME_TAKEN, INVALID, DUPLICATE, CREATED);
+        assertThat(report.get(2).message()).isEqualTo("Malformed JSON record");
+        assertThat(report.get(4).message()).isEqualTo("email: must be a well-formed email address, password: size must be between 8 and 100");
+        assertThat(report.get(6).username()).isEqualTo("dave");
+
+        assertThat(jdbcTemplate.queryForList("SELECT username FROM taskflow_auth.users ORDER BY id", String.class))
+                .containsExactly("existing", "alice", "dave");
+        String hash = jdbcTemplate.queryForObject("SELECT password_hash FROM taskflow_auth.users WHERE username = 'alice'", String.class);
+        assertThat(bcrypt.matches("Password123", hash)).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM taskflow_auth.user_import_staging", Integer.class)).isZero();
+        // Imported users are in the identifier filter without waiting for a rebuild
+        assertThat(identifierFilter.mightContain("Alice@Example.com")).isTrue();
+        assertThat(identifierFilter.mightContain("DAVE")).isTrue();
+    }
+
+    @Test
+    void importedIdsShouldComeFromReservedSequenceBlocks() throws Exception{
+        StringBuilder upload = new StringBuilder();
+        for(int i = 0; i < 7; i++){
+            upload.append(record("user" + i, "user" + i + "@example.com")).append('\n');
+        }
+
+        run(upload.toString(), UserImportService.Format.NDJSON);
+
+        // existing took 1, each chunk of 3 reserved the next block of 50
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM taskflow_auth.users WHERE username LIKE 'user%' ORDER BY id", Long.class))
+                .containsExactly(51L, 52L, 53L, 101L, 102L, 103L, 151L);
+    }
+
+    @Test
+    void csvImportShouldMapColumnsByHeader() throws Exception{
+        String upload = "email,lastname,username,firstname,password\r\n"
+                + "alice@example.com,\"Smith, Jr.\",alice,Alice,Password123\r\n"
+                + "\r\n"
+                + "bob@example.com,\"Multi\nLine \"\"Quoted\"\"\",bobby,Bob,Password123\r\n";
+
+        List<UserImportResultDTO> report = run(upload, UserImportService.Format.CSV);
+
+        assertThat(report).extracting(UserImportResultDTO::status).containsExactly(CREATED, CREATED);
+        assertThat(jdbcTemplate.queryForList("SELECT last_name FROM taskflow_auth.users WHERE username <> 'existing' ORDER BY id", String.class))
+                .containsExactly("Smith, Jr.", "Multi\nLine \"Quoted\"");
+    }
+
+    @Test
+    void csvWithoutExpectedHeaderShouldBeRejected(){
+        assertThatThrownBy(() -> run("user,mail\nalice,alice@example.com\n", UserImportService.Format.CSV))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("Invalid import file");
+    }
+
+    private List<UserImportResultDTO> run(String upload, UserImportService.Format format) throws Exception{
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        importService.importUsers(new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)), format, out);
+        String report = out.toString(StandardCharsets.UTF_8);
+        assertThat(report).endsWith("\n");
+        return Arrays.stream(report.split("\n"))
+                .map(line -> {
+                    try{
+                        return objectMapper.readValue(line, UserImportResultDTO.class);
+                    }catch(Exception e){
+                        throw new AssertionError(line, e);
+                    }
+                })
+                .toList();
+    }
+
+    private static String record(String username, String email){
+        return "{\"username\":\"" + username + "\",\"email\":\"" + email + "\",\"password\":\"Password123\",\"firstname\":\"First\",\"lastname\":\"Last\"}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.TaskFlow.service;
+
+import com.example.TaskFlow.repo.UserAuthStatus;
+import com.example.TaskFlow.repo.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserPrincipalCacheTest {
+
+    private UserRepository userRepository;
+    private UserPrincipalCache cache;
+
+    @BeforeEach
+    void setUp(){
+        userRepository = mock(UserRepository.class);
+        cache = new UserPrincipalCache(userRepository, 60, 100);
+    }
+
+    @Test
+    void getShouldQueryTheDatabaseOnlyOnce(){
+        when(userRepository.findAuthStatusByUsername("alice")).thenReturn(Optional.of(user(7L, false, false)));
+
+        UserPrincipalCache.Principal first = cache.get("alice").orElseThrow();
+        UserPrincipalCache.Principal second = cache.get("alice").orElseThrow();
+
+        assertThat(first).isEqualTo(second);
+        assertThat(first.id()).isEqualTo(7L);
+        assertThat(first.canAuthenticate()).isTrue();
+        verify(userRepository, times(1)).findAuthStatusByUsername("alice");
+    }
+
+    @Test
+    void lockedOrDeletedUsersShouldNotAuthenticate(){
+        when(userRepository.findAuthStatusByUsername("locked")).thenReturn(Optional.of(user(1L, true, false)));
+        when(userRepository.findAuthStatusByUsername("deleted")).thenReturn(Optional.of(user(2L, false, true)));
+
+        assertThat(cache.get("locked").orElseThrow().canAuthenticate()).isFalse();
+        assertThat(cache.get("deleted").orElseThrow().canAuthenticate()).isFalse();
+    }
+
+    @Test
+    void unknownUserShouldNotBeCached(){
+        when(userRepository.findAuthStatusByUsername("ghost")).thenReturn(Optional.empty());
+
+        assertThat(cache.get("ghost")).isEmpty();
+        assertThat(cache.get("ghost")).isEmpty();
+        verify(userRepository, times(2)).findAuthStatusByUsername("ghost");
+    }
+
+    @Test
+    void invalidateShouldReloadTheUser(){
+        when(userRepository.findAuthStatusByUsername("alice"))
+                .thenReturn(Optional.of(user(7L, false, false)))
+                .thenReturn(Optional.of(user(7L, true, false)));
+
+        assertThat(cache.get("alice").orElseThrow().locked()).isFalse();
+        cache.invalidate("alice");
+        assertThat(cache.get("alice").orElseThrow().locked()).isTrue();
+    }
+
+    private static UserAuthStatus user(Long id, boolean locked, boolean deleted){
+        return new UserAuthStatus(id, false, locked, deleted);
+    }
+}
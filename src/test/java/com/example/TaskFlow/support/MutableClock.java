@@ -0,0 +1,42 @@
+package com.example.TaskFlow.support;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+// Clock for tests that need time to move forward on demand
+public final class MutableClock extends Clock {
+
+    // Where the clock starts unless a test needs a particular time, e.g. now for tokens whose exp is checked for real
+    public static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private Instant now;
+
+    public MutableClock(){
+        this(START);
+    }
+
+    public MutableClock(Instant now){
+        this.now = now;
+    }
+
+    public void advanceSeconds(long seconds){
+        now = now.plusSeconds(seconds);
+    }
+
+    @Override
+    public ZoneId getZone(){
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone){
+        return this;
+    }
+
+    @Override
+    public Instant instant(){
+        return now;
+    }
+}
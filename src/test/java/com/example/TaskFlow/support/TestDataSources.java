@@ -0,0 +1,20 @@
+package com.example.TaskFlow.support;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.UUID;
+
+// Embedded databases for the tests that run the JDBC code without a Spring context
+public final class TestDataSources {
+
+    private TestDataSources(){
+    }
+
+    // A fresh in-memory H2 in PostgreSQL mode with the taskflow_auth schema already created.
+    // The name only makes the database easier to recognise, the random suffix keeps every call separate,
+    // and DB_CLOSE_DELAY keeps it alive between the connections a DriverManagerDataSource opens.
+    public static DriverManagerDataSource h2(String name){
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + "-" + UUID.randomUUID()
+                + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL;INIT=CREATE SCHEMA IF NOT EXISTS taskflow_auth", "sa", "");
+    }
+}